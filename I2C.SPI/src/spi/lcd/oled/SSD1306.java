@@ -358,6 +358,37 @@ public class SSD1306
     this.write(this.buffer);
   }
 
+  /**
+   * Write a part of the display buffer to the physical display.
+   * The memory is in horizontal addressing mode (see initialize), the window
+   * is filled column after column, then page after page.
+   *
+   * @param fromCol first column, in [0, width - 1]
+   * @param toCol last column, included
+   * @param fromPage first page (8 pixel high row), in [0, pages - 1]
+   * @param toPage last page, included
+   */
+  public void display(int fromCol, int toCol, int fromPage, int toPage)
+  {
+    this.command(SSD1306_COLUMNADDR);
+    this.command(fromCol);
+    this.command(toCol);
+    this.command(SSD1306_PAGEADDR);
+    this.command(fromPage);
+    this.command(toPage);
+    int[] window = new int[(toCol - fromCol + 1) * (toPage - fromPage + 1)];
+    int idx = 0;
+    for (int page = fromPage; page <= toPage; page++)
+    {
+      for (int col = fromCol; col <= toCol; col++)
+        window[idx++] = this.buffer[(page * this.width) + col];
+    }
+    // Write buffer data.
+    //   Set DC high for data.
+    dcOutput.high();
+    this.write(window);
+  }
+
   /**
    * Adjusts contrast to dim the display if dim is True, otherwise sets the
    * contrast to normal brightness if dim is False.
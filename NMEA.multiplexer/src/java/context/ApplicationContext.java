@@ -1,6 +1,8 @@
 package context;
 
+import nmea.ais.AISTargetTable;
 import nmea.parser.Angle180EW;
+import nmea.utils.DeviationTable;
 import nmea.utils.NMEAUtils;
 
 import java.util.List;
@@ -9,6 +11,7 @@ public class ApplicationContext {
 
 	private static ApplicationContext instance = null;
 	NMEADataCache dataCache = null;
+	private AISTargetTable aisTargetTable = null;
 
 	private ApplicationContext() {
 	}
@@ -17,6 +20,17 @@ public class ApplicationContext {
 		return this.dataCache;
 	}
 
+	/**
+	 * Created when first needed.
+	 * @return the AIS targets table
+	 */
+	public synchronized AISTargetTable getAISTargetTable() {
+		if (aisTargetTable == null) {
+			aisTargetTable = new AISTargetTable();
+		}
+		return aisTargetTable;
+	}
+
 	public static synchronized ApplicationContext getInstance() {
 		if (instance == null) {
 			instance = new ApplicationContext();
@@ -36,8 +50,7 @@ public class ApplicationContext {
 		dataCache = new NMEADataCache();
 
 		List<double[]> deviationCurve = NMEAUtils.loadDeviationCurve(deviationFileName);
-		dataCache.put(NMEADataCache.DEVIATION_FILE, deviationFileName);
-		dataCache.put(NMEADataCache.DEVIATION_DATA, deviationCurve);
+		setDeviationCurve(deviationFileName, deviationCurve);
 		dataCache.put(NMEADataCache.MAX_LEEWAY, maxLeeway);
 
 		dataCache.put(NMEADataCache.BSP_FACTOR, bspFactor);
@@ -48,4 +61,21 @@ public class ApplicationContext {
 		dataCache.put(NMEADataCache.DEFAULT_DECLINATION, new Angle180EW(defaultDeclination));
 		dataCache.put(NMEADataCache.DAMPING, damping);
 	}
+
+	/**
+	 * Compiles the deviation curve into a {@link DeviationTable}, and swaps it in the cache.
+	 * Can be invoked while the multiplexer is running.
+	 * The three values are put under the cache lock, a reader holding it sees them all, or none of them.
+	 *
+	 * @param origin file name, or whatever the curve comes from
+	 * @param deviationCurve list of [compass heading, deviation]
+	 */
+	public void setDeviationCurve(String origin, List<double[]> deviationCurve) {
+		DeviationTable deviationTable = new DeviationTable(deviationCurve); // Built before the swap
+		synchronized (dataCache) {
+			dataCache.put(NMEADataCache.DEVIATION_FILE, origin);
+			dataCache.put(NMEADataCache.DEVIATION_DATA, deviationCurve);
+			dataCache.put(NMEADataCache.DEVIATION_TABLE, deviationTable);
+		}
+	}
 }
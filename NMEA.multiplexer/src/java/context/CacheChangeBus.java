@@ -0,0 +1,157 @@
+package context;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tells the subscribers that some keys of the {@link NMEADataCache} have been updated.
+ * <br>
+ * {@link NMEADataCache#put(String, Object)} calls {@link #changed(String)}. This only raises a flag on the
+ * subscriptions interested in that key, and wakes up their thread. Each subscription has its own (daemon) thread,
+ * a slow subscriber does not delay the other ones, and never blocks the cache.
+ * <br>
+ * A subscription is notified at most once per <code>minInterval</code>, all the changes in between are coalesced.
+ * With a <code>heartbeat</code>, it is also notified when nothing changed for that long (for clocks, elapsed times, etc).
+ */
+public class CacheChangeBus {
+
+	private final static CacheChangeBus instance = new CacheChangeBus();
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private CacheChangeBus() {
+	}
+
+	public static CacheChangeBus getInstance() {
+		return instance;
+	}
+
+	/**
+	 * See {@link CacheChangeBus#subscribe(String, Collection, long, long, Runnable)}.
+	 */
+	public final static class Subscription {
+		private final Set<String> keys; // null means all
+		private final long minInterval;
+		private final long heartbeat;
+		private final Runnable callback;
+		private final AtomicBoolean dirty = new AtomicBoolean(false);
+		private final Object lock = new Object();
+		private volatile boolean active = true;
+		private long lastNotified = 0L;
+		private long notifications = 0L;
+		private Thread thread;
+
+		private Subscription(Collection<String> keys, long minInterval, long heartbeat, Runnable callback) {
+			this.keys = keys == null ? null : new HashSet<>(keys);
+			this.minInterval = minInterval;
+			this.heartbeat = heartbeat;
+			this.callback = callback;
+		}
+
+		private void changed() {
+			if (dirty.compareAndSet(false, true)) {
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		}
+
+		private void run() {
+			while (active) {
+				synchronized (lock) {
+					try {
+						while (active) {
+							long now = System.currentTimeMillis();
+							if (dirty.get()) {
+								long wait = (lastNotified + minInterval) - now;
+								if (wait <= 0) {
+									break;
+								}
+								lock.wait(wait);
+							} else if (heartbeat > 0) {
+								long wait = (lastNotified + heartbeat) - now;
+								if (wait <= 0) {
+									break;
+								}
+								lock.wait(wait);
+							} else {
+								lock.wait();
+							}
+						}
+					} catch (InterruptedException ie) {
+						break;
+					}
+				}
+				if (!active) {
+					break;
+				}
+				dirty.set(false);
+				lastNotified = System.currentTimeMillis();
+				notifications++;
+				try {
+					callback.run();
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+		}
+
+		public long getNotifications() {
+			return notifications;
+		}
+	}
+
+	/**
+	 * @param name        name of the thread
+	 * @param keys        the cache keys to watch, null for all of them
+	 * @param minInterval minimum time between two notifications, in ms
+	 * @param heartbeat   notify anyway if nothing changed for that long, in ms. 0 for never.
+	 * @param callback    invoked in the subscription thread, when something changed
+	 * @return the subscription, to be given to {@link #unsubscribe(Subscription)}
+	 */
+	public Subscription subscribe(String name, Collection<String> keys, long minInterval, long heartbeat, Runnable callback) {
+		Subscription subscription = new Subscription(keys, minInterval, heartbeat, callback);
+		subscription.thread = new Thread(subscription::run, name);
+		subscription.thread.setDaemon(true);
+		subscriptions.add(subscription);
+		subscription.thread.start();
+		subscription.changed(); // First notification, with what is already in the cache.
+		return subscription;
+	}
+
+	public Subscription subscribe(String name, String[] keys, long minInterval, long heartbeat, Runnable callback) {
+		return subscribe(name, keys == null ? null : Arrays.asList(keys), minInterval, heartbeat, callback);
+	}
+
+	public void unsubscribe(Subscription subscription) {
+		if (subscription == null) {
+			return;
+		}
+		subscriptions.remove(subscription);
+		subscription.active = false;
+		synchronized (subscription.lock) {
+			subscription.lock.notify();
+		}
+	}
+
+	/**
+	 * Invoked when a key of the cache has been updated. Does not block.
+	 * @param key the cache key
+	 */
+	public void changed(String key) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.keys == null || subscription.keys.contains(key)) {
+				subscription.changed();
+			}
+		}
+	}
+
+	public int getNbSubscriptions() {
+		return subscriptions.size();
+	}
+}
@@ -36,6 +36,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static nmea.utils.NMEAUtils.longitudeToTime;
 
@@ -83,6 +85,9 @@ public class NMEADataCache
 	public static final String LEEWAY = "Leeway";
 	public static final String CMG = "CMG";
 	public static final String SAT_IN_VIEW = "Satellites in view";
+	public static final String GPS_FIX = "GPS Fix"; // GSA
+	public static final String GPS_ERRORS = "GPS Errors"; // GST
+	public static final String ALTITUDE = "Altitude";
 
 	public static final String BATTERY = "Battery Voltage";
 	public static final String CALCULATED_CURRENT = "Current calculated with damping";
@@ -96,6 +101,7 @@ public class NMEADataCache
 
 	public static final String DEVIATION_FILE = "Deviation file name";
 	public static final String DEVIATION_DATA = "Deviation data";
+	public static final String DEVIATION_TABLE = "Deviation table";
 	public static final String DEFAULT_DECLINATION = "Default Declination";
 	public static final String DAMPING = "Damping";
 
@@ -104,6 +110,12 @@ public class NMEADataCache
 	public static final String VMG_ON_WIND = "VMG on Wind";
 	public static final String VMG_ON_WP = "VMG to Waypoint";
 
+	// From the polars, see nmea.computers.PolarComputer
+	public static final String POLAR_SPEED = "Polar Speed";
+	public static final String POLAR_PERF = "Polar Performance";
+	public static final String TARGET_VMG = "Target VMG";
+	public static final String OPTIMAL_TWA = "Optimal TWA";
+
 	// Damping ArrayList's
 	private transient int dampingSize = 1;
 
@@ -116,6 +128,7 @@ public class NMEADataCache
 					DEFAULT_DECLINATION,
 					DEVIATION_FILE,
 					DEVIATION_DATA,
+					DEVIATION_TABLE,
 					DAMPING,
 					CALCULATED_CURRENT);
 
@@ -123,6 +136,10 @@ public class NMEADataCache
 
 	private transient long started = 0L;
 
+	// Versions of the data, incremented on each put. For the clients fetching the changes only.
+	private transient AtomicLong version = new AtomicLong(0L);
+	private transient Map<String, Long> keyVersions = new ConcurrentHashMap<>();
+
 	private transient NMEADataCache instance = this;
 
 	public NMEADataCache() {
@@ -176,13 +193,35 @@ public class NMEADataCache
 		}
 		if (dampingSize > 1 && dampingMap.containsKey(key)) {
 			List<Object> ald = dampingMap.get(key);
-			ald.add(value);
-			while (ald.size() > dampingSize)
-				ald.remove(0);
+			synchronized (ald) {
+				ald.add(value);
+				while (ald.size() > dampingSize)
+					ald.remove(0);
+			}
 		}
+		if (keyVersions != null) { // null when de-serialized
+			keyVersions.put(key, version.incrementAndGet());
+		}
+		CacheChangeBus.getInstance().changed(key);
 		return o;
 	}
 
+	/**
+	 * @return the version of the cache, incremented each time a value is put in it.
+	 */
+	public long getVersion() {
+		return version != null ? version.get() : 0L;
+	}
+
+	/**
+	 * @param key the cache key
+	 * @return the version of the cache when this key was last put, 0 if it never was.
+	 */
+	public long getVersion(String key) {
+		Long v = keyVersions != null ? keyVersions.get(key) : null;
+		return v != null ? v : 0L;
+	}
+
 	public void parseAndFeed(String nmeaSentence) {
 		if (StringParsers.validCheckSum(nmeaSentence)) {
 
@@ -356,6 +395,28 @@ public class NMEADataCache
 						this.put(SAT_IN_VIEW, satmap);
 					}
 					break;
+				case "GSA": // Fix mode, satellites used, DOPs
+					try {
+						this.put(GPS_FIX, StringParsers.parseGSA(nmeaSentence));
+					} catch (Exception ex) {
+						// Incomplete sentence
+					}
+					break;
+				case "GST": // Position error statistics
+					StringParsers.GST gst = StringParsers.parseGST(nmeaSentence);
+					if (gst != null) {
+						this.put(GPS_ERRORS, gst);
+					}
+					break;
+				case "GGA": // Fix data. Only the altitude is taken from here, when there is a fix, and an altitude.
+					String[] ggaFields = nmeaSentence.split("[,*]"); // Quality in [6], altitude in [9]. parseGGA returns 0 for an empty one.
+					if (ggaFields.length > 9 && ggaFields[6].trim().length() > 0 && !"0".equals(ggaFields[6].trim()) && ggaFields[9].trim().length() > 0) {
+						List<Object> gga = StringParsers.parseGGA(nmeaSentence);
+						if (gga != null && gga.size() > 3) {
+							this.put(ALTITUDE, gga.get(3));
+						}
+					}
+					break;
 				case "MDA": // Meteorological composite (Humidity, among others)
 					StringParsers.MDA mda = StringParsers.parseMDA(nmeaSentence);
 					if (mda.airT != null)
@@ -415,6 +476,9 @@ public class NMEADataCache
 						this.put(BATTERY, new Float(volt));
 					}
 					break;
+				case "VDM":     // AIS. Not in the cache, see ApplicationContext.getAISTargetTable
+					ApplicationContext.getInstance().getAISTargetTable().feed(nmeaSentence);
+					break;
 				case "STD":     // Cache age. Not Standard. From Original cache
 					long age = StringParsers.parseSTD(nmeaSentence);
 					if (age > -1) {
@@ -522,6 +586,40 @@ public class NMEADataCache
 			dampingMap.get(k).clear();
 	}
 
+	/**
+	 * @return a copy of the damping buffers, oldest value first.
+	 */
+	public Map<String, List<Object>> getDampingBuffers() {
+		Map<String, List<Object>> buffers = new HashMap<>();
+		dampingMap.forEach((key, ald) -> {
+			synchronized (ald) {
+				buffers.put(key, new ArrayList<>(ald));
+			}
+		});
+		return buffers;
+	}
+
+	/**
+	 * Restores a damping buffer, see {@link #getDampingBuffers()}. Only the last <code>dampingSize</code> values are kept.
+	 */
+	public void setDampingBuffer(String key, List<Object> values) {
+		List<Object> ald = dampingMap.get(key);
+		if (ald != null) {
+			synchronized (ald) {
+				ald.clear();
+				ald.addAll(values.subList(Math.max(0, values.size() - dampingSize), values.size()));
+			}
+		}
+	}
+
+	/**
+	 * @param key the cache key
+	 * @return true for the settings (factors, offsets, deviation, damping) and the calculated current, left alone by {@link #reset()}.
+	 */
+	public static boolean isKeptOnReset(String key) {
+		return NOT_TO_RESET.contains(key);
+	}
+
 	public static class CurrentDefinition implements Serializable {
 		private long bufferLength; // in ms
 		private Speed speed;
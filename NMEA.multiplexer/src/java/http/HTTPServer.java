@@ -1,5 +1,6 @@
 package http;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -138,6 +139,13 @@ public class HTTPServer {
 		}
 	}
 
+	/**
+	 * Writes a payload of unknown length.
+	 */
+	public interface StreamingPayload {
+		void writeTo(OutputStream out) throws Exception;
+	}
+
 	public static class Response {
 
 		public final static int STATUS_OK       = 200;
@@ -151,6 +159,7 @@ public class HTTPServer {
 		private String protocol;
 		private Map<String, String> headers;
 		private byte[] payload;
+		private StreamingPayload streamingPayload;
 
 		public Response() {
 		}
@@ -192,6 +201,18 @@ public class HTTPServer {
 			this.payload = payload;
 		}
 
+		public StreamingPayload getStreamingPayload() {
+			return streamingPayload;
+		}
+
+		/**
+		 * For the big payloads, written as they are produced, instead of {@link #setPayload(byte[])}.
+		 * Sent chunked (HTTP/1.1), from another thread, so the server can take the next requests meanwhile.
+		 */
+		public void setStreamingPayload(StreamingPayload streamingPayload) {
+			this.streamingPayload = streamingPayload;
+		}
+
 		@Override
 		public String toString() {
 			final StringBuffer sb = new StringBuffer();
@@ -387,14 +408,17 @@ public class HTTPServer {
 							} else {
 								if (requestManager != null) {
 									Response response = requestManager.onRequest(request); // REST Request, most likely.
+									if (response.getStreamingPayload() != null) {
+										streamResponse(response, client, in, out);
+										continue; // The streaming thread closes the socket
+									}
 									sendResponse(response, out);
 								}
 							}
 						} else {
-							if (payload != null && payload.length() > 0 && payload.startsWith("?WATCH=")) { // GPSd ?  ?WATCH={...}; ?POLL; ?DEVICE;
-								System.out.println(String.format(">>>>>>>> GPSd: [%s]", payload)); // This is the first embryo of a GPSd implementation...
-								String json = payload.substring("?WATCH=".length());
-								String responsePayload = "{\"class\":\"SKY\",\"device\":\"/dev/pts/1\",\"time\":\"2005-07-08T11:28:07.114Z\",\"xdop\":1.55,\"hdop\":1.24,\"pdop\":1.99,\"satellites\":[{\"PRN\":23,\"el\":6,\"az\":84,\"ss\":0,\"used\":false},{\"PRN\":28,\"el\":7,\"az\":160,\"ss\":0,\"used\":false},{\"PRN\":8,\"el\":66,\"az\":189,\"ss\":44,\"used\":true},{\"PRN\":29,\"el\":13,\"az\":273,\"ss\":0,\"used\":false},{\"PRN\":10,\"el\":51,\"az\":304,\"ss\":29,\"used\":true},{\"PRN\":4,\"el\":15,\"az\":199,\"ss\":36,\"used\":true},{\"PRN\":2,\"el\":34,\"az\":241,\"ss\":43,\"used\":true},{\"PRN\":27,\"el\":71,\"az\":76,\"ss\":43,\"used\":true}]}" + "\n";
+							if (payload != null && payload.length() > 0 && payload.startsWith("?WATCH=")) { // A gpsd client, on the wrong port.
+								System.out.println(String.format(">>>>>>>> GPSd: [%s]", payload));
+								String responsePayload = "{\"class\":\"ERROR\",\"message\":\"Not a gpsd server. Use the port of a 'gpsd' forwarder.\"}" + "\n";
 								out.write(responsePayload.getBytes());
 								out.flush();
 							} else if (line != null && line.length() != 0) {
@@ -477,6 +501,99 @@ public class HTTPServer {
 		}
 	}
 
+	/**
+	 * Sends the headers, then the payload as it is written by the {@link StreamingPayload}, in its own thread.
+	 * HTTP/1.1 gets it chunked, HTTP/1.0 until the connection is closed.
+	 */
+	private void streamResponse(Response response, Socket client, InputStreamReader in, OutputStream os) {
+		boolean chunked = "HTTP/1.1".equals(response.getProtocol());
+		if (chunked) {
+			response.getHeaders().put("Transfer-Encoding", "chunked");
+		}
+		response.getHeaders().put("Connection", "close");
+		Thread streamer = new Thread(() -> {
+			try {
+				sendResponse(response, os); // Headers only
+				OutputStream payloadStream = chunked ? new ChunkedOutputStream(os) : new BufferedOutputStream(os, 8_192);
+				response.getStreamingPayload().writeTo(payloadStream);
+				payloadStream.close();
+			} catch (Exception ex) {
+				if (verbose) {
+					ex.printStackTrace();
+				} else {
+					System.err.println(String.format("Streaming response: %s", ex.toString())); // Client gone, most likely
+				}
+			} finally {
+				try {
+					in.close();
+					client.close();
+				} catch (IOException ioe) {
+					// Absorb
+				}
+			}
+		}, "HTTPStreamer");
+		streamer.setDaemon(true);
+		streamer.start();
+	}
+
+	/**
+	 * HTTP/1.1 chunked transfer encoding. Buffered, a chunk is written when the buffer is full, or on flush.
+	 * Closing writes the last chunk, the socket stream is not closed.
+	 */
+	private static class ChunkedOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final byte[] buffer = new byte[8_192];
+		private int count = 0;
+
+		ChunkedOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				writeChunk();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (count == buffer.length) {
+					writeChunk();
+				}
+				int n = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void writeChunk() throws IOException {
+			if (count > 0) {
+				out.write(String.format("%x\r\n", count).getBytes());
+				out.write(buffer, 0, count);
+				out.write("\r\n".getBytes());
+				count = 0;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writeChunk();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			writeChunk();
+			out.write("0\r\n\r\n".getBytes());
+			out.flush();
+		}
+	}
+
 	private static Thread waiter = null;
 
 	//  For dev tests
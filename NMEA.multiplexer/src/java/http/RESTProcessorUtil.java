@@ -99,6 +99,16 @@ public class RESTProcessorUtil {
 		response.setHeaders(responseHeaders);
 	}
 
+	/**
+	 * For a {@link HTTPServer.Response#setStreamingPayload(HTTPServer.StreamingPayload)}, no Content-Length.
+	 */
+	public static void generateStreamingResponseHeaders(HTTPServer.Response response, String contentType) {
+		Map<String, String> responseHeaders = new HashMap<>();
+		responseHeaders.put("Content-Type", contentType);
+		responseHeaders.put("Access-Control-Allow-Origin", "*");
+		response.setHeaders(responseHeaders);
+	}
+
 	public static void addErrorMessageToResponse(HTTPServer.Response response, String errMess) {
 		String content = new Gson().toJson(new RESTProcessorUtil.ErrorMessage(errMess)).toString();
 		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
@@ -0,0 +1,173 @@
+package nmea.ais;
+
+/**
+ * The bits of an AIS payload, unpacked from the 6-bit ASCII armoring into an array of longs.
+ * <br>
+ * Bit 0 is the most significant bit of the first 6-bit character, like in the AIS specs.
+ * Fields are extracted with shifts and masks, nothing is allocated once the buffer is big enough.
+ * <br>
+ * Not thread-safe, one instance per decoding thread.
+ */
+public final class AISBitBuffer {
+
+	private long[] words;
+	private int length = 0; // in bits
+
+	public AISBitBuffer() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity in bits. Grows if needed.
+	 */
+	public AISBitBuffer(int capacity) {
+		this.words = new long[(capacity >> 6) + 2];
+	}
+
+	/**
+	 * Start a new payload.
+	 */
+	public void clear() {
+		int used = Math.min(words.length, (length >> 6) + 2);
+		for (int i = 0; i < used; i++) {
+			words[i] = 0L;
+		}
+		length = 0;
+	}
+
+	/**
+	 * Unpack a payload (or a fragment of it), appended to the bits already in the buffer.
+	 *
+	 * @param payload  the armored payload, like <code>15NB&gt;cP03jG?l`&lt;EaV0`MFO000S&gt;</code>
+	 * @param from     index of the first character in payload
+	 * @param to       index after the last character in payload
+	 * @param fillBits number of padding bits at the end of the payload, to ignore
+	 */
+	public void append(CharSequence payload, int from, int to, int fillBits) {
+		int newLength = length + ((to - from) * 6);
+		ensureCapacity(newLength);
+		for (int i = from; i < to; i++) {
+			int c = payload.charAt(i) - 48;
+			if (c > 40) {
+				c -= 8;
+			}
+			if (c < 0 || c > 63) {
+				throw new RuntimeException("Invalid AIS payload character [" + payload.charAt(i) + "]");
+			}
+			int w = length >> 6;
+			int off = length & 63;
+			if (off <= 58) {
+				words[w] |= ((long) c) << (58 - off);
+			} else { // Spans two words
+				words[w] |= ((long) c) >>> (off - 58);
+				words[w + 1] |= ((long) c) << (122 - off);
+			}
+			length += 6;
+		}
+		if (fillBits > 0 && fillBits < 6) {
+			length -= fillBits;
+		}
+	}
+
+	private void ensureCapacity(int nbBits) {
+		int needed = (nbBits >> 6) + 2;
+		if (needed > words.length) {
+			long[] newWords = new long[Math.max(needed, words.length * 2)];
+			System.arraycopy(words, 0, newWords, 0, words.length);
+			words = newWords;
+		}
+	}
+
+	/**
+	 * @return the number of bits in the buffer
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Bits beyond the end of the payload are read as zeros.
+	 *
+	 * @param start first bit, zero based
+	 * @param len   number of bits, 1 to 63
+	 * @return the unsigned value
+	 */
+	public long getUnsigned(int start, int len) {
+		return bits(start, len) >>> (64 - len);
+	}
+
+	/**
+	 * Two's complement.
+	 *
+	 * @param start first bit, zero based
+	 * @param len   number of bits, 1 to 63
+	 * @return the signed value
+	 */
+	public long getSigned(int start, int len) {
+		return bits(start, len) >> (64 - len);
+	}
+
+	public int getInt(int start, int len) {
+		return (int) getUnsigned(start, len);
+	}
+
+	public int getSignedInt(int start, int len) {
+		return (int) getSigned(start, len);
+	}
+
+	public boolean getBoolean(int start) {
+		return getUnsigned(start, 1) != 0;
+	}
+
+	/**
+	 * Six-bit text, trailing '@' (padding) and spaces removed.
+	 *
+	 * @param start   first bit, zero based
+	 * @param nbChars number of 6-bit characters
+	 * @param into    receives the text. Emptied first.
+	 * @return into
+	 */
+	public StringBuilder getText(int start, int nbChars, StringBuilder into) {
+		into.setLength(0);
+		appendText(start, nbChars, into);
+		return into;
+	}
+
+	/**
+	 * Like {@link #getText(int, int, StringBuilder)}, without emptying into first.
+	 * Stops at the end of the payload.
+	 */
+	public StringBuilder appendText(int start, int nbChars, StringBuilder into) {
+		int end = Math.min(start + (nbChars * 6), length);
+		for (int bit = start; bit + 6 <= end; bit += 6) {
+			int c = getInt(bit, 6);
+			into.append((char) (c < 32 ? c + 64 : c));
+		}
+		int len = into.length();
+		while (len > 0 && (into.charAt(len - 1) == '@' || into.charAt(len - 1) == ' ')) {
+			len--;
+		}
+		into.setLength(len);
+		return into;
+	}
+
+	/**
+	 * @return the requested bits, left aligned in a long
+	 */
+	private long bits(int start, int len) {
+		if (start >= length || len <= 0) {
+			return 0L;
+		}
+		int w = start >> 6;
+		int off = start & 63;
+		long value = words[w] << off;
+		if (off + len > 64) {
+			value |= words[w + 1] >>> (64 - off);
+		}
+		if (start + len > length) { // Past the end
+			int valid = length - start;
+			value &= (-1L << (64 - valid));
+		}
+		return value;
+	}
+}
@@ -0,0 +1,202 @@
+package nmea.ais;
+
+import nmea.parser.StringParsers;
+
+/**
+ * Re-assembles the multi-sentence AIS messages (like type 5), and decodes them.
+ * <pre>
+ * !AIVDM,2,1,3,B,55?MbV02;H;s&lt;HtKR20EHE:0@T4@Dn2222222216L961O5Gf0NSQEp6ClRp8,0*1C
+ * !AIVDM,2,2,3,B,88888888880,2*25
+ *        ^ ^ ^ ^
+ *        | | | Channel
+ *        | | Sequential message ID
+ *        | Fragment number
+ *        Number of fragments
+ * </pre>
+ * Fragments are kept by sequential message ID and channel, until the last one arrives, or they time out.
+ * A fragment arriving out of order drops the message.
+ * Single-sentence messages go straight through.
+ * <br>
+ * The bit buffers are re-used, nothing is allocated on the way once the pending slots are created.
+ */
+public class AISFragmentAssembler {
+
+	public final static long DEFAULT_TIMEOUT = 5_000L; // ms
+	private final static int MAX_PENDING = 16;
+
+	private final static class Pending {
+		boolean inUse = false;
+		char channel;
+		int sequenceId;
+		int nbFragments;
+		int nextFragment;
+		long started;
+		final AISBitBuffer bits = new AISBitBuffer();
+	}
+
+	private final Pending[] pending = new Pending[MAX_PENDING];
+	private final AISBitBuffer single = new AISBitBuffer();
+	private final int[] commas = new int[7];
+	private final long timeout;
+
+	private long dropped = 0L;
+
+	public AISFragmentAssembler() {
+		this(Long.parseLong(System.getProperty("ais.fragment.timeout", String.valueOf(DEFAULT_TIMEOUT))));
+	}
+
+	/**
+	 * @param timeout in ms, between the first and the last fragment of a message
+	 */
+	public AISFragmentAssembler(long timeout) {
+		this.timeout = timeout;
+		for (int i = 0; i < pending.length; i++) {
+			pending[i] = new Pending();
+		}
+	}
+
+	/**
+	 * @return the number of incomplete messages dropped so far (out of order, timed out, or no slot available)
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @param sentence an AIVDM sentence, any talker (AI, AB, BS...)
+	 * @param aisRecord receives the decoded message
+	 * @return true if a complete message was decoded in aisRecord, false if more fragments are expected,
+	 * if the sentence is invalid, or if the message type is not managed.
+	 */
+	public synchronized boolean feed(String sentence, AISParser.AISRecord aisRecord) {
+		return feed(sentence, System.currentTimeMillis(), aisRecord);
+	}
+
+	/**
+	 * @param sentence an AIVDM sentence
+	 * @param now      reception time, epoch in ms
+	 * @param aisRecord receives the decoded message
+	 * @return true if a complete message was decoded in aisRecord
+	 */
+	public synchronized boolean feed(String sentence, long now, AISParser.AISRecord aisRecord) {
+		if (sentence == null || sentence.length() < 7 || sentence.charAt(0) != '!' || !sentence.startsWith("VDM,", 3)) {
+			return false;
+		}
+		if (!StringParsers.validCheckSum(sentence)) {
+			return false;
+		}
+		int nb = 0;
+		for (int i = 0; i < sentence.length() && nb < commas.length; i++) {
+			if (sentence.charAt(i) == ',') {
+				commas[nb++] = i;
+			}
+		}
+		if (nb < 6) {
+			return false;
+		}
+		int nbFragments = parseInt(sentence, commas[0] + 1, commas[1]);
+		int fragment = parseInt(sentence, commas[1] + 1, commas[2]);
+		int sequenceId = parseInt(sentence, commas[2] + 1, commas[3]); // May be empty (-1) for single sentence messages
+		char channel = commas[4] > commas[3] + 1 ? sentence.charAt(commas[3] + 1) : ' ';
+		int payloadStart = commas[4] + 1;
+		int payloadEnd = commas[5];
+		int fillBits = 0;
+		if (payloadEnd + 1 < sentence.length()) {
+			char fill = sentence.charAt(payloadEnd + 1);
+			if (fill >= '0' && fill <= '5') {
+				fillBits = fill - '0';
+			}
+		}
+		if (nbFragments < 1 || fragment < 1 || fragment > nbFragments) {
+			return false;
+		}
+		try {
+			if (nbFragments == 1) {
+				single.clear();
+				single.append(sentence, payloadStart, payloadEnd, fillBits);
+				aisRecord.setRecordTimeStamp(now);
+				return AISParser.decode(single, aisRecord);
+			}
+			expire(now);
+			Pending slot = find(channel, sequenceId, nbFragments);
+			if (fragment == 1) {
+				if (slot != null) { // Previous one never completed
+					dropped++;
+				} else {
+					slot = freeSlot();
+				}
+				slot.inUse = true;
+				slot.channel = channel;
+				slot.sequenceId = sequenceId;
+				slot.nbFragments = nbFragments;
+				slot.nextFragment = 1;
+				slot.started = now;
+				slot.bits.clear();
+			} else if (slot == null) { // First fragment(s) missed
+				return false;
+			}
+			if (fragment != slot.nextFragment) {
+				dropped++;
+				slot.inUse = false;
+				return false;
+			}
+			slot.bits.append(sentence, payloadStart, payloadEnd, fragment == nbFragments ? fillBits : 0);
+			slot.nextFragment++;
+			if (fragment < nbFragments) {
+				return false;
+			}
+			slot.inUse = false;
+			aisRecord.setRecordTimeStamp(now);
+			return AISParser.decode(slot.bits, aisRecord);
+		} catch (RuntimeException re) { // Invalid payload
+			return false;
+		}
+	}
+
+	private Pending find(char channel, int sequenceId, int nbFragments) {
+		for (Pending p : pending) {
+			if (p.inUse && p.channel == channel && p.sequenceId == sequenceId && p.nbFragments == nbFragments) {
+				return p;
+			}
+		}
+		return null;
+	}
+
+	private Pending freeSlot() {
+		Pending oldest = null;
+		for (Pending p : pending) {
+			if (!p.inUse) {
+				return p;
+			}
+			if (oldest == null || p.started < oldest.started) {
+				oldest = p;
+			}
+		}
+		dropped++; // All slots busy, the oldest one is recycled
+		return oldest;
+	}
+
+	private void expire(long now) {
+		for (Pending p : pending) {
+			if (p.inUse && (now - p.started) > timeout) {
+				p.inUse = false;
+				dropped++;
+			}
+		}
+	}
+
+	private static int parseInt(String str, int from, int to) {
+		if (from >= to) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			char c = str.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = (value * 10) + (c - '0');
+		}
+		return value;
+	}
+}
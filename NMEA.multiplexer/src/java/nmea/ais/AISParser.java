@@ -5,7 +5,6 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 
 import nmea.parser.StringParsers;
-import nmea.utils.NMEAUtils;
 
 public class AISParser {
 	public final static boolean verbose = false;
@@ -65,6 +64,10 @@ AIS Message type 2:
   155-168 SOTDMA Slot Offset
    */
 
+	/**
+	 * Layout of the position reports (types 1, 2 and 3).
+	 * See {@link #decode(AISBitBuffer, AISRecord)} for the other ones.
+	 */
 	public enum AISData {
 		MESSAGE_TYPE(0, 6, "Message Type"),
 		REPEAT_INDICATOR(6, 8, "Repeat Indicator"),
@@ -110,97 +113,169 @@ AIS Message type 2:
 	public final static int NB_SENTENCES_POS = 1;
 	public final static int AIS_DATA_POS = 5;
 
+	private final static ThreadLocal<AISBitBuffer> BIT_BUFFERS = ThreadLocal.withInitial(AISBitBuffer::new);
+
+	/**
+	 * @param sentence the full AIVDM sentence
+	 * @return a new record, or null if the message is not a single-sentence one, or its type is not managed.
+	 * @throws Exception when the sentence is invalid
+	 */
 	public static AISRecord parseAIS(String sentence) throws Exception {
+		return parseAIS(sentence, new AISRecord(System.currentTimeMillis()));
+	}
+
+	/**
+	 * Same as {@link #parseAIS(String)}, filling an existing record. Nothing else is allocated.
+	 *
+	 * @param sentence  the full AIVDM sentence
+	 * @param aisRecord the record to fill. Reset first.
+	 * @return aisRecord, or null if the message is not a single-sentence one, or its type is not managed.
+	 * @throws Exception when the sentence is invalid
+	 */
+	public static AISRecord parseAIS(String sentence, AISRecord aisRecord) throws Exception {
 		boolean valid = StringParsers.validCheckSum(sentence);
 		if (!valid)
 			throw new RuntimeException("Invalid AIS Data (Bad checksum) for [" + sentence + "]");
 
-		String[] dataElement = sentence.split(",");
-		if (!dataElement[PREFIX_POS].equals(AIS_PREFIX))
-			throw new RuntimeException("Unmanaged AIS Prefix [" + dataElement[PREFIX_POS] + "].");
+		if (!sentence.startsWith(AIS_PREFIX) || sentence.length() <= AIS_PREFIX.length() || sentence.charAt(AIS_PREFIX.length()) != ',')
+			throw new RuntimeException("Unmanaged AIS Prefix [" + sentence.substring(0, Math.max(0, sentence.indexOf(','))) + "].");
 
-		if (!dataElement[NB_SENTENCES_POS].equals("1")) // More than 1 message: Not Managed
+		// Field positions, without splitting the sentence
+		int[] commas = new int[AIS_DATA_POS + 2];
+		int nb = 0;
+		for (int i = 0; i < sentence.length() && nb < commas.length; i++) {
+			if (sentence.charAt(i) == ',') {
+				commas[nb++] = i;
+			}
+		}
+		if (nb < AIS_DATA_POS + 1)
+			throw new RuntimeException("Invalid AIS Data (not enough fields) for [" + sentence + "]");
+
+		int nbSentencesStart = commas[NB_SENTENCES_POS - 1] + 1;
+		if (commas[NB_SENTENCES_POS] != nbSentencesStart + 1 || sentence.charAt(nbSentencesStart) != '1') // More than 1 message: Not Managed
 			return null;
 
-		AISRecord aisRecord = new AISRecord(System.currentTimeMillis());
-		String aisData = dataElement[AIS_DATA_POS];
-//  System.out.println("[" + aisData + "]");
-		String binString = encodedAIStoBinaryString(aisData);
-//  System.out.println(binString);
-
-		for (AISData a : AISData.values()) {
-			String binStr = binString.substring(a.from(), a.to());
-			int intValue = Integer.parseInt(binStr, 2);
-			if (a.equals(AISData.LATITUDE) || a.equals(AISData.LONGITUDE)) {
-				if ((a.equals(AISData.LATITUDE) && intValue != (91 * 600000) && intValue > (90 * 600000)) ||
-								(a.equals(AISData.LONGITUDE) && intValue != (181 * 600000) && intValue > (180 * 600000))) {
-					intValue = -Integer.parseInt(neg(binStr), 2);
-				}
-			} else if (a.equals(AISData.ROT)) {
-				if (intValue > 128)
-					intValue = -Integer.parseInt(neg(binStr), 2);
+		int fillBits = 0;
+		int fillPos = commas[AIS_DATA_POS] + 1;
+		if (fillPos < sentence.length()) {
+			char fill = sentence.charAt(fillPos);
+			if (fill >= '0' && fill <= '5') {
+				fillBits = fill - '0';
 			}
-			setAISData(a, aisRecord, intValue);
-			if (verbose)
-				System.out.println(a + " [" + binStr + "] becomes [" + intValue + "]");
 		}
-		return aisRecord;
+		AISBitBuffer bits = BIT_BUFFERS.get();
+		bits.clear();
+		bits.append(sentence, commas[AIS_DATA_POS - 1] + 1, commas[AIS_DATA_POS], fillBits);
+		aisRecord.setRecordTimeStamp(System.currentTimeMillis());
+		return decode(bits, aisRecord) ? aisRecord : null;
 	}
 
 	/**
-	 * 2's complement, for negative numbers.
+	 * Decode an unpacked payload, possibly re-assembled from several sentences.
+	 * Managed message types are 1, 2, 3 (Class A position report), 5 (static and voyage data),
+	 * 18, 19 (Class B position reports), 21 (Aid to Navigation) and 24 (static data report).
 	 *
-	 * @param binStr
-	 * @return
+	 * @param bits      the payload
+	 * @param aisRecord the record to fill. Reset first, the record time stamp is left untouched.
+	 * @return false if the message type is not managed, or the payload too short.
 	 */
-	private static String neg(String binStr) {
-		String s = "";
-		for (int i = 0; i < binStr.length(); i++)
-			s += (binStr.charAt(i) == '0' ? '1' : '0');
-		return s;
-	}
-
-	private static void setAISData(AISData a, AISRecord ar, int value) {
-		if (a.equals(AISData.MESSAGE_TYPE))
-			ar.setMessageType(value);
-		else if (a.equals(AISData.REPEAT_INDICATOR))
-			ar.setRepeatIndicator(value);
-		else if (a.equals(AISData.MMSI))
-			ar.setMmsi(value);
-		else if (a.equals(AISData.NAV_STATUS))
-			ar.setNavstatus(value);
-		else if (a.equals(AISData.ROT))
-			ar.setRot(value);
-		else if (a.equals(AISData.SOG))
-			ar.setSog(value);
-		else if (a.equals(AISData.POS_ACC))
-			ar.setPosAcc(value);
-		else if (a.equals(AISData.LONGITUDE))
-			ar.setLongitude(value);
-		else if (a.equals(AISData.LATITUDE))
-			ar.setLatitude(value);
-		else if (a.equals(AISData.COG))
-			ar.setCog(value);
-		else if (a.equals(AISData.HDG))
-			ar.setHdg(value);
-		else if (a.equals(AISData.TIME_STAMP))
-			ar.setUtc(value);
+	public static boolean decode(AISBitBuffer bits, AISRecord aisRecord) {
+		aisRecord.reset();
+		if (bits.length() < 38) {
+			return false;
+		}
+		int type = bits.getInt(0, 6);
+		aisRecord.setMessageType(type);
+		aisRecord.setRepeatIndicator(bits.getInt(6, 2));
+		aisRecord.setMmsi(bits.getInt(8, 30));
+		switch (type) {
+			case 1:
+			case 2:
+			case 3:
+				aisRecord.setNavstatus(bits.getInt(38, 4));
+				aisRecord.setRot(bits.getSignedInt(42, 8));
+				aisRecord.setSog(bits.getInt(50, 10));
+				aisRecord.setPosAcc(bits.getInt(60, 1));
+				aisRecord.setLongitude(bits.getSignedInt(61, 28));
+				aisRecord.setLatitude(bits.getSignedInt(89, 27));
+				aisRecord.setCog(bits.getInt(116, 12));
+				aisRecord.setHdg(bits.getInt(128, 9));
+				aisRecord.setUtc(bits.getInt(137, 6));
+				break;
+			case 5:
+				aisRecord.setAisVersion(bits.getInt(38, 2));
+				aisRecord.setImo(bits.getInt(40, 30));
+				bits.getText(70, 7, aisRecord.callSign);
+				bits.getText(112, 20, aisRecord.shipName);
+				aisRecord.setShipType(bits.getInt(232, 8));
+				setDimensions(bits, 240, aisRecord);
+				aisRecord.setEpfd(bits.getInt(270, 4));
+				aisRecord.setEta(bits.getInt(274, 4), bits.getInt(278, 5), bits.getInt(283, 5), bits.getInt(288, 6));
+				aisRecord.setDraught(bits.getInt(294, 8));
+				bits.getText(302, 20, aisRecord.destination);
+				break;
+			case 18:
+			case 19:
+				aisRecord.setSog(bits.getInt(46, 10));
+				aisRecord.setPosAcc(bits.getInt(56, 1));
+				aisRecord.setLongitude(bits.getSignedInt(57, 28));
+				aisRecord.setLatitude(bits.getSignedInt(85, 27));
+				aisRecord.setCog(bits.getInt(112, 12));
+				aisRecord.setHdg(bits.getInt(124, 9));
+				aisRecord.setUtc(bits.getInt(133, 6));
+				if (type == 19) {
+					bits.getText(143, 20, aisRecord.shipName);
+					aisRecord.setShipType(bits.getInt(263, 8));
+					setDimensions(bits, 271, aisRecord);
+					aisRecord.setEpfd(bits.getInt(301, 4));
+				}
+				break;
+			case 21:
+				aisRecord.setAidType(bits.getInt(38, 5));
+				bits.getText(43, 20, aisRecord.shipName);
+				aisRecord.setPosAcc(bits.getInt(163, 1));
+				aisRecord.setLongitude(bits.getSignedInt(164, 28));
+				aisRecord.setLatitude(bits.getSignedInt(192, 27));
+				setDimensions(bits, 219, aisRecord);
+				aisRecord.setEpfd(bits.getInt(249, 4));
+				aisRecord.setUtc(bits.getInt(253, 6));
+				aisRecord.setOffPosition(bits.getBoolean(259));
+				aisRecord.setVirtualAid(bits.getBoolean(269));
+				if (bits.length() > 272 && aisRecord.shipName.length() == 20) { // Name extension, up to 14 more characters
+					bits.appendText(272, (bits.length() - 272) / 6, aisRecord.shipName);
+				}
+				break;
+			case 24:
+				int part = bits.getInt(38, 2);
+				aisRecord.setPartNumber(part);
+				if (part == 0) {
+					bits.getText(40, 20, aisRecord.shipName);
+				} else if (part == 1) {
+					aisRecord.setShipType(bits.getInt(40, 8));
+					bits.getText(48, 3, aisRecord.vendorId);
+					bits.getText(90, 7, aisRecord.callSign);
+					if (aisRecord.getMmsi() / 10_000_000 == 98) { // Auxiliary craft, mother ship MMSI instead of dimensions
+						aisRecord.setMothershipMmsi(bits.getInt(132, 30));
+					} else {
+						setDimensions(bits, 132, aisRecord);
+					}
+				} else {
+					return false;
+				}
+				break;
+			default:
+				return false;
+		}
+		if (verbose)
+			System.out.println(aisRecord);
+		return true;
 	}
 
-	private static String encodedAIStoBinaryString(String encoded) {
-		StringBuffer sb = new StringBuffer();
-		for (int i = 0; i < encoded.length(); i++) {
-			int c = encoded.charAt(i);
-			c -= 48;
-			if (c > 40)
-				c -= 8;
-			String bin = NMEAUtils.lpad(Integer.toBinaryString(c), 6, "0");
-			sb.append(bin);
-			if (verbose)
-				System.out.println(encoded.charAt(i) + " becomes " + bin + " (" + c + ")");
-//    sb.append(" ");
-		}
-		return sb.toString();
+	private static void setDimensions(AISBitBuffer bits, int from, AISRecord aisRecord) {
+		aisRecord.setToBow(bits.getInt(from, 9));
+		aisRecord.setToStern(bits.getInt(from + 9, 9));
+		aisRecord.setToPort(bits.getInt(from + 18, 6));
+		aisRecord.setToStarboard(bits.getInt(from + 24, 6));
 	}
 
 	public static class AISRecord {
@@ -217,12 +292,89 @@ AIS Message type 2:
 		private int hdg;
 		private int utc;
 		private long recordTimeStamp;
+		// Static data, types 5, 19, 21, 24
+		private int aisVersion;
+		private int imo;
+		private int shipType;
+		private int toBow;
+		private int toStern;
+		private int toPort;
+		private int toStarboard;
+		private int epfd;
+		private int etaMonth;
+		private int etaDay;
+		private int etaHour;
+		private int etaMinute;
+		private float draught;
+		private int aidType;
+		private boolean offPosition;
+		private boolean virtualAid;
+		private int partNumber;
+		private int mothershipMmsi;
+		// Text fields, re-used from one message to the next
+		final StringBuilder callSign = new StringBuilder(7);
+		final StringBuilder shipName = new StringBuilder(34);
+		final StringBuilder destination = new StringBuilder(20);
+		final StringBuilder vendorId = new StringBuilder(3);
+
+		public AISRecord() {
+			this(0L);
+		}
 
 		public AISRecord(long now) {
 			super();
 			recordTimeStamp = now;
 		}
 
+		/**
+		 * Back to the default values, before a new message is decoded in this record.
+		 * The record time stamp is not reset.
+		 */
+		public void reset() {
+			messageType = 0;
+			repeatIndicator = 0;
+			mmsi = 0;
+			navstatus = 15;
+			rot = -128;
+			sog = 102.3f;
+			posAcc = 0;
+			longitude = 181f;
+			latitude = 91f;
+			cog = 360f;
+			hdg = 511;
+			utc = 60;
+			aisVersion = 0;
+			imo = 0;
+			shipType = 0;
+			toBow = 0;
+			toStern = 0;
+			toPort = 0;
+			toStarboard = 0;
+			epfd = 0;
+			etaMonth = 0;
+			etaDay = 0;
+			etaHour = 24;
+			etaMinute = 60;
+			draught = 0f;
+			aidType = 0;
+			offPosition = false;
+			virtualAid = false;
+			partNumber = 0;
+			mothershipMmsi = 0;
+			callSign.setLength(0);
+			shipName.setLength(0);
+			destination.setLength(0);
+			vendorId.setLength(0);
+		}
+
+		/**
+		 * @return true for the message types carrying a position (1, 2, 3, 18, 19, 21), and if the position is available.
+		 */
+		public boolean hasPosition() {
+			boolean positionReport = (messageType >= 1 && messageType <= 3) || messageType == 18 || messageType == 19 || messageType == 21;
+			return positionReport && Math.abs(latitude) <= 90f && Math.abs(longitude) <= 180f;
+		}
+
 		public void setMessageType(int messageType) {
 			this.messageType = messageType;
 		}
@@ -319,6 +471,174 @@ AIS Message type 2:
 			return utc;
 		}
 
+		public void setAisVersion(int aisVersion) {
+			this.aisVersion = aisVersion;
+		}
+
+		public int getAisVersion() {
+			return aisVersion;
+		}
+
+		public void setImo(int imo) {
+			this.imo = imo;
+		}
+
+		public int getImo() {
+			return imo;
+		}
+
+		public String getCallSign() {
+			return callSign.toString();
+		}
+
+		/**
+		 * Ship name for types 5, 19 and 24 (part A), Aid to Navigation name for type 21.
+		 */
+		public String getShipName() {
+			return shipName.toString();
+		}
+
+		public String getDestination() {
+			return destination.toString();
+		}
+
+		public String getVendorId() {
+			return vendorId.toString();
+		}
+
+		public void setShipType(int shipType) {
+			this.shipType = shipType;
+		}
+
+		public int getShipType() {
+			return shipType;
+		}
+
+		public void setToBow(int toBow) {
+			this.toBow = toBow;
+		}
+
+		public int getToBow() {
+			return toBow;
+		}
+
+		public void setToStern(int toStern) {
+			this.toStern = toStern;
+		}
+
+		public int getToStern() {
+			return toStern;
+		}
+
+		public void setToPort(int toPort) {
+			this.toPort = toPort;
+		}
+
+		public int getToPort() {
+			return toPort;
+		}
+
+		public void setToStarboard(int toStarboard) {
+			this.toStarboard = toStarboard;
+		}
+
+		public int getToStarboard() {
+			return toStarboard;
+		}
+
+		/**
+		 * @return Length, in meters
+		 */
+		public int getLength() {
+			return toBow + toStern;
+		}
+
+		/**
+		 * @return Beam, in meters
+		 */
+		public int getBeam() {
+			return toPort + toStarboard;
+		}
+
+		public void setEpfd(int epfd) {
+			this.epfd = epfd;
+		}
+
+		public int getEpfd() {
+			return epfd;
+		}
+
+		public void setEta(int month, int day, int hour, int minute) {
+			this.etaMonth = month;
+			this.etaDay = day;
+			this.etaHour = hour;
+			this.etaMinute = minute;
+		}
+
+		public int getEtaMonth() {
+			return etaMonth;
+		}
+
+		public int getEtaDay() {
+			return etaDay;
+		}
+
+		public int getEtaHour() {
+			return etaHour;
+		}
+
+		public int getEtaMinute() {
+			return etaMinute;
+		}
+
+		public void setDraught(int draught) {
+			this.draught = (draught / 10f);
+		}
+
+		public float getDraught() {
+			return draught;
+		}
+
+		public void setAidType(int aidType) {
+			this.aidType = aidType;
+		}
+
+		public int getAidType() {
+			return aidType;
+		}
+
+		public void setOffPosition(boolean offPosition) {
+			this.offPosition = offPosition;
+		}
+
+		public boolean isOffPosition() {
+			return offPosition;
+		}
+
+		public void setVirtualAid(boolean virtualAid) {
+			this.virtualAid = virtualAid;
+		}
+
+		public boolean isVirtualAid() {
+			return virtualAid;
+		}
+
+		public void setPartNumber(int partNumber) {
+			this.partNumber = partNumber;
+		}
+
+		public int getPartNumber() {
+			return partNumber;
+		}
+
+		public void setMothershipMmsi(int mothershipMmsi) {
+			this.mothershipMmsi = mothershipMmsi;
+		}
+
+		public int getMothershipMmsi() {
+			return mothershipMmsi;
+		}
+
 		public static String decodeStatus(int stat) {
 			String status = "";
 			switch (stat) {
@@ -377,9 +697,33 @@ AIS Message type 2:
 
 		public String toString() {
 			String str = "";
-			str = "Type:" + messageType + ", Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", status:" + decodeStatus(navstatus) + ", rot:" + rot +
-							", Pos:" + latitude + "/" + longitude + " (Acc:" + posAcc + "), COG:" + cog + ", SOG:" + sog + ", HDG:" + hdg;
-
+			switch (messageType) {
+				case 5:
+					str = "Type:" + messageType + ", Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", IMO:" + imo + ", Name:" + shipName + ", CallSign:" + callSign +
+									", Ship type:" + shipType + ", Dim:" + getLength() + "x" + getBeam() + ", Draught:" + draught +
+									", Dest:" + destination + String.format(" (ETA %02d/%02d %02d:%02d)", etaMonth, etaDay, etaHour, etaMinute);
+					break;
+				case 19:
+					str = "Type:" + messageType + ", Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", Name:" + shipName + ", Ship type:" + shipType +
+									", Pos:" + latitude + "/" + longitude + " (Acc:" + posAcc + "), COG:" + cog + ", SOG:" + sog + ", HDG:" + hdg;
+					break;
+				case 21:
+					str = "Type:" + messageType + ", Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", AtoN:" + shipName + " (type " + aidType + (virtualAid ? ", virtual" : "") + ")" +
+									", Pos:" + latitude + "/" + longitude + " (Acc:" + posAcc + ")" + (offPosition ? ", off position" : "");
+					break;
+				case 24:
+					if (partNumber == 0) {
+						str = "Type:" + messageType + "A, Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", Name:" + shipName;
+					} else {
+						str = "Type:" + messageType + "B, Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", CallSign:" + callSign + ", Ship type:" + shipType +
+										", Vendor:" + vendorId + ", Dim:" + getLength() + "x" + getBeam();
+					}
+					break;
+				default:
+					str = "Type:" + messageType + ", Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", status:" + decodeStatus(navstatus) + ", rot:" + rot +
+									", Pos:" + latitude + "/" + longitude + " (Acc:" + posAcc + "), COG:" + cog + ", SOG:" + sog + ", HDG:" + hdg;
+					break;
+			}
 			return str;
 		}
 
@@ -0,0 +1,116 @@
+package nmea.ais;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Grid of the targets positions, to find the ones around a point without looking at all of them.
+ * <br>
+ * The world is cut in cells of <code>cellSize</code> degrees (latitude and longitude). Each cell holds the MMSIs
+ * of the targets it contains. A target only moves from one set to another when it changes cell.
+ * <br>
+ * A query returns the targets of the cells intersecting the requested range,
+ * the caller still has to check the actual distance.
+ */
+public class AISSpatialIndex {
+
+	public final static double DEFAULT_CELL_SIZE = 0.1; // degrees, 6 nm in latitude
+
+	private final double cellSize;
+	private final int nbLngCells;
+	private final Map<Long, Set<Integer>> cells = new ConcurrentHashMap<>();
+	private final Map<Integer, Long> cellOf = new ConcurrentHashMap<>();
+
+	public AISSpatialIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize in degrees
+	 */
+	public AISSpatialIndex(double cellSize) {
+		this.cellSize = cellSize;
+		this.nbLngCells = (int) Math.ceil(360d / cellSize);
+	}
+
+	private int latIndex(double lat) {
+		return (int) Math.floor((lat + 90d) / cellSize);
+	}
+
+	private int lngIndex(double lng) {
+		return Math.floorMod((int) Math.floor((lng + 180d) / cellSize), nbLngCells);
+	}
+
+	private static long key(int latIdx, int lngIdx) {
+		return (((long) latIdx) << 32) | (lngIdx & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param mmsi the target
+	 * @param lat  in degrees
+	 * @param lng  in degrees
+	 */
+	public void update(int mmsi, double lat, double lng) {
+		long newKey = key(latIndex(lat), lngIndex(lng));
+		Long oldKey = cellOf.get(mmsi);
+		if (oldKey != null && oldKey == newKey) {
+			return; // Same cell, nothing to do.
+		}
+		if (oldKey != null) {
+			Set<Integer> oldCell = cells.get(oldKey);
+			if (oldCell != null) {
+				oldCell.remove(mmsi);
+			}
+		}
+		cells.computeIfAbsent(newKey, k -> ConcurrentHashMap.newKeySet()).add(mmsi);
+		cellOf.put(mmsi, newKey);
+	}
+
+	public void remove(int mmsi) {
+		Long oldKey = cellOf.remove(mmsi);
+		if (oldKey != null) {
+			Set<Integer> oldCell = cells.get(oldKey);
+			if (oldCell != null) {
+				oldCell.remove(mmsi);
+			}
+		}
+	}
+
+	public int size() {
+		return cellOf.size();
+	}
+
+	/**
+	 * Visits the targets in the cells intersecting the range around a point.
+	 *
+	 * @param lat      in degrees
+	 * @param lng      in degrees
+	 * @param rangeNm  in nautical miles
+	 * @param consumer receives the MMSIs
+	 */
+	public void query(double lat, double lng, double rangeNm, IntConsumer consumer) {
+		double latSpan = rangeNm / 60d;
+		double cosLat = Math.max(0.01, Math.cos(Math.toRadians(Math.min(89.9, Math.abs(lat) + latSpan))));
+		double lngSpan = rangeNm / (60d * cosLat);
+		int fromLat = latIndex(Math.max(-90d, lat - latSpan));
+		int toLat = latIndex(Math.min(90d, lat + latSpan));
+		int fromLng = (int) Math.floor((lng - lngSpan + 180d) / cellSize);
+		int toLng = (int) Math.floor((lng + lngSpan + 180d) / cellSize);
+		if (toLng - fromLng >= nbLngCells) { // All around
+			fromLng = 0;
+			toLng = nbLngCells - 1;
+		}
+		for (int i = fromLat; i <= toLat; i++) {
+			for (int j = fromLng; j <= toLng; j++) {
+				Set<Integer> cell = cells.get(key(i, Math.floorMod(j, nbLngCells)));
+				if (cell != null) {
+					for (Integer mmsi : cell) {
+						consumer.accept(mmsi);
+					}
+				}
+			}
+		}
+	}
+}
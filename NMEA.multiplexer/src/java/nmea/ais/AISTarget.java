@@ -0,0 +1,256 @@
+package nmea.ais;
+
+/**
+ * What is known about one AIS target, merged from its position reports (types 1, 2, 3, 18, 19, 21)
+ * and its static data (types 5, 19, 21, 24).
+ * <br>
+ * Updated in place, Strings are only re-created when the static data actually change.
+ * Use {@link #copy()} to get a consistent snapshot from another thread.
+ */
+public class AISTarget {
+
+	public enum TargetClass {
+		A, B, ATON
+	}
+
+	private int mmsi;
+	private TargetClass targetClass = TargetClass.A;
+	// Dynamic
+	private boolean positionAvailable = false;
+	private float latitude;
+	private float longitude;
+	private float sog;
+	private float cog;
+	private int hdg = 511;
+	private int rot = -128;
+	private int navStatus = 15;
+	private long positionTime = 0L; // epoch, ms
+	// Static
+	private String shipName = null;
+	private String callSign = null;
+	private String destination = null;
+	private int imo = 0;
+	private int shipType = 0;
+	private int length = 0;
+	private int beam = 0;
+	private float draught = 0f;
+
+	private long lastSeen = 0L;  // epoch, ms
+	private long version = 0L;   // Table version of the last update
+
+	public AISTarget() {
+	}
+
+	public AISTarget(int mmsi) {
+		this.mmsi = mmsi;
+	}
+
+	/**
+	 * Merge a decoded message into this target.
+	 *
+	 * @param rec     the decoded message
+	 * @param version the table version for this update
+	 */
+	public synchronized void update(AISParser.AISRecord rec, long version) {
+		this.mmsi = rec.getMmsi();
+		this.lastSeen = rec.getRecordTimeStamp();
+		this.version = version;
+		int type = rec.getMessageType();
+		switch (type) {
+			case 1:
+			case 2:
+			case 3:
+				targetClass = TargetClass.A;
+				navStatus = rec.getNavstatus();
+				rot = rec.getRot();
+				setPosition(rec);
+				break;
+			case 5:
+				targetClass = TargetClass.A;
+				imo = rec.getImo();
+				shipType = rec.getShipType();
+				callSign = merge(callSign, rec.callSign);
+				shipName = merge(shipName, rec.shipName);
+				destination = merge(destination, rec.destination);
+				setDimensions(rec);
+				draught = rec.getDraught();
+				break;
+			case 18:
+				targetClass = TargetClass.B;
+				setPosition(rec);
+				break;
+			case 19:
+				targetClass = TargetClass.B;
+				setPosition(rec);
+				shipName = merge(shipName, rec.shipName);
+				shipType = rec.getShipType();
+				setDimensions(rec);
+				break;
+			case 21:
+				targetClass = TargetClass.ATON;
+				setPosition(rec);
+				shipName = merge(shipName, rec.shipName);
+				setDimensions(rec);
+				break;
+			case 24:
+				if (rec.getPartNumber() == 0) {
+					shipName = merge(shipName, rec.shipName);
+				} else {
+					callSign = merge(callSign, rec.callSign);
+					shipType = rec.getShipType();
+					if (rec.getMothershipMmsi() == 0) {
+						setDimensions(rec);
+					}
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void setPosition(AISParser.AISRecord rec) {
+		positionAvailable = rec.hasPosition();
+		if (positionAvailable) {
+			latitude = rec.getLatitude();
+			longitude = rec.getLongitude();
+			positionTime = rec.getRecordTimeStamp();
+		}
+		sog = rec.getSog();
+		cog = rec.getCog();
+		hdg = rec.getHdg();
+	}
+
+	private void setDimensions(AISParser.AISRecord rec) {
+		if (rec.getLength() > 0) {
+			length = rec.getLength();
+			beam = rec.getBeam();
+		}
+	}
+
+	private static String merge(String current, StringBuilder received) {
+		if (received.length() == 0) {
+			return current;
+		}
+		if (current != null && current.contentEquals(received)) {
+			return current;
+		}
+		return received.toString();
+	}
+
+	/**
+	 * @return a copy, consistent even if this target is being updated.
+	 */
+	public synchronized AISTarget copy() {
+		AISTarget copy = new AISTarget(mmsi);
+		copy.targetClass = targetClass;
+		copy.positionAvailable = positionAvailable;
+		copy.latitude = latitude;
+		copy.longitude = longitude;
+		copy.sog = sog;
+		copy.cog = cog;
+		copy.hdg = hdg;
+		copy.rot = rot;
+		copy.navStatus = navStatus;
+		copy.positionTime = positionTime;
+		copy.shipName = shipName;
+		copy.callSign = callSign;
+		copy.destination = destination;
+		copy.imo = imo;
+		copy.shipType = shipType;
+		copy.length = length;
+		copy.beam = beam;
+		copy.draught = draught;
+		copy.lastSeen = lastSeen;
+		copy.version = version;
+		return copy;
+	}
+
+	public int getMmsi() {
+		return mmsi;
+	}
+
+	public TargetClass getTargetClass() {
+		return targetClass;
+	}
+
+	public boolean isPositionAvailable() {
+		return positionAvailable;
+	}
+
+	public float getLatitude() {
+		return latitude;
+	}
+
+	public float getLongitude() {
+		return longitude;
+	}
+
+	public float getSog() {
+		return sog;
+	}
+
+	public float getCog() {
+		return cog;
+	}
+
+	public int getHdg() {
+		return hdg;
+	}
+
+	public int getRot() {
+		return rot;
+	}
+
+	public int getNavStatus() {
+		return navStatus;
+	}
+
+	public long getPositionTime() {
+		return positionTime;
+	}
+
+	public String getShipName() {
+		return shipName;
+	}
+
+	public String getCallSign() {
+		return callSign;
+	}
+
+	public String getDestination() {
+		return destination;
+	}
+
+	public int getImo() {
+		return imo;
+	}
+
+	public int getShipType() {
+		return shipType;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getBeam() {
+		return beam;
+	}
+
+	public float getDraught() {
+		return draught;
+	}
+
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public String toString() {
+		return String.format("%d (%s) %s, %s, SOG:%.1f, COG:%.1f", mmsi, targetClass, (shipName != null ? shipName : "-"),
+						(positionAvailable ? String.format("%.5f/%.5f", latitude, longitude) : "no position"), sog, cog);
+	}
+}
@@ -0,0 +1,243 @@
+package nmea.ais;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live AIS targets, by MMSI.
+ * <br>
+ * Fed with AIVDM sentences (see {@link #feed(String)}), fragments are re-assembled, and the decoded messages
+ * are merged into the targets - static and dynamic data.
+ * Targets not heard for more than the time to live are evicted.
+ * <br>
+ * Every update bumps the version of the table, and the updated target is stamped with it.
+ * A client can then ask for what changed since the last version it saw, see {@link #getDelta(long)}.
+ * <br>
+ * Fed from one thread (the multiplexer), read from any.
+ */
+public class AISTargetTable {
+
+	public final static long DEFAULT_TTL = 600_000L; // 10 minutes
+	private final static long EVICTION_INTERVAL = 1_000L;
+	private final static int REMOVAL_LOG_SIZE = 4_096;
+
+	private final ConcurrentHashMap<Integer, AISTarget> targets = new ConcurrentHashMap<>(4_096);
+	private final AtomicLong version = new AtomicLong(0L);
+	private final AISFragmentAssembler assembler = new AISFragmentAssembler();
+	private final AISParser.AISRecord aisRecord = new AISParser.AISRecord();
+	private final long ttl;
+	private long lastEviction = 0L;
+
+	// Evicted targets, to be reported in the deltas. Ring of primitives.
+	private final long[] removedVersions = new long[REMOVAL_LOG_SIZE];
+	private final int[] removedMmsis = new int[REMOVAL_LOG_SIZE];
+	private int removedHead = 0;
+	private int removedSize = 0;
+	private long removalLogFloor = 0L; // Removals up to this version are no longer in the log
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Notified in the thread feeding the table.
+	 */
+	public interface Listener {
+		/**
+		 * @param target the live target, just updated. Do not keep it, use {@link AISTarget#copy()} if needed.
+		 */
+		void onUpdate(AISTarget target);
+
+		void onRemove(int mmsi);
+	}
+
+	public AISTargetTable() {
+		this(Long.parseLong(System.getProperty("ais.target.ttl", String.valueOf(DEFAULT_TTL))));
+	}
+
+	/**
+	 * @param ttl time to live of a target without news, in ms.
+	 */
+	public AISTargetTable(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * What changed since a given version.
+	 * If <code>full</code> is true, <code>targets</code> contains all the targets, and <code>removed</code> is empty.
+	 * Otherwise, apply <code>removed</code> first, then <code>targets</code> (a target may have been evicted, and heard again).
+	 */
+	public static class Delta {
+		long version;
+		boolean full;
+		List<AISTarget> targets;
+		List<Integer> removed;
+
+		public long getVersion() {
+			return version;
+		}
+
+		public boolean isFull() {
+			return full;
+		}
+
+		public List<AISTarget> getTargets() {
+			return targets;
+		}
+
+		public List<Integer> getRemoved() {
+			return removed;
+		}
+	}
+
+	/**
+	 * @param sentence an AIVDM sentence
+	 * @return the updated target, or null if nothing was decoded (fragment, invalid sentence, unmanaged type)
+	 */
+	public synchronized AISTarget feed(String sentence) {
+		long now = System.currentTimeMillis();
+		AISTarget target = null;
+		if (assembler.feed(sentence, now, aisRecord)) {
+			target = update(aisRecord);
+		}
+		if (now - lastEviction > EVICTION_INTERVAL) {
+			evict(now);
+		}
+		return target;
+	}
+
+	/**
+	 * @param rec a decoded message
+	 * @return the updated target, or null if the MMSI is invalid
+	 */
+	public AISTarget update(AISParser.AISRecord rec) {
+		int mmsi = rec.getMmsi();
+		if (mmsi <= 0) {
+			return null;
+		}
+		AISTarget target = targets.get(mmsi);
+		if (target == null) {
+			AISTarget newTarget = new AISTarget(mmsi);
+			target = targets.putIfAbsent(mmsi, newTarget);
+			if (target == null) {
+				target = newTarget;
+			}
+		}
+		target.update(rec, version.incrementAndGet());
+		for (Listener listener : listeners) {
+			try {
+				listener.onUpdate(target);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Removes the targets not heard for more than the time to live.
+	 *
+	 * @param now epoch, in ms
+	 */
+	public synchronized void evict(long now) {
+		lastEviction = now;
+		Iterator<AISTarget> iterator = targets.values().iterator();
+		while (iterator.hasNext()) {
+			AISTarget target = iterator.next();
+			if (now - target.getLastSeen() > ttl) {
+				iterator.remove();
+				logRemoval(target.getMmsi(), version.incrementAndGet());
+				for (Listener listener : listeners) {
+					try {
+						listener.onRemove(target.getMmsi());
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	private void logRemoval(int mmsi, long removalVersion) {
+		int idx;
+		if (removedSize == REMOVAL_LOG_SIZE) {
+			removalLogFloor = removedVersions[removedHead];
+			idx = removedHead;
+			removedHead = (removedHead + 1) % REMOVAL_LOG_SIZE;
+		} else {
+			idx = (removedHead + removedSize) % REMOVAL_LOG_SIZE;
+			removedSize++;
+		}
+		removedVersions[idx] = removalVersion;
+		removedMmsis[idx] = mmsi;
+	}
+
+	public void addListener(Listener listener) {
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	public long getVersion() {
+		return version.get();
+	}
+
+	public int size() {
+		return targets.size();
+	}
+
+	public long getDroppedFragments() {
+		return assembler.getDropped();
+	}
+
+	/**
+	 * @param mmsi the target
+	 * @return a copy of the target, null if not in the table
+	 */
+	public AISTarget getTarget(int mmsi) {
+		AISTarget target = targets.get(mmsi);
+		return target != null ? target.copy() : null;
+	}
+
+	/**
+	 * @return copies of all the targets
+	 */
+	public List<AISTarget> getTargets() {
+		List<AISTarget> list = new ArrayList<>(targets.size());
+		targets.values().forEach(target -> list.add(target.copy()));
+		return list;
+	}
+
+	/**
+	 * @param since the last version the client knows about. 0 (or less) for everything.
+	 * @return the targets updated after this version, and the ones removed.
+	 */
+	public synchronized Delta getDelta(long since) {
+		evict(System.currentTimeMillis());
+		Delta delta = new Delta();
+		delta.version = version.get(); // Updates happening during the scan will be sent again next time.
+		delta.full = since <= 0 || since < removalLogFloor || since > delta.version;
+		delta.targets = new ArrayList<>();
+		delta.removed = new ArrayList<>();
+		for (AISTarget target : targets.values()) {
+			if (delta.full || target.getVersion() > since) {
+				delta.targets.add(target.copy());
+			}
+		}
+		if (!delta.full) {
+			for (int i = 0; i < removedSize; i++) {
+				int idx = (removedHead + i) % REMOVAL_LOG_SIZE;
+				if (removedVersions[idx] > since) {
+					delta.removed.add(removedMmsis[idx]);
+				}
+			}
+		}
+		return delta;
+	}
+}
@@ -0,0 +1,357 @@
+package nmea.ais;
+
+import util.greatcircle.GreatCircleUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Closest Point of Approach (CPA) and Time to CPA (TCPA) of the AIS targets, relative to the own ship.
+ * <br>
+ * Listens to an {@link AISTargetTable}. A target is re-evaluated when it reports a new position,
+ * all the targets in range are re-evaluated when the own ship vector changes.
+ * Targets in range are found with an {@link AISSpatialIndex}.
+ * <br>
+ * Targets are placed relative to the own ship with {@link GreatCircleUtil} (great circle distance and route),
+ * then extrapolated to the time of the evaluation, using their COG and SOG.
+ * <br>
+ * The engine only works on copies of the targets (see {@link AISTarget#copy()}), the ones of the table are updated in place
+ * by the thread feeding it.
+ * <br>
+ * A target leaves the evaluation when its last position report carries no position, or when its position is older
+ * than the position max age (static data reports keep it in the table, not here).
+ * <br>
+ * When a target enters or leaves the alarm zone (CPA and TCPA below their thresholds),
+ * the alarm consumer is notified.
+ */
+public class CPAEngine implements AISTargetTable.Listener {
+
+	public final static double DEFAULT_RANGE = 12d;          // nm
+	public final static double DEFAULT_CPA_THRESHOLD = 0.5d; // nm
+	public final static double DEFAULT_TCPA_THRESHOLD = 20d; // minutes
+	public final static long DEFAULT_POSITION_MAX_AGE = 360_000L; // ms. Class A at anchor, and class B, report every 3 minutes.
+
+	// Own ship changes below those ones do not trigger a re-evaluation of all the targets
+	private final static double OWN_POSITION_EPSILON = 0.05d; // nm
+	private final static double OWN_COG_EPSILON = 2d;         // degrees
+	private final static double OWN_SOG_EPSILON = 0.2d;       // knots
+
+	/**
+	 * Collision risk for one target. Re-computed in place.
+	 */
+	public static class Risk {
+		private int mmsi;
+		private String name;
+		private double range;   // nm
+		private double bearing; // degrees true
+		private double cpa;     // nm
+		private double tcpa;    // minutes, negative when the CPA is behind
+		private boolean alarm;
+		private long computedAt;
+
+		Risk(int mmsi) {
+			this.mmsi = mmsi;
+		}
+
+		public int getMmsi() {
+			return mmsi;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public double getRange() {
+			return range;
+		}
+
+		public double getBearing() {
+			return bearing;
+		}
+
+		public double getCpa() {
+			return cpa;
+		}
+
+		public double getTcpa() {
+			return tcpa;
+		}
+
+		public boolean isAlarm() {
+			return alarm;
+		}
+
+		public long getComputedAt() {
+			return computedAt;
+		}
+
+		synchronized Risk copy() {
+			Risk copy = new Risk(mmsi);
+			copy.name = name;
+			copy.range = range;
+			copy.bearing = bearing;
+			copy.cpa = cpa;
+			copy.tcpa = tcpa;
+			copy.alarm = alarm;
+			copy.computedAt = computedAt;
+			return copy;
+		}
+	}
+
+	private final AISTargetTable table;
+	private final AISSpatialIndex index = new AISSpatialIndex();
+	private final Map<Integer, Risk> risks = new ConcurrentHashMap<>();
+	private final Map<Integer, AISTarget> live = new ConcurrentHashMap<>(); // Targets with a position, copies of the ones of the table
+
+	private double range = DEFAULT_RANGE;
+	private double cpaThreshold = DEFAULT_CPA_THRESHOLD;
+	private double tcpaThreshold = DEFAULT_TCPA_THRESHOLD;
+	private long positionMaxAge = DEFAULT_POSITION_MAX_AGE;
+
+	private volatile boolean ownShipAvailable = false;
+	private double ownLat;
+	private double ownLng;
+	private double ownCog;
+	private double ownSog;
+
+	private final double[] relative = new double[2]; // Target seen from the own ship, north and east, in nm
+
+	private Consumer<Risk> alarmConsumer = null;
+	private long evaluations = 0L;
+
+	public CPAEngine(AISTargetTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Start listening to the table. Targets already in the table are indexed.
+	 */
+	public void start() {
+		table.getTargets().forEach(this::track); // Copies, like the ones of onUpdate
+		table.addListener(this);
+	}
+
+	public void stop() {
+		table.removeListener(this);
+		risks.clear();
+	}
+
+	/**
+	 * @param alarmConsumer notified when a target enters or leaves the alarm zone, see {@link Risk#isAlarm()}.
+	 */
+	public void setAlarmConsumer(Consumer<Risk> alarmConsumer) {
+		this.alarmConsumer = alarmConsumer;
+	}
+
+	public double getRange() {
+		return range;
+	}
+
+	public void setRange(double range) {
+		this.range = range;
+	}
+
+	public double getCpaThreshold() {
+		return cpaThreshold;
+	}
+
+	public void setCpaThreshold(double cpaThreshold) {
+		this.cpaThreshold = cpaThreshold;
+	}
+
+	public double getTcpaThreshold() {
+		return tcpaThreshold;
+	}
+
+	public void setTcpaThreshold(double tcpaThreshold) {
+		this.tcpaThreshold = tcpaThreshold;
+	}
+
+	public long getPositionMaxAge() {
+		return positionMaxAge;
+	}
+
+	/**
+	 * @param positionMaxAge in ms, targets whose position is older than that are not evaluated anymore.
+	 */
+	public void setPositionMaxAge(long positionMaxAge) {
+		this.positionMaxAge = positionMaxAge;
+	}
+
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	@Override
+	public void onUpdate(AISTarget target) {
+		AISTarget snapshot = target.copy();
+		if (!snapshot.isPositionAvailable()) { // Its last position report had none, the previous position is not valid anymore.
+			forget(snapshot.getMmsi());
+		} else if (snapshot.getPositionTime() == snapshot.getLastSeen()) { // Not for the static data reports
+			track(snapshot);
+		}
+	}
+
+	private void track(AISTarget target) {
+		if (!target.isPositionAvailable()) {
+			return;
+		}
+		live.put(target.getMmsi(), target);
+		index.update(target.getMmsi(), target.getLatitude(), target.getLongitude());
+		if (ownShipAvailable) {
+			evaluate(target, System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public void onRemove(int mmsi) {
+		forget(mmsi);
+	}
+
+	private void forget(int mmsi) {
+		live.remove(mmsi);
+		index.remove(mmsi);
+		Risk risk = risks.remove(mmsi);
+		if (risk != null && risk.alarm) {
+			risk.alarm = false;
+			notifyAlarm(risk);
+		}
+	}
+
+	/**
+	 * Own ship vector. All the targets in range are re-evaluated if it changed significantly.
+	 *
+	 * @param lat in degrees
+	 * @param lng in degrees
+	 * @param cog in degrees true
+	 * @param sog in knots
+	 */
+	public synchronized void setOwnShip(double lat, double lng, double cog, double sog) {
+		if (ownShipAvailable) {
+			double dCog = Math.abs(cog - ownCog);
+			if (dCog > 180d) {
+				dCog = 360d - dCog;
+			}
+			if (GreatCircleUtil.distanceInNM(ownLat, ownLng, lat, lng) < OWN_POSITION_EPSILON &&
+							dCog < OWN_COG_EPSILON &&
+							Math.abs(sog - ownSog) < OWN_SOG_EPSILON) {
+				return;
+			}
+		}
+		ownLat = lat;
+		ownLng = lng;
+		ownCog = cog;
+		ownSog = sog;
+		ownShipAvailable = true;
+		evaluateAll();
+	}
+
+	private void evaluateAll() {
+		long now = System.currentTimeMillis();
+		index.query(ownLat, ownLng, range, mmsi -> {
+			AISTarget target = live.get(mmsi);
+			if (target != null) {
+				evaluate(target, now);
+			}
+		});
+		// Targets gone out of range, without a position report.
+		for (Risk risk : risks.values()) {
+			if (risk.computedAt != now) {
+				AISTarget target = live.get(risk.mmsi);
+				if (target != null) {
+					evaluate(target, now);
+				} else {
+					forget(risk.mmsi);
+				}
+			}
+		}
+		// Out of range, and not heard of for a while
+		for (AISTarget target : live.values()) {
+			if (now - target.getPositionTime() > positionMaxAge) {
+				forget(target.getMmsi());
+			}
+		}
+	}
+
+	private synchronized void evaluate(AISTarget target, long now) {
+		int mmsi = target.getMmsi();
+		if (now - target.getPositionTime() > positionMaxAge) { // Too old to be extrapolated
+			forget(mmsi);
+			return;
+		}
+		evaluations++;
+		// Target position, extrapolated to now
+		double hours = Math.max(0L, now - target.getPositionTime()) / 3_600_000d;
+		double tCog = Math.toRadians(target.getCog() >= 360f ? 0f : target.getCog());
+		double tSog = target.getSog() >= 102.3f ? 0d : target.getSog();
+		double tvN = tSog * Math.cos(tCog);
+		double tvE = tSog * Math.sin(tCog);
+		GreatCircleUtil.displacementInNM(ownLat, ownLng, target.getLatitude(), target.getLongitude(), relative);
+		double pN = relative[0] + (tvN * hours);
+		double pE = relative[1] + (tvE * hours);
+		double dist = Math.sqrt((pN * pN) + (pE * pE));
+		if (dist > range) {
+			Risk gone = risks.remove(mmsi);
+			if (gone != null && gone.alarm) {
+				gone.alarm = false;
+				notifyAlarm(gone);
+			}
+			return;
+		}
+		// Relative velocity
+		double oCog = Math.toRadians(ownCog);
+		double vN = tvN - (ownSog * Math.cos(oCog));
+		double vE = tvE - (ownSog * Math.sin(oCog));
+		double v2 = (vN * vN) + (vE * vE);
+		double tcpa = v2 < 1E-9 ? 0d : -((pN * vN) + (pE * vE)) / v2; // hours
+		double cpaN = pN + (vN * tcpa);
+		double cpaE = pE + (vE * tcpa);
+		double cpa = tcpa < 0 ? dist : Math.sqrt((cpaN * cpaN) + (cpaE * cpaE));
+
+		Risk risk = risks.get(mmsi);
+		if (risk == null) {
+			risk = new Risk(mmsi);
+			risks.put(mmsi, risk);
+		}
+		boolean wasAlarm = risk.alarm;
+		synchronized (risk) {
+			risk.name = target.getShipName();
+			risk.range = dist;
+			double bearing = Math.toDegrees(Math.atan2(pE, pN));
+			risk.bearing = bearing < 0 ? bearing + 360d : bearing;
+			risk.cpa = cpa;
+			risk.tcpa = tcpa * 60d;
+			risk.alarm = tcpa >= 0 && cpa <= cpaThreshold && risk.tcpa <= tcpaThreshold;
+			risk.computedAt = now;
+		}
+		if (risk.alarm != wasAlarm) {
+			notifyAlarm(risk);
+		}
+	}
+
+	private void notifyAlarm(Risk risk) {
+		if (alarmConsumer != null) {
+			try {
+				alarmConsumer.accept(risk.copy());
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return the targets in range, most dangerous first (alarms, then by TCPA, then by range).
+	 */
+	public List<Risk> getRisks() {
+		List<Risk> list = new ArrayList<>(risks.size());
+		risks.values().forEach(risk -> list.add(risk.copy()));
+		list.sort(Comparator.comparing((Risk r) -> !r.alarm)
+						.thenComparingDouble(r -> r.tcpa < 0 ? Double.MAX_VALUE : r.tcpa)
+						.thenComparingDouble(r -> r.range));
+		return list;
+	}
+}
@@ -0,0 +1,713 @@
+package nmea.analyzer;
+
+import nmea.parser.ApparentWind;
+import nmea.parser.RMC;
+import nmea.parser.StringParsers;
+import nmea.parser.Wind;
+import util.greatcircle.GreatCircleUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Offline analysis of a log (as written by a {@link nmea.forwarders.DataFileWriter}), without replaying it through a multiplexer.
+ * <br>
+ * The file is split in chunks (<code>--chunk</code> MB), starting and ending on a line boundary. Each chunk is memory-mapped and parsed
+ * by a {@link RecursiveTask} of a {@link ForkJoinPool} (<code>--threads</code>, all the cores by default), with the {@link StringParsers}.
+ * The results of the chunks are merged in the order of the file. No more than 2 chunks per thread are pending, so the memory does not
+ * depend on the size of the log.
+ * <br>
+ * Produces:
+ * <ul>
+ *   <li>The number of sentences per talker and sentence id, invalid checksums, non NMEA lines</li>
+ *   <li>Max and average (of the samples) SOG, BSP, AWS, TWS, depth, water temperature</li>
+ *   <li>The distance run (legs between RMC positions, faster than <code>--max.speed</code> knots are considered GPS glitches,
+ *   the position is skipped, the next leg starts from the last good one)</li>
+ *   <li>Optionally, the data aligned on a time grid of <code>--interval</code> ms (time comes from the RMC sentences),
+ *   as CSV (<code>--csv</code>), or as one file per column (<code>--columns</code>, a directory).
+ *   Each row has the last known values at the end of the interval.
+ *   Columns are raw big-endian 64 bit values, <code>time.i64</code> (epoch in ms) and <code>lat.f64</code>, <code>sog.f64</code>, etc,
+ *   like <code>numpy.fromfile('sog.f64', dtype='&gt;f8')</code>. NaN when not known yet.</li>
+ * </ul>
+ * <pre>
+ * java -cp NMEA.multiplexer-1.0-all.jar nmea.analyzer.LogAnalyzer [--threads 4] [--chunk 32] [--interval 1000] [--max.speed 50] [--csv out.csv] [--columns out.dir] log.nmea
+ * </pre>
+ */
+public class LogAnalyzer {
+
+	public final static String[] COLUMNS = { "lat", "lng", "sog", "cog", "bsp", "hdg", "aws", "awa", "tws", "twa", "depth", "wtemp" };
+	private final static int LAT = 0, LNG = 1, SOG = 2, COG = 3, BSP = 4, HDG = 5, AWS = 6, AWA = 7, TWS = 8, TWA = 9, DEPTH = 10, WTEMP = 11;
+
+	private final static int MAX_LINE = 4_096; // A line can go this far beyond the end of its chunk
+
+	// The sentences with data to use, by their 3 bytes
+	private final static Map<Integer, String> PARSED = new HashMap<>();
+	static {
+		for (String id : new String[] { "RMC", "VHW", "HDM", "HDG", "MWV", "VWR", "DBT", "DPT", "MTW" }) {
+			PARSED.put((id.charAt(0) << 16) | (id.charAt(1) << 8) | id.charAt(2), id);
+		}
+	}
+
+	private final File log;
+	private final int threads;
+	private final long chunkSize;
+	private final long interval;
+	private final double maxSpeed;
+
+	public LogAnalyzer(File log, int threads, long chunkSize, long interval, double maxSpeed) {
+		if (chunkSize <= 0 || chunkSize > Integer.MAX_VALUE - MAX_LINE) { // Mapped in one buffer
+			throw new RuntimeException(String.format("Invalid chunk size %d", chunkSize));
+		}
+		if (interval <= 0) {
+			throw new RuntimeException(String.format("Invalid interval %d", interval));
+		}
+		this.log = log;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+		this.interval = interval;
+		this.maxSpeed = maxSpeed;
+	}
+
+	/**
+	 * Count, sum and max of one value.
+	 */
+	public static class Accumulator {
+		private long count = 0L;
+		private double sum = 0d;
+		private double max = -Double.MAX_VALUE;
+
+		void add(double value) {
+			count++;
+			sum += value;
+			max = Math.max(max, value);
+		}
+
+		void merge(Accumulator other) {
+			count += other.count;
+			sum += other.sum;
+			max = Math.max(max, other.max);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getAverage() {
+			return count == 0 ? Double.NaN : sum / count;
+		}
+
+		public double getMax() {
+			return count == 0 ? Double.NaN : max;
+		}
+	}
+
+	/**
+	 * The last values of a time interval.
+	 */
+	static class Row {
+		final long time;
+		final double[] values = new double[COLUMNS.length];
+
+		Row(long time) {
+			this.time = time;
+			Arrays.fill(values, Double.NaN);
+		}
+
+		/**
+		 * The known values of <code>later</code> replace the ones of this row.
+		 */
+		void override(Row later) {
+			for (int i = 0; i < values.length; i++) {
+				if (!Double.isNaN(later.values[i])) {
+					values[i] = later.values[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * What a chunk (or the whole log, once merged) contains.
+	 */
+	public static class Result {
+		private long lines = 0L;
+		private long invalid = 0L; // Bad checksum
+		private long notNMEA = 0L;
+		private final Map<Long, long[]> counts = new HashMap<>(); // By talker and sentence id, as 5 bytes
+		private final Accumulator[] accumulators = new Accumulator[COLUMNS.length];
+		private double distance = 0d; // nm
+		private long glitches = 0L;
+		private long firstTime = -1L, lastTime = -1L;
+		private double[] firstPos = null, lastPos = null; // lat, lng, time. The ends of the good legs.
+		private double[] rejected = null;                  // The last position skipped as a glitch, if it is the last one seen
+		// Values before the first time of the chunk, they belong to the last interval of the previous chunk.
+		private Row head = new Row(-1L);
+		private List<Row> rows = new ArrayList<>();
+
+		Result() {
+			for (int i = 0; i < accumulators.length; i++) {
+				accumulators[i] = new Accumulator();
+			}
+		}
+
+		public long getLines() {
+			return lines;
+		}
+
+		public long getInvalid() {
+			return invalid;
+		}
+
+		public long getNotNMEA() {
+			return notNMEA;
+		}
+
+		/**
+		 * @return the number of sentences, by talker and sentence id, like <code>GPRMC</code>
+		 */
+		public Map<String, Long> getSentences() {
+			Map<String, Long> sentences = new HashMap<>();
+			counts.forEach((key, nb) -> {
+				byte[] id = new byte[5];
+				for (int i = 0; i < id.length; i++) {
+					id[i] = (byte) (key >> (8 * (4 - i)));
+				}
+				sentences.put(new String(id, StandardCharsets.ISO_8859_1), nb[0]);
+			});
+			return sentences;
+		}
+
+		public Accumulator getAccumulator(String column) {
+			return accumulators[Arrays.asList(COLUMNS).indexOf(column)];
+		}
+
+		public double getDistance() {
+			return distance;
+		}
+
+		public long getGlitches() {
+			return glitches;
+		}
+
+		public long getFirstTime() {
+			return firstTime;
+		}
+
+		public long getLastTime() {
+			return lastTime;
+		}
+	}
+
+	/**
+	 * Parses one chunk of the file, the lines starting in [start, end[.
+	 */
+	private class ChunkTask extends RecursiveTask<Result> {
+		private static final long serialVersionUID = 1L;
+
+		private final long start;
+		private final long end;
+		private final long fileLength;
+
+		ChunkTask(long start, long end, long fileLength) {
+			this.start = start;
+			this.end = end;
+			this.fileLength = fileLength;
+		}
+
+		@Override
+		protected Result compute() {
+			Result result = new Result();
+			long mapFrom = Math.max(0L, start - 1); // To know if start is the beginning of a line
+			long mapTo = Math.min(fileLength, end + MAX_LINE);
+			try (RandomAccessFile raf = new RandomAccessFile(log, "r");
+			     FileChannel channel = raf.getChannel()) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapFrom, mapTo - mapFrom);
+				int limit = buffer.limit();
+				int pos = (int) (start - mapFrom);
+				if (start > 0 && buffer.get(pos - 1) != '\n') { // Belongs to the previous chunk
+					while (pos < limit && buffer.get(pos) != '\n') {
+						pos++;
+					}
+					pos++;
+				}
+				int chunkEnd = (int) (end - mapFrom);
+				byte[] line = new byte[MAX_LINE];
+				Row current = result.head;
+				while (pos < chunkEnd && pos < limit) {
+					int length = 0;
+					while (pos < limit && buffer.get(pos) != '\n') {
+						if (length < MAX_LINE) {
+							line[length++] = buffer.get(pos);
+						}
+						pos++;
+					}
+					pos++; // '\n'
+					int from = 0; // Some logs have "\n\r" between the sentences
+					while (from < length && line[from] <= ' ') {
+						from++;
+					}
+					while (length > from && line[length - 1] <= ' ') {
+						length--;
+					}
+					if (length == from) {
+						continue;
+					}
+					result.lines++;
+					current = parse(line, from, length, result, current);
+				}
+			} catch (IOException ioe) {
+				throw new RuntimeException(ioe);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The checksum is verified, and the sentences counted, on the bytes.
+	 * Only the sentences with some data to use become a String, for the {@link StringParsers}.
+	 *
+	 * @return the row the next values go to
+	 */
+	private Row parse(byte[] line, int from, int to, Result result, Row current) {
+		if (to - from < 7 || (line[from] != '$' && line[from] != '!')) {
+			result.notNMEA++;
+			return current;
+		}
+		int star = from + 1;
+		int checksum = 0;
+		while (star < to && line[star] != '*') {
+			checksum ^= line[star++];
+		}
+		if (star + 3 != to || checksum != ((hex(line[star + 1]) << 4) | hex(line[star + 2]))) {
+			result.invalid++;
+			return current;
+		}
+		long key = 0L; // Talker and sentence id
+		for (int i = from + 1; i < from + 6; i++) {
+			key = (key << 8) | (line[i] & 0xFF);
+		}
+		long[] nb = result.counts.get(key);
+		if (nb == null) {
+			nb = new long[1];
+			result.counts.put(key, nb);
+		}
+		nb[0]++;
+		String id = PARSED.get((int) (key & 0xFFFFFF));
+		if (id == null) {
+			return current;
+		}
+		String sentence = new String(line, from, to - from, StandardCharsets.ISO_8859_1);
+		try {
+			switch (id) {
+				case "RMC":
+					RMC rmc = StringParsers.parseRMC(sentence);
+					if (rmc != null && rmc.getRmcDate() != null) {
+						long time = rmc.getRmcDate().getTime();
+						long bucket = time - (time % interval);
+						if (current.time != bucket) {
+							current = new Row(bucket);
+							result.rows.add(current);
+						}
+						if (result.firstTime < 0) {
+							result.firstTime = time;
+						}
+						result.lastTime = time;
+						if (rmc.getGp() != null) {
+							double[] pos = { rmc.getGp().lat, rmc.getGp().lng, time };
+							addPosition(result, pos);
+							set(result, current, LAT, pos[0]);
+							set(result, current, LNG, pos[1]);
+						}
+						set(result, current, SOG, rmc.getSog());
+						set(result, current, COG, rmc.getCog());
+					}
+					break;
+				case "VHW":
+					double[] vhw = StringParsers.parseVHW(sentence, -Double.MAX_VALUE);
+					if (vhw != null) {
+						if (vhw[StringParsers.BSP_in_VHW] != -Double.MAX_VALUE) {
+							set(result, current, BSP, vhw[StringParsers.BSP_in_VHW]);
+						}
+						if (vhw[StringParsers.HDM_in_VHW] != 0d) {
+							set(result, current, HDG, vhw[StringParsers.HDM_in_VHW]);
+						}
+					}
+					break;
+				case "HDM":
+					set(result, current, HDG, StringParsers.parseHDM(sentence));
+					break;
+				case "HDG":
+					set(result, current, HDG, StringParsers.parseHDG(sentence)[StringParsers.HDG_in_HDG]);
+					break;
+				case "MWV":
+				case "VWR":
+					Wind wind = "MWV".equals(id) ? StringParsers.parseMWV(sentence) : StringParsers.parseVWR(sentence);
+					if (wind != null) {
+						double angle = wind.angle > 180 ? wind.angle - 360 : wind.angle;
+						if (wind instanceof ApparentWind || "VWR".equals(id)) {
+							set(result, current, AWS, wind.speed);
+							set(result, current, AWA, angle);
+						} else {
+							set(result, current, TWS, wind.speed);
+							set(result, current, TWA, angle);
+						}
+					}
+					break;
+				case "DBT":
+					set(result, current, DEPTH, StringParsers.parseDBT(sentence, StringParsers.DEPTH_IN_METERS));
+					break;
+				case "DPT":
+					set(result, current, DEPTH, StringParsers.parseDPT(sentence, StringParsers.DEPTH_IN_METERS));
+					break;
+				case "MTW":
+					set(result, current, WTEMP, StringParsers.parseMTW(sentence));
+					break;
+				default:
+					break;
+			}
+		} catch (Exception ex) { // Bad content, with a good checksum. Counted, not used.
+		}
+		return current;
+	}
+
+	private static int hex(byte b) {
+		return (b >= '0' && b <= '9') ? b - '0' : ((b >= 'A' && b <= 'F') ? b - 'A' + 10 : ((b >= 'a' && b <= 'f') ? b - 'a' + 10 : -256));
+	}
+
+	private static void set(Result result, Row row, int column, double value) {
+		if (!Double.isNaN(value)) {
+			row.values[column] = value;
+			result.accumulators[column].add(value);
+		}
+	}
+
+	/**
+	 * A position too far from the last good one (faster than maxSpeed) is a glitch, it is skipped.
+	 * If the next one is not reachable from the last good one either, but is from the skipped one, the boat did move there
+	 * (or the last good one was the glitch, at the beginning of a chunk): the track goes on from the skipped one,
+	 * the jump to it is not counted.
+	 *
+	 * @param pos lat, lng, time
+	 */
+	private void addPosition(Result result, double[] pos) {
+		if (result.firstPos == null) {
+			result.firstPos = pos;
+			result.lastPos = pos;
+			return;
+		}
+		double dist = leg(result.lastPos, pos);
+		if (dist < 0 && result.rejected != null) {
+			double fromRejected = leg(result.rejected, pos);
+			if (fromRejected >= 0) { // Goes on from the skipped one
+				if (result.lastPos == result.firstPos) {
+					result.firstPos = result.rejected;
+				}
+				result.lastPos = result.rejected;
+				dist = fromRejected;
+			}
+		}
+		if (dist < 0) {
+			result.glitches++;
+			result.rejected = pos;
+		} else {
+			result.distance += dist;
+			result.lastPos = pos;
+			result.rejected = null;
+		}
+	}
+
+	/**
+	 * @param from lat, lng, time
+	 * @param to   lat, lng, time
+	 * @return the distance in nm, -1 if it is a glitch
+	 */
+	private double leg(double[] from, double[] to) {
+		double dist = GreatCircleUtil.distanceInNM(from[0], from[1], to[0], to[1]);
+		double hours = (to[2] - from[2]) / 3_600_000d;
+		return (dist > 0 && (hours <= 0 || dist / hours > maxSpeed)) ? -1d : dist;
+	}
+
+
+	/**
+	 * Receives the rows, in the order of the log.
+	 */
+	public interface RowWriter {
+		void write(long time, double[] values) throws IOException;
+
+		void close() throws IOException;
+	}
+
+	/**
+	 * Analyzes the log.
+	 *
+	 * @param writer the time-aligned rows go there, can be null
+	 * @return the merged result of all the chunks
+	 */
+	public Result analyze(RowWriter writer) throws IOException {
+		long fileLength = log.length();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			Result total = new Result();
+			Row pending = null; // The last row, its values can still come from the head of the next chunk.
+			double[] state = new double[COLUMNS.length]; // Values carried forward
+			Arrays.fill(state, Double.NaN);
+
+			LinkedList<ChunkTask> tasks = new LinkedList<>();
+			long next = 0L;
+			while (next < fileLength || !tasks.isEmpty()) {
+				while (next < fileLength && tasks.size() < 2 * threads) {
+					ChunkTask task = new ChunkTask(next, Math.min(fileLength, next + chunkSize), fileLength);
+					pool.execute(task);
+					tasks.add(task);
+					next += chunkSize;
+				}
+				Result chunk = tasks.removeFirst().join();
+				merge(total, chunk);
+
+				// Rows
+				if (pending != null) {
+					pending.override(chunk.head);
+				}
+				for (Row row : chunk.rows) {
+					if (pending != null && pending.time == row.time) { // Same interval, across the chunks
+						pending.override(row);
+					} else {
+						if (pending != null && writer != null) {
+							writeRow(writer, pending, state);
+						}
+						pending = row;
+					}
+				}
+			}
+			if (pending != null && writer != null) {
+				writeRow(writer, pending, state);
+			}
+			return total;
+		} finally {
+			pool.shutdown();
+			if (writer != null) {
+				writer.close();
+			}
+		}
+	}
+
+	private static void writeRow(RowWriter writer, Row row, double[] state) throws IOException {
+		for (int i = 0; i < state.length; i++) {
+			if (!Double.isNaN(row.values[i])) {
+				state[i] = row.values[i];
+			}
+		}
+		writer.write(row.time, state);
+	}
+
+	/**
+	 * @param total the chunks before <code>chunk</code>, merged
+	 */
+	private void merge(Result total, Result chunk) {
+		total.lines += chunk.lines;
+		total.invalid += chunk.invalid;
+		total.notNMEA += chunk.notNMEA;
+		chunk.counts.forEach((key, nb) -> {
+			long[] totalNb = total.counts.get(key);
+			if (totalNb == null) {
+				total.counts.put(key, nb);
+			} else {
+				totalNb[0] += nb[0];
+			}
+		});
+		for (int i = 0; i < total.accumulators.length; i++) {
+			total.accumulators[i].merge(chunk.accumulators[i]);
+		}
+		total.distance += chunk.distance;
+		total.glitches += chunk.glitches;
+		if (chunk.firstPos != null) {
+			if (total.lastPos != null) { // The leg between the 2 chunks
+				double dist = leg(total.lastPos, chunk.firstPos);
+				if (dist < 0) {
+					total.glitches++;
+				} else {
+					total.distance += dist;
+				}
+			}
+			if (total.firstPos == null) {
+				total.firstPos = chunk.firstPos;
+			}
+			total.lastPos = chunk.lastPos;
+		}
+		if (chunk.firstTime >= 0) {
+			if (total.firstTime < 0) {
+				total.firstTime = chunk.firstTime;
+			}
+			total.lastTime = chunk.lastTime;
+		}
+	}
+
+	public static class CSVWriter implements RowWriter {
+		private final BufferedWriter out;
+
+		public CSVWriter(File file) throws IOException {
+			this.out = new BufferedWriter(new FileWriter(file), 65_536);
+			out.write("time");
+			for (String column : COLUMNS) {
+				out.write(";" + column);
+			}
+			out.newLine();
+		}
+
+		@Override
+		public void write(long time, double[] values) throws IOException {
+			out.write(Long.toString(time));
+			for (double value : values) {
+				out.write(';');
+				if (!Double.isNaN(value)) {
+					out.write(Double.toString(value));
+				}
+			}
+			out.newLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	public static class ColumnsWriter implements RowWriter {
+		private final DataOutputStream time;
+		private final DataOutputStream[] columns = new DataOutputStream[COLUMNS.length];
+
+		public ColumnsWriter(File dir) throws IOException {
+			if (!dir.exists() && !dir.mkdirs()) {
+				throw new IOException(String.format("Cannot create %s", dir));
+			}
+			time = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, "time.i64")), 65_536));
+			for (int i = 0; i < COLUMNS.length; i++) {
+				columns[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, COLUMNS[i] + ".f64")), 65_536));
+			}
+		}
+
+		@Override
+		public void write(long t, double[] values) throws IOException {
+			time.writeLong(t);
+			for (int i = 0; i < values.length; i++) {
+				columns[i].writeDouble(values[i]);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			time.close();
+			for (DataOutputStream column : columns) {
+				column.close();
+			}
+		}
+	}
+
+	/**
+	 * Both.
+	 */
+	private static class TeeWriter implements RowWriter {
+		private final RowWriter one, two;
+
+		TeeWriter(RowWriter one, RowWriter two) {
+			this.one = one;
+			this.two = two;
+		}
+
+		@Override
+		public void write(long time, double[] values) throws IOException {
+			one.write(time, values);
+			two.write(time, values);
+		}
+
+		@Override
+		public void close() throws IOException {
+			one.close();
+			two.close();
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long chunk = 32L;
+		long interval = 1_000L;
+		double maxSpeed = 50d;
+		String csv = null, columns = null, logFile = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--threads":
+					threads = Integer.parseInt(args[++i]);
+					break;
+				case "--chunk":
+					chunk = Long.parseLong(args[++i]);
+					break;
+				case "--interval":
+					interval = Long.parseLong(args[++i]);
+					break;
+				case "--max.speed":
+					maxSpeed = Double.parseDouble(args[++i]);
+					break;
+				case "--csv":
+					csv = args[++i];
+					break;
+				case "--columns":
+					columns = args[++i];
+					break;
+				default:
+					logFile = args[i];
+					break;
+			}
+		}
+		if (logFile == null || !new File(logFile).exists()) {
+			System.out.println("Usage: java nmea.analyzer.LogAnalyzer [--threads n] [--chunk MB] [--interval ms] [--max.speed kts] [--csv file] [--columns dir] log.file");
+			System.exit(1);
+		}
+		RowWriter writer = null;
+		if (csv != null) {
+			writer = new CSVWriter(new File(csv));
+		}
+		if (columns != null) {
+			RowWriter columnsWriter = new ColumnsWriter(new File(columns));
+			writer = (writer == null) ? columnsWriter : new TeeWriter(writer, columnsWriter);
+		}
+
+		long before = System.currentTimeMillis();
+		LogAnalyzer analyzer = new LogAnalyzer(new File(logFile), threads, chunk * 1_024L * 1_024L, interval, maxSpeed);
+		Result result = analyzer.analyze(writer);
+		long elapsed = System.currentTimeMillis() - before;
+
+		System.out.println(String.format("%s: %,d lines, %,d bytes, analyzed in %,d ms (%d threads)",
+				logFile, result.lines, new File(logFile).length(), elapsed, threads));
+		System.out.println(String.format("Invalid checksum: %,d, not NMEA: %,d", result.invalid, result.notNMEA));
+		if (result.firstTime >= 0) {
+			System.out.println(String.format("From %tF %<tT to %tF %<tT (UTC, from RMC)", result.firstTime, result.lastTime));
+		}
+		System.out.println(String.format("Distance run: %.2f nm (%d GPS glitch(es) ignored)", result.distance, result.glitches));
+		for (String column : new String[] { "sog", "bsp", "aws", "tws", "depth", "wtemp" }) {
+			Accumulator acc = result.getAccumulator(column);
+			if (acc.getCount() > 0) {
+				System.out.println(String.format("%-6s max %8.2f, avg %8.2f (%,d samples)", column, acc.getMax(), acc.getAverage(), acc.getCount()));
+			}
+		}
+		System.out.println("Sentences:");
+		result.getSentences().entrySet().stream()
+				.sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+				.forEach(entry -> System.out.println(String.format("  %s %,10d (%5.2f%%)", entry.getKey(), entry.getValue(), 100d * entry.getValue() / result.lines)));
+	}
+}
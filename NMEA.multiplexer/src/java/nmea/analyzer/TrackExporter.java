@@ -0,0 +1,343 @@
+package nmea.analyzer;
+
+import nmea.parser.GeoPos;
+import nmea.parser.RMC;
+import nmea.parser.StringParsers;
+import nmea.parser.UTC;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Exports a track from logged <code>RMC</code> and <code>GGA</code> sentences, as GPX, KML or GeoJSON.
+ * <br>
+ * The logs are read line by line, the positions go through a {@link TrackSimplifier}, and are written as they come out of it.
+ * Nothing is kept in memory but the window of the simplifier, whatever the size of the logs.
+ * A <code>GGA</code> has no date, it takes the one of the last <code>RMC</code> (or the next day, when its time of day is more than
+ * half a day before the one of the <code>RMC</code>: midnight went by), and is only used when there is no <code>RMC</code> for the same second.
+ * <pre>
+ * java -cp NMEA.multiplexer-1.0-all.jar nmea.analyzer.TrackExporter [--from 2016-12-06] [--to 2016-12-07T12:00:00Z] [--format gpx|kml|geojson]
+ *          [--min.time 1] [--min.distance 10] [--tolerance 5] [--window 256] [--out track.gpx] log.nmea [log2.nmea ...]
+ * </pre>
+ * Also available as <code>GET /track</code> in the multiplexer, see {@link nmea.mux.GenericNMEAMultiplexer}.
+ */
+public class TrackExporter {
+
+	public final static long DEFAULT_MIN_TIME = 1_000L;       // ms
+	public final static double DEFAULT_MIN_DISTANCE = 10d;    // m
+	public final static double DEFAULT_TOLERANCE = 5d;        // m
+	public final static int DEFAULT_WINDOW = 256;
+
+	private final static long DAY = 86_400_000L;
+
+	public enum Format {
+		GPX("application/gpx+xml"),
+		KML("application/vnd.google-earth.kml+xml"),
+		GEOJSON("application/geo+json");
+
+		private final String contentType;
+
+		Format(String contentType) {
+			this.contentType = contentType;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+	}
+
+	private final List<File> logs;
+	private final long from;
+	private final long to;
+	private final Format format;
+	private long minTime = DEFAULT_MIN_TIME;
+	private double minDistance = DEFAULT_MIN_DISTANCE;
+	private double tolerance = DEFAULT_TOLERANCE;
+	private int window = DEFAULT_WINDOW;
+
+	private long lines = 0L;
+	private long positions = 0L;
+	private TrackSimplifier simplifier = null;
+
+	/**
+	 * @param from epoch, in ms, included
+	 * @param to   epoch, in ms, excluded
+	 */
+	public TrackExporter(List<File> logs, long from, long to, Format format) {
+		this.logs = logs;
+		this.from = from;
+		this.to = to;
+		this.format = format;
+	}
+
+	public void setSimplification(long minTime, double minDistance, double tolerance, int window) {
+		this.minTime = minTime;
+		this.minDistance = minDistance;
+		this.tolerance = tolerance;
+		this.window = window;
+	}
+
+	/**
+	 * Writes the track. The stream is not closed.
+	 */
+	public void export(OutputStream out) throws Exception {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8_192);
+		TrackWriter trackWriter = trackWriter(format, writer);
+		trackWriter.begin();
+		simplifier = new TrackSimplifier(minTime, minDistance, tolerance, window, trackWriter::point);
+		long day = -1L;       // Midnight of the last RMC date, for the GGA
+		long rmcTimeOfDay = -1L;
+		long lastTime = -1L;
+		for (File log : logs) {
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(log), StandardCharsets.ISO_8859_1), 65_536)) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					lines++;
+					int rmcIdx = line.indexOf("RMC,");
+					int ggaIdx = (rmcIdx < 0) ? line.indexOf("GGA,") : -1;
+					if (rmcIdx < 0 && ggaIdx < 0) {
+						continue;
+					}
+					String sentence = line.trim();
+					if (!StringParsers.validCheckSum(sentence)) {
+						continue;
+					}
+					GeoPos pos = null;
+					long time = -1L;
+					if (rmcIdx >= 0) {
+						RMC rmc = StringParsers.parseRMC(sentence);
+						if (rmc != null && rmc.getRmcDate() != null && rmc.getGp() != null) {
+							time = rmc.getRmcDate().getTime();
+							rmcTimeOfDay = time % DAY;
+							day = time - rmcTimeOfDay;
+							pos = rmc.getGp();
+						}
+					} else if (day >= 0) {
+						List<Object> gga = StringParsers.parseGGA(sentence);
+						if (gga != null && gga.size() > 1) {
+							UTC utc = (UTC) gga.get(0);
+							pos = (GeoPos) gga.get(1);
+							long timeOfDay = (((utc.getH() * 60L) + utc.getM()) * 60_000L) + (long) (utc.getS() * 1_000L);
+							time = day + timeOfDay + (timeOfDay < rmcTimeOfDay - (DAY / 2) ? DAY : 0L); // Past midnight, before the next RMC
+							if (pos.lat == 0d && pos.lng == 0d) { // No fix
+								pos = null;
+							}
+						}
+					}
+					if (pos == null || time == lastTime || time < from || time >= to) {
+						continue;
+					}
+					lastTime = time;
+					positions++;
+					simplifier.add(pos.lat, pos.lng, time);
+				}
+			}
+		}
+		simplifier.flush();
+		trackWriter.end();
+		writer.flush();
+	}
+
+	public long getLines() {
+		return lines;
+	}
+
+	public long getPositions() {
+		return positions;
+	}
+
+	public long getEmitted() {
+		return simplifier == null ? 0L : simplifier.getEmitted();
+	}
+
+	/**
+	 * Writes the positions as they come.
+	 */
+	private static abstract class TrackWriter {
+		protected final Writer out;
+		protected final SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		protected long first = -1L, last = -1L;
+
+		TrackWriter(Writer out) {
+			this.out = out;
+			iso.setTimeZone(TimeZone.getTimeZone("Etc/UTC"));
+		}
+
+		abstract void begin() throws IOException;
+
+		void point(double lat, double lng, long time) throws IOException {
+			if (first < 0) {
+				first = time;
+			}
+			last = time;
+		}
+
+		abstract void end() throws IOException;
+	}
+
+	private static TrackWriter trackWriter(Format format, Writer out) {
+		switch (format) {
+			case KML:
+				return new TrackWriter(out) {
+					@Override
+					void begin() throws IOException {
+						out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+						out.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n<Document>\n<name>Track</name>\n");
+						out.write("<Placemark>\n<name>Track</name>\n<LineString>\n<tessellate>1</tessellate>\n<coordinates>\n");
+					}
+
+					@Override
+					void point(double lat, double lng, long time) throws IOException {
+						super.point(lat, lng, time);
+						out.write(String.format(Locale.ENGLISH, "%.6f,%.6f,0\n", lng, lat));
+					}
+
+					@Override
+					void end() throws IOException {
+						// No TimeSpan, it would have to come before the LineString in the Placemark.
+						out.write("</coordinates>\n</LineString>\n</Placemark>\n</Document>\n</kml>\n");
+					}
+				};
+			case GEOJSON:
+				return new TrackWriter(out) {
+					@Override
+					void begin() throws IOException {
+						out.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+					}
+
+					@Override
+					void point(double lat, double lng, long time) throws IOException {
+						boolean firstOne = (first < 0);
+						super.point(lat, lng, time);
+						out.write(String.format(Locale.ENGLISH, "%s[%.6f,%.6f]", firstOne ? "" : ",", lng, lat));
+					}
+
+					@Override
+					void end() throws IOException {
+						out.write("]},\"properties\":{");
+						if (first >= 0) {
+							out.write(String.format("\"start\":\"%s\",\"end\":\"%s\"", iso.format(new Date(first)), iso.format(new Date(last))));
+						}
+						out.write("}}\n");
+					}
+				};
+			case GPX:
+			default:
+				return new TrackWriter(out) {
+					@Override
+					void begin() throws IOException {
+						out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+						out.write("<gpx version=\"1.1\" creator=\"NMEA.multiplexer\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n<trk>\n<name>Track</name>\n<trkseg>\n");
+					}
+
+					@Override
+					void point(double lat, double lng, long time) throws IOException {
+						super.point(lat, lng, time);
+						out.write(String.format(Locale.ENGLISH, "<trkpt lat=\"%.6f\" lon=\"%.6f\"><time>%s</time></trkpt>\n", lat, lng, iso.format(new Date(time))));
+					}
+
+					@Override
+					void end() throws IOException {
+						out.write("</trkseg>\n</trk>\n</gpx>\n");
+					}
+				};
+		}
+	}
+
+	/**
+	 * @param str epoch in ms, a date (<code>2016-12-06</code>, midnight UTC), or an ISO-8601 instant (<code>2016-12-06T12:00:00Z</code>)
+	 * @return epoch in ms
+	 */
+	public static long parseTime(String str) {
+		if (str.matches("\\d+")) {
+			return Long.parseLong(str);
+		} else if (str.length() == 10) {
+			return LocalDate.parse(str).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		}
+		return Instant.parse(str).toEpochMilli();
+	}
+
+	public static Format parseFormat(String str) {
+		try {
+			return Format.valueOf(str.toUpperCase());
+		} catch (IllegalArgumentException iae) {
+			throw new RuntimeException(String.format("Unknown format [%s], use one of %s", str, Arrays.toString(Format.values())));
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+		long from = 0L, to = Long.MAX_VALUE;
+		Format format = Format.GPX;
+		long minTime = DEFAULT_MIN_TIME;
+		double minDistance = DEFAULT_MIN_DISTANCE, tolerance = DEFAULT_TOLERANCE;
+		int window = DEFAULT_WINDOW;
+		String outFile = null;
+		List<File> logs = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--from":
+					from = parseTime(args[++i]);
+					break;
+				case "--to":
+					to = parseTime(args[++i]);
+					break;
+				case "--format":
+					format = parseFormat(args[++i]);
+					break;
+				case "--min.time":
+					minTime = Math.round(Double.parseDouble(args[++i]) * 1_000d);
+					break;
+				case "--min.distance":
+					minDistance = Double.parseDouble(args[++i]);
+					break;
+				case "--tolerance":
+					tolerance = Double.parseDouble(args[++i]);
+					break;
+				case "--window":
+					window = Integer.parseInt(args[++i]);
+					break;
+				case "--out":
+					outFile = args[++i];
+					break;
+				default:
+					logs.add(new File(args[i]));
+					break;
+			}
+		}
+		if (logs.isEmpty()) {
+			System.out.println("Usage: java nmea.analyzer.TrackExporter [--from time] [--to time] [--format gpx|kml|geojson] [--min.time s] [--min.distance m] [--tolerance m] [--window n] [--out file] log.file [log.file ...]");
+			System.exit(1);
+		}
+		TrackExporter exporter = new TrackExporter(logs, from, to, format);
+		exporter.setSimplification(minTime, minDistance, tolerance, window);
+		long before = System.currentTimeMillis();
+		if (outFile != null) {
+			try (OutputStream out = new FileOutputStream(outFile)) {
+				exporter.export(out);
+			}
+			System.out.println(String.format("%,d lines, %,d positions, %,d in the track, in %,d ms",
+					exporter.getLines(), exporter.getPositions(), exporter.getEmitted(), System.currentTimeMillis() - before));
+		} else {
+			exporter.export(System.out);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package nmea.analyzer;
+
+import util.greatcircle.GreatCircleUtil;
+
+/**
+ * Simplifies a track on the fly, with a bounded memory.
+ * <ol>
+ *   <li>A position is dropped if it is less than <code>minTime</code> ms after the last one kept,
+ *   or less than <code>minDistance</code> meters away from it (GPS noise, at anchor, in the marina...)</li>
+ *   <li>The positions left go in a window of <code>window</code> positions. When the window is full, the
+ *   Douglas-Peucker algorithm (with a <code>tolerance</code> in meters) decides which ones to emit.
+ *   The last one of the window is the first one of the next window, so the track has no gap.</li>
+ * </ol>
+ * The result is a bit bigger than a Douglas-Peucker on the whole track (the ends of the windows are always kept),
+ * but only <code>window</code> positions are in memory.
+ * Not thread safe.
+ */
+public class TrackSimplifier {
+
+	private final static double METERS_PER_NM = 1_852d;
+
+	/**
+	 * Receives the simplified positions, in order.
+	 */
+	public interface PointConsumer {
+		void accept(double lat, double lng, long time) throws Exception;
+	}
+
+	private final long minTime;
+	private final double minDistance;
+	private final double tolerance;
+	private final PointConsumer consumer;
+
+	// The window
+	private final double[] lats;
+	private final double[] lngs;
+	private final long[] times;
+	private final boolean[] keep;
+	private final int[] stack; // For the Douglas-Peucker, no recursion
+	private final double[] segment = new double[2]; // North and east, in nm, from the first point of the segment
+	private final double[] point = new double[2];
+	private int size = 0;
+
+	private boolean hasLast = false;
+	private double lastLat, lastLng;
+	private long lastTime;
+
+	private long received = 0L;
+	private long thresholded = 0L; // Left by the time and distance thresholds
+	private long emitted = 0L;
+
+	public TrackSimplifier(long minTime, double minDistance, double tolerance, int window, PointConsumer consumer) {
+		if (window < 3) {
+			throw new RuntimeException("Window must be at least 3 positions");
+		}
+		this.minTime = minTime;
+		this.minDistance = minDistance;
+		this.tolerance = tolerance;
+		this.consumer = consumer;
+		this.lats = new double[window];
+		this.lngs = new double[window];
+		this.times = new long[window];
+		this.keep = new boolean[window];
+		this.stack = new int[2 * window];
+	}
+
+	public void add(double lat, double lng, long time) throws Exception {
+		received++;
+		if (hasLast && (Math.abs(time - lastTime) < minTime || distance(lastLat, lastLng, lat, lng) < minDistance)) {
+			return;
+		}
+		hasLast = true;
+		lastLat = lat;
+		lastLng = lng;
+		lastTime = time;
+		thresholded++;
+
+		lats[size] = lat;
+		lngs[size] = lng;
+		times[size] = time;
+		size++;
+		if (size == lats.length) {
+			simplify();
+			emit(size - 1); // The last one is kept for the next window
+			lats[0] = lats[size - 1];
+			lngs[0] = lngs[size - 1];
+			times[0] = times[size - 1];
+			size = 1;
+		}
+	}
+
+	/**
+	 * Emits what is left in the window. To call after the last position.
+	 */
+	public void flush() throws Exception {
+		if (size > 0) {
+			simplify();
+			emit(size);
+			size = 0;
+		}
+	}
+
+	private void emit(int upTo) throws Exception {
+		for (int i = 0; i < upTo; i++) {
+			if (keep[i]) {
+				consumer.accept(lats[i], lngs[i], times[i]);
+				emitted++;
+			}
+		}
+	}
+
+	/**
+	 * Douglas-Peucker on the window. Sets <code>keep</code>.
+	 */
+	private void simplify() {
+		for (int i = 0; i < size; i++) {
+			keep[i] = (i == 0 || i == size - 1);
+		}
+		int top = 0;
+		if (size > 2) {
+			stack[top++] = 0;
+			stack[top++] = size - 1;
+		}
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+			GreatCircleUtil.displacementInNM(lats[first], lngs[first], lats[last], lngs[last], segment); // Once per segment
+			double len2 = (segment[0] * segment[0]) + (segment[1] * segment[1]);
+			double maxDist = -1d;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				double dist = crossTrack(i, first, len2);
+				if (dist > maxDist) {
+					maxDist = dist;
+					index = i;
+				}
+			}
+			if (index > 0 && maxDist > tolerance) {
+				keep[index] = true;
+				if (index - first > 1) {
+					stack[top++] = first;
+					stack[top++] = index;
+				}
+				if (last - index > 1) {
+					stack[top++] = index;
+					stack[top++] = last;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Distance in meters from point <code>pt</code> to the segment starting at <code>a</code>, the points being seen from <code>a</code>
+	 * (great circle distance and route).
+	 * <code>segment</code> (and its squared length <code>len2</code>) must already be set for the segment.
+	 */
+	private double crossTrack(int pt, int a, double len2) {
+		GreatCircleUtil.displacementInNM(lats[a], lngs[a], lats[pt], lngs[pt], point);
+		double t = len2 == 0d ? 0d : Math.max(0d, Math.min(1d, ((point[0] * segment[0]) + (point[1] * segment[1])) / len2));
+		double dN = point[0] - (t * segment[0]);
+		double dE = point[1] - (t * segment[1]);
+		return Math.sqrt((dN * dN) + (dE * dE)) * METERS_PER_NM;
+	}
+
+	/**
+	 * @return the great circle distance, in meters
+	 */
+	static double distance(double fromLat, double fromLng, double toLat, double toLng) {
+		return GreatCircleUtil.distanceInNM(fromLat, fromLng, toLat, toLng) * METERS_PER_NM;
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	public long getThresholded() {
+		return thresholded;
+	}
+
+	public long getEmitted() {
+		return emitted;
+	}
+}
@@ -0,0 +1,319 @@
+package nmea.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional tracing of the time spent by the sentences in each stage, from the reader to the forwarders.
+ * <br>
+ * A sentence is stamped (<code>System.nanoTime()</code>) when its bytes are read ({@link NMEAReader}),
+ * framed and filtered ({@link NMEAParser}), when the multiplexer gets it (after waiting for its lock),
+ * after the re-ordering if any, the cache, the computers, and each forwarder
+ * (stage {@link #FORWARD} followed by its index in the config, like <code>forward.01</code>).
+ * The time between two stamps goes in the histogram of the stage (<code>frame</code> is from the read),
+ * the trace of the sentences slower than <code>trace.slow</code> ms (from read to last forwarder)
+ * in a ring of the last <code>trace.ring.size</code> ones.
+ * <br>
+ * The trace goes along with the sentence in a {@link ThreadLocal}, the reader thread does it all,
+ * up to the multiplexer (a re-order buffer carries it to the thread releasing the sentence).
+ * When disabled, what is left is a volatile read at each stage.
+ * <br>
+ * Properties:
+ * <pre>
+ * trace.enabled=true
+ * trace.sampling=1
+ * trace.slow=20
+ * trace.ring.size=100
+ * </pre>
+ * <code>trace.sampling=N</code> traces one sentence out of N.
+ */
+public class LatencyTracer {
+
+	public final static String FRAME = "frame";
+	public final static String FILTER = "filter";
+	public final static String LOCK = "lock";
+	public final static String REORDER = "reorder";
+	public final static String CACHE = "cache";
+	public final static String COMPUTE = "compute";
+	public final static String FORWARD = "forward.";
+	public final static String TOTAL = "total";
+
+	public final static long DEFAULT_SLOW = 20L; // ms
+	public final static int DEFAULT_RING_SIZE = 100;
+
+	private final static int MAX_STAGES = 32;
+
+	private final static LatencyTracer instance = new LatencyTracer();
+
+	private volatile boolean enabled = false;
+	private int sampling = 1;
+	private long slowNanos = DEFAULT_SLOW * 1_000_000L;
+
+	private final AtomicLong counter = new AtomicLong();
+	private final ThreadLocal<long[]> readAt = ThreadLocal.withInitial(() -> new long[1]);
+	private final ThreadLocal<Trace> current = new ThreadLocal<>();
+
+	private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+	private SlowTrace[] ring = new SlowTrace[DEFAULT_RING_SIZE];
+	private int ringIndex = 0;
+	private long traced = 0L;
+
+	private LatencyTracer() {
+	}
+
+	public static LatencyTracer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * The stages of one sentence.
+	 */
+	public static class Trace {
+		private final long start;
+		private final long startMillis = System.currentTimeMillis();
+		private final String sentence;
+		private String channel = null;
+		private final String[] stages = new String[MAX_STAGES];
+		private final long[] at = new long[MAX_STAGES];
+		private int nb = 0;
+
+		Trace(long start, String sentence) {
+			this.start = start;
+			this.sentence = sentence;
+		}
+
+		public void stamp(String stage) {
+			if (nb < MAX_STAGES) {
+				stages[nb] = stage;
+				at[nb++] = System.nanoTime();
+			}
+		}
+
+		public void setChannel(String channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * Log2 buckets, in µs.
+	 */
+	private static class Histogram {
+		private final long[] buckets = new long[40];
+		private long count = 0L;
+		private long sum = 0L;
+		private long max = 0L;
+
+		void record(long nanos) {
+			long micros = Math.max(0L, nanos / 1_000L);
+			int bucket = 63 - Long.numberOfLeadingZeros(micros | 1L);
+			buckets[Math.min(bucket, buckets.length - 1)]++;
+			count++;
+			sum += micros;
+			max = Math.max(max, micros);
+		}
+
+		/**
+		 * @return the upper bound of the bucket where the percentile is, in µs
+		 */
+		long percentile(double p) {
+			long rank = (long) Math.ceil(count * p);
+			long seen = 0L;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(max, (1L << (i + 1)) - 1);
+				}
+			}
+			return max;
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Called by the reader, when it has read some bytes.
+	 */
+	public void markRead() {
+		if (enabled) {
+			readAt.get()[0] = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Called by the parser, for a sentence found in what was read. Becomes the current trace of the thread.
+	 *
+	 * @return the trace, null if disabled or not sampled
+	 */
+	public Trace begin(String sentence) {
+		if (!enabled) {
+			return null;
+		}
+		if (sampling > 1 && counter.incrementAndGet() % sampling != 0) {
+			current.remove();
+			return null;
+		}
+		long now = System.nanoTime();
+		long read = readAt.get()[0];
+		Trace trace = new Trace(read != 0L && read <= now ? read : now, sentence);
+		trace.stamp(FRAME);
+		current.set(trace);
+		return trace;
+	}
+
+	/**
+	 * @return the current trace of the thread, null if none. The thread has no current trace after that.
+	 */
+	public Trace take() {
+		if (!enabled) {
+			return null;
+		}
+		Trace trace = current.get();
+		if (trace != null) {
+			current.remove();
+		}
+		return trace;
+	}
+
+	/**
+	 * Makes a trace the current one of this thread, for a sentence going from a thread to another.
+	 */
+	public void resume(Trace trace) {
+		if (trace != null) {
+			current.set(trace);
+		}
+	}
+
+	/**
+	 * The sentence has gone through all the stages, the trace is recorded.
+	 *
+	 * @param trace can be null
+	 */
+	public void finish(Trace trace) {
+		if (trace == null || trace.nb == 0) {
+			return;
+		}
+		long total = trace.at[trace.nb - 1] - trace.start;
+		synchronized (this) {
+			traced++;
+			for (int i = 0; i < trace.nb; i++) {
+				long duration = trace.at[i] - (i == 0 ? trace.start : trace.at[i - 1]);
+				histogram(trace.stages[i]).record(duration);
+			}
+			histogram(TOTAL).record(total);
+			if (total >= slowNanos && ring.length > 0) {
+				ring[ringIndex] = new SlowTrace(trace, total);
+				ringIndex = (ringIndex + 1) % ring.length;
+			}
+		}
+	}
+
+	private Histogram histogram(String stage) {
+		Histogram histogram = histograms.get(stage);
+		if (histogram == null) {
+			histogram = new Histogram();
+			histograms.put(stage, histogram);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Forgets the histograms and the slow traces.
+	 */
+	public synchronized void reset() {
+		histograms.clear();
+		ring = new SlowTrace[ring.length];
+		ringIndex = 0;
+		traced = 0L;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public synchronized void configure(Properties props) {
+		this.sampling = Math.max(1, Integer.parseInt(props.getProperty("trace.sampling", "1")));
+		this.slowNanos = Long.parseLong(props.getProperty("trace.slow", String.valueOf(DEFAULT_SLOW))) * 1_000_000L;
+		int ringSize = Integer.parseInt(props.getProperty("trace.ring.size", String.valueOf(DEFAULT_RING_SIZE)));
+		if (ringSize != ring.length) {
+			ring = new SlowTrace[Math.max(0, ringSize)];
+			ringIndex = 0;
+		}
+		this.enabled = "true".equals(props.getProperty("trace.enabled", "false"));
+	}
+
+	public static class StageBean {
+		private String stage;
+		private long count;
+		private long mean; // All in µs
+		private long p50;
+		private long p90;
+		private long p99;
+		private long max;
+	}
+
+	public static class SlowTrace {
+		private long time;
+		private String channel;
+		private String sentence;
+		private long total; // µs
+		private List<Object[]> stages = new ArrayList<>(); // [ stage, µs ]
+
+		SlowTrace(Trace trace, long totalNanos) {
+			this.time = trace.startMillis;
+			this.channel = trace.channel;
+			this.sentence = trace.sentence;
+			this.total = totalNanos / 1_000L;
+			for (int i = 0; i < trace.nb; i++) {
+				stages.add(new Object[] { trace.stages[i], (trace.at[i] - (i == 0 ? trace.start : trace.at[i - 1])) / 1_000L });
+			}
+		}
+	}
+
+	public static class LatencyBean {
+		private boolean enabled;
+		private int sampling;
+		private long slow; // ms
+		private long traced;
+		private List<StageBean> stages = new ArrayList<>();
+	}
+
+	public synchronized LatencyBean getBean() {
+		LatencyBean bean = new LatencyBean();
+		bean.enabled = enabled;
+		bean.sampling = sampling;
+		bean.slow = slowNanos / 1_000_000L;
+		bean.traced = traced;
+		histograms.forEach((stage, histogram) -> {
+			StageBean stageBean = new StageBean();
+			stageBean.stage = stage;
+			stageBean.count = histogram.count;
+			stageBean.mean = histogram.count == 0 ? 0L : histogram.sum / histogram.count;
+			stageBean.p50 = histogram.percentile(0.5);
+			stageBean.p90 = histogram.percentile(0.9);
+			stageBean.p99 = histogram.percentile(0.99);
+			stageBean.max = histogram.max;
+			bean.stages.add(stageBean);
+		});
+		return bean;
+	}
+
+	/**
+	 * @return the slow traces, most recent first
+	 */
+	public synchronized List<SlowTrace> getSlowTraces() {
+		List<SlowTrace> traces = new ArrayList<>();
+		for (int i = 1; i <= ring.length; i++) {
+			SlowTrace trace = ring[(ringIndex - i + ring.length) % ring.length];
+			if (trace != null) {
+				traces.add(trace);
+			}
+		}
+		return traces;
+	}
+}
@@ -2,4 +2,27 @@ package nmea.api;
 
 public interface Multiplexer {
 	public void onData(String mess);
+
+	/**
+	 * Data coming from an input channel.
+	 * Lets the Multiplexer know where the data come from (to arbitrate between redundant sources).
+	 *
+	 * @param source the input channel
+	 * @param mess   the NMEA sentence
+	 */
+	default void onData(NMEAClient source, String mess) {
+		onData(mess);
+	}
+
+	/**
+	 * Data already parsed by another Multiplexer, and relayed by an input channel (see {@link nmea.consumers.client.LinkClient}).
+	 *
+	 * @param source   the input channel
+	 * @param upstream the input channel of the other Multiplexer the sentence comes from
+	 * @param mess     the NMEA sentence
+	 * @param received when the other Multiplexer received it, epoch in ms
+	 */
+	default void onData(NMEAClient source, String upstream, String mess, long received) {
+		onData(source, mess);
+	}
 }
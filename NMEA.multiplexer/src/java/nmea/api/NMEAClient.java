@@ -54,6 +54,7 @@ public abstract class NMEAClient {
 	private NMEAReader reader;
 	private String[] devicePrefix = null;
 	private String[] sentenceArray = null;
+	private String name = null;
 
 	protected Properties props = null;
 
@@ -96,6 +97,18 @@ public abstract class NMEAClient {
 		return this.multiplexer;
 	}
 
+	/**
+	 * @return the name of this input channel, like its index in the Multiplexer properties (01, 02...).
+	 * Defaults to the class name.
+	 */
+	public String getName() {
+		return this.name != null ? this.name : this.getClass().getSimpleName();
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
 	public void initClient() {
 		this.addNMEAListener(new NMEAListener() {
 			public void dataDetected(NMEAEvent e) {
@@ -57,41 +57,13 @@ public final class NMEAParser extends Thread {
 				try {
 					while (s != null) {
 						s = instance.detectSentence();
-						if (s != null && s.length() > 6 && s.startsWith("$")) { // Potentially valid
-							// TODO ? RegExp on the full sentence. Maybe not too user friendly...
-							boolean broadcast = true;
-							if (nmeaPrefix != null) {
-								for (String device : nmeaPrefix) {
-									if (device.trim().length() > 0 &&
-													( (!device.startsWith("~") && !device.equals(StringParsers.getDeviceID(s))) ||
-																	device.startsWith("~") && device.substring(1).equals(StringParsers.getDeviceID(s)))) {
-										broadcast = false;
-										break;
-									}
-								}
-							}
-							// Negative filters
-							if (broadcast && nmeaSentence != null) {
-								String thisId = StringParsers.getSentenceID(s);
-								for (String prefix : nmeaSentence) {
-									if (prefix.trim().startsWith("~") && thisId.equals(prefix.trim().substring(1))) {
-										broadcast = false;
-										break;
-									}
-								}
-								// Positive filters
-								long pos = Arrays.stream(nmeaSentence).filter(id -> !id.trim().startsWith("~")).count();
-								if (broadcast && pos > 0) {
-									broadcast = false;
-									for (String prefix : nmeaSentence) {
-										if (!prefix.trim().startsWith("~") && thisId.equals(prefix.trim())) {
-											broadcast = true;
-											break;
-										}
-									}
-								}
-							}
+						if (s != null && s.length() > 6 && (s.startsWith("$") || s.startsWith("!"))) { // Potentially valid. '!' for the encapsulated ones (AIS)
+							LatencyTracer.Trace trace = LatencyTracer.getInstance().begin(s);
+							boolean broadcast = passesFilters(s);
 							if (broadcast) {
+								if (trace != null) {
+									trace.stamp(LatencyTracer.FILTER);
+								}
 								instance.fireDataDetected(new NMEAEvent(this, s));
 							} else {
 								if ("true".equals(System.getProperty("nmea.parser.verbose","false"))) {
@@ -171,7 +143,7 @@ public final class NMEAParser extends Thread {
 //      throw new NMEAException("NMEA Prefix is not set");
 
 //  int beginIdx = nmeaStream.indexOf("$" + this.nmeaPrefix);
-		int beginIdx = nmeaStream.indexOf("$");
+		int beginIdx = sentenceStart(nmeaStream);
 		int endIdx = nmeaStream.indexOf(NMEA_SENTENCE_SEPARATOR);
 
 		if (beginIdx == -1 && endIdx == -1)
@@ -180,7 +152,7 @@ public final class NMEAParser extends Thread {
 		if (endIdx > -1 && endIdx < beginIdx) { // Seek the beginning of a sentence
 			nmeaStream = nmeaStream.substring(endIdx + NMEA_SENTENCE_SEPARATOR.length());
 //    beginIdx = nmeaStream.indexOf("$" + this.nmeaPrefix);
-			beginIdx = nmeaStream.indexOf("$");
+			beginIdx = sentenceStart(nmeaStream);
 		}
 
 		if (beginIdx == -1)
@@ -188,7 +160,7 @@ public final class NMEAParser extends Thread {
 		else {
 			while (true) {
 				try {
-					// The stream should here begin with $XX
+					// The stream should here begin with $XX (or !XX)
 					if (nmeaStream.length() > 6) { // "$" + prefix + XXX
 						endIdx = nmeaStream.indexOf(NMEA_SENTENCE_SEPARATOR);
 						if (endIdx > -1) {
@@ -207,6 +179,62 @@ public final class NMEAParser extends Thread {
 		}
 	}
 
+	/**
+	 * The device and sentence filters of this parser, see {@link #setDeviceFilters(String[])} and {@link #setSentenceFilters(String[])}.
+	 * Also used by the clients getting sentences already parsed (like the link).
+	 *
+	 * @param s the sentence
+	 * @return true if it goes through
+	 */
+	public boolean passesFilters(String s) {
+		// TODO ? RegExp on the full sentence. Maybe not too user friendly...
+		boolean broadcast = true;
+		if (nmeaPrefix != null) {
+			for (String device : nmeaPrefix) {
+				if (device.trim().length() > 0 &&
+								( (!device.startsWith("~") && !device.equals(StringParsers.getDeviceID(s))) ||
+												device.startsWith("~") && device.substring(1).equals(StringParsers.getDeviceID(s)))) {
+					broadcast = false;
+					break;
+				}
+			}
+		}
+		// Negative filters
+		if (broadcast && nmeaSentence != null) {
+			String thisId = StringParsers.getSentenceID(s);
+			for (String prefix : nmeaSentence) {
+				if (prefix.trim().startsWith("~") && thisId.equals(prefix.trim().substring(1))) {
+					broadcast = false;
+					break;
+				}
+			}
+			// Positive filters
+			long pos = Arrays.stream(nmeaSentence).filter(id -> !id.trim().startsWith("~")).count();
+			if (broadcast && pos > 0) {
+				broadcast = false;
+				for (String prefix : nmeaSentence) {
+					if (!prefix.trim().startsWith("~") && thisId.equals(prefix.trim())) {
+						broadcast = true;
+						break;
+					}
+				}
+			}
+		}
+		return broadcast;
+	}
+
+	/**
+	 * @return the index of the first '$' (parametric sentence) or '!' (encapsulated sentence, like AIS), -1 if none
+	 */
+	private static int sentenceStart(String stream) {
+		int dollar = stream.indexOf("$");
+		int bang = stream.indexOf("!");
+		if (dollar == -1 || bang == -1) {
+			return Math.max(dollar, bang);
+		}
+		return Math.min(dollar, bang);
+	}
+
 	protected void fireDataDetected(NMEAEvent e) {
 		this.NMEAListeners.stream().forEach(listener -> listener.dataDetected(e));
 	}
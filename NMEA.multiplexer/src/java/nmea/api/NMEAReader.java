@@ -57,6 +57,7 @@ public abstract class NMEAReader extends Thread {
 	 * @see nmea.api.NMEAParser
 	 */
 	protected void fireDataRead(NMEAEvent e) {
+		LatencyTracer.getInstance().markRead();
 		this.NMEAListeners.stream().forEach(listener -> listener.dataRead(e));
 	}
 
@@ -0,0 +1,244 @@
+package nmea.archive;
+
+import context.ApplicationContext;
+import context.CacheChangeBus;
+import context.NMEADataCache;
+import nmea.parser.Angle180;
+import nmea.parser.Angle180EW;
+import nmea.parser.Angle180LR;
+import nmea.parser.Angle360;
+import nmea.parser.NMEADoubleValueHolder;
+import nmea.parser.Pressure;
+import nmea.parser.Temperature;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Keeps the history of some keys of the {@link NMEADataCache}, in {@link RingFile}s, one per key.
+ * <br>
+ * The values are sampled when they change in the cache (at most once per <code>archive.sample.interval</code> ms),
+ * and recorded in each resolution. Disk and memory use only depend on the config, not on how long the multiplexer runs:
+ * with the default resolutions (1 s for 1 hour, 10 s for a day, 1 minute for 30 days), about 1.5 Mb per key.
+ * <br>
+ * Properties:
+ * <pre>
+ * archive.keys=TWS,TWD,BSP,SOG,Barometric Pressure,Battery Voltage
+ * archive.dir=./archive
+ * archive.resolutions=1:3600,10:8640,60:43200
+ * archive.sample.interval=1000
+ * </pre>
+ * <code>archive.resolutions</code> is a list of <code>step (in seconds):number of slots</code>, finest first.
+ */
+public class CacheArchive {
+
+	public final static String DEFAULT_DIR = "./archive";
+	public final static String DEFAULT_RESOLUTIONS = "1:3600,10:8640,60:43200";
+	public final static long DEFAULT_SAMPLE_INTERVAL = 1_000L;
+
+	private final String[] keys;
+	private final File dir;
+	private final int[][] resolutions;
+	private final Map<String, RingFile> files = new LinkedHashMap<>(); // Opened with the first value, the kind depends on its type.
+	private final Map<String, Long> versions = new LinkedHashMap<>();
+	private final CacheChangeBus.Subscription subscription;
+
+	private long recorded = 0L;
+
+	public CacheArchive(String[] keys, File dir, int[][] resolutions, long sampleInterval) {
+		this.keys = keys;
+		this.dir = dir;
+		this.resolutions = resolutions;
+		for (String key : keys) {
+			versions.put(key, 0L);
+		}
+		this.subscription = CacheChangeBus.getInstance().subscribe("Cache archive", keys, sampleInterval, 0L, this::sample);
+		System.out.println(String.format("Archiving %s in %s, %s",
+						Arrays.toString(keys), dir.getAbsolutePath(), Arrays.deepToString(resolutions)));
+	}
+
+	/**
+	 * @param props the mux properties
+	 * @return null if there is no <code>archive.keys</code>
+	 */
+	public static CacheArchive fromProperties(Properties props) {
+		String keyList = props.getProperty("archive.keys");
+		if (keyList == null || keyList.trim().isEmpty()) {
+			return null;
+		}
+		String[] keys = Arrays.stream(keyList.split(","))
+						.map(String::trim)
+						.filter(key -> !key.isEmpty())
+						.toArray(String[]::new);
+		String[] resolutionList = props.getProperty("archive.resolutions", DEFAULT_RESOLUTIONS).split(",");
+		int[][] resolutions = new int[resolutionList.length][];
+		for (int i = 0; i < resolutionList.length; i++) {
+			String[] stepAndSlots = resolutionList[i].trim().split(":");
+			if (stepAndSlots.length != 2) {
+				throw new RuntimeException(String.format("Bad archive resolution [%s], expected step:slots", resolutionList[i]));
+			}
+			resolutions[i] = new int[] { Integer.parseInt(stepAndSlots[0].trim()), Integer.parseInt(stepAndSlots[1].trim()) };
+			if (resolutions[i][0] <= 0 || resolutions[i][1] <= 0) {
+				throw new RuntimeException(String.format("Bad archive resolution [%s]", resolutionList[i]));
+			}
+		}
+		return new CacheArchive(keys,
+						new File(props.getProperty("archive.dir", DEFAULT_DIR)),
+						resolutions,
+						Long.parseLong(props.getProperty("archive.sample.interval", String.valueOf(DEFAULT_SAMPLE_INTERVAL))));
+	}
+
+	private void sample() {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (String key : keys) {
+			long version = cache.getVersion(key);
+			if (version == versions.get(key)) {
+				continue;
+			}
+			versions.put(key, version);
+			Object value = cache.get(key);
+			Double d = toDouble(value);
+			if (d == null || d.isNaN() || d.isInfinite()) {
+				continue;
+			}
+			RingFile ringFile = getRingFile(key, kindOf(value));
+			if (ringFile != null) {
+				ringFile.record(now, d);
+				synchronized (this) {
+					recorded++;
+				}
+			}
+		}
+	}
+
+	private static Double toDouble(Object value) {
+		if (value instanceof NMEADoubleValueHolder) {
+			return ((NMEADoubleValueHolder) value).getDoubleValue();
+		} else if (value instanceof Pressure) {
+			return ((Pressure) value).getValue();
+		} else if (value instanceof Temperature) {
+			return ((Temperature) value).getValue();
+		} else if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		return null;
+	}
+
+	private static int kindOf(Object value) {
+		if (value instanceof Angle360) {
+			return RingFile.ANGLE_360;
+		} else if (value instanceof Angle180 || value instanceof Angle180EW || value instanceof Angle180LR) {
+			return RingFile.ANGLE_180;
+		}
+		return RingFile.SCALAR;
+	}
+
+	private synchronized RingFile getRingFile(String key, int kind) {
+		RingFile ringFile = files.get(key);
+		if (ringFile == null) {
+			try {
+				ringFile = new RingFile(new File(dir, fileName(key)), kind, resolutions);
+				files.put(key, ringFile);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		}
+		return ringFile;
+	}
+
+	private static String fileName(String key) {
+		return key.replaceAll("[^A-Za-z0-9]", "_") + ".rrd";
+	}
+
+	/**
+	 * Opens the file of a key if it exists, to read what was recorded before the last start.
+	 */
+	private synchronized RingFile getExistingRingFile(String key) {
+		RingFile ringFile = files.get(key);
+		if (ringFile == null) {
+			File file = new File(dir, fileName(key));
+			if (file.exists()) {
+				try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+					in.readInt(); // magic
+					in.readInt(); // version
+					int kind = in.readInt();
+					ringFile = new RingFile(file, kind, resolutions);
+					files.put(key, ringFile);
+				} catch (IOException ioe) {
+					ioe.printStackTrace();
+				}
+			}
+		}
+		return ringFile;
+	}
+
+	public String[] getKeys() {
+		return keys;
+	}
+
+	public int[][] getResolutions() {
+		return resolutions;
+	}
+
+	public boolean isArchived(String key) {
+		return versions.containsKey(key);
+	}
+
+	/**
+	 * See {@link RingFile#query(long, long, int)}.
+	 *
+	 * @return null if the key is not archived, an empty list if nothing was recorded for it.
+	 */
+	public List<double[]> query(String key, long from, long to, int step) {
+		if (!isArchived(key)) {
+			return null;
+		}
+		RingFile ringFile = getExistingRingFile(key);
+		return ringFile == null ? Collections.emptyList() : ringFile.query(from, to, step);
+	}
+
+	/**
+	 * @return the step (in seconds) of the archive a query would use.
+	 */
+	public int getStep(long from, int step) {
+		int archive = RingFile.selectArchive(resolutions, from, step, System.currentTimeMillis());
+		int archiveStep = resolutions[archive][0];
+		return Math.max(1, step / archiveStep) * archiveStep;
+	}
+
+	public synchronized void close() {
+		CacheChangeBus.getInstance().unsubscribe(subscription);
+		files.values().forEach(RingFile::close);
+		files.clear();
+	}
+
+	public static class ArchiveBean {
+		private String dir;
+		private String[] keys;
+		private int[][] resolutions;
+		private long recorded;
+		private long bytes;
+	}
+
+	public synchronized ArchiveBean getBean() {
+		ArchiveBean bean = new ArchiveBean();
+		bean.dir = dir.getAbsolutePath();
+		bean.keys = keys;
+		bean.resolutions = resolutions;
+		bean.recorded = recorded;
+		bean.bytes = files.values().stream().mapToLong(rf -> rf.getFile().length()).sum();
+		return bean;
+	}
+}
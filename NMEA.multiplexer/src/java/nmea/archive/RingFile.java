@@ -0,0 +1,284 @@
+package nmea.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The history of one value, round-robin, in a memory-mapped file.
+ * <br>
+ * The file contains several archives, one per resolution (like 1 s for 1 hour, 10 s for 1 day, ...).
+ * Each archive is a ring of slots, a slot covers <code>step</code> seconds and keeps the min, max and average
+ * of the values recorded during that time. A value goes in all the archives. A slot is re-used when its time comes again,
+ * the size of the file is known when it is created, and never changes.
+ * <br>
+ * File layout (big-endian):
+ * <pre>
+ * int magic, int version, int kind, int nb archives,
+ * (int step, int nb slots) * nb archives,
+ * slots, archive after archive: long index (time / step, 0 if empty), float min, float max, double sum, int count.
+ * </pre>
+ * Angles (see {@link #ANGLE_360} and {@link #ANGLE_180}) are unwrapped around the average of their slot,
+ * so that 359 and 1 make 0, not 180.
+ */
+public class RingFile {
+
+	public final static int SCALAR = 0;
+	public final static int ANGLE_360 = 1;
+	public final static int ANGLE_180 = 2;
+
+	private final static int MAGIC = 0x52524431; // RRD1
+	private final static int VERSION = 1;
+	private final static int SLOT_SIZE = 8 + 4 + 4 + 8 + 4;
+
+	private final File file;
+	private final int kind;
+	private final int[][] resolutions; // { step (s), slots }
+	private final int[] offsets;       // Where each archive starts
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * Opens the file, creates it if it does not exist, or if it was made with other resolutions.
+	 *
+	 * @param file        the file
+	 * @param kind        {@link #SCALAR}, {@link #ANGLE_360} or {@link #ANGLE_180}
+	 * @param resolutions <code>{ step in seconds, number of slots }</code>, finest first.
+	 * @throws IOException when the file cannot be mapped
+	 */
+	public RingFile(File file, int kind, int[][] resolutions) throws IOException {
+		this.file = file;
+		this.kind = kind;
+		this.resolutions = resolutions;
+		this.offsets = new int[resolutions.length];
+		int headerSize = 16 + (8 * resolutions.length);
+		long size = headerSize;
+		for (int i = 0; i < resolutions.length; i++) {
+			offsets[i] = (int) size;
+			size += (long) resolutions[i][1] * SLOT_SIZE;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Archive too big for %s: %d bytes", file, size));
+		}
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		boolean fresh = !file.exists() || file.length() != size;
+		this.raf = new RandomAccessFile(file, "rw");
+		if (fresh) {
+			raf.setLength(0L);
+			raf.setLength(size); // Zeros, empty slots.
+		}
+		this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		if (!fresh && !headerMatches()) {
+			System.out.println(String.format("Archive %s does not match its config, reset.", file));
+			for (int i = 0; i < size; i++) {
+				buffer.put(i, (byte) 0);
+			}
+			fresh = true;
+		}
+		if (fresh) {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, kind);
+			buffer.putInt(12, resolutions.length);
+			for (int i = 0; i < resolutions.length; i++) {
+				buffer.putInt(16 + (8 * i), resolutions[i][0]);
+				buffer.putInt(20 + (8 * i), resolutions[i][1]);
+			}
+		}
+	}
+
+	private boolean headerMatches() {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != kind || buffer.getInt(12) != resolutions.length) {
+			return false;
+		}
+		for (int i = 0; i < resolutions.length; i++) {
+			if (buffer.getInt(16 + (8 * i)) != resolutions[i][0] || buffer.getInt(20 + (8 * i)) != resolutions[i][1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getKind() {
+		return kind;
+	}
+
+	public int[][] getResolutions() {
+		return resolutions;
+	}
+
+	private int slotPosition(int archive, long index) {
+		return offsets[archive] + (int) (index % resolutions[archive][1]) * SLOT_SIZE;
+	}
+
+	/**
+	 * Adds a value to the slot of its time, in each archive.
+	 *
+	 * @param time  epoch, in ms
+	 * @param value the value
+	 */
+	public synchronized void record(long time, double value) {
+		long seconds = time / 1_000L;
+		for (int archive = 0; archive < resolutions.length; archive++) {
+			long index = seconds / resolutions[archive][0];
+			int pos = slotPosition(archive, index);
+			if (buffer.getLong(pos) != index) { // Older data, or empty
+				buffer.putLong(pos, index);
+				buffer.putFloat(pos + 8, (float) value);
+				buffer.putFloat(pos + 12, (float) value);
+				buffer.putDouble(pos + 16, value);
+				buffer.putInt(pos + 24, 1);
+			} else {
+				int count = buffer.getInt(pos + 24);
+				double v = value;
+				if (kind != SCALAR) {
+					double average = buffer.getDouble(pos + 16) / count;
+					while (v - average > 180) {
+						v -= 360;
+					}
+					while (v - average < -180) {
+						v += 360;
+					}
+				}
+				buffer.putFloat(pos + 8, (float) Math.min(buffer.getFloat(pos + 8), v));
+				buffer.putFloat(pos + 12, (float) Math.max(buffer.getFloat(pos + 12), v));
+				buffer.putDouble(pos + 16, buffer.getDouble(pos + 16) + v);
+				buffer.putInt(pos + 24, count + 1);
+			}
+		}
+	}
+
+	/**
+	 * The finest archive that goes back to <code>from</code>, and whose step is not smaller than <code>step</code>.
+	 *
+	 * @param resolutions see {@link #RingFile(File, int, int[][])}
+	 * @param from        epoch, in ms
+	 * @param step        in seconds, 0 for the finest available
+	 * @param now         epoch, in ms
+	 * @return the archive index
+	 */
+	public static int selectArchive(int[][] resolutions, long from, int step, long now) {
+		for (int archive = 0; archive < resolutions.length; archive++) {
+			long span = (long) resolutions[archive][0] * resolutions[archive][1] * 1_000L;
+			if (resolutions[archive][0] >= step && now - span <= from) {
+				return archive;
+			}
+		}
+		return resolutions.length - 1;
+	}
+
+	/**
+	 * Reads a time range. Empty slots are skipped.
+	 *
+	 * @param from epoch, in ms
+	 * @param to   epoch, in ms
+	 * @param step in seconds, 0 for the finest available. When bigger than the one of the archive, slots are consolidated.
+	 * @return <code>{ time (ms), min, max, avg }</code>, older first. Time is the beginning of the slot.
+	 */
+	public synchronized List<double[]> query(long from, long to, int step) {
+		List<double[]> points = new ArrayList<>();
+		int archive = selectArchive(resolutions, from, step, System.currentTimeMillis());
+		int archiveStep = resolutions[archive][0];
+		int slots = resolutions[archive][1];
+		long first = (from / 1_000L) / archiveStep;
+		long last = (to / 1_000L) / archiveStep;
+		first = Math.max(first, last - slots + 1); // Not more than one turn
+		int group = Math.max(1, step / archiveStep);
+
+		double[] current = null;
+		long currentGroup = Long.MIN_VALUE;
+		int currentCount = 0;
+		for (long index = first; index <= last; index++) {
+			int pos = slotPosition(archive, index);
+			if (buffer.getLong(pos) != index) {
+				continue;
+			}
+			double min = buffer.getFloat(pos + 8);
+			double max = buffer.getFloat(pos + 12);
+			double sum = buffer.getDouble(pos + 16);
+			int count = buffer.getInt(pos + 24);
+			long g = index / group;
+			if (current == null || g != currentGroup) {
+				if (current != null) {
+					points.add(finish(current, currentCount));
+				}
+				current = new double[] { g * group * archiveStep * 1_000L, min, max, sum };
+				currentGroup = g;
+				currentCount = count;
+			} else {
+				if (kind != SCALAR) { // Bring this slot next to the group
+					double shift = 360 * Math.round(((sum / count) - (current[3] / currentCount)) / 360);
+					min -= shift;
+					max -= shift;
+					sum -= (shift * count);
+				}
+				current[1] = Math.min(current[1], min);
+				current[2] = Math.max(current[2], max);
+				current[3] += sum;
+				currentCount += count;
+			}
+		}
+		if (current != null) {
+			points.add(finish(current, currentCount));
+		}
+		return points;
+	}
+
+	private double[] finish(double[] point, int count) {
+		point[3] /= count;
+		for (int i = 1; i < 4; i++) {
+			point[i] = normalize(point[i]);
+		}
+		return point;
+	}
+
+	private double normalize(double value) {
+		switch (kind) {
+			case ANGLE_360:
+				while (value < 0) {
+					value += 360;
+				}
+				while (value >= 360) {
+					value -= 360;
+				}
+				break;
+			case ANGLE_180:
+				while (value <= -180) {
+					value += 360;
+				}
+				while (value > 180) {
+					value -= 360;
+				}
+				break;
+			default:
+				break;
+		}
+		return value;
+	}
+
+	/**
+	 * Writes the changes to the disk. The OS does it anyway, this is for a clean shutdown.
+	 */
+	public synchronized void force() {
+		buffer.force();
+	}
+
+	public synchronized void close() {
+		buffer.force();
+		try {
+			raf.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package nmea.computers;
+
+import context.ApplicationContext;
+import context.NMEADataCache;
+import nmea.ais.CPAEngine;
+import nmea.api.Multiplexer;
+import nmea.api.NMEAParser;
+import nmea.parser.Angle360;
+import nmea.parser.GeoPos;
+import nmea.parser.Speed;
+import nmea.parser.StringGenerator;
+import nmea.parser.StringParsers;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Collision risk with the AIS targets.
+ * <br>
+ * Feeds the own ship vector (position, COG, SOG, from the cache) to a {@link CPAEngine}
+ * listening to the AIS targets of the {@link ApplicationContext}.
+ * When a target enters (or leaves) the alarm zone, an ALR sentence is produced.
+ * <br>
+ * Properties:
+ * <ul>
+ *   <li><code>range</code>: in nm, targets further than that are ignored. Default 12.</li>
+ *   <li><code>cpa.threshold</code>: in nm. Default 0.5.</li>
+ *   <li><code>tcpa.threshold</code>: in minutes. Default 20.</li>
+ *   <li><code>position.max.age</code>: in seconds, targets whose position is older are not evaluated anymore. Default 360.</li>
+ *   <li><code>prefix</code>: device prefix of the generated sentences. Default OS.</li>
+ *   <li><code>alarm.id</code>: alarm number in the ALR sentences. Default 100.</li>
+ * </ul>
+ * Requires the cache.
+ */
+public class AISCPAComputer extends Computer {
+
+	private final static String DEFAULT_PREFIX = "OS";
+	private final static int DEFAULT_ALARM_ID = 100;
+
+	private final List<String> ownShipStrings = Arrays.asList("RMC", "GLL", "GGA", "VTG");
+
+	private final CPAEngine engine;
+	private String generatedStringsPrefix = DEFAULT_PREFIX;
+	private int alarmId = DEFAULT_ALARM_ID;
+
+	public AISCPAComputer(Multiplexer mux) {
+		super(mux);
+		engine = new CPAEngine(ApplicationContext.getInstance().getAISTargetTable());
+		engine.setAlarmConsumer(this::onAlarm);
+		engine.start();
+	}
+
+	@Override
+	public void setProperties(Properties props) {
+		super.setProperties(props);
+		engine.setRange(Double.parseDouble(props.getProperty("range", String.valueOf(CPAEngine.DEFAULT_RANGE))));
+		engine.setCpaThreshold(Double.parseDouble(props.getProperty("cpa.threshold", String.valueOf(CPAEngine.DEFAULT_CPA_THRESHOLD))));
+		engine.setTcpaThreshold(Double.parseDouble(props.getProperty("tcpa.threshold", String.valueOf(CPAEngine.DEFAULT_TCPA_THRESHOLD))));
+		engine.setPositionMaxAge(Long.parseLong(props.getProperty("position.max.age", String.valueOf(CPAEngine.DEFAULT_POSITION_MAX_AGE / 1_000L))) * 1_000L);
+		String prefix = props.getProperty("prefix", DEFAULT_PREFIX);
+		if (prefix.length() != 2) {
+			throw new RuntimeException("Prefix must exist, and be EXACTLY 2 character long.");
+		}
+		this.generatedStringsPrefix = prefix;
+		this.alarmId = Integer.parseInt(props.getProperty("alarm.id", String.valueOf(DEFAULT_ALARM_ID)));
+	}
+
+	public CPAEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Receives the data, the own ship position and vector are taken from the cache.
+	 *
+	 * @param mess
+	 */
+	@Override
+	public void write(byte[] mess) {
+		String sentence = new String(mess);
+		if (sentence.length() < 7 || !StringParsers.validCheckSum(sentence)) {
+			return;
+		}
+		if (!ownShipStrings.contains(StringParsers.getSentenceID(sentence)) || generatedStringsPrefix.equals(StringParsers.getDeviceID(sentence))) {
+			return;
+		}
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			return;
+		}
+		try {
+			GeoPos position = (GeoPos) cache.get(NMEADataCache.POSITION, false);
+			Angle360 cog = (Angle360) cache.get(NMEADataCache.COG, false);
+			Speed sog = (Speed) cache.get(NMEADataCache.SOG, false);
+			if (position != null) {
+				engine.setOwnShip(position.lat, position.lng,
+								cog != null ? cog.getValue() : 0d,
+								sog != null ? sog.getValue() : 0d);
+			}
+		} catch (Exception ex) {
+			if (this.verbose) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	private void onAlarm(CPAEngine.Risk risk) {
+		String text = String.format("AIS %d%s CPA %.2f nm TCPA %.1f min",
+						risk.getMmsi(),
+						(risk.getName() != null ? " " + risk.getName() : ""),
+						risk.getCpa(),
+						risk.getTcpa());
+		if (this.verbose) {
+			System.out.println(String.format(">>> Collision risk %s: %s", (risk.isAlarm() ? "ON" : "OFF"), text));
+		}
+		String nmeaALR = StringGenerator.generateALR(generatedStringsPrefix, new Date(), alarmId, risk.isAlarm(), false, text);
+		this.produce(nmeaALR + NMEAParser.STANDARD_NMEA_EOS);
+	}
+
+	@Override
+	public void close() {
+		System.out.println("- Stop Computing AIS CPA, " + this.getClass().getName());
+		engine.stop();
+	}
+
+	public static class ComputerBean {
+		private String cls;
+		private String type = "ais-cpa";
+		private double range;
+		private double cpaThreshold;
+		private double tcpaThreshold;
+		private int nbRisks;
+		private boolean verbose;
+		private String prefix;
+
+		public ComputerBean(AISCPAComputer instance) {
+			this.cls = instance.getClass().getName();
+			this.range = instance.engine.getRange();
+			this.cpaThreshold = instance.engine.getCpaThreshold();
+			this.tcpaThreshold = instance.engine.getTcpaThreshold();
+			this.nbRisks = instance.engine.getRisks().size();
+			this.verbose = instance.isVerbose();
+			this.prefix = instance.generatedStringsPrefix;
+		}
+	}
+
+	@Override
+	public Object getBean() {
+		return new ComputerBean(this);
+	}
+}
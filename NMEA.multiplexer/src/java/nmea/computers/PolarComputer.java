@@ -0,0 +1,177 @@
+package nmea.computers;
+
+import context.ApplicationContext;
+import context.NMEADataCache;
+import nmea.api.Multiplexer;
+import nmea.api.NMEAParser;
+import nmea.computers.polars.PolarGrid;
+import nmea.parser.Angle180;
+import nmea.parser.NMEADoubleValueHolder;
+import nmea.parser.Speed;
+import nmea.parser.StringGenerator;
+import nmea.parser.StringParsers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Performance against the polars.
+ * <br>
+ * Uses the TWS, TWA and BSP of the cache (True Wind comes from the {@link ExtraDataComputer}),
+ * and the {@link PolarGrid} of the boat, to produce
+ * <ul>
+ *   <li>The polar speed (target boat speed for this TWS and TWA)</li>
+ *   <li>The performance (BSP, in % of the polar speed)</li>
+ *   <li>The target VMG, upwind or downwind depending on the TWA</li>
+ *   <li>The optimal TWA, to get the target VMG</li>
+ * </ul>
+ * Those go in the cache, and in an XDR sentence (<code>POLAR_SPEED</code>, <code>POLAR_PERF</code>,
+ * <code>TARGET_VMG</code>, <code>OPTIMAL_TWA</code>, generic type).
+ * Computed when a wind or boat speed sentence arrives, at most every <code>min.interval</code> ms.
+ * <pre>
+ * computer.XX.type=polars
+ * computer.XX.polar.file=sample.polars.csv
+ * computer.XX.prefix=OS
+ * computer.XX.min.interval=100
+ * </pre>
+ */
+public class PolarComputer extends Computer {
+
+	private final static String DEFAULT_PREFIX = "OS"; // OlivSoft
+	public final static long DEFAULT_MIN_INTERVAL = 100L; // ms
+
+	private final String generatedStringsPrefix;
+	private final PolarGrid polars;
+	private final String polarFile;
+	private final long minInterval;
+	private long lastComputed = 0L;
+	private long computed = 0L;
+
+	private final List<String> requiredStrings = Arrays.asList(new String[]{"MWV", "VWR", "VWT", "MWD", "VHW"});
+
+	public PolarComputer(Multiplexer mux, PolarGrid polars, String polarFile) {
+		this(mux, polars, polarFile, DEFAULT_PREFIX, DEFAULT_MIN_INTERVAL);
+	}
+
+	public PolarComputer(Multiplexer mux, PolarGrid polars, String polarFile, String prefix, long minInterval) {
+		super(mux);
+		if (prefix == null || prefix.length() != 2) {
+			throw new RuntimeException("Prefix must exist, and be EXACTLY 2 character long.");
+		}
+		this.polars = polars;
+		this.polarFile = polarFile;
+		this.generatedStringsPrefix = prefix;
+		this.minInterval = minInterval;
+	}
+
+	/**
+	 * Receives the data, and potentially produces new ones.
+	 *
+	 * @param mess
+	 */
+	@Override
+	public void write(byte[] mess) {
+		String sentence = new String(mess);
+		if (StringParsers.validCheckSum(sentence)) {
+			String sentenceID = StringParsers.getSentenceID(sentence);
+			// The MWV & Co computed by the True Wind computer are welcome, even with the same prefix.
+			if (requiredStrings.contains(sentenceID)) {
+				long now = System.currentTimeMillis();
+				if (now - lastComputed < minInterval) {
+					return;
+				}
+				lastComputed = now;
+				compute();
+			}
+		}
+	}
+
+	private void compute() {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		double tws, twa, bsp;
+		synchronized (cache) {
+			tws = valueOf(cache.get(NMEADataCache.TWS));
+			twa = valueOf(cache.get(NMEADataCache.TWA));
+			bsp = valueOf(cache.get(NMEADataCache.BSP));
+		}
+		if (Double.isNaN(tws) || Double.isNaN(twa)) {
+			return;
+		}
+		int row = polars.twsIndex(tws);
+		double polarSpeed = polars.getSpeed(row, twa);
+		boolean upwind = (Math.abs(twa) <= 90);
+		double targetVmg = upwind ? polars.getBeatVmg(row) : polars.getRunVmg(row);
+		double optimalTwa = (upwind ? polars.getBeatAngle(row) : polars.getRunAngle(row)) * (twa < 0 ? -1 : 1);
+		double perf = (Double.isNaN(bsp) || polarSpeed < 0.1) ? 0d : (100d * bsp / polarSpeed);
+
+		Map<String, Object> map = new HashMap<>(4);
+		map.put(NMEADataCache.POLAR_SPEED, new Speed(polarSpeed));
+		map.put(NMEADataCache.POLAR_PERF, perf);
+		map.put(NMEADataCache.TARGET_VMG, targetVmg);
+		map.put(NMEADataCache.OPTIMAL_TWA, new Angle180(optimalTwa));
+		cache.putAll(map);
+		computed++;
+
+		if (this.verbose) {
+			System.out.println(String.format(">>> Polars: TWS %.1f, TWA %.0f, BSP %.2f => polar speed %.2f (%.0f%%), target VMG %.2f at %.0f",
+					tws, twa, bsp, polarSpeed, perf, targetVmg, optimalTwa));
+		}
+		String xdr = StringGenerator.generateXDR(generatedStringsPrefix,
+				new StringGenerator.XDRElement(StringGenerator.XDRTypes.GENERIC, round(polarSpeed), "POLAR_SPEED"),
+				new StringGenerator.XDRElement(StringGenerator.XDRTypes.GENERIC, round(perf), "POLAR_PERF"),
+				new StringGenerator.XDRElement(StringGenerator.XDRTypes.GENERIC, round(targetVmg), "TARGET_VMG"),
+				new StringGenerator.XDRElement(StringGenerator.XDRTypes.GENERIC, Math.round(optimalTwa), "OPTIMAL_TWA"));
+		this.produce(xdr + NMEAParser.STANDARD_NMEA_EOS);
+	}
+
+	private static double valueOf(Object value) {
+		return (value instanceof NMEADoubleValueHolder) ? ((NMEADoubleValueHolder) value).getDoubleValue() : Double.NaN;
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 100d) / 100d;
+	}
+
+	@Override
+	public void close() {
+		System.out.println("- Stop Computing Polars, " + this.getClass().getName());
+	}
+
+	public static class ComputerBean {
+		private String cls;
+		private String type = "polars";
+		private String polarFile;
+		private double maxTws;
+		private int gridSize;
+		private long minInterval;
+		private long computed;
+		private boolean verbose = false;
+		private String prefix = "OS";
+
+		public String getPrefix() {
+			return prefix;
+		}
+
+		public boolean isVerbose() {
+			return verbose;
+		}
+
+		public ComputerBean(PolarComputer instance) {
+			this.cls = instance.getClass().getName();
+			this.polarFile = instance.polarFile;
+			this.maxTws = instance.polars.getMaxTws();
+			this.gridSize = instance.polars.getGridSize();
+			this.minInterval = instance.minInterval;
+			this.computed = instance.computed;
+			this.verbose = instance.isVerbose();
+			this.prefix = instance.generatedStringsPrefix;
+		}
+	}
+
+	@Override
+	public Object getBean() {
+		return new ComputerBean(this);
+	}
+}
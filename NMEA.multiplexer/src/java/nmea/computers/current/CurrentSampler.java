@@ -0,0 +1,134 @@
+package nmea.computers.current;
+
+import context.ApplicationContext;
+import context.NMEADataCache;
+import nmea.parser.Angle360;
+import nmea.parser.GeoPos;
+import nmea.parser.Speed;
+import nmea.parser.UTCDate;
+import nmea.parser.UTCTime;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One single thread reading the cache every second, and feeding all the
+ * registered {@link LongTimeCurrentCalculator}s, whatever their buffer length is.
+ * <br>
+ * The thread is started when the first calculator registers, and stops when the last one goes away.
+ */
+public class CurrentSampler {
+
+	private final static long BETWEEN_LOOPS = 1000L; // 1 sec
+
+	private static CurrentSampler instance = null;
+
+	private final List<LongTimeCurrentCalculator> calculators = new CopyOnWriteArrayList<>();
+	private volatile Thread watcher = null;
+	private volatile boolean keepWatching = true;
+
+	private CurrentSampler() {
+	}
+
+	public static synchronized CurrentSampler getInstance() {
+		if (instance == null) {
+			instance = new CurrentSampler();
+		}
+		return instance;
+	}
+
+	public synchronized void register(LongTimeCurrentCalculator calculator) {
+		if (!calculators.contains(calculator)) {
+			calculators.add(calculator);
+		}
+		if (watcher == null) {
+			keepWatching = true;
+			watcher = new Thread(this::sample, "CurrentCalculatorWatcher");
+			watcher.setPriority(Thread.MIN_PRIORITY);
+			watcher.setDaemon(true);
+			watcher.start();
+		}
+	}
+
+	public synchronized void unregister(LongTimeCurrentCalculator calculator) {
+		calculators.remove(calculator);
+		if (calculators.isEmpty() && watcher != null) {
+			Thread stopping = watcher;
+			keepWatching = false;
+			watcher = null;
+			synchronized (stopping) {
+				stopping.notify();
+			}
+		}
+	}
+
+	public int getNbCalculators() {
+		return calculators.size();
+	}
+
+	public List<LongTimeCurrentCalculator> getCalculators() {
+		return new ArrayList<>(calculators);
+	}
+
+	private void sample() {
+		Thread me = Thread.currentThread();
+		while (keepWatching && me == watcher) {
+			NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+			if (cache != null) {
+				try {
+					long time = -1L;
+					Object ot = cache.get(NMEADataCache.GPS_DATE_TIME);
+					if (ot == null) {
+						ot = cache.get(NMEADataCache.GPS_TIME);
+					}
+					if (ot instanceof UTCDate && ((UTCDate) ot).getValue() != null) {
+						time = ((UTCDate) ot).getValue().getTime();
+					} else if (ot instanceof UTCTime && ((UTCTime) ot).getValue() != null) {
+						time = ((UTCTime) ot).getValue().getTime();
+					}
+					Angle360 cmg = null;
+					try { cmg = (Angle360) cache.get(NMEADataCache.CMG); } catch (Exception ex) {}
+					GeoPos position = null;
+					try { position = (GeoPos) cache.get(NMEADataCache.POSITION); } catch (Exception ex) {}
+					Speed bsp = null;
+					try { bsp = (Speed) cache.get(NMEADataCache.BSP); } catch (Exception ex) {}
+					Angle360 hdg = null;
+					try { hdg = (Angle360) cache.get(NMEADataCache.HDG_TRUE); } catch (Exception ex) {}
+
+					if (time != -1L && cmg != null && position != null && bsp != null && hdg != null) {
+						for (LongTimeCurrentCalculator calculator : calculators) {
+							try {
+								calculator.onSample(time, position.lat, position.lng, cmg.getValue(), hdg.getValue(), bsp.getValue(), cache);
+							} catch (Exception ex) {
+								ex.printStackTrace();
+							}
+						}
+					} else {
+						for (LongTimeCurrentCalculator calculator : calculators) {
+							if (calculator.isVerbose()) {
+								System.out.println(String.format("Current sampler, incomplete data: time:%s, cmg:%s, pos:%s, bsp:%s, hdg:%s",
+												(time == -1L ? "null" : new Date(time).toString()), cmg, position, bsp, hdg));
+								break;
+							}
+						}
+					}
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			} else {
+				System.out.println("... No cache yet");
+			}
+			synchronized (me) {
+				try {
+					me.wait(BETWEEN_LOOPS);
+				} catch (InterruptedException ie) {
+					System.out.println("Told to stop!");
+					keepWatching = false;
+				}
+			}
+		}
+		System.out.println("Stop waiting.");
+	}
+}
@@ -1,21 +1,16 @@
 package nmea.computers.current;
 
-import context.ApplicationContext;
 import context.NMEADataCache;
 import nmea.parser.Angle360;
-import nmea.parser.GeoPos;
 import nmea.parser.Speed;
 import nmea.parser.UTCDate;
-import nmea.parser.UTCHolder;
-import nmea.parser.UTCTime;
-import util.MercatorUtil;
-import util.greatcircle.GreatCirclePoint;
-import util.greatcircle.GreatCircle;
+import util.greatcircle.GreatCircleUtil;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -25,6 +20,14 @@ import java.util.Map;
  *
  * It requires GPS Data, Apparent Wind Data, Heading, Deviation and Deviation.
  * There is a section dedicated to those details at http://www.lediouris.net/RaspberryPI/_Articles/readme.html.
+ * <br>
+ * Data are kept in a ring of primitive arrays (one array per data type).
+ * The dead reckoning track is not re-built on each sample: each sample carries the leg (north and east components, in nm)
+ * that brought the boat to it from the previous one, the sum of those legs is maintained incrementally,
+ * adding the newest one, subtracting the one that falls out of the buffer.
+ * The current is the difference between the ground displacement and this dead reckoning displacement.
+ * <br>
+ * Samples are fed by {@link CurrentSampler}, one thread for all the calculators.
  */
 public class LongTimeCurrentCalculator {
 	private boolean verbose = false;
@@ -32,20 +35,28 @@ public class LongTimeCurrentCalculator {
 	public final static long DEFAULT_BUFFER_LENGTH = 600000L; // Milli Seconds
 	private long bufferLength = Long.parseLong(System.getProperty("buffer.length", String.valueOf(DEFAULT_BUFFER_LENGTH))); // Default 10 minutes
 
-	private Thread watcher = null;
-	private boolean keepWatching = true;
-	private long betweenLoops = 1000L; // 1 sec
+	private final static int MIN_CAPACITY = 16;
+	// Sum of the legs is re-computed from scratch every RECOMPUTE_EVERY evictions, to prevent rounding errors from piling up.
+	private final static int RECOMPUTE_EVERY = 3600;
 
-	// Time, Position, CMG, BSP.
-	private List<TimeCurrent> timeCurrent = new ArrayList<>();
-	private List<UTCHolder> timeBuffer = new ArrayList<>();
-	private List<GeoPos> positionBuffer = new ArrayList<>();
-	private List<Angle360> cmgBuffer = new ArrayList<>();
-	private List<Angle360> hdgBuffer = new ArrayList<>();
-	private List<Speed> bspBuffer = new ArrayList<>();
+	// Time, Position, CMG, HDG, BSP, and the DR leg reaching each sample. Struct of arrays, used as a ring.
+	private long[] time;
+	private double[] lat;
+	private double[] lng;
+	private double[] cmg;
+	private double[] hdg;
+	private double[] bsp;
+	private double[] legNorth;
+	private double[] legEast;
 
-	private GreatCirclePoint[] groundData = null;
-	private GreatCirclePoint[] drData = null;
+	private int head = 0; // Index of the oldest sample
+	private int size = 0;
+	private int evictions = 0;
+
+	// Sum of the DR legs, oldest sample excluded (its leg starts before the buffer).
+	private double drNorth = 0d;
+	private double drEast = 0d;
+	private final double[] ground = new double[2]; // Ground displacement, north and east
 
 	public LongTimeCurrentCalculator() {
 		this(DEFAULT_BUFFER_LENGTH);
@@ -53,6 +64,28 @@ public class LongTimeCurrentCalculator {
 
 	public LongTimeCurrentCalculator(long bufferLength) {
 		this.bufferLength = bufferLength;
+		allocate(capacityFor(bufferLength));
+	}
+
+	private static int capacityFor(long bufferLength) {
+		// One sample per second, plus some slack
+		return (int) Math.max(MIN_CAPACITY, (bufferLength / 1000L) + 2);
+	}
+
+	private void allocate(int capacity) {
+		time = new long[capacity];
+		lat = new double[capacity];
+		lng = new double[capacity];
+		cmg = new double[capacity];
+		hdg = new double[capacity];
+		bsp = new double[capacity];
+		legNorth = new double[capacity];
+		legEast = new double[capacity];
+		head = 0;
+		size = 0;
+		evictions = 0;
+		drNorth = 0d;
+		drEast = 0d;
 	}
 
 	public boolean isVerbose() {
@@ -67,252 +100,225 @@ public class LongTimeCurrentCalculator {
 		return bufferLength;
 	}
 
-	public int getBufferSize() {
-		return timeCurrent.size();
+	public synchronized int getBufferSize() {
+		return size;
 	}
 
 	/**
-	 * et the time buffer length, in ms.
+	 * Set the time buffer length, in ms.
 	 * @param bufferLength in ms.
 	 */
-	public void setBufferLength(long bufferLength) {
+	public synchronized void setBufferLength(long bufferLength) {
 		this.bufferLength = bufferLength;
+		allocate(capacityFor(bufferLength));
 	}
 
-	public void resetBuffers() {
-		timeCurrent = new ArrayList<>();
-		timeBuffer = new ArrayList<>();
-		positionBuffer = new ArrayList<>();
-		cmgBuffer = new ArrayList<>();
-		hdgBuffer = new ArrayList<>();
-		bspBuffer = new ArrayList<>();
+	public synchronized void resetBuffers() {
+		allocate(time.length);
 	}
 
-	public void start() {
-		System.out.println(this.getClass().getName() + " is starting...");
-		final long _betweenLoops = betweenLoops;
-		watcher = new Thread("CurrentCalculatorWatcher") {
-			private final long BETWEEN_LOOPS = _betweenLoops;
-			private long waitTime = BETWEEN_LOOPS;
-
-			public void run() {
-				this.setPriority(Thread.MIN_PRIORITY);
-				while (keepWatching) {
-					waitTime = BETWEEN_LOOPS;
-					NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
-					if (cache != null) {
-						if (verbose)
-							System.out.println("There is a cache...");
-						try {
-				//    synchronized (cache)
-							{
-								Object ot = /*(UTCDate)*/cache.get(NMEADataCache.GPS_DATE_TIME);
-								if (ot == null) {
-									ot = /*(UTCTime)*/cache.get(NMEADataCache.GPS_TIME);
-									if (verbose) System.out.println("Time from NMEADataCache.GPS_TIME");
-								} else if (verbose)
-									System.out.println("Time from NMEADataCache.GPS_DATE_TIME");
-
-								UTCHolder utcDate = null;
-								if (ot instanceof UTCDate)
-									utcDate = new UTCHolder((UTCDate) ot);
-								else
-									utcDate = new UTCHolder((UTCTime) ot);
-								Angle360 cmg = null;
-								try { cmg = (Angle360) cache.get(NMEADataCache.CMG); } catch (Exception ex) {}
-								GeoPos position = null;
-								try { position = (GeoPos) cache.get(NMEADataCache.POSITION); } catch (Exception ex) {}
-								Speed bsp = null;
-								try { bsp = (Speed) cache.get(NMEADataCache.BSP); } catch (Exception ex) {}
-								Angle360 hdg = null;
-								try { hdg = (Angle360) cache.get(NMEADataCache.HDG_TRUE); } catch (Exception ex) {}
-								// From a file: reset?
-								//            if (timeBuffer.size() > 1 && ((timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() > utcDate.getValue().getTime())))
-								if (timeBuffer != null &&
-												timeBuffer.size() > 1 &&
-												timeBuffer.get(timeBuffer.size() - 1) != null &&
-												!timeBuffer.get(timeBuffer.size() - 1).isNull() &&
-												utcDate != null &&
-												!utcDate.isNull() &&
-												utcDate.getValue() != null &&
-												((timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() - utcDate.getValue().getTime()) > 1000)) {
-									// Buffer Reset
-						//    System.out.println("== Reseting data buffers: last date in buffer=[" + SDF2.format(timeBuffer.get(timeBuffer.size() - 1).getValue()) + "] > current Date=[" + SDF2.format(utcDate.getValue()) + "]");
-									resetDataBuffers();
-								}
-
-								if (timeBuffer != null &&
-												utcDate != null &&
-												!utcDate.isNull() &&
-												utcDate.getValue() != null &&
-												(timeBuffer.size() == 0 ||
-																(timeBuffer.size() > 0 &&
-																				timeBuffer.get(timeBuffer.size() - 1).getValue() != null &&
-																				(timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() < utcDate.getValue().getTime())))) {
-									if (utcDate != null && cmg != null && position != null && bsp != null && hdg != null) {
-										if (timeBuffer.size() > 0) {
-											UTCHolder oldest = timeBuffer.get(0);
-											boolean keepGoing = true;
-
-											while (keepGoing && oldest.getValue().getTime() < (utcDate.getValue().getTime() - bufferLength)) {
-												timeBuffer.remove(0);
-												positionBuffer.remove(0);
-												cmgBuffer.remove(0);
-												bspBuffer.remove(0);
-												hdgBuffer.remove(0);
-
-												if (timeBuffer.size() > 0)
-													oldest = timeBuffer.get(0);
-												else
-													keepGoing = false;
-											}
-										}
-
-										timeBuffer.add(utcDate);
-										positionBuffer.add(position);
-										//                System.out.println("Adding position:" + position.toString());
-										cmgBuffer.add(cmg);
-										bspBuffer.add(bsp);
-										hdgBuffer.add(hdg);
-										groundData = new GreatCirclePoint[positionBuffer.size()];
-										int index = 0;
-										for (GeoPos gp : positionBuffer) {
-											groundData[index++] = new GreatCirclePoint(gp.lat, gp.lng);
-										}
-										index = 0;
-										drData = new GreatCirclePoint[positionBuffer.size()];
-										GeoPos drPos = positionBuffer.get(0);
-										int size = positionBuffer.size();
-										for (int i = 0; i < size; i++) {
-											if (i > 0) {
-												long timeInterval = timeBuffer.get(i).getValue().getTime() - timeBuffer.get(i - 1).getValue().getTime();
-												double bspeed = bspBuffer.get(i).getDoubleValue();
-												//                    System.out.println("-- TimeInterval:" + timeInterval + ", bsp:" + bspeed);
-												if (bspeed > 0) {
-													double dist = bspeed * ((double) timeInterval / (double) 3600000L); // in minutes (miles)
-													double rv = cmgBuffer.get(i - 1).getValue();
-													//                      System.out.println("** In " + timeInterval + " ms, at " + bspeed + " kts, from " + drPos.toString() + " dist:" + dist + ", hdg:" + hdg + "... ");
-													if (dist > 0) {
-														GreatCirclePoint pt = MercatorUtil.deadReckoning(drPos.lat, drPos.lng, dist, rv);
-														//                        System.out.println("In " + timeInterval + " ms, from " + drPos.toString() + " dist:" + dist + ", hdg:" + hdg + ", ends up " + pt.toString());
-														drPos = new GeoPos(pt.getL(), pt.getG());
-													}
-												}
-											}
-											drData[i] = new GreatCirclePoint(drPos.lat, drPos.lng);
-										}
-										GreatCirclePoint geoFrom = new GreatCirclePoint(Math.toRadians(drData[drData.length - 1].getL()),
-														Math.toRadians(drData[drData.length - 1].getG()));
-										GreatCirclePoint geoTo = new GreatCirclePoint(Math.toRadians(groundData[groundData.length - 1].getL()),
-														Math.toRadians(groundData[groundData.length - 1].getG()));
-										double dist = GreatCircle.calculateRhumLineDistance(geoFrom, geoTo);
-										double dir = Math.toDegrees(GreatCircle.calculateRhumLineRoute(geoFrom, geoTo));
-										double hourRatio = (double) (timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() - timeBuffer.get(0).getValue().getTime()) / (double) 3600000L;
-										double speed = dist / hourRatio;
-										timeCurrent.add(new TimeCurrent(timeBuffer.get(timeBuffer.size() - 1).getValue().getTime(), speed, dir));
-										// trim current buffer
-										long oldest = timeCurrent.get(0).getTime();
-										boolean keepGoing = true;
-										while (keepGoing && oldest < (timeCurrent.get(timeCurrent.size() - 1).getTime() - bufferLength)) {
-											timeCurrent.remove(0);
-											if (timeBuffer.size() > 0)
-												oldest = timeCurrent.get(0).getTime();
-											else
-												keepGoing = false;
-										}
-										if (verbose)
-											System.out.println("Inserting Current: on:" + NumberFormat.getInstance().format(bufferLength) + " ms, " + speed + " kts, dir:" + dir);
-
-										((Map<Long, NMEADataCache.CurrentDefinition>) ApplicationContext.getInstance().getDataCache().get(NMEADataCache.CALCULATED_CURRENT)).put(bufferLength,
-														new NMEADataCache.CurrentDefinition(
-																		bufferLength,
-																		new Speed(speed),
-																		new Angle360(dir),
-																		timeBuffer.size(),
-																		timeBuffer.get(0).toString(),
-																		timeBuffer.get(timeBuffer.size() - 1).toString(),
-																		timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() - timeBuffer.get(0).getValue().getTime()));
+	/**
+	 * Writes the samples in the buffer, oldest first, for a warm restart. See {@link #readSamples(DataInput)}.
+	 */
+	public synchronized void writeSamples(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			int idx = index(i);
+			out.writeLong(time[idx]);
+			out.writeDouble(lat[idx]);
+			out.writeDouble(lng[idx]);
+			out.writeDouble(cmg[idx]);
+			out.writeDouble(hdg[idx]);
+			out.writeDouble(bsp[idx]);
+			out.writeDouble(legNorth[idx]);
+			out.writeDouble(legEast[idx]);
+		}
+	}
 
-										if (verbose) {
-											Map<Long, NMEADataCache.CurrentDefinition> map = (Map<Long, NMEADataCache.CurrentDefinition>) ApplicationContext.getInstance().getDataCache().get(NMEADataCache.CALCULATED_CURRENT);
-											System.out.println("Calculated Current Map:" + map.size() + " entry(ies)");
-										}
-									}
-								} else if (verbose) {
-									//  if (!utcDate.isNull() && (timeBuffer.size() == 0 || (timeBuffer.size() > 0 && (timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() < utcDate.getValue().getTime()))))
-									System.out.println("utcDate is " + (utcDate == null || utcDate.isNull() ? "" : "not ") + "null");
-									System.out.println("timeBuffer.size() = " + timeBuffer.size());
-									System.out.println("utcDate        :" + (utcDate.isNull() ? "" : new Date(utcDate.getValue().getTime()).toString()));
-									System.out.println("last timeBuffer:" + (timeBuffer.size() > 0 ? new Date(timeBuffer.get(timeBuffer.size() - 1).getValue().getTime()).toString() : "none"));
-									try {
-										if (timeBuffer.size() > 0)
-											System.out.println("-> " + ((timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() < utcDate.getValue().getTime()) ? "true" : "false"));
-									} catch (Exception ex) {
-										ex.printStackTrace();
-									}
-								}
-							}
-						} catch (Exception ex) {
-							ex.printStackTrace();
-						}
-					} else
-						System.out.println("... No cache yet");
-					synchronized (this) {
-						if (verbose)
-							System.out.println("  ...LongTimeCurrentCalculator going to wait, at " + new Date().toString() + " (will wait for " + (waitTime / 1000) + " s)");
-						try {
-							wait(waitTime);
-						} catch (InterruptedException ie) {
-							System.out.println("Told to stop!");
-							keepWatching = false;
-						}
-					}
-				}
-				System.out.println("Stop waiting.");
+	/**
+	 * Replaces the buffer with samples written by {@link #writeSamples(DataOutput)}.
+	 * The ones older than the buffer length go away with the next sample.
+	 */
+	public synchronized void readSamples(DataInput in) throws IOException {
+		int nb = in.readInt();
+		allocate(Math.max(time.length, nb));
+		for (int i = 0; i < nb; i++) {
+			time[i] = in.readLong();
+			lat[i] = in.readDouble();
+			lng[i] = in.readDouble();
+			cmg[i] = in.readDouble();
+			hdg[i] = in.readDouble();
+			bsp[i] = in.readDouble();
+			legNorth[i] = in.readDouble();
+			legEast[i] = in.readDouble();
+			if (i > 0) {
+				drNorth += legNorth[i];
+				drEast += legEast[i];
 			}
-		};
-		keepWatching = true;
-		watcher.start();
+		}
+		size = nb;
 	}
 
-	private void resetDataBuffers() {
-		timeBuffer = new ArrayList<>();
-		positionBuffer = new ArrayList<>();
-		cmgBuffer = new ArrayList<>();
-		hdgBuffer = new ArrayList<>();
-		bspBuffer = new ArrayList<>();
-		timeCurrent = new ArrayList<>();
+	public void start() {
+		System.out.println(this.getClass().getName() + " is starting...");
+		CurrentSampler.getInstance().register(this);
 	}
 
 	public void stop() {
 		System.out.println("    " + this.getClass().getName() + "(" + NumberFormat.getInstance().format(this.bufferLength) + " ms) is terminating (at epoch " + System.currentTimeMillis() + ")");
-		keepWatching = false;
-		synchronized (watcher) {
-			watcher.notify();
-		}
+		CurrentSampler.getInstance().unregister(this);
 	}
 
-	private static class TimeCurrent {
-		private final long time;
-		private final double speed;
-		private final double dir;
+	private int index(int i) {
+		int idx = head + i;
+		return idx >= time.length ? idx - time.length : idx;
+	}
 
-		public TimeCurrent(long time, double speed, double dir) {
-			this.time = time;
-			this.speed = speed;
-			this.dir = dir;
+	private void grow() {
+		int capacity = time.length * 2;
+		long[] newTime = new long[capacity];
+		double[] newLat = new double[capacity];
+		double[] newLng = new double[capacity];
+		double[] newCmg = new double[capacity];
+		double[] newHdg = new double[capacity];
+		double[] newBsp = new double[capacity];
+		double[] newLegNorth = new double[capacity];
+		double[] newLegEast = new double[capacity];
+		for (int i = 0; i < size; i++) {
+			int idx = index(i);
+			newTime[i] = time[idx];
+			newLat[i] = lat[idx];
+			newLng[i] = lng[idx];
+			newCmg[i] = cmg[idx];
+			newHdg[i] = hdg[idx];
+			newBsp[i] = bsp[idx];
+			newLegNorth[i] = legNorth[idx];
+			newLegEast[i] = legEast[idx];
 		}
+		time = newTime;
+		lat = newLat;
+		lng = newLng;
+		cmg = newCmg;
+		hdg = newHdg;
+		bsp = newBsp;
+		legNorth = newLegNorth;
+		legEast = newLegEast;
+		head = 0;
+	}
 
-		public long getTime() {
-			return time;
+	private void evictOldest() {
+		head = index(1);
+		size--;
+		if (size > 0) { // The leg reaching the new oldest sample is now out of the buffer.
+			drNorth -= legNorth[head];
+			drEast -= legEast[head];
+		} else {
+			drNorth = 0d;
+			drEast = 0d;
 		}
+		if (++evictions >= RECOMPUTE_EVERY) {
+			evictions = 0;
+			drNorth = 0d;
+			drEast = 0d;
+			for (int i = 1; i < size; i++) {
+				int idx = index(i);
+				drNorth += legNorth[idx];
+				drEast += legEast[idx];
+			}
+		}
+	}
 
-		public double getSpeed() {
-			return speed;
+	/**
+	 * Invoked by the {@link CurrentSampler}, about every second.
+	 *
+	 * @param utc      GPS time, epoch, in ms
+	 * @param latitude in degrees
+	 * @param longitude in degrees
+	 * @param cmgValue in degrees
+	 * @param hdgValue in degrees
+	 * @param bspValue in knots
+	 * @param cache where to push the result
+	 */
+	synchronized void onSample(long utc, double latitude, double longitude, double cmgValue, double hdgValue, double bspValue, NMEADataCache cache) {
+		// From a file: reset?
+		if (size > 1 && (time[index(size - 1)] - utc) > 1000) {
+			resetBuffers();
 		}
+		if (size > 0 && time[index(size - 1)] >= utc) {
+			if (verbose) {
+				System.out.println("utcDate        :" + new Date(utc).toString());
+				System.out.println("last timeBuffer:" + new Date(time[index(size - 1)]).toString());
+			}
+			return;
+		}
+		// Trim
+		while (size > 0 && time[head] < (utc - bufferLength)) {
+			evictOldest();
+		}
+		if (size == time.length) {
+			grow();
+		}
+		double north = 0d, east = 0d;
+		if (size > 0) {
+			int prev = index(size - 1);
+			long timeInterval = utc - time[prev];
+			if (bspValue > 0) {
+				double dist = bspValue * ((double) timeInterval / (double) 3600000L); // in minutes (miles)
+				double rv = Math.toRadians(cmg[prev]);
+				north = dist * Math.cos(rv);
+				east = dist * Math.sin(rv);
+			}
+		}
+		int idx = index(size);
+		time[idx] = utc;
+		lat[idx] = latitude;
+		lng[idx] = longitude;
+		cmg[idx] = cmgValue;
+		hdg[idx] = hdgValue;
+		bsp[idx] = bspValue;
+		legNorth[idx] = north;
+		legEast[idx] = east;
+		if (size > 0) {
+			drNorth += north;
+			drEast += east;
+		}
+		size++;
+
+		if (size < 2) {
+			return;
+		}
+		int oldest = head;
+		long timeSpan = utc - time[oldest];
+		// Ground displacement, in nm
+		GreatCircleUtil.displacementInNM(lat[oldest], lng[oldest], latitude, longitude, ground);
+		double groundNorth = ground[0];
+		double groundEast = ground[1];
+		// From DR to ground
+		double currentNorth = groundNorth - drNorth;
+		double currentEast = groundEast - drEast;
+		double dist = Math.sqrt((currentNorth * currentNorth) + (currentEast * currentEast));
+		double dir = Math.toDegrees(Math.atan2(currentEast, currentNorth));
+		if (dir < 0) {
+			dir += 360d;
+		}
+		double hourRatio = (double) timeSpan / (double) 3600000L;
+		double speed = dist / hourRatio;
+		if (verbose)
+			System.out.println("Inserting Current: on:" + NumberFormat.getInstance().format(bufferLength) + " ms, " + speed + " kts, dir:" + dir);
+
+		((Map<Long, NMEADataCache.CurrentDefinition>) cache.get(NMEADataCache.CALCULATED_CURRENT)).put(bufferLength,
+						new NMEADataCache.CurrentDefinition(
+										bufferLength,
+										new Speed(speed),
+										new Angle360(dir),
+										size,
+										new UTCDate(new Date(time[oldest])).toString(),
+										new UTCDate(new Date(utc)).toString(),
+										timeSpan));
 
-		public double getDir() {
-			return dir;
+		if (verbose) {
+			Map<Long, NMEADataCache.CurrentDefinition> map = (Map<Long, NMEADataCache.CurrentDefinition>) cache.get(NMEADataCache.CALCULATED_CURRENT);
+			System.out.println("Calculated Current Map:" + map.size() + " entry(ies)");
 		}
 	}
 }
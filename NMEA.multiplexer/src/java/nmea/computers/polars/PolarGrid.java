@@ -0,0 +1,220 @@
+package nmea.computers.polars;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The polars of a boat, interpolated once for all on a dense grid: every 0.1 knot of TWS, every degree of TWA.
+ * A lookup is then an index computation and an array read, no interpolation at run time.
+ * <br>
+ * The grid is one <code>float[]</code>, row by row (one row of 181 angles per TWS step).
+ * For each TWS step, the best beat and run (angle and VMG) are also computed when loading.
+ * <br>
+ * The polar file is a table, the first line has the TWS values, each next line starts with a TWA, followed by the boat speeds
+ * for each TWS:
+ * <pre>
+ * twa/tws;6;8;10;12;14;16;20
+ * 52;5.46;6.28;6.79;7.05;7.19;7.27;7.36
+ * 60;5.79;6.56;7.02;7.27;7.42;7.52;7.63
+ * ...
+ * </pre>
+ * Separators can be <code>;</code>, <code>,</code>, tabs or spaces. Lines starting with <code>#</code> are comments.
+ * TWS and TWA are ascending, TWA in [0, 180], each line has a speed for each TWS.
+ * Between TWS 0 and the first column, and TWA 0 and the first line, speeds go linearly down to 0.
+ * Above the last TWS or TWA of the table, the last one is used.
+ */
+public class PolarGrid {
+
+	public final static double TWS_STEP = 0.1;
+	public final static int NB_TWA = 181; // 0 to 180, by 1 degree
+
+	private final int nbTws;
+	private final float[] speeds;
+	private final float[] beatAngle;
+	private final float[] beatVmg;
+	private final float[] runAngle;
+	private final float[] runVmg;
+
+	/**
+	 * @param tws the TWS of the table, ascending
+	 * @param twa the TWA of the table, ascending, in [0, 180]
+	 * @param bsp the boat speeds, <code>bsp[twa index][tws index]</code>
+	 */
+	public PolarGrid(double[] tws, double[] twa, double[][] bsp) {
+		if (tws.length == 0 || twa.length == 0) {
+			throw new RuntimeException("Empty polar table");
+		}
+		this.nbTws = (int) Math.round(tws[tws.length - 1] / TWS_STEP) + 1;
+		this.speeds = new float[nbTws * NB_TWA];
+		this.beatAngle = new float[nbTws];
+		this.beatVmg = new float[nbTws];
+		this.runAngle = new float[nbTws];
+		this.runVmg = new float[nbTws];
+
+		for (int i = 0; i < nbTws; i++) {
+			double ws = i * TWS_STEP;
+			for (int a = 0; a < NB_TWA; a++) {
+				speeds[(i * NB_TWA) + a] = (float) interpolate(tws, twa, bsp, ws, a);
+			}
+			for (int a = 0; a < NB_TWA; a++) {
+				double vmg = speeds[(i * NB_TWA) + a] * Math.cos(Math.toRadians(a));
+				if (vmg > beatVmg[i]) {
+					beatVmg[i] = (float) vmg;
+					beatAngle[i] = a;
+				}
+				if (-vmg > runVmg[i]) {
+					runVmg[i] = (float) -vmg;
+					runAngle[i] = a;
+				}
+			}
+		}
+	}
+
+	private static double interpolate(double[] tws, double[] twa, double[][] bsp, double ws, double wa) {
+		int[] ti = bracket(tws, ws);
+		int[] ai = bracket(twa, wa);
+		// Speeds at the two bracketing angles, for the wind speed
+		double low = interpolate(tws, ti, ws, bsp[Math.max(ai[0], 0)]);
+		double high = interpolate(tws, ti, ws, bsp[ai[1]]);
+		if (ai[0] < 0) { // Below the first angle, towards 0 at TWA 0
+			low = 0d;
+		}
+		double a0 = ai[0] < 0 ? 0d : twa[ai[0]];
+		double a1 = twa[ai[1]];
+		return a1 == a0 ? high : low + ((high - low) * (wa - a0) / (a1 - a0));
+	}
+
+	private static double interpolate(double[] tws, int[] ti, double ws, double[] row) {
+		double low = ti[0] < 0 ? 0d : row[ti[0]];
+		double high = row[ti[1]];
+		double w0 = ti[0] < 0 ? 0d : tws[ti[0]];
+		double w1 = tws[ti[1]];
+		return w1 == w0 ? high : low + ((high - low) * (ws - w0) / (w1 - w0));
+	}
+
+	/**
+	 * @return the indexes of the values around <code>value</code>. -1 for the lower one when below the first value,
+	 * both on the last one when above.
+	 */
+	private static int[] bracket(double[] values, double value) {
+		if (value <= values[0]) {
+			return value == values[0] ? new int[] { 0, 0 } : new int[] { -1, 0 };
+		}
+		for (int i = 1; i < values.length; i++) {
+			if (value <= values[i]) {
+				return new int[] { i - 1, i };
+			}
+		}
+		return new int[] { values.length - 1, values.length - 1 };
+	}
+
+	/**
+	 * @param tws in knots
+	 * @return the row of this TWS, to use with the other methods
+	 */
+	public int twsIndex(double tws) {
+		int idx = (int) Math.round(tws / TWS_STEP);
+		return idx < 0 ? 0 : (idx >= nbTws ? nbTws - 1 : idx);
+	}
+
+	/**
+	 * @param twsIndex from {@link #twsIndex(double)}
+	 * @param twa      in degrees, either side
+	 * @return the target boat speed, in knots
+	 */
+	public float getSpeed(int twsIndex, double twa) {
+		int a = (int) Math.round(Math.abs(twa));
+		if (a > 180) { // 0-360
+			a = 360 - a;
+		}
+		return speeds[(twsIndex * NB_TWA) + (a < 0 ? 0 : (a > 180 ? 180 : a))];
+	}
+
+	public float getBeatAngle(int twsIndex) {
+		return beatAngle[twsIndex];
+	}
+
+	public float getBeatVmg(int twsIndex) {
+		return beatVmg[twsIndex];
+	}
+
+	public float getRunAngle(int twsIndex) {
+		return runAngle[twsIndex];
+	}
+
+	public float getRunVmg(int twsIndex) {
+		return runVmg[twsIndex];
+	}
+
+	public double getMaxTws() {
+		return (nbTws - 1) * TWS_STEP;
+	}
+
+	public int getGridSize() {
+		return speeds.length;
+	}
+
+	public static PolarGrid load(File file) throws IOException {
+		try (Reader reader = new FileReader(file)) {
+			return load(reader);
+		}
+	}
+
+	public static PolarGrid load(Reader reader) throws IOException {
+		BufferedReader br = new BufferedReader(reader);
+		double[] tws = null;
+		List<Double> twa = new ArrayList<>();
+		List<double[]> bsp = new ArrayList<>();
+		String line;
+		int lineNo = 0;
+		while ((line = br.readLine()) != null) {
+			lineNo++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] cells = line.split("[;,\\t ]+");
+			try {
+				if (tws == null) { // Header, the first cell is a label
+					tws = new double[cells.length - 1];
+					for (int i = 1; i < cells.length; i++) {
+						tws[i - 1] = Double.parseDouble(cells[i]);
+					}
+					for (int i = 1; i < tws.length; i++) {
+						if (tws[i] <= tws[i - 1]) {
+							throw new RuntimeException(String.format("Polar file, line %d: TWS %s not ascending", lineNo, cells[i + 1]));
+						}
+					}
+				} else {
+					if (cells.length - 1 < tws.length) {
+						throw new RuntimeException(String.format("Polar file, line %d: %d speed(s), %d expected", lineNo, cells.length - 1, tws.length));
+					}
+					double angle = Double.parseDouble(cells[0]);
+					if (angle < 0 || angle > 180) {
+						throw new RuntimeException(String.format("Polar file, line %d: TWA %s not in [0, 180]", lineNo, cells[0]));
+					}
+					if (!twa.isEmpty() && angle <= twa.get(twa.size() - 1)) {
+						throw new RuntimeException(String.format("Polar file, line %d: TWA %s not ascending", lineNo, cells[0]));
+					}
+					double[] row = new double[tws.length];
+					for (int i = 1; i <= tws.length; i++) {
+						row[i - 1] = Double.parseDouble(cells[i]);
+					}
+					twa.add(angle);
+					bsp.add(row);
+				}
+			} catch (NumberFormatException nfe) {
+				throw new RuntimeException(String.format("Polar file, line %d: %s", lineNo, nfe.getMessage()));
+			}
+		}
+		if (tws == null || twa.isEmpty()) {
+			throw new RuntimeException("No polar data found");
+		}
+		return new PolarGrid(tws, twa.stream().mapToDouble(Double::doubleValue).toArray(), bsp.toArray(new double[bsp.size()][]));
+	}
+}
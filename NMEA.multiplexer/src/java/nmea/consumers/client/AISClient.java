@@ -1,18 +1,17 @@
 package nmea.consumers.client;
 
-import nmea.ais.AISParser;
+import nmea.ais.AISTarget;
+import nmea.ais.AISTargetTable;
 
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
-import java.util.Map;
-import java.util.HashMap;
 
 public class AISClient {
 	public static void main(String[] args) {
 		try {
-			Map<Integer, AISParser.AISRecord> map = new HashMap<>();
+			AISTargetTable targets = new AISTargetTable();
 
 			URL aisSFBayURL = new URL("http://207.7.148.216:9009");
 			InputStream aisIS = aisSFBayURL.openStream();
@@ -23,10 +22,9 @@ public class AISClient {
 				if (line != null) {
 					if (!line.startsWith("#")) {
 						try {
-							AISParser.AISRecord rec = AISParser.parseAIS(line);
-							if (rec != null) {
-								map.put(rec.getMmsi(), rec);
-								System.out.println("(" + map.size() + " boat(s)) " + rec.toString());
+							AISTarget target = targets.feed(line);
+							if (target != null) {
+								System.out.println("(" + targets.size() + " boat(s)) " + target.toString());
 							}
 						} catch (Exception ex) {
 							System.err.println(ex.toString());
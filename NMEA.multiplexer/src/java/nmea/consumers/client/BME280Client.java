@@ -48,7 +48,7 @@ public class BME280Client extends NMEAClient {
 		if (verbose)
 			System.out.println(">> Received from BME280:" + e.getContent());
 		if (multiplexer != null) {
-			multiplexer.onData(e.getContent());
+			multiplexer.onData(this, e.getContent());
 		}
 	}
 
@@ -31,7 +31,7 @@ public class ClientSkeleton extends NMEAClient {
 		if (verbose)
 			System.out.println("Received from Skeleton:" + e.getContent());
 		if (multiplexer != null) {
-			multiplexer.onData(e.getContent());
+			multiplexer.onData(this, e.getContent());
 		}
 	}
 
@@ -31,7 +31,7 @@ public class DataFileClient extends NMEAClient {
 		if (verbose)
 			System.out.println(">> DataFileClient >> Received from File:" + e.getContent());
 		if (multiplexer != null) {
-			multiplexer.onData(e.getContent());
+			multiplexer.onData(this, e.getContent());
 		}
 	}
 
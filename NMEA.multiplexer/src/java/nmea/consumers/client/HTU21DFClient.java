@@ -48,7 +48,7 @@ public class HTU21DFClient extends NMEAClient {
 		if (verbose)
 			System.out.println("Received from HTU21DF:" + e.getContent());
 		if (multiplexer != null) {
-			multiplexer.onData(e.getContent());
+			multiplexer.onData(this, e.getContent());
 		}
 	}
 
@@ -0,0 +1,121 @@
+package nmea.consumers.client;
+
+import nmea.api.LatencyTracer;
+import nmea.api.Multiplexer;
+import nmea.api.NMEAClient;
+import nmea.api.NMEAEvent;
+import nmea.api.NMEAReader;
+import nmea.consumers.reader.LinkReader;
+
+import java.util.Map;
+
+/**
+ * Read NMEA Data from another multiplexer, see {@link nmea.forwarders.link.LinkServer}.
+ * <br>
+ * The sentences come already parsed, they are not parsed again. They only go through the filters of this channel,
+ * and reach the Multiplexer with the channel and the time they were received on the other side.
+ */
+public class LinkClient extends NMEAClient {
+	public LinkClient() {
+		this(null, null, null);
+	}
+
+	public LinkClient(Multiplexer mux) {
+		this(null, null, mux);
+	}
+
+	public LinkClient(String[] s, String[] sa, Multiplexer mux) {
+		super(s, sa, mux);
+		this.verbose = "true".equals(System.getProperty("link.data.verbose", "false"));
+	}
+
+	@Override
+	public void setReader(NMEAReader r) {
+		super.setReader(r);
+		if (r instanceof LinkReader) {
+			((LinkReader) r).setRelay(this::onRelayed);
+		}
+	}
+
+	private void onRelayed(String upstream, String sentence, long received) {
+		if (getParser() != null && !getParser().passesFilters(sentence)) {
+			return;
+		}
+		if (verbose)
+			System.out.println("Received from Link :" + sentence);
+		if (multiplexer != null) {
+			LatencyTracer.getInstance().begin(sentence);
+			multiplexer.onData(this, upstream, sentence, received);
+		}
+	}
+
+	@Override
+	public void dataDetectedEvent(NMEAEvent e) {
+		if (verbose)
+			System.out.println("Received from Link :" + e.getContent());
+		if (multiplexer != null) {
+			multiplexer.onData(this, e.getContent());
+		}
+	}
+
+	public static class LinkBean implements ClientBean {
+		private String cls;
+		private String type = "link";
+		private int port;
+		private String hostname;
+		private long lastSequence;
+		private long sentences;
+		private long frames;
+		private long connections;
+		private long missed;
+		private Map<String, LinkReader.SourceStats> sources;
+		private String[] deviceFilters;
+		private String[] sentenceFilters;
+		private boolean verbose;
+
+		public LinkBean(LinkClient instance) {
+			LinkReader reader = (LinkReader) instance.getReader();
+			cls = instance.getClass().getName();
+			port = reader.getPort();
+			hostname = reader.getHostname();
+			lastSequence = reader.getLastSequence();
+			sentences = reader.getSentences();
+			frames = reader.getFrames();
+			connections = reader.getConnections();
+			missed = reader.getMissed();
+			sources = reader.getSources();
+			verbose = instance.isVerbose();
+			deviceFilters = instance.getDevicePrefix();
+			sentenceFilters = instance.getSentenceArray();
+		}
+
+		@Override
+		public String getType() {
+			return this.type;
+		}
+
+		public int getPort() {
+			return port;
+		}
+
+		public String getHostname() {
+			return this.hostname;
+		}
+
+		@Override
+		public boolean getVerbose() {
+			return this.verbose;
+		}
+
+		@Override
+		public String[] getDeviceFilters() { return this.deviceFilters; };
+
+		@Override
+		public String[] getSentenceFilters() { return this.sentenceFilters; };
+	}
+
+	@Override
+	public Object getBean() {
+		return new LinkBean(this);
+	}
+}
@@ -31,7 +31,7 @@ public class TCPClient extends NMEAClient {
 		if (verbose)
 			System.out.println("Received from TCP :" + e.getContent());
 		if (multiplexer != null) {
-			multiplexer.onData(e.getContent());
+			multiplexer.onData(this, e.getContent());
 		}
 	}
 
@@ -45,11 +45,25 @@ public class TCPClient extends NMEAClient {
 		private String[] deviceFilters;
 		private String[] sentenceFilters;
 		private boolean verbose;
+		private boolean compression;
+		private long compressedBytes;
+		private long rawBytes;
+		private double compressionRatio;
+		private long compressionCpuMs;
 
 		public TCPBean(TCPClient instance) {
 			cls = instance.getClass().getName();
-			port = ((TCPReader) instance.getReader()).getPort();
-			hostname = ((TCPReader) instance.getReader()).getHostname();
+			TCPReader reader = (TCPReader) instance.getReader();
+			port = reader.getPort();
+			hostname = reader.getHostname();
+			compression = reader.isCompression();
+			if (compression) {
+				long[] stats = reader.getCompressionStats();
+				compressedBytes = stats[0];
+				rawBytes = stats[1];
+				compressionRatio = stats[0] == 0 ? 0d : (double) stats[1] / stats[0];
+				compressionCpuMs = stats[2] / 1_000_000L;
+			}
 			verbose = instance.isVerbose();
 			deviceFilters = instance.getDevicePrefix();
 			sentenceFilters = instance.getSentenceArray();
@@ -31,7 +31,7 @@ public class WebSocketClient extends NMEAClient {
 		if (verbose)
 			System.out.println("Received from WebSocket :" + e.getContent());
 		if (multiplexer != null) {
-			multiplexer.onData(e.getContent());
+			multiplexer.onData(this, e.getContent());
 		}
 	}
 
@@ -0,0 +1,245 @@
+package nmea.consumers.reader;
+
+import nmea.api.LatencyTracer;
+import nmea.api.NMEAEvent;
+import nmea.api.NMEAListener;
+import nmea.api.NMEAParser;
+import nmea.api.NMEAReader;
+import nmea.forwarders.link.LinkProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the sentences sent by the {@link nmea.forwarders.link.LinkServer} of another multiplexer,
+ * see {@link LinkProtocol}.
+ * <br>
+ * Each frame is acknowledged. When the connection drops, it re-connects (every <code>retry</code> ms)
+ * and resumes after the last sentence received.
+ * <br>
+ * The sentences are already parsed, they go to the {@link Relay} if there is one (see {@link nmea.consumers.client.LinkClient}),
+ * with the channel and the time they were received on the other side. Without it, they go through the listeners, as text.
+ */
+public class LinkReader extends NMEAReader {
+
+	public final static long DEFAULT_RETRY = 1_000L;
+
+	/**
+	 * Receives the sentences, as they come out of the frames.
+	 */
+	@FunctionalInterface
+	public interface Relay {
+		/**
+		 * @param source   the input channel of the other multiplexer
+		 * @param sentence the NMEA sentence
+		 * @param received when the other multiplexer received it, epoch in ms
+		 */
+		void accept(String source, String sentence, long received);
+	}
+
+	private final String hostName;
+	private final int port;
+	private final boolean prefixes;
+	private final long retry;
+
+	private Socket skt = null;
+	private Relay relay = null;
+
+	// Where we are, kept across connections.
+	private long serverEpoch = 0L;
+	private long lastSeq = 0L;
+
+	// Stats
+	private long sentences = 0L;
+	private long frames = 0L;
+	private long connections = 0L;
+	private long missed = 0L;
+	private final Map<String, SourceStats> sources = new LinkedHashMap<>();
+
+	/**
+	 * What came from a channel of the sending multiplexer.
+	 */
+	public static class SourceStats {
+		private long sentences = 0L;
+		private long transit = 0L; // Last one, ms, from the reception by the other mux to here. Includes the clock difference.
+	}
+
+	public LinkReader(List<NMEAListener> al, String host, int port) {
+		this(al, host, port, true, DEFAULT_RETRY);
+	}
+
+	public LinkReader(List<NMEAListener> al, String host, int port, boolean prefixes, long retry) {
+		super(al);
+		this.hostName = host;
+		this.port = port;
+		this.prefixes = prefixes;
+		this.retry = retry;
+	}
+
+	public void setRelay(Relay relay) {
+		this.relay = relay;
+	}
+
+	public String getHostname() {
+		return hostName;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	@Override
+	public void startReader() {
+		super.enableReading();
+		while (canRead()) {
+			try {
+				readFromServer();
+			} catch (IOException ioe) {
+				if (canRead()) {
+					System.out.println(String.format("Link %s:%d: %s, re-connecting in %d ms.", hostName, port, ioe.toString(), retry));
+				}
+			} finally {
+				closeSocket();
+			}
+			if (canRead()) {
+				try {
+					Thread.sleep(retry);
+				} catch (InterruptedException ie) {
+					break;
+				}
+			}
+		}
+		System.out.println("Stop Reading Link " + hostName + ":" + port);
+	}
+
+	private void readFromServer() throws IOException {
+		Socket socket = new Socket();
+		socket.connect(new InetSocketAddress(hostName, port), 5_000);
+		socket.setTcpNoDelay(true);
+		synchronized (this) {
+			skt = socket;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65_536));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		out.writeByte(LinkProtocol.HELLO);
+		out.writeInt(LinkProtocol.MAGIC);
+		out.writeByte(LinkProtocol.VERSION);
+		out.writeByte(prefixes ? LinkProtocol.FLAG_PREFIXES : 0);
+		out.writeLong(serverEpoch);
+		out.writeLong(lastSeq);
+		out.flush();
+
+		if (in.readByte() != LinkProtocol.WELCOME) {
+			throw new IOException("Not a link server");
+		}
+		in.readByte(); // Flags, prefixes or not, the decoder reads both.
+		long epoch = in.readLong();
+		long first = in.readLong();
+		if (epoch == serverEpoch && first > lastSeq + 1) {
+			missed += (first - (lastSeq + 1)); // Out of the backlog of the server
+		}
+		serverEpoch = epoch;
+		lastSeq = first - 1;
+		connections++;
+		System.out.println(String.format("Link %s:%d connected, from sequence %d", hostName, port, first));
+
+		LinkProtocol.Decoder decoder = new LinkProtocol.Decoder();
+		while (canRead()) {
+			byte type = in.readByte();
+			if (type != LinkProtocol.FRAME) {
+				throw new IOException(String.format("Unexpected message %d", type));
+			}
+			long last = decoder.readFrame(in, this::onSentence);
+			frames++;
+			out.writeByte(LinkProtocol.ACK);
+			out.writeLong(last);
+			out.flush();
+		}
+	}
+
+	private void onSentence(long seq, String source, long received, String sentence) {
+		if (seq <= lastSeq) {
+			return; // Already seen
+		}
+		if (seq > lastSeq + 1) {
+			missed += (seq - (lastSeq + 1));
+		}
+		lastSeq = seq;
+		synchronized (sources) {
+			sentences++;
+			SourceStats stats = sources.get(String.valueOf(source));
+			if (stats == null) {
+				stats = new SourceStats();
+				sources.put(String.valueOf(source), stats);
+			}
+			stats.sentences++;
+			stats.transit = System.currentTimeMillis() - received;
+		}
+		if (relay != null) {
+			LatencyTracer.getInstance().markRead();
+			relay.accept(source, sentence, received);
+		} else {
+			fireDataRead(new NMEAEvent(this, sentence + NMEAParser.NMEA_SENTENCE_SEPARATOR));
+		}
+	}
+
+	private synchronized void closeSocket() {
+		if (skt != null) {
+			try {
+				skt.close();
+			} catch (IOException ioe) {
+				// Absorb
+			}
+			skt = null;
+		}
+	}
+
+	@Override
+	public void closeReader() throws Exception {
+		this.goRead = false;
+		closeSocket();
+	}
+
+	public long getLastSequence() {
+		return lastSeq;
+	}
+
+	public long getMissed() {
+		return missed;
+	}
+
+	public long getConnections() {
+		return connections;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	public long getSentences() {
+		synchronized (sources) {
+			return sentences;
+		}
+	}
+
+	public Map<String, SourceStats> getSources() {
+		synchronized (sources) {
+			Map<String, SourceStats> copy = new LinkedHashMap<>();
+			sources.forEach((name, stats) -> {
+				SourceStats c = new SourceStats();
+				c.sentences = stats.sentences;
+				c.transit = stats.transit;
+				copy.put(name, c);
+			});
+			return copy;
+		}
+	}
+}
@@ -4,23 +4,41 @@ import nmea.api.NMEAEvent;
 import nmea.api.NMEAListener;
 import nmea.api.NMEAParser;
 import nmea.api.NMEAReader;
+import nmea.forwarders.TCPServer;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.BindException;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * TCP reader
+ * <br>
+ * With <code>compression=deflate</code>, asks the {@link TCPServer} for a deflated stream.
+ * If the server does not reply within {@link #HANDSHAKE_TIMEOUT} ms (older server, or compression not enabled on it),
+ * it goes on in plain text.
  */
 public class TCPReader extends NMEAReader {
+	public final static long HANDSHAKE_TIMEOUT = 5_000L;
+
 	private int tcpport = 80;
 	private String hostName = "localhost";
+	private boolean compression = false;
+
+	private Inflater inflater = null;
+	private long inflateNanos = 0L;
 
 	public TCPReader(List<NMEAListener> al) {
 		super(al);
@@ -37,6 +55,11 @@ public class TCPReader extends NMEAReader {
 		tcpport = tcp;
 	}
 
+	public TCPReader(List<NMEAListener> al, String host, int tcp, boolean compression) {
+		this(al, host, tcp);
+		this.compression = compression;
+	}
+
 	private Socket skt = null;
 
 	public int getPort() {
@@ -47,6 +70,20 @@ public class TCPReader extends NMEAReader {
 		return this.hostName;
 	}
 
+	public boolean isCompression() {
+		return this.compression;
+	}
+
+	/**
+	 * @return bytes received, bytes inflated, inflating time in ns. Zeros if the stream is not deflated.
+	 */
+	public synchronized long[] getCompressionStats() {
+		if (inflater == null) {
+			return new long[] { 0L, 0L, 0L };
+		}
+		return new long[] { inflater.getBytesRead(), inflater.getBytesWritten(), inflateNanos };
+	}
+
 	@Override
 	public void startReader() {
 		super.enableReading();
@@ -56,6 +93,9 @@ public class TCPReader extends NMEAReader {
 			skt = new Socket(address, tcpport);
 
 			InputStream theInput = skt.getInputStream();
+			if (compression) {
+				theInput = requestDeflate(theInput, skt.getOutputStream());
+			}
 			byte buffer[] = new byte[4096];
 			String s;
 			int nbReadTest = 0;
@@ -117,6 +157,85 @@ public class TCPReader extends NMEAReader {
 		}
 	}
 
+	/**
+	 * Sends the {@link TCPServer#DEFLATE_REQUEST}, and waits for the {@link TCPServer#DEFLATE_ACK}.
+	 * The sentences coming before it are plain text, and go to the listeners.
+	 *
+	 * @return the stream to read from, inflating if the server agreed.
+	 */
+	private InputStream requestDeflate(InputStream in, OutputStream out) throws IOException {
+		BufferedInputStream bis = new BufferedInputStream(in, 8_192);
+		out.write((TCPServer.DEFLATE_REQUEST + "\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+		long until = System.currentTimeMillis() + HANDSHAKE_TIMEOUT;
+		StringBuilder line = new StringBuilder();
+		try {
+			while (canRead()) {
+				long remaining = until - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				skt.setSoTimeout((int) remaining);
+				bis.mark(8_192);
+				line.setLength(0);
+				int b;
+				while ((b = bis.read()) != -1 && b != '\n') {
+					line.append((char) b);
+				}
+				if (b == -1) {
+					return bis;
+				}
+				String received = line.toString().trim();
+				if (TCPServer.DEFLATE_ACK.equals(received)) {
+					synchronized (this) {
+						inflater = new Inflater();
+					}
+					System.out.println(String.format("TCP %s:%d, deflated stream.", hostName, tcpport));
+					return new TimedInflaterInputStream(bis, inflater);
+				}
+				if (!received.isEmpty()) {
+					super.fireDataRead(new NMEAEvent(this, received + NMEAParser.NMEA_SENTENCE_SEPARATOR));
+				}
+			}
+		} catch (SocketTimeoutException ste) {
+			bis.reset(); // The beginning of a line, if any, is read again.
+		} finally {
+			skt.setSoTimeout(0);
+		}
+		System.out.println(String.format("TCP %s:%d, no compression on the server side, plain text.", hostName, tcpport));
+		return bis;
+	}
+
+	/**
+	 * Counts the time spent inflating, not waiting for the network.
+	 */
+	private class TimedInflaterInputStream extends InflaterInputStream {
+		private long fillNanos = 0L;
+
+		TimedInflaterInputStream(InputStream in, Inflater inflater) {
+			super(in, inflater, 8_192);
+		}
+
+		@Override
+		protected void fill() throws IOException {
+			long before = System.nanoTime();
+			super.fill();
+			fillNanos += (System.nanoTime() - before);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long before = System.nanoTime();
+			fillNanos = 0L;
+			int read = super.read(b, off, len);
+			long spent = System.nanoTime() - before - fillNanos;
+			synchronized (TCPReader.this) {
+				inflateNanos += spent;
+			}
+			return read;
+		}
+	}
+
 	@Override
 	public void closeReader() throws Exception {
 //  System.out.println("(" + this.getClass().getName() + ") Stop Reading TCP Port");
@@ -0,0 +1,222 @@
+package nmea.forwarders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Binary WebSocket frames, the optional <code>encoding=binary</code> of {@link WebSocketWriter} and {@link WebSocketProcessor}.
+ * Decoded in the browser by <code>web/js/ws.binary.js</code>.
+ * <br>
+ * Big-endian (like {@link DataOutputStream} and the JavaScript <code>DataView</code>).
+ * <pre>
+ * Sentences  'N', uint16 count, then count times: uint16 length, ASCII bytes (no end of line)
+ * Keyframe   'K', uint8 number of fields, then for each: uint8 type, uint8 name length, name (ASCII),
+ *            then uint8 count, and count times: uint8 field index, value
+ * Delta      'D', uint8 count, then count times: uint8 field index, value
+ * Request    'R', no body. Asks for a keyframe, sent by <code>wsnmea.js</code> when a client connects.
+ * </pre>
+ * Types: 0 float32, 1 float64, 2 int32, 3 string (uint16 length, UTF-8 bytes, 0xFFFF for null).
+ * The doubles of the cache document go as float64, so the decoded values are the ones of the JSON document, to the last digit.
+ * float32 is not produced by the encoder, decoders still accept it.
+ * <br>
+ * A keyframe carries the schema and all the fields, a delta only the fields changed since the previous frame,
+ * and can only be decoded after a keyframe. Keyframes are sent on request (a client connects), when the connection to the
+ * WebSocket server is (re-)opened, and every <code>keyframe.interval</code> ms.
+ */
+final class BinaryFrames {
+
+	final static byte SENTENCES = 'N';
+	final static byte KEYFRAME = 'K';
+	final static byte DELTA = 'D';
+	final static byte KEYFRAME_REQUEST = 'R';
+
+	final static int FLOAT32 = 0;
+	final static int FLOAT64 = 1;
+	final static int INT32 = 2;
+	final static int STRING = 3;
+
+	private final static int NULL_STRING = 0xFFFF;
+
+	private BinaryFrames() {
+	}
+
+	/**
+	 * The {@link CacheBean} fields, as keyframes and deltas. The field names are the ones of the JSON document.
+	 * Not thread safe.
+	 */
+	static class CacheEncoder {
+		private final Field[] fields;
+		private final int[] types;
+		private final Object[] last;
+		private final long keyframeInterval;
+		private long lastKeyframe = 0L;
+		private final AtomicBoolean keyframeRequested = new AtomicBoolean(true);
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1_024);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		CacheEncoder(long keyframeInterval) {
+			this.keyframeInterval = keyframeInterval;
+			List<Field> beanFields = new ArrayList<>();
+			for (Field field : CacheBean.class.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) && typeOf(field) >= 0) {
+					field.setAccessible(true);
+					beanFields.add(field);
+				}
+			}
+			this.fields = beanFields.toArray(new Field[beanFields.size()]);
+			this.types = beanFields.stream().mapToInt(CacheEncoder::typeOf).toArray();
+			this.last = new Object[fields.length];
+		}
+
+		private static int typeOf(Field field) {
+			Class<?> type = field.getType();
+			if (type == double.class) {
+				return FLOAT64; // A float32 would not decode to the value of the JSON document
+			} else if (type == long.class) {
+				return FLOAT64; // Epochs in ms, exact in a double
+			} else if (type == int.class) {
+				return INT32;
+			} else if (type == String.class) {
+				return STRING;
+			}
+			return -1;
+		}
+
+		/**
+		 * The next frame will be a keyframe. Can be invoked from any thread.
+		 */
+		void requestKeyframe() {
+			keyframeRequested.set(true);
+		}
+
+		/**
+		 * @return a keyframe when it is time or when one was requested, a delta otherwise (possibly without any field, if nothing has changed).
+		 */
+		byte[] encode(CacheBean bean, long now) {
+			try {
+				Object[] values = new Object[fields.length];
+				for (int i = 0; i < fields.length; i++) {
+					values[i] = fields[i].get(bean);
+				}
+				boolean keyframe = keyframeRequested.getAndSet(false) || (now - lastKeyframe >= keyframeInterval);
+				bytes.reset();
+				if (keyframe) {
+					out.writeByte(KEYFRAME);
+					out.writeByte(fields.length);
+					for (int i = 0; i < fields.length; i++) {
+						out.writeByte(types[i]);
+						byte[] name = fields[i].getName().getBytes(StandardCharsets.US_ASCII);
+						out.writeByte(name.length);
+						out.write(name);
+					}
+					lastKeyframe = now;
+				} else {
+					out.writeByte(DELTA);
+				}
+				int count = 0;
+				for (int i = 0; i < fields.length; i++) {
+					if (keyframe || !Objects.equals(values[i], last[i])) {
+						count++;
+					}
+				}
+				out.writeByte(count);
+				for (int i = 0; i < fields.length; i++) {
+					if (keyframe || !Objects.equals(values[i], last[i])) {
+						out.writeByte(i);
+						writeValue(out, types[i], values[i]);
+						last[i] = values[i];
+					}
+				}
+				out.flush();
+				return bytes.toByteArray();
+			} catch (IOException | IllegalAccessException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+
+		private static void writeValue(DataOutputStream out, int type, Object value) throws IOException {
+			switch (type) {
+				case FLOAT32:
+					out.writeFloat((Float) value);
+					break;
+				case FLOAT64:
+					out.writeDouble(((Number) value).doubleValue());
+					break;
+				case INT32:
+					out.writeInt((Integer) value);
+					break;
+				case STRING:
+				default:
+					if (value == null) {
+						out.writeShort(NULL_STRING);
+					} else {
+						byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+						int length = Math.min(utf8.length, NULL_STRING - 1);
+						out.writeShort(length);
+						out.write(utf8, 0, length);
+					}
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Sentences waiting to go in one frame. Not thread safe.
+	 */
+	static class SentenceBatch {
+		private final static int MAX_SENTENCES = 0xFFFF;
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4_096);
+		private int count = 0;
+
+		/**
+		 * @param sentence with or without its end of line
+		 */
+		void add(byte[] sentence) {
+			int length = sentence.length;
+			while (length > 0 && (sentence[length - 1] == '\r' || sentence[length - 1] == '\n')) {
+				length--;
+			}
+			length = Math.min(length, 0xFFFF);
+			bytes.write((length >> 8) & 0xFF);
+			bytes.write(length & 0xFF);
+			bytes.write(sentence, 0, length);
+			count++;
+		}
+
+		int size() {
+			return bytes.size();
+		}
+
+		boolean isFull() {
+			return count >= MAX_SENTENCES;
+		}
+
+		/**
+		 * @return the frame, null if empty. The batch is emptied.
+		 */
+		byte[] drain() {
+			if (count == 0) {
+				return null;
+			}
+			byte[] body = bytes.toByteArray();
+			byte[] frame = new byte[3 + body.length];
+			frame[0] = SENTENCES;
+			frame[1] = (byte) ((count >> 8) & 0xFF);
+			frame[2] = (byte) (count & 0xFF);
+			System.arraycopy(body, 0, frame, 3, body.length);
+			bytes.reset();
+			count = 0;
+			return frame;
+		}
+	}
+}
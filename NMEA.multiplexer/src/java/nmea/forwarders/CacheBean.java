@@ -0,0 +1,285 @@
+package nmea.forwarders;
+
+import context.NMEADataCache;
+import nmea.parser.Angle180;
+import nmea.parser.Angle180EW;
+import nmea.parser.Angle180LR;
+import nmea.parser.Angle360;
+import nmea.parser.Current;
+import nmea.parser.Depth;
+import nmea.parser.Distance;
+import nmea.parser.GeoPos;
+import nmea.parser.Pressure;
+import nmea.parser.SolarDate;
+import nmea.parser.Speed;
+import nmea.parser.Temperature;
+import nmea.parser.UTCDate;
+import nmea.parser.UTCTime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Flat view of the main data of the cache, as used by the transformers.
+ * Field names are the ones of the JSON documents they produce.
+ * <br>
+ * Instances are meant to be re-used, see {@link #populate(NMEADataCache)}.
+ */
+class CacheBean {
+	/**
+	 * The cache keys the bean is made of, to subscribe to their changes.
+	 */
+	final static List<String> KEYS = Collections.unmodifiableList(Arrays.asList(
+					NMEADataCache.BSP,
+					NMEADataCache.WATER_TEMP,
+					NMEADataCache.AIR_TEMP,
+					NMEADataCache.GPS_TIME,
+					NMEADataCache.GPS_DATE_TIME,
+					NMEADataCache.TO_WP,
+					NMEADataCache.D2WP,
+					NMEADataCache.COG,
+					NMEADataCache.SOG,
+					NMEADataCache.LEEWAY,
+					NMEADataCache.AWS,
+					NMEADataCache.TWS,
+					NMEADataCache.AWA,
+					NMEADataCache.TWA,
+					NMEADataCache.TWD,
+					NMEADataCache.POSITION,
+					NMEADataCache.DECLINATION,
+					NMEADataCache.DEVIATION,
+					NMEADataCache.VARIATION,
+					NMEADataCache.HDG_COMPASS,
+					NMEADataCache.CMG,
+					NMEADataCache.VDR_CURRENT,
+					NMEADataCache.XTE,
+					NMEADataCache.B2WP,
+					NMEADataCache.DBT,
+					NMEADataCache.GPS_SOLAR_TIME,
+					NMEADataCache.LOG,
+					NMEADataCache.DAILY_LOG,
+					NMEADataCache.BARO_PRESS,
+					NMEADataCache.RELATIVE_HUMIDITY));
+
+	long gpstime;
+//private String gpstimefmt;
+	long gpsdatetime;
+//private String gpsdatetimefmt;
+
+	String wp;
+	double d2wp;
+	int b2wp;
+	double xte;
+
+	double lat;
+	double lng;
+	String pos;
+
+	long gpssolardate;
+
+	double log;
+	double daylog;
+	int cog;
+	double sog;
+
+	int awa;
+	double aws;
+	double dbt;
+	int hdg;
+
+	double bsp;
+
+	double wtemp;
+	double atemp;
+
+	double D;
+	double d;
+	double W;
+
+	double leeway;
+	int cmg;
+
+	double tws;
+	int twa;
+	int twd;
+
+	int cdr;
+	double csp;
+
+	double prmsl;
+	double hum;
+
+	private void reset() {
+		gpstime = 0L;
+		gpsdatetime = 0L;
+		wp = null;
+		d2wp = 0d;
+		b2wp = 0;
+		xte = 0d;
+		lat = 0d;
+		lng = 0d;
+		pos = null;
+		gpssolardate = 0L;
+		log = 0d;
+		daylog = 0d;
+		cog = 0;
+		sog = 0d;
+		awa = 0;
+		aws = 0d;
+		dbt = 0d;
+		hdg = 0;
+		bsp = 0d;
+		wtemp = 0d;
+		atemp = 0d;
+		D = 0d;
+		d = 0d;
+		W = 0d;
+		leeway = 0d;
+		cmg = 0;
+		tws = 0d;
+		twa = 0;
+		twd = 0;
+		cdr = 0;
+		csp = 0d;
+		prmsl = 0d;
+		hum = 0d;
+	}
+
+	/**
+	 * Re-populates this bean from the cache. Data not in the cache are reset to their default value.
+	 *
+	 * @param cache can be null
+	 * @return this
+	 */
+	CacheBean populate(NMEADataCache cache) {
+		reset();
+		if (cache == null) {
+			return this;
+		}
+		Object bsp = cache.get(NMEADataCache.BSP);
+		if (bsp != null) {
+			this.bsp = ((Speed)bsp).getValue();
+		}
+		Object wtemp = cache.get(NMEADataCache.WATER_TEMP);
+		if (wtemp != null) {
+			this.wtemp = ((Temperature)wtemp).getValue();
+		}
+		Object atemp = cache.get(NMEADataCache.AIR_TEMP);
+		if (atemp != null) {
+			this.atemp = ((Temperature)atemp).getValue();
+		}
+		Object gpstime = cache.get(NMEADataCache.GPS_TIME);
+		if (gpstime != null) {
+			this.gpstime = ((UTCTime)gpstime).getValue().getTime();
+		}
+		Object gpsdatetime = cache.get(NMEADataCache.GPS_DATE_TIME);
+		if (gpsdatetime != null) {
+			this.gpsdatetime = ((UTCDate)gpsdatetime).getValue().getTime();
+		}
+		Object nextwp = cache.get(NMEADataCache.TO_WP);
+		if (nextwp != null) {
+			this.wp = (String)nextwp;
+		}
+		Object d2wp = cache.get(NMEADataCache.D2WP);
+		if (d2wp != null) {
+			this.d2wp = ((Distance)d2wp).getValue();
+		}
+		Object cog = cache.get(NMEADataCache.COG);
+		if (cog != null) {
+			this.cog = (int)Math.round(((Angle360)cog).getValue());
+		}
+		Object sog = cache.get(NMEADataCache.SOG);
+		if (sog != null) {
+			this.sog = ((Speed)sog).getValue();
+		}
+		Object leeway = cache.get(NMEADataCache.LEEWAY);
+		if (leeway != null) {
+			this.leeway = ((Angle180LR)leeway).getValue();
+		}
+		Object aws = cache.get(NMEADataCache.AWS);
+		if (aws != null) {
+			this.aws = ((Speed)aws).getValue();
+		}
+		Object tws = cache.get(NMEADataCache.TWS);
+		if (tws != null) {
+			this.tws = ((Speed)tws).getValue();
+		}
+		Object awa = cache.get(NMEADataCache.AWA);
+		if (awa != null) {
+			this.awa = (int)Math.round(((Angle180)awa).getValue());
+		}
+		Object twa = cache.get(NMEADataCache.TWA);
+		if (twa != null) {
+			this.twa = (int)Math.round(((Angle180)twa).getValue());
+		}
+		Object twd = cache.get(NMEADataCache.TWD);
+		if (twd != null) {
+			this.twd = (int)Math.round(((Angle360)twd).getValue());
+		}
+		Object pos = cache.get(NMEADataCache.POSITION);
+		if (pos != null) {
+			GeoPos geopos = (GeoPos)pos;
+			this.lat = geopos.lat;
+			this.lng = geopos.lng;
+		}
+		Object decl = cache.get(NMEADataCache.DECLINATION);
+		if (decl != null) {
+			this.D = ((Angle180EW)decl).getValue();
+		}
+		Object dev = cache.get(NMEADataCache.DEVIATION);
+		if (dev != null) {
+			this.d = ((Angle180EW)dev).getValue();
+		}
+		Object w = cache.get(NMEADataCache.VARIATION);
+		if (w != null) {
+			this.W = ((Angle180EW)w).getValue();
+		}
+		Object hdg = cache.get(NMEADataCache.HDG_COMPASS);
+		if (hdg != null) {
+			this.hdg = (int)Math.round(((Angle360)hdg).getValue());
+		}
+		Object cmg = cache.get(NMEADataCache.CMG);
+		if (cmg != null) {
+			this.cmg = (int)Math.round(((Angle360)cmg).getValue());
+		}
+		Object vdr = cache.get(NMEADataCache.VDR_CURRENT);
+		if (vdr != null) {
+			this.cdr = ((Current)vdr).angle;
+			this.csp = ((Current)vdr).speed;
+		}
+		Object xte = cache.get(NMEADataCache.XTE);
+		if (xte != null) {
+			this.xte = ((Distance)xte).getValue();
+		}
+		Object b2wp = cache.get(NMEADataCache.B2WP);
+		if (b2wp != null) {
+			this.b2wp = (int)Math.round(((Angle360)b2wp).getValue());
+		}
+		Object dbt = cache.get(NMEADataCache.DBT);
+		if (dbt != null) {
+			this.dbt = ((Depth)dbt).getValue();
+		}
+		Object solarDate = cache.get(NMEADataCache.GPS_SOLAR_TIME);
+		if (solarDate != null) {
+			this.gpssolardate = ((SolarDate)solarDate).getValue().getTime();
+		}
+		Object log = cache.get(NMEADataCache.LOG);
+		if (log != null) {
+			this.log = ((Distance)log).getValue();
+		}
+		Object dayLog = cache.get(NMEADataCache.DAILY_LOG);
+		if (dayLog != null) {
+			this.daylog = ((Distance)dayLog).getValue();
+		}
+		Object prmsl = cache.get(NMEADataCache.BARO_PRESS);
+		if (prmsl != null) {
+			this.prmsl = ((Pressure)prmsl).getValue();
+		}
+		Object hum = cache.get(NMEADataCache.RELATIVE_HUMIDITY);
+		if (hum != null) {
+			this.hum = (Double)hum;
+		}
+		return this;
+	}
+}
@@ -1,6 +1,7 @@
 package nmea.forwarders;
 
 import context.ApplicationContext;
+import context.CacheChangeBus;
 import context.NMEADataCache;
 import nmea.forwarders.displays.CharacterModeConsole;
 
@@ -27,7 +28,7 @@ import java.util.Properties;
 public class CharacterConsoleWriter implements Forwarder {
 
 	private Properties consoleProps;
-	private boolean keepWorking = true;
+	private CacheChangeBus.Subscription subscription = null;
 	private CharacterModeConsole cmConsole;
 
 	public CharacterConsoleWriter() throws Exception {
@@ -40,16 +41,15 @@ public class CharacterConsoleWriter implements Forwarder {
 
 	@Override
 	public void write(byte[] message) {
-		// Do nothing here. The cache is read by a Thread.
+		// Do nothing here. The cache is read when it changes, see setProperties.
 	}
 
 	@Override
 	public void close() {
 		System.out.println("- Stop writing to the character console. (" + this.getClass().getName() + ")");
 		try {
-			// Stop Cache thread
-			keepWorking = false;
-			try { Thread.sleep(2000L); } catch (Exception ex) {}
+			// Stop Cache notifications
+			CacheChangeBus.getInstance().unsubscribe(subscription);
 		} catch (Exception ex) {
 			throw new RuntimeException(ex);
 		}
@@ -80,16 +80,14 @@ public class CharacterConsoleWriter implements Forwarder {
 			this.consoleProps = props;
 			this.cmConsole.initializeConsole(props);
 
-			Thread cacheThread = new Thread("CharacterModeConsole CacheThread") {
-				public void run() {
-					while (keepWorking) { // Ping the cache every second.
-						NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
-						cmConsole.displayData(cache, consoleProps);
-						try { Thread.sleep(1000L); } catch (Exception ex) {}
-					}
-				}
-			};
-			cacheThread.start();
+			// Refreshed when the cache changes, at most every console.refresh.interval ms, and at least every second.
+			// A System variable, all the console properties are data to display.
+			long minInterval = Long.parseLong(System.getProperty("console.refresh.interval", "250"));
+			CacheChangeBus.getInstance().unsubscribe(subscription);
+			subscription = CacheChangeBus.getInstance().subscribe("CharacterModeConsole CacheThread", (String[])null, minInterval, 1_000L, () -> {
+				NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+				cmConsole.displayData(cache, consoleProps);
+			});
 		}
 	}
 }
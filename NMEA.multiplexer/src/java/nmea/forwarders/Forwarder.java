@@ -4,6 +4,17 @@ import java.util.Properties;
 
 public interface Forwarder {
 	void write(byte[] mess); // Receives data
+
+	/**
+	 * Receives data, with where and when it was received. For the forwarders that carry it.
+	 *
+	 * @param mess     the sentence
+	 * @param source   name of the input channel, null when unknown (computers, ...)
+	 * @param received when it was received, epoch in ms
+	 */
+	default void write(byte[] mess, String source, long received) {
+		write(mess);
+	}
 	void close();
 	void setProperties(Properties props);
 
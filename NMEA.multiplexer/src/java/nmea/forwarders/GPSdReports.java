@@ -0,0 +1,230 @@
+package nmea.forwarders;
+
+import context.NMEADataCache;
+import nmea.parser.Angle360;
+import nmea.parser.GSA;
+import nmea.parser.GeoPos;
+import nmea.parser.SVData;
+import nmea.parser.Speed;
+import nmea.parser.StringParsers;
+import nmea.parser.UTCDate;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * gpsd JSON objects (TPV, SKY, GST, ...), built from the {@link NMEADataCache}.
+ * <br>
+ * See http://www.catb.org/gpsd/gpsd_json.html
+ * <br>
+ * Not thread safe, the builders are re-used. {@link GPSdServer} only uses it from its selector thread.
+ */
+class GPSdReports {
+
+	final static String DEVICE = "nmea.mux";
+	final static String RELEASE = "3.17";
+	final static int PROTO_MAJOR = 3;
+	final static int PROTO_MINOR = 11;
+
+	private final static double KNOTS_TO_MS = 1_852d / 3_600d;
+
+	private final SimpleDateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+	private final StringBuilder sb = new StringBuilder(1_024);
+
+	GPSdReports() {
+		iso8601.setTimeZone(TimeZone.getTimeZone("Etc/UTC"));
+	}
+
+	static String version() {
+		return String.format("{\"class\":\"VERSION\",\"release\":\"%s\",\"rev\":\"nmea-mux\",\"proto_major\":%d,\"proto_minor\":%d}\n",
+						RELEASE, PROTO_MAJOR, PROTO_MINOR);
+	}
+
+	static String error(String message) {
+		return String.format("{\"class\":\"ERROR\",\"message\":\"%s\"}\n", message.replace("\\", "\\\\").replace("\"", "\\\""));
+	}
+
+	String devices(long activated) {
+		sb.setLength(0);
+		sb.append("{\"class\":\"DEVICES\",\"devices\":[");
+		appendDevice(activated);
+		sb.append("]}\n");
+		return sb.toString();
+	}
+
+	private void appendDevice(long activated) {
+		sb.append("{\"class\":\"DEVICE\",\"path\":\"").append(DEVICE)
+						.append("\",\"driver\":\"NMEA0183\",\"activated\":\"").append(iso8601.format(new Date(activated)))
+						.append("\",\"flags\":1,\"native\":0}");
+	}
+
+	private String time(NMEADataCache cache) {
+		Object utc = cache.get(NMEADataCache.GPS_DATE_TIME);
+		Date date = (utc != null) ? ((UTCDate) utc).getValue() : null;
+		return iso8601.format(date != null ? date : new Date());
+	}
+
+	/**
+	 * @return the TPV object, null if there is no position in the cache.
+	 */
+	String tpv(NMEADataCache cache) {
+		sb.setLength(0);
+		if (!appendTPV(cache)) {
+			return null;
+		}
+		return sb.append('\n').toString();
+	}
+
+	private boolean appendTPV(NMEADataCache cache) {
+		GeoPos pos = (GeoPos) cache.get(NMEADataCache.POSITION);
+		if (pos == null) {
+			return false;
+		}
+		Object alt = cache.get(NMEADataCache.ALTITUDE);
+		GSA gsa = (GSA) cache.get(NMEADataCache.GPS_FIX);
+		int mode = alt != null ? 3 : 2;
+		if (gsa != null && gsa.getMode2() != null) {
+			switch (gsa.getMode2()) {
+				case NoFix:
+					mode = 1;
+					break;
+				case TwoD:
+					mode = 2;
+					break;
+				case ThreeD:
+				default:
+					mode = 3;
+					break;
+			}
+		}
+		sb.append("{\"class\":\"TPV\",\"device\":\"").append(DEVICE)
+						.append("\",\"mode\":").append(mode)
+						.append(",\"time\":\"").append(time(cache)).append('"')
+						.append(",\"lat\":").append(pos.lat)
+						.append(",\"lon\":").append(pos.lng);
+		if (alt != null && mode == 3) {
+			sb.append(",\"alt\":").append(((Number) alt).doubleValue());
+		}
+		Angle360 cog = (Angle360) cache.get(NMEADataCache.COG);
+		if (cog != null) {
+			sb.append(",\"track\":").append(cog.getValue());
+		}
+		Speed sog = (Speed) cache.get(NMEADataCache.SOG);
+		if (sog != null) {
+			sb.append(",\"speed\":").append(Math.round(sog.getValue() * KNOTS_TO_MS * 1_000d) / 1_000d); // m/s
+		}
+		StringParsers.GST gst = (StringParsers.GST) cache.get(NMEADataCache.GPS_ERRORS);
+		if (gst != null) {
+			appendIfDefined(",\"epy\":", gst.lat);
+			appendIfDefined(",\"epx\":", gst.lng);
+			appendIfDefined(",\"epv\":", gst.alt);
+		}
+		sb.append('}');
+		return true;
+	}
+
+	/**
+	 * @return the SKY object, null if there is no satellite data in the cache.
+	 */
+	String sky(NMEADataCache cache) {
+		sb.setLength(0);
+		if (!appendSKY(cache)) {
+			return null;
+		}
+		return sb.append('\n').toString();
+	}
+
+	private boolean appendSKY(NMEADataCache cache) {
+		Map<Integer, SVData> satellites = (Map<Integer, SVData>) cache.get(NMEADataCache.SAT_IN_VIEW);
+		GSA gsa = (GSA) cache.get(NMEADataCache.GPS_FIX);
+		if (satellites == null && gsa == null) {
+			return false;
+		}
+		sb.append("{\"class\":\"SKY\",\"device\":\"").append(DEVICE)
+						.append("\",\"time\":\"").append(time(cache)).append('"');
+		if (gsa != null) {
+			appendIfDefined(",\"hdop\":", gsa.getHDOP());
+			appendIfDefined(",\"vdop\":", gsa.getVDOP());
+			appendIfDefined(",\"pdop\":", gsa.getPDOP());
+		}
+		sb.append(",\"satellites\":[");
+		if (satellites != null) {
+			boolean first = true;
+			synchronized (satellites) {
+				for (SVData sv : satellites.values()) {
+					if (!first) {
+						sb.append(',');
+					}
+					first = false;
+					sb.append("{\"PRN\":").append(sv.getSvID())
+									.append(",\"el\":").append(sv.getElevation())
+									.append(",\"az\":").append(sv.getAzimuth())
+									.append(",\"ss\":").append(sv.getSnr())
+									.append(",\"used\":").append(gsa != null && gsa.getSvArray().contains(sv.getSvID()))
+									.append('}');
+				}
+			}
+		}
+		sb.append("]}");
+		return true;
+	}
+
+	/**
+	 * @return the GST object, null if there is no error statistics in the cache.
+	 */
+	String gst(NMEADataCache cache) {
+		sb.setLength(0);
+		if (!appendGST(cache)) {
+			return null;
+		}
+		return sb.append('\n').toString();
+	}
+
+	private boolean appendGST(NMEADataCache cache) {
+		StringParsers.GST gst = (StringParsers.GST) cache.get(NMEADataCache.GPS_ERRORS);
+		if (gst == null) {
+			return false;
+		}
+		sb.append("{\"class\":\"GST\",\"device\":\"").append(DEVICE)
+						.append("\",\"time\":\"").append(time(cache)).append('"');
+		appendIfDefined(",\"rms\":", gst.rms);
+		appendIfDefined(",\"major\":", gst.major);
+		appendIfDefined(",\"minor\":", gst.minor);
+		appendIfDefined(",\"orient\":", gst.orient);
+		appendIfDefined(",\"lat\":", gst.lat);
+		appendIfDefined(",\"lon\":", gst.lng);
+		appendIfDefined(",\"alt\":", gst.alt);
+		sb.append('}');
+		return true;
+	}
+
+	/**
+	 * The answer to a ?POLL; request, with the last TPV, GST and SKY.
+	 */
+	String poll(NMEADataCache cache) {
+		sb.setLength(0);
+		sb.append("{\"class\":\"POLL\",\"time\":\"").append(iso8601.format(new Date()))
+						.append("\",\"active\":1,\"tpv\":[");
+		appendTPV(cache);
+		sb.append("],\"gst\":[");
+		appendGST(cache);
+		sb.append("],\"sky\":[");
+		appendSKY(cache);
+		sb.append("]}\n");
+		return sb.toString();
+	}
+
+	private void appendIfDefined(String name, double value) {
+		if (!Double.isNaN(value) && value >= 0) {
+			sb.append(name).append(value);
+		}
+	}
+
+	private void appendIfDefined(String name, float value) { // For the GSA, -1 when not available
+		if (!Float.isNaN(value) && value >= 0) {
+			sb.append(name).append(value);
+		}
+	}
+}
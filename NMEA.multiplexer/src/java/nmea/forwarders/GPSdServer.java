@@ -1,209 +1,411 @@
 package nmea.forwarders;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import http.utils.DumpUtil;
+import com.google.gson.reflect.TypeToken;
+import context.ApplicationContext;
+import context.NMEADataCache;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.ArrayList;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A gpsd-compatible server, for OpenCPN and the other gpsd clients.
+ * <br>
+ * Understands <code>?WATCH</code>, <code>?POLL</code>, <code>?DEVICES</code> and <code>?VERSION</code>.
+ * Depending on their WATCH, clients get
+ * <ul>
+ *   <li>the NMEA sentences going through the Multiplexer (<code>"nmea":true</code>)</li>
+ *   <li>TPV, SKY and GST objects, built from the cache (<code>"json":true</code>), every <code>"interval"</code> seconds
+ *   (not a gpsd member, default 1). A report identical to the previous one is not sent again.</li>
+ * </ul>
+ * All the clients are served from one selector thread. Each client has a bounded output queue, a slow client
+ * loses its oldest messages, it does not slow down the others, nor the Multiplexer.
+ * <br>
+ * The JSON objects require the cache.
+ * <pre>
+ * forward.XX.type=gpsd
+ * forward.XX.port=2947
+ * forward.XX.max.queue=256
+ * forward.XX.interval=1000
+ * </pre>
+ * See http://www.catb.org/gpsd/gpsd_json.html
+ */
 public class GPSdServer implements Forwarder {
-	private GPSdServer instance = this;
-	private List<Socket> clientSocketlist = new ArrayList<Socket>(1);
+
+	public final static int DEFAULT_MAX_QUEUE = 256;        // messages, per client
+	public final static long DEFAULT_INTERVAL = 1_000L;     // ms, JSON reports
+	private final static int MAX_COMMAND_LENGTH = 4_096;
+
+	private final static Gson GSON = new Gson();
+	private final static Type WATCH_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
 
 	private int tcpPort = 2947;
-	private ServerSocket serverSocket = null;
+	private int maxQueue = DEFAULT_MAX_QUEUE;
+	private long defaultInterval = DEFAULT_INTERVAL;
+	private final long activated = System.currentTimeMillis();
+
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private volatile boolean keepWorking = true;
+
+	private final List<Client> clients = new CopyOnWriteArrayList<>();
+	private final Queue<Client> toArm = new ConcurrentLinkedQueue<>(); // Clients with new output
+	private final GPSdReports reports = new GPSdReports();
+
+	private final AtomicLong dropped = new AtomicLong(0L);
+
+	private class Client {
+		private final SocketChannel channel;
+		private final ByteBuffer in = ByteBuffer.allocate(512);
+		private final StringBuilder command = new StringBuilder();
+		private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+
+		// Set by the selector thread, read by the one broadcasting the sentences.
+		private volatile boolean watching = false;
+		private volatile boolean json = false;
+		private volatile boolean nmea = false;
+		private long interval = defaultInterval;
+		private long nextReport = 0L;
+		private String lastTPV = null;
+		private String lastSKY = null;
+		private String lastGST = null;
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void enqueue(ByteBuffer buffer) {
+			synchronized (out) {
+				if (out.size() >= maxQueue) { // The oldest one not being written goes.
+					dropped.incrementAndGet();
+					ByteBuffer head = out.poll();
+					if (head.position() > 0) { // Partly written, must go out whole, or the stream is corrupted.
+						if (out.isEmpty()) {
+							out.add(head);
+							return; // The new one goes.
+						}
+						out.poll();
+						out.addFirst(head);
+					}
+				}
+				out.add(buffer);
+			}
+			toArm.add(this);
+		}
+
+		void enqueue(String message) {
+			enqueue(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+		}
+	}
 
 	public GPSdServer(int port) throws Exception {
+		this(port, DEFAULT_MAX_QUEUE, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * @param port     TCP port, 2947 for gpsd
+	 * @param maxQueue messages waiting for one client, the oldest ones are dropped
+	 * @param interval default interval between the JSON reports, in ms
+	 * @throws Exception
+	 */
+	public GPSdServer(int port, int maxQueue, long interval) throws Exception {
 		this.tcpPort = port;
+		this.maxQueue = maxQueue;
+		this.defaultInterval = interval;
 
-		try {
-			SocketThread socketThread = new SocketThread(this);
-			socketThread.start();
-		} catch (Exception ex) {
-			throw ex;
-		}
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.bind(new InetSocketAddress(tcpPort));
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		Thread selectorThread = new Thread(this::serve, "GPSdServer");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
 	}
 
 	public int getTcpPort() {
 		return this.tcpPort;
 	}
 
-	protected void setSocket(Socket skt) {
-		this.clientSocketlist.add(skt);
-	}
-
 	/**
-	 * Message from the mux
+	 * Message from the mux, for the clients watching the NMEA data.
 	 * @param message
 	 */
 	@Override
 	public void write(byte[] message) {
-		List<Socket> toRemove = new ArrayList<Socket>();
-		synchronized( clientSocketlist) {
-			clientSocketlist.stream().forEach(tcpClientSocket -> {
-				synchronized (tcpClientSocket) {
-					try {
-
-						DataOutputStream out = new DataOutputStream(tcpClientSocket.getOutputStream());
-						out.write(message);
-						out.flush();
-					} catch (SocketException se) {
-						toRemove.add(tcpClientSocket);
-					} catch (Exception ex) {
-						System.err.println("GPSdWriter.write:" + ex.getLocalizedMessage());
-						ex.printStackTrace();
-					}
+		ByteBuffer shared = null;
+		for (Client client : clients) {
+			if (client.watching && client.nmea) {
+				if (shared == null) {
+					shared = ByteBuffer.wrap(message.clone()).asReadOnlyBuffer();
 				}
-			});
-		}
-
-		if (toRemove.size() > 0) {
-			synchronized (clientSocketlist) {
-				toRemove.stream().forEach(this.clientSocketlist::remove);
+				client.enqueue(shared.duplicate());
 			}
 		}
+		if (shared != null) {
+			selector.wakeup();
+		}
 	}
 
 	private int getNbClients() {
-		return clientSocketlist.size();
-	}
-
-	private String formatByteHexa(byte b) {
-		String s = Integer.toHexString(b).toUpperCase();
-		while (s.length() < 2)
-			s = "0" + s;
-		return s;
-	}
-
-	@Override
-	public void close() {
-		System.out.println("- Stop writing to " + this.getClass().getName());
-		try {
-			for (Socket tcpSocket : clientSocketlist)
-				tcpSocket.close();
-		} catch (Exception ex) {
-			throw new RuntimeException(ex);
-		}
+		return clients.size();
 	}
 
-	public static void main(String[] args) {
-//	String gpsd = "{\"class\":\"TVP\",\"tag\":\"MID2\",\"time\":\"2010-04-30T11:48:20.10Z\",\"ept\":0.005,\"lat\":46.498204497,\"lon\":7.568061439,\"alt\":1327.689,\"epx\":15.319,\"epy\":17.054,\"epv\":124.484,\"track\":10.3797,\"speed\":0.091,\"climb\":-0.085,\"eps\",34.11,\"mode\":3}";
-		String gpsd = "?WATCH={...};";
-		String wpl = "$GPWPL,3739.856,N,12222.812,W,OPMRNA*59";
+	private void serve() {
+		System.out.println(".......... GPSd server waiting (GPSd:" + tcpPort + ").");
 		try {
-			GPSdServer tcpw = new GPSdServer(2947); // 2947
-//    TCPWriter tcpw = new TCPWriter(7001);
-//    TCPWriter tcpw = new TCPWriter(7001, "theketch-lap.mshome.net");
-			for (int i = 0; i < 50; i++) {
-				System.out.println("Ping...");
-				try {
-					tcpw.write(gpsd.getBytes());
-				} catch (Exception ex) {
-					System.err.println(ex.getLocalizedMessage());
+			while (keepWorking) {
+				long now = System.currentTimeMillis();
+				long timeout = 1_000L;
+				for (Client client : clients) {
+					if (client.watching && client.json) {
+						timeout = Math.min(timeout, Math.max(1L, client.nextReport - now));
+					}
+				}
+				selector.select(timeout);
+				if (!keepWorking) {
+					break;
+				}
+				for (SelectionKey key : selector.selectedKeys()) {
+					if (!key.isValid()) {
+						continue;
+					}
+					try {
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							Client client = (Client) key.attachment();
+							if (key.isReadable()) {
+								read(client, key);
+							}
+							if (key.isValid() && key.isWritable()) {
+								flush(client, key);
+							}
+						}
+					} catch (IOException ioe) {
+						disconnect(key);
+					}
 				}
+				selector.selectedKeys().clear();
+				report();
+				Client client;
+				while ((client = toArm.poll()) != null) {
+					SelectionKey key = client.channel.keyFor(selector);
+					if (key != null && key.isValid()) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					}
+				}
+			}
+		} catch (Exception ex) {
+			if (keepWorking) {
+				System.err.println("GPSdServer:" + ex.getLocalizedMessage());
+				ex.printStackTrace();
+			}
+		} finally {
+			for (SelectionKey key : selector.keys()) {
 				try {
-					Thread.sleep(1000L);
-				} catch (Exception ex) {
-					ex.printStackTrace();
+					key.channel().close();
+				} catch (IOException ignore) {
 				}
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+			try {
+				selector.close();
+			} catch (IOException ignore) {
+			}
+			clients.clear();
 		}
+		System.out.println("..... End of GPSd server thread.");
 	}
 
-	private class SocketThread extends Thread {
-		private GPSdServer parent = null;
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Client client = new Client(channel);
+		channel.register(selector, SelectionKey.OP_READ, client);
+		clients.add(client);
+		client.enqueue(GPSdReports.version());
+	}
 
-		public SocketThread(GPSdServer parent) {
-			super("GPSdServer");
-			this.parent = parent;
+	private void disconnect(SelectionKey key) {
+		Object client = key.attachment();
+		if (client != null) {
+			clients.remove(client);
 		}
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException ignore) {
+		}
+	}
 
-		public void run() {
-			try {
-				parent.serverSocket = new ServerSocket(tcpPort);
-				while (true) // Wait for the clients
-				{
-          System.out.println(".......... serverSocket waiting (GPSd:" + tcpPort + ").");
-					Socket clientSkt = serverSocket.accept();
-          System.out.println(".......... serverSocket accepted (GPSd:" + tcpPort + ").");
-					parent.setSocket(clientSkt);
-
-					DataOutputStream out = new DataOutputStream(clientSkt.getOutputStream());
-
-					String clientRequest = readInputStream(clientSkt.getInputStream());
-					System.out.println("Received: " + clientRequest);
-					DumpUtil.displayDualDump(clientRequest);
-
-					String requestResponse = clientRequest.toUpperCase() + '\n'; // Returns the incoming message, in upper case.
-					if (clientRequest.startsWith("?WATCH={")) { // && clientRequest.endsWith("};")) {
-						String json = clientRequest.substring("?WATCH=".length());
-//					System.out.println(">>> GPSd WATCH request:" + json);
-						Gson gson = new GsonBuilder().create();
-						Map<String, Object> obj = gson.fromJson(json, Map.class);
-						Object o = obj.get("nmea");
-						if (o != null && o instanceof Boolean) {
-							System.out.println(">>>> GPSd Activate:" + ((Boolean)o).booleanValue());
-							// TODO: if false, there is a problem... not supported yet! (see the write method)
-						}
-//					requestResponse = "{\"class\":\"SKY\",\"device\":\"/dev/pts/1\",\"time\":\"2005-07-08T11:28:07.114Z\",\"xdop\":1.55,\"hdop\":1.24,\"pdop\":1.99,\"satellites\":[{\"PRN\":23,\"el\":6,\"az\":84,\"ss\":0,\"used\":false},{\"PRN\":28,\"el\":7,\"az\":160,\"ss\":0,\"used\":false},{\"PRN\":8,\"el\":66,\"az\":189,\"ss\":44,\"used\":true},{\"PRN\":29,\"el\":13,\"az\":273,\"ss\":0,\"used\":false},{\"PRN\":10,\"el\":51,\"az\":304,\"ss\":29,\"used\":true},{\"PRN\":4,\"el\":15,\"az\":199,\"ss\":36,\"used\":true},{\"PRN\":2,\"el\":34,\"az\":241,\"ss\":43,\"used\":true},{\"PRN\":27,\"el\":71,\"az\":76,\"ss\":43,\"used\":true}]}" + "\n";
-					}
-//				out.writeBytes(requestResponse);
-//				clientSkt.close();
+	private void read(Client client, SelectionKey key) throws IOException {
+		client.in.clear();
+		int nb = client.channel.read(client.in);
+		if (nb < 0) {
+			disconnect(key);
+			return;
+		}
+		client.in.flip();
+		while (client.in.hasRemaining()) {
+			char c = (char) client.in.get();
+			if (c == ';' || c == '\n' || c == '\r') {
+				if (client.command.length() > 0) {
+					execute(client, client.command.toString().trim());
+					client.command.setLength(0);
+				}
+			} else {
+				client.command.append(c);
+				if (client.command.length() > MAX_COMMAND_LENGTH) {
+					disconnect(key);
+					return;
 				}
-			} catch (Exception ex) {
-				System.err.println("SocketThread:" + ex.getLocalizedMessage());
 			}
-			System.out.println("..... End of GPSd SocketThread.");
 		}
 	}
 
-	private String readInputStream(InputStream is) {
-		String read = "";
-		InputStreamReader in = new InputStreamReader(is);
-		int b;
-		StringBuffer sb = new StringBuffer();
-		boolean keepReading = true;
-		boolean top = true;
-		while (keepReading) {
-			if (top) { // Ugly!! Argh! :(
-				try {
-					Thread.sleep(100L);
-				} catch (InterruptedException ie) {
+	private void flush(Client client, SelectionKey key) throws IOException {
+		synchronized (client.out) {
+			while (!client.out.isEmpty()) {
+				ByteBuffer buffer = client.out.peek();
+				client.channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					return; // Socket buffer full, wait for the next OP_WRITE
 				}
-				top = false;
+				client.out.poll();
 			}
-			try {
-				if (in.ready()) {
-					b = in.read();
-				} else {
-					b = -1;
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * @param client  the requester
+	 * @param request like <code>?WATCH={"enable":true,"json":true}</code>, without the trailing ';'.
+	 */
+	private void execute(Client client, String request) {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (request.startsWith("?WATCH")) {
+			if (request.startsWith("?WATCH=")) {
+				try {
+					watch(client, request.substring("?WATCH=".length()));
+				} catch (Exception ex) {
+					client.enqueue(GPSdReports.error("Invalid WATCH: " + ex.getMessage()));
+					return;
 				}
-			} catch (IOException ioe) {
-				b = -1;
+				client.enqueue(reports.devices(activated));
 			}
-			if (b == -1) {
-				keepReading = false;
+			client.enqueue(String.format("{\"class\":\"WATCH\",\"enable\":%s,\"json\":%s,\"nmea\":%s,\"raw\":0,\"scaled\":false,\"timing\":false,\"split24\":false,\"pps\":false,\"interval\":%s}\n",
+							client.watching, client.json, client.nmea, client.interval / 1_000d));
+		} else if (request.startsWith("?POLL")) {
+			if (cache == null) {
+				client.enqueue(GPSdReports.error("No cache"));
 			} else {
-					sb.append((char)b);
-//				System.out.println("======================");
-//				DumpUtil.displayDualDump(sb.toString());
-//				System.out.println("======================");
+				client.enqueue(reports.poll(cache));
+			}
+		} else if (request.startsWith("?DEVICES")) {
+			client.enqueue(reports.devices(activated));
+		} else if (request.startsWith("?VERSION")) {
+			client.enqueue(GPSdReports.version());
+		} else {
+			client.enqueue(GPSdReports.error(String.format("Unrecognized request '%s'", request)));
+		}
+	}
+
+	private void watch(Client client, String json) {
+		Map<String, Object> watch = GSON.fromJson(json, WATCH_TYPE);
+		Object enable = watch.get("enable");
+		Object jsonMode = watch.get("json");
+		Object nmeaMode = watch.get("nmea");
+		Object interval = watch.get("interval");
+		client.watching = enable == null || Boolean.TRUE.equals(enable);
+		if (jsonMode instanceof Boolean) {
+			client.json = (Boolean) jsonMode;
+		}
+		if (nmeaMode instanceof Boolean) {
+			client.nmea = (Boolean) nmeaMode;
+		}
+		if (client.watching && jsonMode == null && nmeaMode == null && !client.nmea) {
+			client.json = true; // gpsd default
+		}
+		if (interval instanceof Number) {
+			client.interval = Math.max(100L, Math.round(((Number) interval).doubleValue() * 1_000d));
+		}
+		client.nextReport = 0L;
+		client.lastTPV = client.lastSKY = client.lastGST = null;
+	}
+
+	/**
+	 * JSON reports for the clients that are due. Built once for all of them.
+	 */
+	private void report() {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		boolean built = false;
+		String tpv = null, sky = null, gst = null;
+		for (Client client : clients) {
+			if (!client.watching || !client.json || now < client.nextReport) {
+				continue;
+			}
+			if (!built) {
+				tpv = reports.tpv(cache);
+				sky = reports.sky(cache);
+				gst = reports.gst(cache);
+				built = true;
+			}
+			client.nextReport = now + client.interval;
+			if (tpv != null && !tpv.equals(client.lastTPV)) {
+				client.enqueue(tpv);
+				client.lastTPV = tpv;
+			}
+			if (sky != null && !sky.equals(client.lastSKY)) {
+				client.enqueue(sky);
+				client.lastSKY = sky;
+			}
+			if (gst != null && !gst.equals(client.lastGST)) {
+				client.enqueue(gst);
+				client.lastGST = gst;
 			}
 		}
-		read = sb.toString();
-		return read;
+	}
+
+	@Override
+	public void close() {
+		System.out.println("- Stop writing to " + this.getClass().getName());
+		keepWorking = false;
+		selector.wakeup();
+		try {
+			serverChannel.close();
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+		new GPSdServer(2947); // Try it with 'gpspipe -w' or 'telnet localhost 2947'
+		Thread.sleep(Long.MAX_VALUE);
 	}
 
 	public static class GPSdBean {
@@ -211,6 +413,7 @@ public class GPSdServer implements Forwarder {
 		private int port;
 		private String type = "gpsd";
 		private int nbClients = 0;
+		private long dropped = 0L;
 
 		public int getPort() {
 			return port;
@@ -220,6 +423,7 @@ public class GPSdServer implements Forwarder {
 			cls = instance.getClass().getName();
 			port = instance.tcpPort;
 			nbClients = instance.getNbClients();
+			dropped = instance.dropped.get();
 		}
 	}
 
@@ -228,7 +432,19 @@ public class GPSdServer implements Forwarder {
 		return new GPSdBean(this);
 	}
 
+	/**
+	 * <ul>
+	 *   <li><code>max.queue</code>: messages waiting for one client, the oldest ones are dropped.</li>
+	 *   <li><code>interval</code>: default interval between the JSON reports, in ms, for the clients connecting next.</li>
+	 * </ul>
+	 * Those are also read from <code>forward.XX.max.queue</code> and <code>forward.XX.interval</code>, see the constructor.
+	 * @param props
+	 */
 	@Override
 	public void setProperties(Properties props) {
+		if (props != null) {
+			maxQueue = Integer.parseInt(props.getProperty("max.queue", String.valueOf(maxQueue)));
+			defaultInterval = Long.parseLong(props.getProperty("interval", String.valueOf(defaultInterval)));
+		}
 	}
 }
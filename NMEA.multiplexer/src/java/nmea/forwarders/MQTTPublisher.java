@@ -1,147 +1,443 @@
 package nmea.forwarders;
 
-import nmea.parser.GeoPos;
-import nmea.parser.RMC;
-import nmea.parser.StringParsers;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import context.ApplicationContext;
+import context.NMEADataCache;
+import nmea.parser.Temperature;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.MqttTopic;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * For dynamic loading
- * Requires a file like mqtt.properties to provide the broker url.
+ * Requires a file like mqtt.properties to provide the broker url, and the mappings.
+ * <br>
+ * Publishes data from the {@link NMEADataCache}, not the NMEA sentences themselves.
+ * The cache must be initialized (<code>init.cache=true</code>), nothing is published otherwise.
+ * Each mapping associates a cache key with a topic:
+ * <pre>
+ * mapping.01.key=Air Temperature
+ * mapping.01.topic=nmea/airTemperature
+ * mapping.01.min.interval=5000   # Optional, in ms, default 0
+ * mapping.01.qos=1               # Optional, default is the global qos
+ * mapping.01.format=text         # Optional, json (default) or text
+ * </pre>
+ * Without mappings, air temperature, water temperature and position are published.
+ * <br>
+ * {@link #write(byte[])} does not block the multiplexer, it only wakes up the publishing thread.
+ * This thread reads the mapped keys from the cache, and queues what changed, one entry per topic
+ * (a newer value replaces the one not sent yet). When the broker is not reachable, it reconnects with an
+ * exponential backoff, the queue is kept.
+ * <br>
+ * With <code>batch.interval</code> (ms) greater than 0, the mapped values are published together, as one json object,
+ * on <code>batch.topic</code>, every <code>batch.interval</code>.
+ * <br>
+ * The broker connection is behind a {@link Transport}, an in-process one can be given to the constructor for tests.
  */
 public class MQTTPublisher implements Forwarder {
-	private MqttClient mqttClient = null;
-	private String brokerURL;
 
-	private Properties props;
+	/**
+	 * What the publisher needs from an MQTT client.
+	 */
+	public interface Transport {
+		void connect() throws Exception;
+
+		boolean isConnected();
+
+		void publish(String topic, byte[] payload, int qos, boolean retained) throws Exception;
+
+		void disconnect();
+	}
+
+	/**
+	 * Paho implementation.
+	 */
+	public static class PahoTransport implements Transport {
+		private final String brokerURL;
+		private final String clientId;
+		private MqttClient mqttClient = null;
+
+		public PahoTransport(String brokerURL, String clientId) {
+			this.brokerURL = brokerURL;
+			this.clientId = clientId;
+		}
+
+		@Override
+		public void connect() throws Exception {
+			if (mqttClient == null) {
+				mqttClient = new MqttClient(this.brokerURL, this.clientId, new MemoryPersistence());
+			}
+			MqttConnectOptions options = new MqttConnectOptions();
+			options.setCleanSession(false);
+			options.setWill(mqttClient.getTopic("nmea/LWT"), "I'm gone.".getBytes(), 0, false); // LWT: Last Will and Testament
+			mqttClient.connect(options);
+		}
+
+		@Override
+		public boolean isConnected() {
+			return mqttClient != null && mqttClient.isConnected();
+		}
+
+		@Override
+		public void publish(String topic, byte[] payload, int qos, boolean retained) throws Exception {
+			mqttClient.publish(topic, payload, qos, retained);
+		}
+
+		@Override
+		public void disconnect() {
+			if (mqttClient != null) {
+				try {
+					if (mqttClient.isConnected()) {
+						mqttClient.disconnect();
+					}
+					mqttClient.close();
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+				mqttClient = null;
+			}
+		}
+	}
+
+	private static class Mapping {
+		String key;
+		String topic;
+		long minInterval = 0L;
+		int qos;
+		boolean text = false;
+
+		long lastSampled = 0L;
+		String lastPayload = null;
+	}
+
+	private static class Outbound {
+		byte[] payload;
+		int qos;
+	}
 
 	private final static NumberFormat TEMP_FMT = new DecimalFormat("##0.00");
 	public static final String TOPIC_AIR_TEMPERATURE = "nmea/airTemperature";
 	public static final String TOPIC_WATER_TEMPERATURE = "nmea/waterTemperature";
 	public static final String TOPIC_POSITION = "nmea/position";
 
+	private final static long DEFAULT_MIN_RECONNECT_DELAY = 1_000L;
+	private final static long DEFAULT_MAX_RECONNECT_DELAY = 60_000L;
+
+	private Transport transport;
+	private String brokerURL;
+	private Properties props;
+
+	private final List<Mapping> mappings = new ArrayList<>();
+	private int qos = 0;
+	private boolean retained = false;
+	private long batchInterval = 0L;
+	private String batchTopic = "nmea/snapshot";
+	private long lastBatch = 0L;
+	private long minReconnectDelay = DEFAULT_MIN_RECONNECT_DELAY;
+	private long maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+
+	// Outbound queue, by topic, in order of arrival. Guarded by itself.
+	private final LinkedHashMap<String, Outbound> outbound = new LinkedHashMap<>();
+
+	private final Gson gson = new Gson();
+	private final Object signal = new Object();
+	private boolean dataArrived = false;
+	private volatile boolean keepWorking = true;
+	private Thread worker = null;
+
+	// Written by the publishing thread only, read from the REST threads
+	private volatile long published = 0L;
+	private volatile long reconnections = 0L;
+
 	public MQTTPublisher() throws Exception {
 	}
 
+	/**
+	 * For tests, or any other client.
+	 * @param transport the broker connection to use
+	 */
+	public MQTTPublisher(Transport transport) {
+		this.transport = transport;
+	}
+
 	/*
 	 * brokerURL like tcp://hostname:port
 	 */
-	private void init() throws Exception {
+	private void init() {
 		if (props == null) {
 			throw new RuntimeException("Need props!");
 		}
-		String brokerURL = props.getProperty("broker.url");
-		if (brokerURL == null) {
-			throw new RuntimeException("No broker.url found in the props...");
+		if (transport == null) {
+			String brokerURL = props.getProperty("broker.url");
+			if (brokerURL == null) {
+				throw new RuntimeException("No broker.url found in the props...");
+			}
+			this.brokerURL = brokerURL;
+			transport = new PahoTransport(brokerURL, props.getProperty("client.id", "nmea-pub"));
+		} else {
+			this.brokerURL = props.getProperty("broker.url", "in-process");
 		}
-		this.brokerURL = brokerURL;
+		qos = Integer.parseInt(props.getProperty("qos", "0"));
+		retained = "true".equals(props.getProperty("retained", "false"));
+		batchInterval = Long.parseLong(props.getProperty("batch.interval", "0"));
+		batchTopic = props.getProperty("batch.topic", batchTopic);
+		minReconnectDelay = Long.parseLong(props.getProperty("reconnect.min.delay", String.valueOf(DEFAULT_MIN_RECONNECT_DELAY)));
+		maxReconnectDelay = Long.parseLong(props.getProperty("reconnect.max.delay", String.valueOf(DEFAULT_MAX_RECONNECT_DELAY)));
 
-		try {
-
-			mqttClient = new MqttClient(this.brokerURL, "nmea-pub");
-
-		} catch (MqttException e) {
-			throw e;
+		mappings.clear();
+		int idx = 1;
+		while (props.getProperty(String.format("mapping.%02d.key", idx)) != null) {
+			String prefix = String.format("mapping.%02d.", idx);
+			Mapping mapping = new Mapping();
+			mapping.key = props.getProperty(prefix + "key");
+			mapping.topic = props.getProperty(prefix + "topic");
+			if (mapping.topic == null) {
+				throw new RuntimeException(String.format("No topic for %skey [%s]", prefix, mapping.key));
+			}
+			mapping.minInterval = Long.parseLong(props.getProperty(prefix + "min.interval", "0"));
+			mapping.qos = Integer.parseInt(props.getProperty(prefix + "qos", String.valueOf(qos)));
+			mapping.text = "text".equals(props.getProperty(prefix + "format", "json"));
+			mappings.add(mapping);
+			idx++;
 		}
-
-		try {
-			MqttConnectOptions options = new MqttConnectOptions();
-			options.setCleanSession(false);
-			options.setWill(mqttClient.getTopic("nmea/LWT"), "I'm gone.".getBytes(), 0, false); // LWT: Last Will and Testament
-			mqttClient.connect(options);
-		} catch (Exception e) {
-			throw e;
+		if (mappings.isEmpty()) { // Default ones
+			mappings.add(defaultMapping(NMEADataCache.AIR_TEMP, TOPIC_AIR_TEMPERATURE));
+			mappings.add(defaultMapping(NMEADataCache.WATER_TEMP, TOPIC_WATER_TEMPERATURE));
+			mappings.add(defaultMapping(NMEADataCache.POSITION, TOPIC_POSITION));
 		}
 	}
 
+	private Mapping defaultMapping(String key, String topic) {
+		Mapping mapping = new Mapping();
+		mapping.key = key;
+		mapping.topic = topic;
+		mapping.qos = qos;
+		mapping.text = true;
+		return mapping;
+	}
+
 	public String getBrokerURL() {
 		return this.brokerURL;
 	}
 
+	private synchronized void start() {
+		if (worker == null) {
+			keepWorking = true;
+			worker = new Thread(this::work, "MQTTPublisher");
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Does not block, the data are read from the cache by the publishing thread.
+	 * @param message ignored, the cache has been fed already.
+	 */
 	@Override
 	public void write(byte[] message) {
+		synchronized (signal) {
+			dataArrived = true;
+			signal.notify();
+		}
+	}
 
-		if (mqttClient == null) {
-			try {
-				init();
-			} catch (Exception ex) {
-				ex.printStackTrace();
+	private void work() {
+		boolean connected = false;
+		long reconnectDelay = minReconnectDelay;
+		long nextReconnect = 0L;
+		long nextWake = 0L;
+		while (keepWorking) {
+			synchronized (signal) {
+				long wait = nextWake - System.currentTimeMillis();
+				if (!dataArrived && wait > 0) {
+					try {
+						signal.wait(wait);
+					} catch (InterruptedException ie) {
+						break;
+					}
+				}
+				dataArrived = false;
+			}
+			if (!keepWorking) {
+				break;
+			}
+			long now = System.currentTimeMillis();
+			nextWake = sample(now);
+			// Connection
+			if (!connected || !transport.isConnected()) {
+				connected = false;
+				if (now >= nextReconnect) {
+					try {
+						transport.connect();
+						connected = true;
+						reconnectDelay = minReconnectDelay;
+						reconnections++;
+					} catch (Exception ex) {
+						System.err.println(String.format("MQTTPublisher: connection to %s failed (%s), retrying in %d ms", brokerURL, ex.toString(), reconnectDelay));
+						nextReconnect = now + reconnectDelay;
+						reconnectDelay = Math.min(reconnectDelay * 2, maxReconnectDelay);
+					}
+				}
+				if (!connected) {
+					nextWake = Math.min(nextWake, nextReconnect);
+					continue;
+				}
+			}
+			// Send what is queued
+			if (!drain()) {
+				connected = false;
+				nextReconnect = System.currentTimeMillis() + reconnectDelay;
+				reconnectDelay = Math.min(reconnectDelay * 2, maxReconnectDelay);
+				nextWake = Math.min(nextWake, nextReconnect);
 			}
 		}
+		transport.disconnect();
+	}
 
-		try {
-			String mess = new String(message);
-			if (!mess.isEmpty()) {
-				String sentenceId = StringParsers.getSentenceID(mess);
-				switch (sentenceId) {
-					case "MTA":
-						double airTemp = StringParsers.parseMTA(mess);
-						publishAirTemperature(airTemp);
-						break;
-					case "MTW":
-						double waterTemp = StringParsers.parseMTW(mess);
-						publishWaterTemperature(waterTemp);
-						break;
-					case "RMC":
-						RMC rmc = StringParsers.parseRMC(mess);
-						publishPosition(rmc.getGp());
-						break;
-					default: // TODO: etc...
-						break;
+	/**
+	 * Reads the cache, queues what changed.
+	 * @return the time of the next expected sampling, epoch ms
+	 */
+	private long sample(long now) {
+		long nextWake = now + 1_000L;
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			return nextWake;
+		}
+		if (batchInterval > 0) {
+			if (now - lastBatch >= batchInterval) {
+				lastBatch = now;
+				JsonObject snapshot = new JsonObject();
+				for (Mapping mapping : mappings) {
+					Object value = cache.get(mapping.key);
+					if (value != null) {
+						snapshot.add(mapping.key, gson.toJsonTree(value));
+					}
 				}
+				snapshot.addProperty("timestamp", now);
+				enqueue(batchTopic, snapshot.toString(), qos);
+			}
+			return lastBatch + batchInterval;
+		}
+		for (Mapping mapping : mappings) {
+			if (now - mapping.lastSampled < mapping.minInterval) {
+				nextWake = Math.min(nextWake, mapping.lastSampled + mapping.minInterval);
+				continue;
 			}
-		} catch (Exception ex) {
-			throw new RuntimeException(ex);
+			Object value = cache.get(mapping.key);
+			if (value == null) {
+				continue;
+			}
+			String payload = mapping.text ? format(value) : gson.toJson(value);
+			if (!payload.equals(mapping.lastPayload)) { // Only if it changed
+				mapping.lastPayload = payload;
+				mapping.lastSampled = now;
+				enqueue(mapping.topic, payload, mapping.qos);
+			}
+		}
+		return nextWake;
+	}
+
+	private static String format(Object value) {
+		if (value instanceof Temperature) {
+			return String.format("%s°C", TEMP_FMT.format(((Temperature) value).getValue()));
+		}
+		return value.toString();
+	}
+
+	private void enqueue(String topic, String payload, int qos) {
+		Outbound out = new Outbound();
+		out.payload = payload.getBytes();
+		out.qos = qos;
+		synchronized (outbound) {
+			outbound.remove(topic); // Coalesced, goes to the end of the queue.
+			outbound.put(topic, out);
 		}
 	}
 
-	private void publishAirTemperature(double temp) throws MqttException {
-		final MqttTopic temperatureTopic = mqttClient.getTopic(TOPIC_AIR_TEMPERATURE);
-		final String temperature = String.format("%s°C", TEMP_FMT.format(temp));
-		temperatureTopic.publish(new MqttMessage(temperature.getBytes()));
-		System.out.println("Published data. Topic: " + temperatureTopic.getName() + "  Message: " + temperature);
+	/**
+	 * @return false if the connection was lost. What was not sent remains in the queue.
+	 */
+	private boolean drain() {
+		while (true) {
+			String topic;
+			Outbound out;
+			synchronized (outbound) {
+				Iterator<Map.Entry<String, Outbound>> iterator = outbound.entrySet().iterator();
+				if (!iterator.hasNext()) {
+					return true;
+				}
+				Map.Entry<String, Outbound> first = iterator.next();
+				topic = first.getKey();
+				out = first.getValue();
+			}
+			try {
+				transport.publish(topic, out.payload, out.qos, retained);
+				published++;
+			} catch (Exception ex) {
+				System.err.println(String.format("MQTTPublisher: publishing on %s failed: %s", topic, ex.toString()));
+				return false;
+			}
+			synchronized (outbound) {
+				if (outbound.get(topic) == out) { // Not replaced in the meantime
+					outbound.remove(topic);
+				}
+			}
+		}
 	}
 
-	private void publishWaterTemperature(double temp) throws MqttException {
-		final MqttTopic temperatureTopic = mqttClient.getTopic(TOPIC_WATER_TEMPERATURE);
-		final String temperature = String.format("%s°C", TEMP_FMT.format(temp));
-		temperatureTopic.publish(new MqttMessage(temperature.getBytes()));
-		System.out.println("Published data. Topic: " + temperatureTopic.getName() + "  Message: " + temperature);
+	public int getQueueSize() {
+		synchronized (outbound) {
+			return outbound.size();
+		}
 	}
 
-	private void publishPosition(GeoPos pos) throws MqttException {
-		final MqttTopic temperatureTopic = mqttClient.getTopic(TOPIC_POSITION);
-		final String temperature = String.format("%s", pos.toString());
-		temperatureTopic.publish(new MqttMessage(temperature.getBytes()));
-		System.out.println("Published data. Topic: " + temperatureTopic.getName() + "  Message: " + temperature);
+	public long getPublished() {
+		return published;
 	}
 
 	@Override
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
-		try {
-			this.mqttClient.disconnect();
-		} catch (Exception ex) {
-			throw new RuntimeException(ex);
+		keepWorking = false;
+		synchronized (signal) {
+			signal.notify();
+		}
+		Thread stopping = worker;
+		if (stopping != null) {
+			try {
+				stopping.join(5_000L);
+			} catch (InterruptedException ie) {
+				// Absorb
+			}
 		}
+		worker = null;
 	}
 
 	public static class MQTTBean {
 		private String cls;
 		private String brokerURL;
 		private String type = "mqtt";
+		private int queued;
+		private long published;
+		private long connections;
 
 		public MQTTBean(MQTTPublisher instance) {
 			cls = instance.getClass().getName();
 			brokerURL = instance.brokerURL;
+			queued = instance.getQueueSize();
+			published = instance.published;
+			connections = instance.reconnections;
 		}
 
 		public String getBrokerURL() {
@@ -157,5 +453,7 @@ public class MQTTPublisher implements Forwarder {
 	@Override
 	public void setProperties(Properties props) {
 		this.props = props;
+		init();
+		start();
 	}
 }
@@ -1,22 +1,145 @@
 package nmea.forwarders;
 
-import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
+/**
+ * Plain text NMEA, to whoever connects.
+ * <br>
+ * Optionally (<code>compression=deflate</code>), a client can ask for a deflated stream, by sending the line
+ * {@link #DEFLATE_REQUEST} (see {@link nmea.consumers.reader.TCPReader}). The server replies {@link #DEFLATE_ACK}
+ * in plain text, and everything after that is deflated. Clients not asking keep getting plain text, on the same port.
+ * <br>
+ * The deflated stream is sync-flushed every <code>flush.interval</code> ms (0: after each sentence).
+ * The longer, the better the compression, and the later the sentences.
+ * <pre>
+ * forward.XX.type=tcp
+ * forward.XX.port=7001
+ * forward.XX.compression=deflate
+ * forward.XX.compression.level=6
+ * forward.XX.flush.interval=1000
+ * </pre>
+ */
 public class TCPServer implements Forwarder {
+	public final static String DEFLATE_REQUEST = "@DEFLATE";
+	public final static String DEFLATE_ACK = "@DEFLATE OK";
+
+	public final static long DEFAULT_FLUSH_INTERVAL = 1_000L;
+
 	private TCPServer instance = this;
-	private List<Socket> clientSocketlist = new ArrayList<Socket>(1);
+	private List<Client> clientSocketlist = new ArrayList<>(1);
 
 	private int tcpPort = 7001;
 	private ServerSocket serverSocket = null;
 
+	private final boolean compression;
+	private final int compressionLevel;
+	private final long flushInterval;
+
+	// Compression stats, for the clients gone
+	private long rawBytes = 0L;
+	private long compressedBytes = 0L;
+	private long compressionNanos = 0L;
+
+	/**
+	 * One connected client, with its stream, plain or deflated.
+	 */
+	private class Client {
+		private final Socket socket;
+		private OutputStream out;
+		private Deflater deflater = null;
+		private boolean pending = false; // Deflated, not flushed yet
+		private long lastFlush = 0L;
+		private long nanos = 0L;
+
+		Client(Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = socket.getOutputStream();
+		}
+
+		void write(byte[] message) throws IOException {
+			if (deflater == null) {
+				out.write(message);
+				out.flush();
+			} else {
+				long before = System.nanoTime();
+				out.write(message);
+				pending = true;
+				if (flushInterval <= 0 || System.currentTimeMillis() - lastFlush >= flushInterval) {
+					flush();
+				}
+				nanos += (System.nanoTime() - before);
+			}
+		}
+
+		void flush() throws IOException {
+			out.flush(); // Sync flush
+			pending = false;
+			lastFlush = System.currentTimeMillis();
+		}
+
+		/**
+		 * Reads what the client says, a {@link #DEFLATE_REQUEST}, or nothing. Also tells when it is gone.
+		 */
+		void listen() {
+			try {
+				InputStream in = socket.getInputStream();
+				StringBuilder line = new StringBuilder();
+				int b;
+				while ((b = in.read()) != -1) {
+					if (b == '\n') {
+						if (compression && deflater == null && DEFLATE_REQUEST.equals(line.toString().trim())) {
+							synchronized (this) {
+								out.write((DEFLATE_ACK + "\r\n").getBytes(StandardCharsets.US_ASCII));
+								out.flush();
+								deflater = new Deflater(compressionLevel);
+								out = new DeflaterOutputStream(socket.getOutputStream(), deflater, 8_192, true);
+								lastFlush = System.currentTimeMillis();
+							}
+							System.out.println(String.format(".......... deflated stream for %s (TCP:%d).", socket.getRemoteSocketAddress(), tcpPort));
+						}
+						line.setLength(0);
+					} else if (line.length() < 256) {
+						line.append((char) b);
+					}
+				}
+			} catch (IOException ioe) {
+				// Gone
+			}
+		}
+
+		synchronized void release() {
+			if (deflater != null) {
+				synchronized (TCPServer.this) {
+					rawBytes += deflater.getBytesRead();
+					compressedBytes += deflater.getBytesWritten();
+					compressionNanos += nanos;
+				}
+				deflater.end();
+				deflater = null;
+			}
+		}
+	}
+
 	public TCPServer(int port) throws Exception {
+		this(port, false, Deflater.DEFAULT_COMPRESSION, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	public TCPServer(int port, boolean compression, int compressionLevel, long flushInterval) throws Exception {
 		this.tcpPort = port;
+		this.compression = compression;
+		this.compressionLevel = compressionLevel;
+		this.flushInterval = flushInterval;
 
 		try {
 			SocketThread socketThread = new SocketThread(this);
@@ -24,6 +147,11 @@ public class TCPServer implements Forwarder {
 		} catch (Exception ex) {
 			throw ex;
 		}
+		if (compression && flushInterval > 0) {
+			Thread flusher = new Thread(this::flushPending, "TCPServer:" + port + " flush");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
 	}
 
 	public int getTcpPort() {
@@ -31,23 +159,49 @@ public class TCPServer implements Forwarder {
 	}
 
 	protected void setSocket(Socket skt) {
-		this.clientSocketlist.add(skt);
+		Client client;
+		try {
+			client = new Client(skt);
+		} catch (IOException ioe) {
+			System.err.println("TCPServer.setSocket:" + ioe.getLocalizedMessage());
+			return;
+		}
+		synchronized (clientSocketlist) {
+			this.clientSocketlist.add(client);
+		}
+		Thread listener = new Thread(() -> {
+			client.listen();
+			remove(client);
+		}, "TCPServer:" + tcpPort + " " + skt.getRemoteSocketAddress());
+		listener.setDaemon(true);
+		listener.start();
+	}
+
+	private void remove(Client client) {
+		boolean removed;
+		synchronized (clientSocketlist) {
+			removed = this.clientSocketlist.remove(client);
+		}
+		if (removed) {
+			try {
+				client.socket.close();
+			} catch (IOException ioe) {
+				// Absorb
+			}
+			client.release();
+		}
 	}
 
 	@Override
 	public void write(byte[] message) {
-		List<Socket> toRemove = new ArrayList<Socket>();
+		List<Client> toRemove = new ArrayList<>();
 		synchronized( clientSocketlist) {
-			clientSocketlist.stream().forEach(tcpSocket -> { // TODO Synchronize the stream?
-				synchronized (tcpSocket) {
+			clientSocketlist.stream().forEach(client -> {
+				synchronized (client) {
 					try {
-						DataOutputStream out = null;
-						if (out == null)
-							out = new DataOutputStream(tcpSocket.getOutputStream());
-						out.write(message);
-						out.flush();
+						client.write(message);
 					} catch (SocketException se) {
-						toRemove.add(tcpSocket);
+						toRemove.add(client);
 					} catch (Exception ex) {
 						System.err.println("TCPWriter.write:" + ex.getLocalizedMessage());
 						ex.printStackTrace();
@@ -57,8 +211,40 @@ public class TCPServer implements Forwarder {
 		}
 
 		if (toRemove.size() > 0) {
+			toRemove.stream().forEach(this::remove);
+		}
+	}
+
+	/**
+	 * Sync-flushes the deflated streams that have not been for <code>flush.interval</code> ms,
+	 * for the last sentences not to wait for the next ones.
+	 */
+	private void flushPending() {
+		while (true) {
+			try {
+				Thread.sleep(flushInterval);
+			} catch (InterruptedException ie) {
+				break;
+			}
+			if (serverSocket != null && serverSocket.isClosed()) {
+				break;
+			}
+			List<Client> clients;
 			synchronized (clientSocketlist) {
-				toRemove.stream().forEach(this.clientSocketlist::remove);
+				clients = new ArrayList<>(clientSocketlist);
+			}
+			for (Client client : clients) {
+				synchronized (client) {
+					if (client.pending && System.currentTimeMillis() - client.lastFlush >= flushInterval) {
+						try {
+							long before = System.nanoTime();
+							client.flush();
+							client.nanos += (System.nanoTime() - before);
+						} catch (IOException ioe) {
+							// The write will tell
+						}
+					}
+				}
 			}
 		}
 	}
@@ -67,6 +253,30 @@ public class TCPServer implements Forwarder {
 		return clientSocketlist.size();
 	}
 
+	/**
+	 * @return raw bytes, compressed bytes, compression time in ns, for the deflated clients, connected or gone.
+	 */
+	private long[] getCompressionStats() {
+		long[] stats;
+		synchronized (this) {
+			stats = new long[] { rawBytes, compressedBytes, compressionNanos };
+		}
+		List<Client> clients;
+		synchronized (clientSocketlist) {
+			clients = new ArrayList<>(clientSocketlist);
+		}
+		for (Client client : clients) {
+			synchronized (client) {
+				if (client.deflater != null) {
+					stats[0] += client.deflater.getBytesRead();
+					stats[1] += client.deflater.getBytesWritten();
+					stats[2] += client.nanos;
+				}
+			}
+		}
+		return stats;
+	}
+
 	private String formatByteHexa(byte b) {
 		String s = Integer.toHexString(b).toUpperCase();
 		while (s.length() < 2)
@@ -78,8 +288,10 @@ public class TCPServer implements Forwarder {
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
 		try {
-			for (Socket tcpSocket : clientSocketlist)
-				tcpSocket.close();
+			if (serverSocket != null)
+				serverSocket.close();
+			for (Client client : new ArrayList<>(clientSocketlist))
+				client.socket.close();
 		} catch (Exception ex) {
 			throw new RuntimeException(ex);
 		}
@@ -141,6 +353,11 @@ public class TCPServer implements Forwarder {
 		private int port;
 		private String type = "tcp";
 		private int nbClients = 0;
+		private boolean compression;
+		private long rawBytes;
+		private long compressedBytes;
+		private double compressionRatio;
+		private long compressionCpuMs;
 
 		public int getPort() {
 			return port;
@@ -150,6 +367,14 @@ public class TCPServer implements Forwarder {
 			cls = instance.getClass().getName();
 			port = instance.tcpPort;
 			nbClients = instance.getNbClients();
+			compression = instance.compression;
+			if (compression) {
+				long[] stats = instance.getCompressionStats();
+				rawBytes = stats[0];
+				compressedBytes = stats[1];
+				compressionRatio = stats[1] == 0 ? 0d : (double) stats[0] / stats[1];
+				compressionCpuMs = stats[2] / 1_000_000L;
+			}
 		}
 	}
 
@@ -2,25 +2,12 @@ package nmea.forwarders;
 
 import com.google.gson.Gson;
 import context.ApplicationContext;
-import context.NMEADataCache;
-import nmea.parser.Angle180;
-import nmea.parser.Angle180EW;
-import nmea.parser.Angle180LR;
-import nmea.parser.Angle360;
-import nmea.parser.Current;
-import nmea.parser.Depth;
-import nmea.parser.Distance;
-import nmea.parser.GeoPos;
-import nmea.parser.Pressure;
-import nmea.parser.SolarDate;
-import nmea.parser.Speed;
-import nmea.parser.Temperature;
-import nmea.parser.UTCDate;
-import nmea.parser.UTCTime;
+import context.CacheChangeBus;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.Properties;
 
 /**
@@ -30,81 +17,83 @@ import java.util.Properties;
  * The transformer turns the content of the NMEA Cache into the expected format.
  * <br>
  * See https://github.com/OlivierLD/pebble/tree/master/NMEA.app
+ * <br>
+ * The document is sent when the data it is made of change in the cache (see {@link CacheChangeBus}),
+ * at most every <code>min.interval</code> ms (property, default 100), and at least every second.
+ * <br>
+ * With <code>encoding=binary</code>, the document is sent as binary frames instead of JSON,
+ * only the fields that have changed, see {@link BinaryFrames}. The default is <code>text</code>.
+ * <pre>
+ * forward.XX.type=wsp
+ * forward.XX.wsuri=ws://localhost:9876/
+ * forward.XX.encoding=binary
+ * forward.XX.keyframe.interval=10000
+ * forward.XX.min.interval=100
+ * </pre>
  */
 public class WebSocketProcessor implements Forwarder {
 	private WebSocketClient wsClient = null;
 	private boolean isConnected = false;
 	private String wsUri;
 
-	private boolean keepWorking = true;
-
-	private static class CacheBean {
-		private long gpstime;
-//	private String gpstimefmt;
-		private long gpsdatetime;
-//	private String gpsdatetimefmt;
-
-		private String wp;
-		private double d2wp;
-		private int b2wp;
-		private double xte;
-
-		private double lat;
-		private double lng;
-		private String pos;
-
-		private long gpssolardate;
-
-		private double log;
-		private double daylog;
-		private int cog;
-		private double sog;
-
-		private int awa;
-		private double aws;
-		private double dbt;
-		private int hdg;
+	public final static long DEFAULT_MIN_INTERVAL = 100L; // ms
+	private final static long HEARTBEAT = 1_000L; // ms, for the clients expecting a message every second.
+	public final static long DEFAULT_KEYFRAME_INTERVAL = 10_000L; // ms
 
-		private double bsp;
+	private boolean binary = false;
+	private BinaryFrames.CacheEncoder encoder = null;
+	// Stats
+	private long messages = 0L;
+	private long bytesSent = 0L;
+	private long encodingNanos = 0L;
 
-		private double wtemp;
-		private double atemp;
+	private final Gson gson = new Gson();
+	private final CacheBean bean = new CacheBean();
+	private StringBuilder content = new StringBuilder(1_024);
+	private StringBuilder lastSent = new StringBuilder(1_024);
+	private long lastSentTime = 0L;
+	private CacheChangeBus.Subscription subscription = null;
 
-		private double D;
-		private double d;
-		private double W;
-
-		private double leeway;
-		private int cmg;
-
-		private double tws;
-		private int twa;
-		private int twd;
-
-		private int cdr;
-		private double csp;
+	/**
+	 * @param serverURL like ws://hostname:port/
+	 * @throws Exception
+	 */
+	public WebSocketProcessor(String serverURL) throws Exception {
+		this(serverURL, false, DEFAULT_KEYFRAME_INTERVAL);
+	}
 
-		private double prmsl;
-		private double hum;
+	/**
+	 * @param serverURL        like ws://hostname:port/
+	 * @param binary           binary frames if true, JSON otherwise
+	 * @param keyframeInterval in ms, when binary
+	 * @throws Exception
+	 */
+	public WebSocketProcessor(String serverURL, boolean binary, long keyframeInterval) throws Exception {
+		this(serverURL, binary, keyframeInterval, DEFAULT_MIN_INTERVAL);
 	}
 
 	/**
-	 * @param serverURL like ws://hostname:port/
+	 * @param serverURL        like ws://hostname:port/
+	 * @param binary           binary frames if true, JSON otherwise
+	 * @param keyframeInterval in ms, when binary
+	 * @param minInterval      in ms, min time between two documents
 	 * @throws Exception
 	 */
-	public WebSocketProcessor(String serverURL) throws Exception {
+	public WebSocketProcessor(String serverURL, boolean binary, long keyframeInterval, long minInterval) throws Exception {
 		// Make sure the cache has been initialized.
 		if (ApplicationContext.getInstance().getDataCache() == null) {
 			throw new RuntimeException("Init the Cache first. See the properties file used at startup."); // Oops
 		}
 
 		this.wsUri = serverURL;
+		setEncoding(binary, keyframeInterval);
 		try {
 			wsClient = new WebSocketClient(new URI(serverURL)) {
 				@Override
 				public void onOpen(ServerHandshake serverHandshake) {
 					System.out.println("WS On Open");
 					isConnected = true;
+					requestKeyframe(false); // The server may have been restarted
 				}
 
 				@Override
@@ -112,6 +101,14 @@ public class WebSocketProcessor implements Forwarder {
 //        System.out.println("WS On Message");
 				}
 
+				@Override
+				public void onMessage(ByteBuffer bytes) {
+					// A client has connected to the server, it needs a keyframe to decode the deltas. See wsnmea.js
+					if (bytes.remaining() == 1 && bytes.get(bytes.position()) == BinaryFrames.KEYFRAME_REQUEST) {
+						requestKeyframe(true);
+					}
+				}
+
 				@Override
 				public void onClose(int i, String string, boolean b) {
 					System.out.println("WS On Close");
@@ -129,146 +126,90 @@ public class WebSocketProcessor implements Forwarder {
 			ex.printStackTrace();
 		}
 
-		Thread cacheThread = new Thread("WebSocketProcessor CacheThread") {
-			public void run() {
-				while (keepWorking) {
-					NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
-					// Populate bean
-					CacheBean bean = new CacheBean();
-					if (cache != null) {
-						Object bsp = cache.get(NMEADataCache.BSP);
-						if (bsp != null) {
-							bean.bsp = ((Speed)bsp).getValue();
-						}
-						Object wtemp = cache.get(NMEADataCache.WATER_TEMP);
-						if (wtemp != null) {
-							bean.wtemp = ((Temperature)wtemp).getValue();
-						}
-						Object atemp = cache.get(NMEADataCache.AIR_TEMP);
-						if (atemp != null) {
-							bean.atemp = ((Temperature)atemp).getValue();
-						}
-						Object gpstime = cache.get(NMEADataCache.GPS_TIME);
-						if (gpstime != null) {
-							bean.gpstime = ((UTCTime)gpstime).getValue().getTime();
-						}
-						Object gpsdatetime = cache.get(NMEADataCache.GPS_DATE_TIME);
-						if (gpsdatetime != null) {
-							bean.gpsdatetime = ((UTCDate)gpsdatetime).getValue().getTime();
-						}
-						Object nextwp = cache.get(NMEADataCache.TO_WP);
-						if (nextwp != null) {
-							bean.wp = (String)nextwp;
-						}
-						Object d2wp = cache.get(NMEADataCache.D2WP);
-						if (d2wp != null) {
-							bean.d2wp = ((Distance)d2wp).getValue();
-						}
-						Object cog = cache.get(NMEADataCache.COG);
-						if (cog != null) {
-							bean.cog = (int)Math.round(((Angle360)cog).getValue());
-						}
-						Object sog = cache.get(NMEADataCache.SOG);
-						if (sog != null) {
-							bean.sog = ((Speed)sog).getValue();
-						}
-						Object leeway = cache.get(NMEADataCache.LEEWAY);
-						if (leeway != null) {
-							bean.leeway = ((Angle180LR)leeway).getValue();
-						}
-						Object aws = cache.get(NMEADataCache.AWS);
-						if (aws != null) {
-							bean.aws = ((Speed)aws).getValue();
-						}
-						Object tws = cache.get(NMEADataCache.TWS);
-						if (tws != null) {
-							bean.tws = ((Speed)tws).getValue();
-						}
-						Object awa = cache.get(NMEADataCache.AWA);
-						if (awa != null) {
-							bean.awa = (int)Math.round(((Angle180)awa).getValue());
-						}
-						Object twa = cache.get(NMEADataCache.TWA);
-						if (twa != null) {
-							bean.twa = (int)Math.round(((Angle180)twa).getValue());
-						}
-						Object twd = cache.get(NMEADataCache.TWD);
-						if (twd != null) {
-							bean.twd = (int)Math.round(((Angle360)twd).getValue());
-						}
-						Object pos = cache.get(NMEADataCache.POSITION);
-						if (pos != null) {
-							GeoPos geopos = (GeoPos)pos;
-							bean.lat = geopos.lat;
-							bean.lng = geopos.lng;
-						}
-						Object decl = cache.get(NMEADataCache.DECLINATION);
-						if (decl != null) {
-							bean.D = ((Angle180EW)decl).getValue();
-						}
-						Object dev = cache.get(NMEADataCache.DEVIATION);
-						if (dev != null) {
-							bean.d = ((Angle180EW)dev).getValue();
-						}
-						Object w = cache.get(NMEADataCache.VARIATION);
-						if (w != null) {
-							bean.W = ((Angle180EW)w).getValue();
-						}
-						Object hdg = cache.get(NMEADataCache.HDG_COMPASS);
-						if (hdg != null) {
-							bean.hdg = (int)Math.round(((Angle360)hdg).getValue());
-						}
-						Object cmg = cache.get(NMEADataCache.CMG);
-						if (cmg != null) {
-							bean.cmg = (int)Math.round(((Angle360)cmg).getValue());
-						}
-						Object vdr = cache.get(NMEADataCache.VDR_CURRENT);
-						if (vdr != null) {
-							bean.cdr = ((Current)vdr).angle;
-							bean.csp = ((Current)vdr).speed;
-						}
-						Object xte = cache.get(NMEADataCache.XTE);
-						if (xte != null) {
-							bean.xte = ((Distance)xte).getValue();
-						}
-						Object b2wp = cache.get(NMEADataCache.B2WP);
-						if (b2wp != null) {
-							bean.b2wp = (int)Math.round(((Angle360)b2wp).getValue());
-						}
-						Object dbt = cache.get(NMEADataCache.DBT);
-						if (dbt != null) {
-							bean.dbt = ((Depth)dbt).getValue();
-						}
-						Object solarDate = cache.get(NMEADataCache.GPS_SOLAR_TIME);
-						if (solarDate != null) {
-							bean.gpssolardate = ((SolarDate)solarDate).getValue().getTime();
-						}
-						Object log = cache.get(NMEADataCache.LOG);
-						if (log != null) {
-							bean.log = ((Distance)log).getValue();
-						}
-						Object dayLog = cache.get(NMEADataCache.DAILY_LOG);
-						if (dayLog != null) {
-							bean.daylog = ((Distance)dayLog).getValue();
-						}
-						Object prmsl = cache.get(NMEADataCache.BARO_PRESS);
-						if (prmsl != null) {
-							bean.prmsl = ((Pressure)prmsl).getValue();
-						}
-						Object hum = cache.get(NMEADataCache.RELATIVE_HUMIDITY);
-						if (hum != null) {
-							bean.hum = (Double)hum;
-						}
-					}
-					String content = new Gson().toJson(bean);
-					broadcast(content.getBytes());
+		subscribe(minInterval);
+	}
 
-					try { Thread.sleep(1000L); } catch (Exception ex) {}
-				}
-				System.out.println("Cache thread completed.");
+	private void subscribe(long minInterval) {
+		CacheChangeBus.getInstance().unsubscribe(subscription);
+		subscription = CacheChangeBus.getInstance().subscribe("WebSocketProcessor CacheThread", CacheBean.KEYS, minInterval, HEARTBEAT, this::onCacheChange);
+	}
+
+	/**
+	 * Invoked by the {@link CacheChangeBus}, in its own thread.
+	 * The JSON document is only sent if it differs from the previous one, or on heartbeat.
+	 */
+	private synchronized void onCacheChange() {
+		bean.populate(ApplicationContext.getInstance().getDataCache());
+		if (binary) {
+			sendBinary();
+			return;
+		}
+		long before = System.nanoTime();
+		content.setLength(0);
+		gson.toJson(bean, content);
+		if (sameContent(content, lastSent) && System.currentTimeMillis() - lastSentTime < HEARTBEAT) {
+			return;
+		}
+		String mess = content.toString();
+		encodingNanos += (System.nanoTime() - before);
+		if (!mess.isEmpty() && isConnected) {
+			this.wsClient.send(mess);
+			lastSentTime = System.currentTimeMillis();
+			messages++;
+			bytesSent += mess.length();
+		}
+		StringBuilder swap = lastSent;
+		lastSent = content;
+		content = swap;
+	}
+
+	/**
+	 * A delta with the fields that have changed, a keyframe from time to time.
+	 * An empty delta on heartbeat.
+	 */
+	private void sendBinary() {
+		long now = System.currentTimeMillis();
+		long before = System.nanoTime();
+		byte[] frame = encoder.encode(bean, now);
+		encodingNanos += (System.nanoTime() - before);
+		if (frame[0] == BinaryFrames.DELTA && frame[1] == 0 && now - lastSentTime < HEARTBEAT) {
+			return; // Nothing has changed
+		}
+		if (isConnected) {
+			this.wsClient.send(frame);
+			lastSentTime = now;
+			messages++;
+			bytesSent += frame.length;
+		}
+	}
+
+	/**
+	 * @param sendNow send it right away, or with the next change in the cache
+	 */
+	private synchronized void requestKeyframe(boolean sendNow) {
+		if (encoder != null) {
+			encoder.requestKeyframe();
+			if (sendNow) {
+				onCacheChange();
+			}
+		}
+	}
+
+	private synchronized void setEncoding(boolean binary, long keyframeInterval) {
+		this.binary = binary;
+		this.encoder = binary ? new BinaryFrames.CacheEncoder(keyframeInterval) : null;
+	}
+
+	private static boolean sameContent(StringBuilder one, StringBuilder two) {
+		if (one.length() != two.length()) {
+			return false;
+		}
+		for (int i = one.length() - 1; i >= 0; i--) { // The data at the end (wind, ...) move more than the beginning.
+			if (one.charAt(i) != two.charAt(i)) {
+				return false;
 			}
-		};
-		cacheThread.start();
+		}
+		return true;
 	}
 
 	public String getWsUri() {
@@ -294,9 +235,9 @@ public class WebSocketProcessor implements Forwarder {
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
 		try {
-			// Stop Cache thread
-			keepWorking = false;
-			try { Thread.sleep(2000L); } catch (Exception ex) {}
+			// Stop Cache notifications
+			CacheChangeBus.getInstance().unsubscribe(subscription);
+			subscription = null;
 			// Close WS Client
 			this.wsClient.close();
 		} catch (Exception ex) {
@@ -308,10 +249,20 @@ public class WebSocketProcessor implements Forwarder {
 		private String cls;
 		private String wsUri;
 		private String type = "wsp";
+		private String encoding;
+		private long messages;
+		private long bytesSent;
+		private long encodingCpuMs;
 
 		public WSBean(WebSocketProcessor instance) {
 			cls = instance.getClass().getName();
 			wsUri = instance.wsUri;
+			synchronized (instance) {
+				encoding = instance.binary ? "binary" : "text";
+				messages = instance.messages;
+				bytesSent = instance.bytesSent;
+				encodingCpuMs = instance.encodingNanos / 1_000_000L;
+			}
 		}
 
 		public String getWsUri() {
@@ -326,5 +277,12 @@ public class WebSocketProcessor implements Forwarder {
 
 	@Override
 	public void setProperties(Properties props) {
+		if (props != null && props.getProperty("min.interval") != null) {
+			subscribe(Long.parseLong(props.getProperty("min.interval")));
+		}
+		if (props != null && props.getProperty("encoding") != null) {
+			setEncoding("binary".equals(props.getProperty("encoding")),
+							Long.parseLong(props.getProperty("keyframe.interval", String.valueOf(DEFAULT_KEYFRAME_INTERVAL))));
+		}
 	}
 }
@@ -6,17 +6,52 @@ import org.java_websocket.handshake.ServerHandshake;
 import java.net.URI;
 import java.util.Properties;
 
+/**
+ * Sends each sentence in a text frame.
+ * <br>
+ * With <code>encoding=binary</code>, the sentences are sent together in one binary frame
+ * every <code>flush.interval</code> ms, see {@link BinaryFrames}. The default is <code>text</code>.
+ * <pre>
+ * forward.XX.type=ws
+ * forward.XX.wsuri=ws://localhost:9876/
+ * forward.XX.encoding=binary
+ * forward.XX.flush.interval=100
+ * </pre>
+ */
 public class WebSocketWriter implements Forwarder {
+	public final static long DEFAULT_FLUSH_INTERVAL = 100L; // ms
+	private final static int MAX_BATCH_BYTES = 32_768;
+
 	private WebSocketClient wsClient = null;
 	private boolean isConnected = false;
 	private String wsUri;
 
+	private final boolean binary;
+	private final long flushInterval;
+	private final BinaryFrames.SentenceBatch batch = new BinaryFrames.SentenceBatch();
+	private volatile Thread flusher = null;
+	// Stats
+	private long messages = 0L;
+	private long bytesSent = 0L;
+
 	/**
 	 * @param serverURL like ws://hostname:port/
 	 * @throws Exception
 	 */
 	public WebSocketWriter(String serverURL) throws Exception {
+		this(serverURL, false, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * @param serverURL     like ws://hostname:port/
+	 * @param binary        batched in binary frames if true, one text frame per sentence otherwise
+	 * @param flushInterval in ms, when binary
+	 * @throws Exception
+	 */
+	public WebSocketWriter(String serverURL, boolean binary, long flushInterval) throws Exception {
 		this.wsUri = serverURL;
+		this.binary = binary;
+		this.flushInterval = flushInterval;
 		try {
 			wsClient = new WebSocketClient(new URI(serverURL)) {
 				@Override
@@ -46,6 +81,38 @@ public class WebSocketWriter implements Forwarder {
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
+		if (binary) {
+			flusher = new Thread(() -> {
+				while (flusher == Thread.currentThread()) {
+					try {
+						Thread.sleep(flushInterval);
+					} catch (InterruptedException ie) {
+						break;
+					}
+					flush();
+				}
+			}, "WebSocketWriter flush");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+	}
+
+	private void flush() {
+		byte[] frame;
+		synchronized (batch) {
+			frame = batch.drain();
+		}
+		if (frame != null && isConnected) {
+			try {
+				this.wsClient.send(frame);
+				synchronized (this) {
+					messages++;
+					bytesSent += frame.length;
+				}
+			} catch (Exception ex) {
+				System.err.println("WebSocketWriter.flush:" + ex.getLocalizedMessage());
+			}
+		}
 	}
 
 	public String getWsUri() {
@@ -54,10 +121,25 @@ public class WebSocketWriter implements Forwarder {
 
 	@Override
 	public void write(byte[] message) {
+		if (binary) {
+			boolean full;
+			synchronized (batch) {
+				batch.add(message);
+				full = batch.size() >= MAX_BATCH_BYTES || batch.isFull();
+			}
+			if (full) {
+				flush();
+			}
+			return;
+		}
 		try {
 			String mess = new String(message);
 			if (!mess.isEmpty() && isConnected) {
 				this.wsClient.send(mess);
+				synchronized (this) {
+					messages++;
+					bytesSent += message.length;
+				}
 			}
 		} catch (Exception ex) {
 			throw new RuntimeException(ex);
@@ -68,6 +150,12 @@ public class WebSocketWriter implements Forwarder {
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
 		try {
+			if (flusher != null) {
+				Thread stopping = flusher;
+				flusher = null;
+				stopping.interrupt();
+				flush();
+			}
 			this.wsClient.close();
 		} catch (Exception ex) {
 			throw new RuntimeException(ex);
@@ -78,10 +166,18 @@ public class WebSocketWriter implements Forwarder {
 		private String cls;
 		private String wsUri;
 		private String type = "ws";
+		private String encoding;
+		private long messages;
+		private long bytesSent;
 
 		public WSBean(WebSocketWriter instance) {
 			cls = instance.getClass().getName();
 			wsUri = instance.wsUri;
+			encoding = instance.binary ? "binary" : "text";
+			synchronized (instance) {
+				messages = instance.messages;
+				bytesSent = instance.bytesSent;
+			}
 		}
 
 		public String getWsUri() {
@@ -106,6 +106,9 @@ public class CharacterModeConsole {
 	}
 
 	private Map<String, ConsoleData> consoleData = null;
+	// The static part of the screen (titles, units), and the screen itself.
+	private ScreenBuffer layout = null;
+	private ScreenBuffer screen = null;
 
 	public CharacterModeConsole() {
 		super();
@@ -155,9 +158,12 @@ public class CharacterModeConsole {
 		// The small touchscreen (320x240) in 8x8 resolution has 40 columns per line of text, in 6x12, 54 columns.
 	}
 
+	/**
+	 * Draws a frame in the back buffer of the screen, and sends to the terminal what has changed since the previous one,
+	 * in one write.
+	 */
 	public void displayData(NMEADataCache ndc, Properties props) {
 		if (first.isTrue()) {
-			AnsiConsole.out.println(EscapeSeq.ANSI_CLS);
 			first.setValue(false);
 			try {
 				initConsole(props);
@@ -165,6 +171,7 @@ public class CharacterModeConsole {
 				ex.printStackTrace();
 			}
 		}
+		screen.copyFrom(layout);
 		Set<String> keys = consoleData.keySet();
 		for (String s : keys) {
 			ConsoleData cd = consoleData.get(s);
@@ -215,11 +222,14 @@ public class CharacterModeConsole {
 						}
 					}
 				}
-				String plot = plotOneValue(1 + ((col - 1) * cellSize), row + 1, value, colorMap.get(cd.getFgData()), colorMap.get(cd.getBgData()));
-				AnsiConsole.out.println(plot);
-//      try { Thread.sleep(10); } catch (Exception ex) {}
+				screen.print(1 + ((col - 1) * cellSize) + keySize, row + 1, " " + value + " ", colorMap.get(cd.getFgData()), colorMap.get(cd.getBgData()), true);
 			}
 		}
+		String frame = screen.flush();
+		if (frame.length() > 0) {
+			AnsiConsole.out.print(frame);
+			AnsiConsole.out.flush();
+		}
 	}
 
 	private double getValueFromCache(String key, NMEADataCache ndc) {
@@ -396,12 +406,6 @@ public class CharacterModeConsole {
 												elem[5].trim()));
 			}
 		}
-		// First display
-		AnsiConsole.out.println(EscapeSeq.ANSI_CLS);
-		if (!lineZeroIsBusy) {
-			String screenTitle = consoleProps.getProperty("console.title", " - Character-mode NMEA console -");
-			AnsiConsole.out.println(EscapeSeq.ansiLocate(1, 1) + EscapeSeq.ansiSetTextAndBackgroundColor(EscapeSeq.ANSI_WHITE, EscapeSeq.ANSI_BLACK) + EscapeSeq.ANSI_BOLD + screenTitle + EscapeSeq.ANSI_NORMAL + EscapeSeq.ANSI_DEFAULT_BACKGROUND + EscapeSeq.ANSI_DEFAULT_TEXT);
-		}
 		// Ordered lists
 		Map<Integer, Map<Integer, String>> table = new TreeMap<Integer, Map<Integer, String>>();
 		Set<String> keys = consoleData.keySet();
@@ -417,6 +421,7 @@ public class CharacterModeConsole {
 			rowMap.put(col, cd.getKey());
 		}
 
+		Map<Integer, CharData[]> lines = new TreeMap<>();
 		Set<Integer> rows = table.keySet();
 		for (Integer i : rows) {
 			Map<Integer, String> cols = table.get(i);
@@ -450,13 +455,58 @@ public class CharacterModeConsole {
 //    System.out.println();
 			CharData[] cda = new CharData[consoleLine.size()];
 			cda = consoleLine.toArray(cda);
-			String dataLine = formatCharacterLine(1, 1 + i.intValue(), cda);
-			AnsiConsole.out.println(dataLine);
-//    System.out.println(dataLine);
+			lines.put(i, cda);
 		}
+		// Screen size: the lines, and the values (their cell may not be where the line puts it)
+		String screenTitle = consoleProps.getProperty("console.title", " - Character-mode NMEA console -");
+		int width = lineZeroIsBusy ? 0 : screenTitle.length();
+		int height = 1;
+		for (Map.Entry<Integer, CharData[]> line : lines.entrySet()) {
+			width = Math.max(width, lineWidth(line.getValue()));
+			height = Math.max(height, line.getKey() + 1);
+		}
+		for (ConsoleData cd : consoleData.values()) {
+			int valueWidth = nonNumericData.containsKey(cd.getKey()) ? nonNumericData.get(cd.getKey()) : dataSize;
+			width = Math.max(width, ((cd.getX() - 1) * cellSize) + keySize + valueWidth + 2);
+		}
+		// First display
+		layout = new ScreenBuffer(width, height);
+		screen = new ScreenBuffer(width, height);
+		if (!lineZeroIsBusy) {
+			layout.print(1, 1, screenTitle, EscapeSeq.ANSI_WHITE, EscapeSeq.ANSI_BLACK, true);
+		}
+		lines.forEach((i, cda) -> drawCharacterLine(layout, 1, 1 + i.intValue(), cda));
+		AnsiConsole.out.print(EscapeSeq.ANSI_CLS);
+		screen.terminalCleared();
+		screen.copyFrom(layout);
+		AnsiConsole.out.print(screen.flush());
+		AnsiConsole.out.flush();
 //  plotMessage("Console Ready...");
 	}
 
+	private static int lineWidth(CharData[] lineData) {
+		int width = 0;
+		for (CharData cd : lineData) {
+			width += cd.getKey().length() + cd.formattedValue().length() + 2 + suffixSize;
+		}
+		return width;
+	}
+
+	/**
+	 * Same as {@link #formatCharacterLine(int, int, CharData[])}, in a screen buffer.
+	 */
+	private static void drawCharacterLine(ScreenBuffer buffer, int x, int y, CharData[] lineData) {
+		for (CharData cd : lineData) {
+			buffer.print(x, y, cd.getKey(), cd.getTitleColor(), cd.getTitleBackground(), true);
+			x += cd.getKey().length();
+			String value = " " + cd.formattedValue() + " ";
+			buffer.print(x, y, value, cd.getValueColor(), cd.getValueBackground(), true);
+			x += value.length();
+			buffer.print(x, y, NMEAUtils.rpad(cd.getSuffix(), suffixSize, " "), cd.getTitleColor(), cd.getTitleBackground(), true);
+			x += suffixSize;
+		}
+	}
+
 	private static String formatCharacterLine(int x, int y, CharData[] lineData) {
 		String line = "";
 		line += EscapeSeq.ansiLocate(x, y);
@@ -0,0 +1,92 @@
+package nmea.forwarders.displays;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds what has changed between two frames of a {@link PagedDisplay}.
+ * <br>
+ * For each page (row of 8 pixels), the changed columns are between a first and a last one.
+ * Consecutive dirty pages are sent as one window when it costs less than sending them separately,
+ * each window costing its bytes, plus the addressing commands.
+ * <br>
+ * Not thread safe.
+ */
+public class DirtyPages {
+
+	public final static int TRANSACTION_OVERHEAD = SimulatedDisplay.COMMAND_BYTES;
+
+	private final int width;
+	private final int pages;
+	private final int[] previous; // What the display shows
+
+	/**
+	 * @param width in pixels
+	 * @param pages height / 8
+	 */
+	public DirtyPages(int width, int pages) {
+		this.width = width;
+		this.pages = pages;
+		this.previous = new int[width * pages]; // The display starts blank
+	}
+
+	/**
+	 * Next time, everything will be sent.
+	 */
+	public void invalidate() {
+		Arrays.fill(previous, -1);
+	}
+
+	/**
+	 * @param frame the new frame, <code>width * pages</code> bytes, page after page.
+	 * @return the windows to send, as <code>{ fromCol, toCol, fromPage, toPage }</code> (bounds included). Empty if nothing has changed.
+	 * The frame becomes the reference for the next call.
+	 */
+	public List<int[]> diff(int[] frame) {
+		List<int[]> regions = new ArrayList<>();
+		int[] current = null;
+		for (int page = 0; page < pages; page++) {
+			int offset = page * width;
+			int first = -1, last = -1;
+			for (int col = 0; col < width; col++) {
+				if (frame[offset + col] != previous[offset + col]) {
+					if (first == -1) {
+						first = col;
+					}
+					last = col;
+				}
+			}
+			if (first == -1) {
+				continue;
+			}
+			if (current != null) {
+				int fromCol = Math.min(current[0], first);
+				int toCol = Math.max(current[1], last);
+				int merged = (toCol - fromCol + 1) * (page - current[2] + 1);
+				int separate = bytes(current) + (last - first + 1) + TRANSACTION_OVERHEAD;
+				if (merged <= separate) {
+					current[0] = fromCol;
+					current[1] = toCol;
+					current[3] = page;
+					continue;
+				}
+				regions.add(current);
+			}
+			current = new int[] { first, last, page, page };
+		}
+		if (current != null) {
+			regions.add(current);
+		}
+		System.arraycopy(frame, 0, previous, 0, previous.length);
+		return regions;
+	}
+
+	/**
+	 * @param region <code>{ fromCol, toCol, fromPage, toPage }</code>
+	 * @return the number of data bytes in it
+	 */
+	public static int bytes(int[] region) {
+		return (region[1] - region[0] + 1) * (region[3] - region[2] + 1);
+	}
+}
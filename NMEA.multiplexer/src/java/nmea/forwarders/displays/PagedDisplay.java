@@ -0,0 +1,27 @@
+package nmea.forwarders.displays;
+
+/**
+ * A monochrome display whose memory is organized in pages (rows of 8 pixels), like the SSD1306.
+ * One byte per column per page, bit 0 on top.
+ * <br>
+ * See {@link SSD1306Display}, and {@link SimulatedDisplay} to work without the hardware.
+ */
+public interface PagedDisplay {
+
+	int getWidth();
+
+	int getPages();
+
+	/**
+	 * Sends a window of the buffer to the display, in one transaction.
+	 *
+	 * @param buffer   the whole screen, <code>width * pages</code> bytes, page after page.
+	 * @param fromCol  first column
+	 * @param toCol    last column, included
+	 * @param fromPage first page
+	 * @param toPage   last page, included
+	 */
+	void display(int[] buffer, int fromCol, int toCol, int fromPage, int toPage);
+
+	void shutdown();
+}
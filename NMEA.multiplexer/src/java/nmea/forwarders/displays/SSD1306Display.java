@@ -0,0 +1,45 @@
+package nmea.forwarders.displays;
+
+import spi.lcd.oled.SSD1306;
+
+/**
+ * The SSD1306 OLED screen, over SPI, default pins (look in the SSD1306 code).
+ */
+public class SSD1306Display implements PagedDisplay {
+
+	private final SSD1306 oled;
+	private final int width;
+	private final int pages;
+
+	public SSD1306Display(int width, int height) {
+		this.width = width;
+		this.pages = height / 8;
+		oled = new SSD1306(width, height);
+		// Override the default pin:  Clock              MOSI                CS               RST                DC
+//  oled = new SSD1306(RaspiPin.GPIO_12, RaspiPin.GPIO_13, RaspiPin.GPIO_14, RaspiPin.GPIO_15, RaspiPin.GPIO_16, width, height);
+		oled.begin();
+		oled.clear();
+		oled.display();
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getPages() {
+		return pages;
+	}
+
+	@Override
+	public void display(int[] buffer, int fromCol, int toCol, int fromPage, int toPage) {
+		oled.setBuffer(buffer);
+		oled.display(fromCol, toCol, fromPage, toPage);
+	}
+
+	@Override
+	public void shutdown() {
+		oled.shutdown();
+	}
+}
@@ -0,0 +1,180 @@
+package nmea.forwarders.displays;
+
+import java.util.Arrays;
+
+/**
+ * A character screen, double-buffered.
+ * <br>
+ * A frame is drawn in the back buffer, {@link #flush()} compares it with what is on the terminal (the front buffer)
+ * and returns the escape sequences for the cells that have changed only: one cursor move per group of changed cells,
+ * one color change when the colors change. The caller writes it in one go.
+ * <br>
+ * Coordinates are 1-based, like in {@link EscapeSeq#ansiLocate(int, int)}. What is drawn out of the screen is ignored.
+ * Colors are the ones of {@link EscapeSeq} (<code>ANSI_RED</code>, etc), null for the default color.
+ * <br>
+ * Not thread safe.
+ */
+public class ScreenBuffer {
+
+	private final static int NO_COLOR = -1;
+	private final static int MAX_GAP = 6;     // Unchanged cells re-written rather than moving the cursor, it is shorter.
+
+	private final int width;
+	private final int height;
+
+	// Cells, row after row. Attributes: bold, foreground and background colors, packed in an int.
+	private final char[] backChars;
+	private final int[] backAttrs;
+	private final char[] frontChars;
+	private final int[] frontAttrs;
+
+	private final StringBuilder sb = new StringBuilder(4_096);
+
+	public ScreenBuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.backChars = new char[width * height];
+		this.backAttrs = new int[width * height];
+		this.frontChars = new char[width * height];
+		this.frontAttrs = new int[width * height];
+		clear();
+		terminalCleared();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	private static int attributes(String fg, String bg, boolean bold) {
+		int fgColor = fg == null ? NO_COLOR : Integer.parseInt(fg);
+		int bgColor = bg == null ? NO_COLOR : Integer.parseInt(bg);
+		return ((bold ? 1 : 0) << 16) | ((fgColor & 0xFF) << 8) | (bgColor & 0xFF);
+	}
+
+	private final static int DEFAULT_ATTRIBUTES = attributes(null, null, false);
+
+	/**
+	 * Blanks the back buffer.
+	 */
+	public void clear() {
+		Arrays.fill(backChars, ' ');
+		Arrays.fill(backAttrs, DEFAULT_ATTRIBUTES);
+	}
+
+	/**
+	 * To call when the terminal has been cleared ({@link EscapeSeq#ANSI_CLS}).
+	 * The next {@link #flush()} re-draws everything but the blank cells.
+	 */
+	public void terminalCleared() {
+		Arrays.fill(frontChars, ' ');
+		Arrays.fill(frontAttrs, DEFAULT_ATTRIBUTES);
+	}
+
+	/**
+	 * Copies another buffer (like a background layout) in the back buffer.
+	 */
+	public void copyFrom(ScreenBuffer other) {
+		if (other.width != width || other.height != height) {
+			throw new IllegalArgumentException(String.format("Expected %dx%d, got %dx%d", width, height, other.width, other.height));
+		}
+		System.arraycopy(other.backChars, 0, backChars, 0, backChars.length);
+		System.arraycopy(other.backAttrs, 0, backAttrs, 0, backAttrs.length);
+	}
+
+	/**
+	 * Draws a string in the back buffer.
+	 *
+	 * @param x    column, from 1
+	 * @param y    line, from 1
+	 * @param text what to write, on one line
+	 * @param fg   text color, null for default
+	 * @param bg   background color, null for default
+	 * @param bold bold or not
+	 */
+	public void print(int x, int y, String text, String fg, String bg, boolean bold) {
+		if (y < 1 || y > height || text == null) {
+			return;
+		}
+		int attrs = attributes(fg, bg, bold);
+		int offset = (y - 1) * width;
+		for (int i = 0; i < text.length(); i++) {
+			int col = x - 1 + i;
+			if (col >= width) {
+				break;
+			}
+			if (col >= 0) {
+				char c = text.charAt(i);
+				backChars[offset + col] = c < ' ' ? ' ' : c;
+				backAttrs[offset + col] = attrs;
+			}
+		}
+	}
+
+	/**
+	 * Compares the back buffer with the front one, and makes them identical.
+	 *
+	 * @return the escape sequences and characters to send to the terminal, an empty string if nothing has changed.
+	 */
+	public String flush() {
+		sb.setLength(0);
+		int cursor = -1;  // Where the terminal cursor is, -1 if unknown.
+		int pen = -1;     // Current attributes on the terminal, -1 if unknown.
+		for (int y = 0; y < height; y++) {
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				int idx = offset + x;
+				if (backChars[idx] == frontChars[idx] && backAttrs[idx] == frontAttrs[idx]) {
+					continue;
+				}
+				if (cursor != idx) {
+					if (cursor >= offset && cursor < idx && idx - cursor <= MAX_GAP && sameAttributes(cursor, idx, pen)) {
+						sb.append(backChars, cursor, idx - cursor); // Shorter than moving the cursor
+					} else {
+						sb.append(EscapeSeq.ansiLocate(x + 1, y + 1));
+					}
+				}
+				if (backAttrs[idx] != pen) {
+					appendAttributes(backAttrs[idx]);
+					pen = backAttrs[idx];
+				}
+				sb.append(backChars[idx]);
+				frontChars[idx] = backChars[idx];
+				frontAttrs[idx] = backAttrs[idx];
+				cursor = (x + 1 < width) ? idx + 1 : -1; // Do not count on the line wrap
+			}
+		}
+		if (sb.length() > 0) {
+			sb.append(EscapeSeq.ANSI_NORMAL);
+		}
+		return sb.toString();
+	}
+
+	private boolean sameAttributes(int from, int to, int pen) {
+		for (int i = from; i < to; i++) {
+			if (backAttrs[i] != pen) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void appendAttributes(int attrs) {
+		sb.append(EscapeSeq.ESC).append("[0");
+		if (((attrs >> 16) & 1) == 1) {
+			sb.append(";1");
+		}
+		int fg = (byte) ((attrs >> 8) & 0xFF);
+		if (fg != NO_COLOR) {
+			sb.append(";3").append(fg);
+		}
+		int bg = (byte) (attrs & 0xFF);
+		if (bg != NO_COLOR) {
+			sb.append(";4").append(bg);
+		}
+		sb.append('m');
+	}
+}
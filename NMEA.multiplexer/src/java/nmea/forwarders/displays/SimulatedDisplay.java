@@ -0,0 +1,73 @@
+package nmea.forwarders.displays;
+
+import java.util.Arrays;
+
+/**
+ * A {@link PagedDisplay} without hardware. Keeps what would be in the display memory, and counts
+ * what would go through the SPI bus: transactions, command and data bytes.
+ * <br>
+ * Used by the SSD1306Processor with <code>-Dssd1306.simulate=true</code>.
+ */
+public class SimulatedDisplay implements PagedDisplay {
+
+	public final static int COMMAND_BYTES = 6; // Column and page addresses, see SSD1306.display(fromCol, toCol, fromPage, toPage)
+
+	private final int width;
+	private final int pages;
+	private final int[] memory;
+
+	private long transactions = 0L;
+	private long commandBytes = 0L;
+	private long dataBytes = 0L;
+
+	public SimulatedDisplay(int width, int height) {
+		this.width = width;
+		this.pages = height / 8;
+		this.memory = new int[width * pages];
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getPages() {
+		return pages;
+	}
+
+	@Override
+	public synchronized void display(int[] buffer, int fromCol, int toCol, int fromPage, int toPage) {
+		transactions++;
+		commandBytes += COMMAND_BYTES;
+		for (int page = fromPage; page <= toPage; page++) {
+			for (int col = fromCol; col <= toCol; col++) {
+				memory[(page * width) + col] = buffer[(page * width) + col];
+				dataBytes++;
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+	/**
+	 * @return a copy of the display memory
+	 */
+	public synchronized int[] getMemory() {
+		return Arrays.copyOf(memory, memory.length);
+	}
+
+	public synchronized long getTransactions() {
+		return transactions;
+	}
+
+	public synchronized long getCommandBytes() {
+		return commandBytes;
+	}
+
+	public synchronized long getDataBytes() {
+		return dataBytes;
+	}
+}
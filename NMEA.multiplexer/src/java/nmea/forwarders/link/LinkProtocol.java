@@ -0,0 +1,228 @@
+package nmea.forwarders.link;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary protocol between two multiplexers, see {@link LinkServer} and <code>nmea.consumers.reader.LinkReader</code>.
+ * <br>
+ * Big-endian, like {@link DataOutputStream}. <code>varint</code> is an unsigned LEB128, <code>zigzag</code> a signed one.
+ * <pre>
+ * Reader to server:
+ *   HELLO    'H', int magic, byte version, byte flags, long server epoch, long last sequence received (0, 0 for none)
+ *   ACK      'A', long last sequence received
+ * Server to reader:
+ *   WELCOME  'W', byte flags, long server epoch, long first sequence to come
+ *   FRAME    'F', long first sequence, long base time, varint count, then count times:
+ *            varint source, zigzag (receive time - base time), varint prefix, varint length, bytes
+ * </pre>
+ * A frame carries the sentences in sequence, without their end of line. Sources and prefixes (like <code>$IIMWV,</code>)
+ * are coded from dictionaries built along the connection: 0 for none, 1 for a new entry (varint length and bytes follow,
+ * the entry gets the next index), 2 and more for an existing entry (index + 2). Prefixes are only coded when
+ * both sides have the flag {@link #FLAG_PREFIXES}.
+ * <br>
+ * The reader acknowledges the frames it received. When the connection drops, it re-connects, and gives in its HELLO
+ * the last sequence it has, the server resumes from there if it still has it in its backlog.
+ * Sequences start again when the server restarts, the epoch (its start time) tells.
+ */
+public final class LinkProtocol {
+
+	public final static int MAGIC = 0x4E4D4C4B; // NMLK
+	public final static byte VERSION = 1;
+
+	public final static byte HELLO = 'H';
+	public final static byte WELCOME = 'W';
+	public final static byte FRAME = 'F';
+	public final static byte ACK = 'A';
+
+	public final static int FLAG_PREFIXES = 1;
+
+	public final static int MAX_DICTIONARY = 1_024;
+
+	private final static int NONE = 0;
+	private final static int NEW = 1;
+	private final static int FIRST_INDEX = 2;
+
+	private LinkProtocol() {
+	}
+
+	/**
+	 * Receives the sentences of a frame.
+	 */
+	@FunctionalInterface
+	public interface SentenceListener {
+		/**
+		 * @param seq      sequence number
+		 * @param source   the input channel of the sending multiplexer, may be null
+		 * @param received when it was received by the sending multiplexer, its clock
+		 * @param sentence the NMEA sentence, without end of line
+		 */
+		void onSentence(long seq, String source, long received, String sentence);
+	}
+
+	/**
+	 * Writes the frames of one connection, keeps the dictionaries of the connection. Not thread safe.
+	 */
+	public static class Encoder {
+		private final boolean usePrefixes;
+		private final Map<String, Integer> sources = new HashMap<>();
+		private final Map<String, Integer> prefixes = new HashMap<>();
+
+		public Encoder(boolean usePrefixes) {
+			this.usePrefixes = usePrefixes;
+		}
+
+		/**
+		 * @param out       where to write
+		 * @param firstSeq  sequence of <code>sentences[0]</code>
+		 * @param sentences sentences, ASCII, without end of line
+		 * @param sourceOf  input channel of each sentence
+		 * @param received  receive time of each sentence
+		 * @param count     how many to take in the arrays above
+		 */
+		public void writeFrame(DataOutputStream out, long firstSeq, byte[][] sentences, String[] sourceOf, long[] received, int count) throws IOException {
+			out.writeByte(FRAME);
+			out.writeLong(firstSeq);
+			long base = received[0];
+			out.writeLong(base);
+			writeVarLong(out, count);
+			for (int i = 0; i < count; i++) {
+				writeEntry(out, sources, sourceOf[i]);
+				writeVarLong(out, zigzag(received[i] - base));
+				byte[] sentence = sentences[i];
+				int bodyStart = 0;
+				String prefix = null;
+				if (usePrefixes) {
+					int comma = indexOf(sentence, (byte) ',');
+					if (comma > 0) {
+						prefix = new String(sentence, 0, comma + 1, StandardCharsets.ISO_8859_1);
+					}
+				}
+				if (writeEntry(out, prefixes, prefix)) {
+					bodyStart = prefix.length();
+				}
+				writeVarLong(out, sentence.length - bodyStart);
+				out.write(sentence, bodyStart, sentence.length - bodyStart);
+			}
+		}
+
+		/**
+		 * @return false if the value was not coded (null, or the dictionary is full)
+		 */
+		private static boolean writeEntry(DataOutputStream out, Map<String, Integer> dictionary, String value) throws IOException {
+			if (value == null) {
+				writeVarLong(out, NONE);
+				return false;
+			}
+			Integer index = dictionary.get(value);
+			if (index != null) {
+				writeVarLong(out, index + FIRST_INDEX);
+			} else if (dictionary.size() < MAX_DICTIONARY) {
+				dictionary.put(value, dictionary.size());
+				writeVarLong(out, NEW);
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				writeVarLong(out, bytes.length);
+				out.write(bytes);
+			} else {
+				writeVarLong(out, NONE);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the frames of one connection, keeps the dictionaries of the connection. Not thread safe.
+	 */
+	public static class Decoder {
+		private final List<String> sources = new ArrayList<>();
+		private final List<String> prefixes = new ArrayList<>();
+		private byte[] buffer = new byte[256];
+
+		/**
+		 * Reads a frame, its type byte already read.
+		 *
+		 * @return the sequence of the last sentence of the frame
+		 */
+		public long readFrame(DataInputStream in, SentenceListener listener) throws IOException {
+			long seq = in.readLong();
+			long base = in.readLong();
+			long count = readVarLong(in);
+			for (long i = 0; i < count; i++, seq++) {
+				String source = readEntry(in, sources);
+				long received = base + unzigzag(readVarLong(in));
+				String prefix = readEntry(in, prefixes);
+				int length = (int) readVarLong(in);
+				if (buffer.length < length) {
+					buffer = new byte[Math.max(length, buffer.length * 2)];
+				}
+				in.readFully(buffer, 0, length);
+				String body = new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+				listener.onSentence(seq, source, received, prefix == null ? body : prefix + body);
+			}
+			return seq - 1;
+		}
+
+		private String readEntry(DataInputStream in, List<String> dictionary) throws IOException {
+			int code = (int) readVarLong(in);
+			if (code == NONE) {
+				return null;
+			} else if (code == NEW) {
+				byte[] bytes = new byte[(int) readVarLong(in)];
+				in.readFully(bytes);
+				String value = new String(bytes, StandardCharsets.UTF_8);
+				dictionary.add(value);
+				return value;
+			} else {
+				int index = code - FIRST_INDEX;
+				if (index >= dictionary.size()) {
+					throw new IOException(String.format("Unknown dictionary entry %d", index));
+				}
+				return dictionary.get(index);
+			}
+		}
+	}
+
+	private static int indexOf(byte[] bytes, byte b) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	public static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+}
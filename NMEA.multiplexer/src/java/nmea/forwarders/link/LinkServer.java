@@ -0,0 +1,325 @@
+package nmea.forwarders.link;
+
+import nmea.forwarders.Forwarder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards the sentences to other multiplexers, with the binary {@link LinkProtocol}.
+ * The reading side is a channel of type <code>link</code>.
+ * <br>
+ * {@link #write(byte[], String, long)} only puts the sentence in a backlog (a ring of <code>backlog</code> sentences),
+ * and returns. Each connected reader has its own thread, sending what arrived since its last frame in one frame
+ * (up to <code>batch.size</code> sentences, waiting up to <code>linger</code> ms for more), with a single write.
+ * No more than <code>window</code> sentences are sent without an acknowledgement.
+ * <br>
+ * A reader coming back after a drop resumes after the last sequence it received, if it is still in the backlog.
+ * <pre>
+ * forward.XX.type=link
+ * forward.XX.port=7002
+ * forward.XX.backlog=8192
+ * forward.XX.batch.size=256
+ * forward.XX.linger=10
+ * forward.XX.window=4096
+ * forward.XX.prefixes=true
+ * </pre>
+ */
+public class LinkServer implements Forwarder {
+
+	public final static int DEFAULT_BACKLOG = 8_192;
+	public final static int DEFAULT_BATCH_SIZE = 256;
+	public final static long DEFAULT_LINGER = 10L;
+
+	private final int port;
+	private final int backlog;
+	private final int batchSize;
+	private final long linger;
+	private final int window;
+	private final boolean prefixes;
+
+	// The backlog. Sequence n is at n % backlog.
+	private final byte[][] sentences;
+	private final String[] sources;
+	private final long[] received;
+	private long nextSeq = 1L;
+	private final long epoch = System.currentTimeMillis(); // Sequences are only valid with it
+
+	private final List<Session> sessions = new CopyOnWriteArrayList<>();
+	private ServerSocket serverSocket = null;
+	private volatile boolean keepWorking = true;
+
+	public LinkServer(int port) throws Exception {
+		this(port, DEFAULT_BACKLOG, DEFAULT_BATCH_SIZE, DEFAULT_LINGER, DEFAULT_BACKLOG / 2, true);
+	}
+
+	public LinkServer(int port, int backlog, int batchSize, long linger, int window, boolean prefixes) throws Exception {
+		this.port = port;
+		this.backlog = backlog;
+		this.batchSize = batchSize;
+		this.linger = linger;
+		this.window = Math.min(window, backlog);
+		this.prefixes = prefixes;
+		this.sentences = new byte[backlog][];
+		this.sources = new String[backlog];
+		this.received = new long[backlog];
+		this.serverSocket = new ServerSocket(port);
+		Thread acceptor = new Thread(this::accept, "LinkServer:" + port);
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	private void accept() {
+		while (keepWorking) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true); // Frames are batched already
+				Session session = new Session(socket);
+				sessions.add(session);
+				session.start();
+			} catch (IOException ioe) {
+				if (keepWorking) {
+					System.err.println("LinkServer:" + ioe.getLocalizedMessage());
+				}
+			}
+		}
+		System.out.println("..... End of LinkServer " + port);
+	}
+
+	@Override
+	public void write(byte[] message) {
+		write(message, null, System.currentTimeMillis());
+	}
+
+	@Override
+	public void write(byte[] message, String source, long receivedAt) {
+		int length = message.length;
+		while (length > 0 && (message[length - 1] == '\r' || message[length - 1] == '\n')) {
+			length--;
+		}
+		byte[] sentence = new byte[length];
+		System.arraycopy(message, 0, sentence, 0, length);
+		synchronized (this) {
+			int idx = (int) (nextSeq % backlog);
+			sentences[idx] = sentence;
+			sources[idx] = source;
+			received[idx] = receivedAt;
+			nextSeq++;
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * One connected reader.
+	 */
+	private class Session extends Thread {
+		private final Socket socket;
+		// The frame being sent, copied from the backlog
+		private final byte[][] frameSentences = new byte[batchSize][];
+		private final String[] frameSources = new String[batchSize];
+		private final long[] frameReceived = new long[batchSize];
+		private volatile long acked = 0L;
+		private long cursor = 0L; // Next sequence to send
+		private long sent = 0L;
+		private long frames = 0L;
+		private long lost = 0L;
+
+		Session(Socket socket) {
+			super("LinkServer session " + socket.getRemoteSocketAddress());
+			this.socket = socket;
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65_536));
+				if (in.readByte() != LinkProtocol.HELLO || in.readInt() != LinkProtocol.MAGIC || in.readByte() != LinkProtocol.VERSION) {
+					throw new IOException("Not a link reader");
+				}
+				int flags = in.readByte();
+				long readerEpoch = in.readLong();
+				long last = in.readLong();
+				if (readerEpoch != epoch) { // First connection, or the server has restarted
+					last = 0L;
+				}
+				boolean usePrefixes = prefixes && (flags & LinkProtocol.FLAG_PREFIXES) != 0;
+				synchronized (LinkServer.this) {
+					long oldest = Math.max(1L, nextSeq - backlog);
+					cursor = (last <= 0L || last >= nextSeq) ? nextSeq : Math.max(last + 1, oldest); // 0: from now on
+					if (last > 0L && last + 1 < oldest) {
+						lost += (oldest - (last + 1));
+					}
+					acked = cursor - 1;
+				}
+				out.writeByte(LinkProtocol.WELCOME);
+				out.writeByte(usePrefixes ? LinkProtocol.FLAG_PREFIXES : 0);
+				out.writeLong(epoch);
+				out.writeLong(cursor);
+				out.flush();
+				System.out.println(String.format("LinkServer %d: reader %s connected, from sequence %d", port, socket.getRemoteSocketAddress(), cursor));
+
+				Thread ackReader = new Thread(() -> readAcks(in), getName() + " acks");
+				ackReader.setDaemon(true);
+				ackReader.start();
+
+				LinkProtocol.Encoder encoder = new LinkProtocol.Encoder(usePrefixes);
+				while (keepWorking && !socket.isClosed()) {
+					int count;
+					long firstSeq;
+					synchronized (LinkServer.this) {
+						while (keepWorking && (cursor >= nextSeq || cursor - acked >= window)) {
+							LinkServer.this.wait(1_000L);
+							if (socket.isClosed()) {
+								return;
+							}
+						}
+						if (!keepWorking) {
+							break;
+						}
+						if (linger > 0 && nextSeq - cursor < batchSize) { // Let some more come
+							long until = System.currentTimeMillis() + linger;
+							long now;
+							while (nextSeq - cursor < batchSize && (now = System.currentTimeMillis()) < until) {
+								LinkServer.this.wait(until - now);
+							}
+						}
+						long oldest = Math.max(1L, nextSeq - backlog);
+						if (cursor < oldest) { // Too slow, overwritten. Those will never be acknowledged.
+							lost += (oldest - cursor);
+							cursor = oldest;
+							acked = Math.max(acked, cursor - 1);
+						}
+						firstSeq = cursor;
+						count = (int) Math.min(batchSize, Math.min(nextSeq - cursor, window - (cursor - acked)));
+						for (int i = 0; i < count; i++) {
+							int idx = (int) ((cursor + i) % backlog);
+							frameSentences[i] = sentences[idx];
+							frameSources[i] = sources[idx];
+							frameReceived[i] = received[idx];
+						}
+						cursor += count;
+					}
+					// Outside the lock, the mux does not wait for the network.
+					encoder.writeFrame(out, firstSeq, frameSentences, frameSources, frameReceived, count);
+					out.flush();
+					sent += count;
+					frames++;
+				}
+			} catch (InterruptedException ie) {
+				// Bye
+			} catch (IOException ioe) {
+				if (keepWorking) {
+					System.out.println(String.format("LinkServer %d: reader %s gone (%s)", port, socket.getRemoteSocketAddress(), ioe.toString()));
+				}
+			} finally {
+				sessions.remove(this);
+				try {
+					socket.close();
+				} catch (IOException ioe) {
+					// Absorb
+				}
+				synchronized (LinkServer.this) {
+					LinkServer.this.notifyAll();
+				}
+			}
+		}
+
+		private void readAcks(DataInputStream in) {
+			try {
+				while (!socket.isClosed()) {
+					byte type = in.readByte();
+					if (type != LinkProtocol.ACK) {
+						throw new IOException(String.format("Unexpected message %d", type));
+					}
+					acked = in.readLong();
+					synchronized (LinkServer.this) {
+						LinkServer.this.notifyAll();
+					}
+				}
+			} catch (IOException ioe) {
+				try {
+					socket.close();
+				} catch (IOException ex) {
+					// Absorb
+				}
+				synchronized (LinkServer.this) {
+					LinkServer.this.notifyAll();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		System.out.println("- Stop writing to " + this.getClass().getName());
+		keepWorking = false;
+		try {
+			serverSocket.close();
+			for (Session session : sessions) {
+				session.socket.close();
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		}
+		synchronized (this) {
+			this.notifyAll();
+		}
+	}
+
+	@Override
+	public void setProperties(Properties props) {
+	}
+
+	public static class LinkBean {
+		private String cls;
+		private String type = "link";
+		private int port;
+		private int backlog;
+		private long lastSequence;
+		private List<ReaderBean> readers = new ArrayList<>();
+
+		public int getPort() {
+			return port;
+		}
+	}
+
+	public static class ReaderBean {
+		private String address;
+		private long sent;
+		private long frames;
+		private long acked;
+		private long lost;
+	}
+
+	@Override
+	public Object getBean() {
+		LinkBean bean = new LinkBean();
+		bean.cls = this.getClass().getName();
+		bean.port = port;
+		bean.backlog = backlog;
+		synchronized (this) {
+			bean.lastSequence = nextSeq - 1;
+		}
+		for (Session session : sessions) {
+			ReaderBean reader = new ReaderBean();
+			reader.address = String.valueOf(session.socket.getRemoteSocketAddress());
+			reader.sent = session.sent;
+			reader.frames = session.frames;
+			reader.acked = session.acked;
+			reader.lost = session.lost;
+			bean.readers.add(reader);
+		}
+		return bean;
+	}
+}
@@ -0,0 +1,300 @@
+package nmea.forwarders.rmi;
+
+import context.NMEADataCache;
+import nmea.parser.Angle180;
+import nmea.parser.Angle180EW;
+import nmea.parser.Angle180LR;
+import nmea.parser.Angle360;
+import nmea.parser.Current;
+import nmea.parser.Depth;
+import nmea.parser.Distance;
+import nmea.parser.GeoPos;
+import nmea.parser.NMEADoubleValueHolder;
+import nmea.parser.Pressure;
+import nmea.parser.SolarDate;
+import nmea.parser.Speed;
+import nmea.parser.Temperature;
+import nmea.parser.UTCDate;
+import nmea.parser.UTCTime;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Some values of the cache, at a given version of it.
+ * Returned by {@link ServerInterface#getSnapshot(String[], long)} and {@link ServerInterface#waitForChanges(String[], long, long)}.
+ * <br>
+ * Only the keys changed since the version given by the client are in it. The client keeps the {@link #getVersion()}
+ * of the last snapshot it received, and gives it back on its next call.
+ * <br>
+ * Serialized by hand: the usual values of the cache (speeds, angles, positions, dates...) are written
+ * as one type byte followed by their primitive value(s), without the Java serialization class descriptors.
+ * Other values are written as objects.
+ */
+public class CacheSnapshot implements Externalizable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final static byte NULL = 0;
+	private final static byte TEMPERATURE = 20;
+	private final static byte PRESSURE = 21;
+	private final static byte GEOPOS = 22;
+	private final static byte UTC_DATE = 23;
+	private final static byte UTC_TIME = 24;
+	private final static byte SOLAR_DATE = 25;
+	private final static byte CURRENT = 26;
+	private final static byte STRING = 27;
+	private final static byte DOUBLE = 28;
+	private final static byte FLOAT = 29;
+	private final static byte INTEGER = 30;
+	private final static byte OBJECT = 127;
+
+	// NMEADoubleValueHolders, their type is their index + 1
+	private final static List<Class<? extends NMEADoubleValueHolder>> HOLDERS = Collections.unmodifiableList(Arrays.asList(
+					Speed.class,
+					Angle360.class,
+					Angle180.class,
+					Angle180EW.class,
+					Angle180LR.class,
+					Distance.class,
+					Depth.class
+	));
+
+	private long version;
+	private int size;
+	private String[] keys;
+	private Object[] values;
+
+	public CacheSnapshot() { // For the de-serialization
+	}
+
+	/**
+	 * @param cache the cache
+	 * @param keys  the keys to look at, null for all
+	 * @param since version of the last snapshot received by the client, 0 for everything
+	 * @return a snapshot of the keys put in the cache after <code>since</code>
+	 */
+	public static CacheSnapshot take(NMEADataCache cache, String[] keys, long since) {
+		return take(cache, keys, since, true);
+	}
+
+	/**
+	 * @param cache      the cache
+	 * @param keys       the keys to look at, null for all
+	 * @param since      version of the last snapshot received by the client, 0 for everything
+	 * @param useDamping false for the raw values, see {@link NMEADataCache#get(Object, boolean)}
+	 * @return a snapshot of the keys put in the cache after <code>since</code>
+	 */
+	public static CacheSnapshot take(NMEADataCache cache, String[] keys, long since, boolean useDamping) {
+		CacheSnapshot snapshot = new CacheSnapshot();
+		synchronized (cache) { // Like the other readers, the values all come from the same state of the cache.
+			snapshot.version = cache.getVersion();
+			String[] candidates = keys != null ? keys : cache.keySet().toArray(new String[0]);
+			snapshot.keys = new String[candidates.length];
+			snapshot.values = new Object[candidates.length];
+			for (String key : candidates) {
+				if (cache.getVersion(key) > since) {
+					Object value = cache.get(key, useDamping);
+					if (value == null || value instanceof Serializable) {
+						snapshot.keys[snapshot.size] = key;
+						snapshot.values[snapshot.size] = value;
+						snapshot.size++;
+					}
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public String[] getKeys() {
+		return Arrays.copyOf(keys, size);
+	}
+
+	public boolean contains(String key) {
+		return indexOf(key) != -1;
+	}
+
+	/**
+	 * @param key the cache key
+	 * @return the value, null if the key is not in this snapshot (or if its value is null, see {@link #contains(String)}).
+	 */
+	public Object get(String key) {
+		int idx = indexOf(key);
+		return idx != -1 ? values[idx] : null;
+	}
+
+	private int indexOf(String key) {
+		for (int i = 0; i < size; i++) {
+			if (keys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Apply this snapshot to a local cache, to keep it in sync with the server.
+	 *
+	 * @param cache the local cache
+	 */
+	public void applyTo(NMEADataCache cache) {
+		for (int i = 0; i < size; i++) {
+			cache.put(keys[i], values[i]);
+		}
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeLong(version);
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeUTF(keys[i]);
+			writeValue(out, values[i]);
+		}
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		version = in.readLong();
+		size = in.readInt();
+		keys = new String[size];
+		values = new Object[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = in.readUTF();
+			values[i] = readValue(in);
+		}
+	}
+
+	/**
+	 * Writes a cache value, as its type and primitive value(s). Also used for the checkpoints of the cache.
+	 */
+	public static void writeValue(ObjectOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		Class<?> cls = value.getClass();
+		for (int i = 0; i < HOLDERS.size(); i++) {
+			if (HOLDERS.get(i) == cls) {
+				out.writeByte(i + 1);
+				out.writeDouble(((NMEADoubleValueHolder) value).getDoubleValue());
+				return;
+			}
+		}
+		if (value instanceof Temperature) {
+			out.writeByte(TEMPERATURE);
+			out.writeDouble(((Temperature) value).getValue());
+		} else if (value instanceof Pressure) {
+			out.writeByte(PRESSURE);
+			out.writeDouble(((Pressure) value).getValue());
+		} else if (value instanceof GeoPos) {
+			out.writeByte(GEOPOS);
+			out.writeDouble(((GeoPos) value).lat);
+			out.writeDouble(((GeoPos) value).lng);
+		} else if (value instanceof UTCDate) {
+			out.writeByte(UTC_DATE);
+			writeDate(out, ((UTCDate) value).getValue());
+		} else if (value instanceof UTCTime) {
+			out.writeByte(UTC_TIME);
+			writeDate(out, ((UTCTime) value).getValue());
+		} else if (value instanceof SolarDate) {
+			out.writeByte(SOLAR_DATE);
+			writeDate(out, ((SolarDate) value).getValue());
+		} else if (value instanceof Current) {
+			out.writeByte(CURRENT);
+			out.writeInt(((Current) value).angle);
+			out.writeDouble(((Current) value).speed);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else {
+			out.writeByte(OBJECT);
+			out.writeObject(value);
+		}
+	}
+
+	/**
+	 * Reads a value written by {@link #writeValue(ObjectOutput, Object)}.
+	 */
+	public static Object readValue(ObjectInput in) throws IOException, ClassNotFoundException {
+		byte type = in.readByte();
+		if (type > 0 && type <= HOLDERS.size()) {
+			try {
+				NMEADoubleValueHolder holder = HOLDERS.get(type - 1).getDeclaredConstructor().newInstance();
+				holder.setDoubleValue(in.readDouble());
+				return holder;
+			} catch (ReflectiveOperationException ex) {
+				throw new IOException(ex);
+			}
+		}
+		switch (type) {
+			case NULL:
+				return null;
+			case TEMPERATURE:
+				return new Temperature(in.readDouble());
+			case PRESSURE:
+				return new Pressure(in.readDouble());
+			case GEOPOS:
+				return new GeoPos(in.readDouble(), in.readDouble());
+			case UTC_DATE:
+				return new UTCDate(readDate(in));
+			case UTC_TIME:
+				return new UTCTime(readDate(in));
+			case SOLAR_DATE:
+				return new SolarDate(readDate(in));
+			case CURRENT:
+				return new Current(in.readInt(), in.readDouble());
+			case STRING:
+				return in.readUTF();
+			case DOUBLE:
+				return in.readDouble();
+			case FLOAT:
+				return in.readFloat();
+			case INTEGER:
+				return in.readInt();
+			case OBJECT:
+				return in.readObject();
+			default:
+				throw new IOException(String.format("Unknown value type %d", type));
+		}
+	}
+
+	private static void writeDate(ObjectOutput out, Date date) throws IOException {
+		out.writeBoolean(date != null);
+		if (date != null) {
+			out.writeLong(date.getTime());
+		}
+	}
+
+	private static Date readDate(ObjectInput in) throws IOException {
+		return in.readBoolean() ? new Date(in.readLong()) : null;
+	}
+}
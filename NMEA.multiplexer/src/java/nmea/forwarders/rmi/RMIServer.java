@@ -1,6 +1,8 @@
 package nmea.forwarders.rmi;
 
 import context.ApplicationContext;
+import context.CacheChangeBus;
+import context.NMEADataCache;
 import nmea.forwarders.Forwarder;
 
 import java.net.InetAddress;
@@ -25,6 +27,13 @@ public class RMIServer extends UnicastRemoteObject implements ServerInterface, F
 
 	private boolean verbose = false;
 
+	private final static long MAX_WAIT = 60_000L; // ms, for waitForChanges
+
+	// Wakes up the clients waiting for changes
+	private final Object changeMonitor = new Object();
+	private long changes = 0L;
+	private CacheChangeBus.Subscription subscription = null;
+
 	private final static String ipPattern = "(?:(?:1\\d?\\d|[1-9]?\\d|2[0-4]\\d|25[0-5])\\.){3}(?:1\\d?\\d|[1-9]?\\d|2[0-4]\\d|25[0-\u200C\u200B5])(?:[:]\\d+)?";
 
 	public RMIServer(int port) throws RemoteException {
@@ -78,6 +87,12 @@ public class RMIServer extends UnicastRemoteObject implements ServerInterface, F
 		} catch (RemoteException e) {
 			throw e;
 		}
+		subscription = CacheChangeBus.getInstance().subscribe("RMIServer changes", (String[]) null, 0L, 0L, () -> {
+			synchronized (changeMonitor) {
+				changes++;
+				changeMonitor.notifyAll();
+			}
+		});
 	}
 
 	public int getRegistryPort() {
@@ -112,6 +127,7 @@ public class RMIServer extends UnicastRemoteObject implements ServerInterface, F
 	@Override
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
+		CacheChangeBus.getInstance().unsubscribe(subscription);
 		try {
 			this.registry.unbind(this.bindingName);
 			UnicastRemoteObject.unexportObject(this, true);
@@ -129,6 +145,37 @@ public class RMIServer extends UnicastRemoteObject implements ServerInterface, F
 		return t.execute();
 	}
 
+	@Override
+	public CacheSnapshot getSnapshot(String[] keys, long since) throws RemoteException {
+		return CacheSnapshot.take(ApplicationContext.getInstance().getDataCache(), keys, since);
+	}
+
+	@Override
+	public CacheSnapshot waitForChanges(String[] keys, long since, long timeout) throws RemoteException {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		long limit = System.currentTimeMillis() + Math.min(timeout, MAX_WAIT);
+		while (true) {
+			long seen;
+			synchronized (changeMonitor) {
+				seen = changes;
+			}
+			CacheSnapshot snapshot = CacheSnapshot.take(cache, keys, since);
+			long remaining = limit - System.currentTimeMillis();
+			if (!snapshot.isEmpty() || remaining <= 0) {
+				return snapshot;
+			}
+			synchronized (changeMonitor) {
+				if (changes == seen) { // Nothing happened since the snapshot
+					try {
+						changeMonitor.wait(remaining);
+					} catch (InterruptedException ie) {
+						return snapshot;
+					}
+				}
+			}
+		}
+	}
+
 	public static class RMIBean {
 		private String cls;
 		private int port;
@@ -5,4 +5,25 @@ import java.rmi.RemoteException;
 
 public interface ServerInterface extends Remote {
 	<T> T executeTask(Task<T> t) throws RemoteException;
+
+	/**
+	 * Several values of the cache, in one round trip.
+	 *
+	 * @param keys  the cache keys, null for all of them
+	 * @param since the version of the last snapshot received, 0 for all the values
+	 * @return the values put in the cache since that version
+	 * @throws RemoteException
+	 */
+	CacheSnapshot getSnapshot(String[] keys, long since) throws RemoteException;
+
+	/**
+	 * Same as {@link #getSnapshot(String[], long)}, but waits for at least one of the keys to change.
+	 *
+	 * @param keys    the cache keys, null for all of them
+	 * @param since   the version of the last snapshot received
+	 * @param timeout max wait, in ms. The returned snapshot is empty if nothing changed in between.
+	 * @return the values put in the cache since that version
+	 * @throws RemoteException
+	 */
+	CacheSnapshot waitForChanges(String[] keys, long since, long timeout) throws RemoteException;
 }
@@ -0,0 +1,188 @@
+package nmea.mux;
+
+import nmea.api.NMEAClient;
+import nmea.computers.ExtraDataComputer;
+import nmea.computers.PolarComputer;
+import nmea.computers.polars.PolarGrid;
+import nmea.consumers.client.BME280Client;
+import nmea.consumers.client.DataFileClient;
+import nmea.consumers.client.HTU21DFClient;
+import nmea.consumers.client.LinkClient;
+import nmea.consumers.client.RandomClient;
+import nmea.consumers.client.SerialClient;
+import nmea.consumers.client.TCPClient;
+import nmea.consumers.client.WebSocketClient;
+import nmea.consumers.reader.BME280Reader;
+import nmea.consumers.reader.DataFileReader;
+import nmea.consumers.reader.HTU21DFReader;
+import nmea.consumers.reader.LinkReader;
+import nmea.consumers.reader.RandomReader;
+import nmea.consumers.reader.SerialReader;
+import nmea.consumers.reader.TCPReader;
+import nmea.consumers.reader.WebSocketReader;
+import nmea.forwarders.ConsoleWriter;
+import nmea.forwarders.DataFileWriter;
+import nmea.forwarders.GPSdServer;
+import nmea.forwarders.SerialWriter;
+import nmea.forwarders.TCPServer;
+import nmea.forwarders.WebSocketProcessor;
+import nmea.forwarders.WebSocketWriter;
+import nmea.forwarders.link.LinkServer;
+import nmea.forwarders.rmi.RMIServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * The channel, forwarder and computer types supported out of the box.
+ * The classes behind them are only loaded when a type is used.
+ */
+class BuiltInComponents implements ComponentProvider {
+
+	@Override
+	public void register(ComponentRegistry registry) {
+		// 1 - Input channels
+		registry.registerChannel("serial", (config, mux) -> {
+			NMEAClient serialClient = new SerialClient(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			serialClient.initClient();
+			serialClient.setReader(new SerialReader(serialClient.getListeners(), config.get("port"), Integer.parseInt(config.get("baudrate"))));
+			return serialClient;
+		});
+		registry.registerChannel("tcp", (config, mux) -> {
+			NMEAClient tcpClient = new TCPClient(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			tcpClient.initClient();
+			tcpClient.setReader(new TCPReader(tcpClient.getListeners(),
+							config.get("server"),
+							Integer.parseInt(config.get("port")),
+							"deflate".equals(config.get("compression", "none"))));
+			return tcpClient;
+		});
+		registry.registerChannel("link", (config, mux) -> { // From another multiplexer
+			NMEAClient linkClient = new LinkClient(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			linkClient.initClient();
+			linkClient.setReader(new LinkReader(linkClient.getListeners(),
+							config.get("server"),
+							Integer.parseInt(config.get("port")),
+							"true".equals(config.get("prefixes", "true")),
+							Long.parseLong(config.get("retry", String.valueOf(LinkReader.DEFAULT_RETRY)))));
+			return linkClient;
+		});
+		registry.registerChannel("file", (config, mux) -> {
+			NMEAClient fileClient = new DataFileClient(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			fileClient.initClient();
+			fileClient.setReader(new DataFileReader(fileClient.getListeners(), config.get("filename")));
+			return fileClient;
+		});
+		registry.registerChannel("ws", (config, mux) -> {
+			NMEAClient wsClient = new WebSocketClient(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			wsClient.initClient();
+			wsClient.setReader(new WebSocketReader(wsClient.getListeners(), config.get("wsuri")));
+			return wsClient;
+		});
+		registry.registerChannel("htu21df", (config, mux) -> { // Humidity & Temperature sensor
+			String htu21dfDevicePrefix = config.get("device.prefix", "");
+			NMEAClient htu21dfClient = new HTU21DFClient(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			htu21dfClient.initClient();
+			htu21dfClient.setReader(new HTU21DFReader(htu21dfClient.getListeners()));
+			// Important: after the setReader
+			if (htu21dfDevicePrefix.trim().length() > 0) {
+				if (htu21dfDevicePrefix.trim().length() == 2) {
+					((HTU21DFClient) htu21dfClient).setSpecificDevicePrefix(htu21dfDevicePrefix.trim());
+				} else {
+					throw new RuntimeException(String.format("Bad prefix [%s] for HTU21DF. Must be 2 character long, exactly.", htu21dfDevicePrefix.trim()));
+				}
+			}
+			return htu21dfClient;
+		});
+		registry.registerChannel("rnd", (config, mux) -> { // Random generator, for debugging
+			NMEAClient rndClient = new RandomClient(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			rndClient.initClient();
+			rndClient.setReader(new RandomReader(rndClient.getListeners()));
+			return rndClient;
+		});
+		registry.registerChannel("bme280", (config, mux) -> { // Humidity, Temperature, Pressure
+			String bme280DevicePrefix = config.get("device.prefix", "");
+			NMEAClient bme280Client = new BME280Client(config.getList("device.filters"), config.getList("sentence.filters"), mux);
+			bme280Client.initClient();
+			bme280Client.setReader(new BME280Reader(bme280Client.getListeners()));
+			// Important: after the setReader
+			if (bme280DevicePrefix.trim().length() > 0) {
+				if (bme280DevicePrefix.trim().length() == 2) {
+					((BME280Client) bme280Client).setSpecificDevicePrefix(bme280DevicePrefix.trim());
+				} else {
+					throw new RuntimeException(String.format("Bad prefix [%s] for BME280. Must be 2 character long, exactly.", bme280DevicePrefix.trim()));
+				}
+			}
+			return bme280Client;
+		});
+		// bmp180 (Temperature, Pressure), lsm303 (3D magnetometer), batt (Battery Voltage, use XDR): not supported yet.
+
+		// 2 - Output channels, aka forwarders
+		registry.registerForwarder("serial", config -> new SerialWriter(config.get("port"), Integer.parseInt(config.get("baudrate"))));
+		registry.registerForwarder("tcp", config -> new TCPServer(Integer.parseInt(config.get("port")),
+						"deflate".equals(config.get("compression", "none")),
+						Integer.parseInt(config.get("compression.level", String.valueOf(Deflater.DEFAULT_COMPRESSION))),
+						Long.parseLong(config.get("flush.interval", String.valueOf(TCPServer.DEFAULT_FLUSH_INTERVAL)))));
+		registry.registerForwarder("link", config -> new LinkServer(Integer.parseInt(config.get("port")),
+						Integer.parseInt(config.get("backlog", String.valueOf(LinkServer.DEFAULT_BACKLOG))),
+						Integer.parseInt(config.get("batch.size", String.valueOf(LinkServer.DEFAULT_BATCH_SIZE))),
+						Long.parseLong(config.get("linger", String.valueOf(LinkServer.DEFAULT_LINGER))),
+						Integer.parseInt(config.get("window", String.valueOf(LinkServer.DEFAULT_BACKLOG / 2))),
+						"true".equals(config.get("prefixes", "true"))));
+		registry.registerForwarder("gpsd", config -> new GPSdServer(Integer.parseInt(config.get("port")),
+						Integer.parseInt(config.get("max.queue", String.valueOf(GPSdServer.DEFAULT_MAX_QUEUE))),
+						Long.parseLong(config.get("interval", String.valueOf(GPSdServer.DEFAULT_INTERVAL)))));
+		registry.registerForwarder("file", config -> new DataFileWriter(config.get("filename")));
+		registry.registerForwarder("ws", config -> new WebSocketWriter(config.get("wsuri"),
+						"binary".equals(config.get("encoding", "text")),
+						Long.parseLong(config.get("flush.interval", String.valueOf(WebSocketWriter.DEFAULT_FLUSH_INTERVAL)))));
+		registry.registerForwarder("wsp", config -> new WebSocketProcessor(config.get("wsuri"),
+						"binary".equals(config.get("encoding", "text")),
+						Long.parseLong(config.get("keyframe.interval", String.valueOf(WebSocketProcessor.DEFAULT_KEYFRAME_INTERVAL))),
+						Long.parseLong(config.get("min.interval", String.valueOf(WebSocketProcessor.DEFAULT_MIN_INTERVAL)))));
+		registry.registerForwarder("console", config -> new ConsoleWriter());
+		registry.registerForwarder("rmi", config -> {
+			String rmiName = config.get("name");
+			if (rmiName != null && rmiName.trim().length() > 0) {
+				return new RMIServer(Integer.parseInt(config.get("port")), rmiName);
+			} else {
+				return new RMIServer(Integer.parseInt(config.get("port")));
+			}
+		});
+
+		// 3 - Computers
+		registry.registerComputer("tw-current", (config, mux) -> {
+			String prefix = config.get("prefix", "OS");
+			String[] timeBuffers = config.get("time.buffer.length", "600000").split(",");
+			List<Long> timeBufferLengths = Arrays.asList(timeBuffers).stream().map(tbl -> Long.parseLong(tbl.trim())).collect(Collectors.toList());
+			// Check duplicates
+			for (int i = 0; i < timeBufferLengths.size() - 1; i++) {
+				for (int j = i + 1; j < timeBufferLengths.size(); j++) {
+					if (timeBufferLengths.get(i).equals(timeBufferLengths.get(j))) {
+						throw new RuntimeException(String.format("Duplicates in time buffer lengths: %d ms.", timeBufferLengths.get(i)));
+					}
+				}
+			}
+			return new ExtraDataComputer(mux, prefix, timeBufferLengths.toArray(new Long[timeBufferLengths.size()]));
+		});
+		registry.registerComputer("polars", (config, mux) -> {
+			String polarFile = config.get("polar.file");
+			if (polarFile == null) {
+				throw new RuntimeException("polars computer: polar.file is required");
+			}
+			try {
+				return new PolarComputer(mux,
+						PolarGrid.load(new File(polarFile)),
+						polarFile,
+						config.get("prefix", "OS"),
+						Long.parseLong(config.get("min.interval", String.valueOf(PolarComputer.DEFAULT_MIN_INTERVAL))));
+			} catch (IOException ioe) {
+				throw new RuntimeException(String.format("polars computer: cannot read %s", polarFile), ioe);
+			}
+		});
+	}
+}
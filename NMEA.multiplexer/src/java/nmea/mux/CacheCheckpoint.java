@@ -0,0 +1,288 @@
+package nmea.mux;
+
+import context.ApplicationContext;
+import context.NMEADataCache;
+import nmea.computers.current.CurrentSampler;
+import nmea.computers.current.LongTimeCurrentCalculator;
+import nmea.forwarders.rmi.CacheSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Saves the state of the cache in a file, for the multiplexer to start warm after a reboot or a crash:
+ * the values of the cache, its damping buffers, and the samples of the {@link LongTimeCurrentCalculator}s
+ * (that would otherwise need their whole buffer length, up to an hour, before producing a current).
+ * <br>
+ * A thread of its own writes the file every <code>checkpoint.interval</code> ms, and when the mux shuts down.
+ * It is written next to the target, synced, and then renamed, the file is always complete.
+ * Values are written like in a {@link CacheSnapshot}, type and primitive values.
+ * <br>
+ * At startup, the file is read (memory-mapped) if it is younger than <code>checkpoint.max.age</code> ms.
+ * The settings of the cache (factors, offsets, deviation) are not in it, they come from the config.
+ * <br>
+ * Properties:
+ * <pre>
+ * checkpoint.file=./cache.checkpoint
+ * checkpoint.interval=30000
+ * checkpoint.max.age=600000
+ * </pre>
+ */
+public class CacheCheckpoint {
+
+	private final static int MAGIC = 0x43434b31; // CCK1
+	private final static int VERSION = 1;
+
+	public final static long DEFAULT_INTERVAL = 30_000L;
+	public final static long DEFAULT_MAX_AGE = 600_000L;
+
+	private final File file;
+	private final long interval;
+	private final long maxAge;
+
+	private volatile Thread writer = null;
+
+	public CacheCheckpoint(File file, long interval, long maxAge) {
+		this.file = file;
+		this.interval = interval;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * @param props the mux properties
+	 * @return null if there is no <code>checkpoint.file</code>
+	 */
+	public static CacheCheckpoint fromProperties(Properties props) {
+		String fileName = props.getProperty("checkpoint.file");
+		if (fileName == null || fileName.trim().isEmpty()) {
+			return null;
+		}
+		return new CacheCheckpoint(new File(fileName.trim()),
+						Long.parseLong(props.getProperty("checkpoint.interval", String.valueOf(DEFAULT_INTERVAL))),
+						Long.parseLong(props.getProperty("checkpoint.max.age", String.valueOf(DEFAULT_MAX_AGE))));
+	}
+
+	/**
+	 * Writes the checkpoint file. One at a time, they all go through the same temporary file.
+	 *
+	 * @throws IOException if it cannot be written. The previous one, if any, is still there.
+	 */
+	public synchronized void save() throws IOException {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			return;
+		}
+		String[] keys;
+		synchronized (cache) {
+			keys = cache.keySet().stream()
+							.filter(key -> !NMEADataCache.isKeptOnReset(key))
+							.toArray(String[]::new);
+		}
+		CacheSnapshot snapshot = CacheSnapshot.take(cache, keys, 0L, false); // Raw values, the damping buffers come next.
+		Map<String, List<Object>> damping = cache.getDampingBuffers();
+		List<LongTimeCurrentCalculator> calculators = CurrentSampler.getInstance().getCalculators();
+
+		File tmp = new File(file.getAbsolutePath() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fos, 65_536))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			snapshot.writeExternal(out);
+			out.writeInt(damping.size());
+			for (Map.Entry<String, List<Object>> buffer : damping.entrySet()) {
+				out.writeUTF(buffer.getKey());
+				out.writeInt(buffer.getValue().size());
+				for (Object value : buffer.getValue()) {
+					CacheSnapshot.writeValue(out, value);
+				}
+			}
+			out.writeInt(calculators.size());
+			for (LongTimeCurrentCalculator calculator : calculators) {
+				out.writeLong(calculator.getBufferLength());
+				calculator.writeSamples(out);
+			}
+			out.writeInt(MAGIC); // Complete
+			out.flush();
+			fos.getFD().sync();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Puts the checkpoint back in the cache and the current calculators, if it exists and is not too old.
+	 * To call after the computers are created, before the channels start.
+	 *
+	 * @return true if restored
+	 */
+	public boolean restore() {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null || !file.exists()) {
+			return false;
+		}
+		long before = System.currentTimeMillis();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+		     ObjectInputStream in = new ObjectInputStream(new ByteBufferInputStream(
+						     raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length())))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				System.out.println(String.format("%s is not a checkpoint (or an older version), ignored.", file));
+				return false;
+			}
+			long savedAt = in.readLong();
+			long age = before - savedAt;
+			if (age > maxAge) {
+				System.out.println(String.format("Checkpoint %s is %s s old, ignored (checkpoint.max.age).",
+								file, NumberFormat.getInstance().format(age / 1_000L)));
+				return false;
+			}
+			// Read everything before touching the cache.
+			CacheSnapshot snapshot = new CacheSnapshot();
+			snapshot.readExternal(in);
+			Map<String, List<Object>> damping = new HashMap<>();
+			int nbBuffers = in.readInt();
+			for (int i = 0; i < nbBuffers; i++) {
+				String key = in.readUTF();
+				int nb = in.readInt();
+				List<Object> values = new ArrayList<>(nb);
+				for (int j = 0; j < nb; j++) {
+					values.add(CacheSnapshot.readValue(in));
+				}
+				damping.put(key, values);
+			}
+			Map<Long, LongTimeCurrentCalculator> calculators = CurrentSampler.getInstance().getCalculators().stream()
+							.collect(Collectors.toMap(LongTimeCurrentCalculator::getBufferLength, calculator -> calculator, (a, b) -> a));
+			Set<Long> restoredCalculators = new HashSet<>();
+			int nbCalculators = in.readInt();
+			for (int i = 0; i < nbCalculators; i++) {
+				long bufferLength = in.readLong();
+				LongTimeCurrentCalculator calculator = calculators.get(bufferLength);
+				if (calculator == null) {
+					calculator = new LongTimeCurrentCalculator(bufferLength); // Not there anymore, read and forget.
+				} else {
+					restoredCalculators.add(bufferLength);
+				}
+				calculator.readSamples(in);
+			}
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Incomplete checkpoint");
+			}
+			snapshot.applyTo(cache);
+			damping.forEach(cache::setDampingBuffer);
+			System.out.println(String.format("Cache restored from %s (%s s old) in %d ms: %d values, %d current calculator(s).",
+							file, NumberFormat.getInstance().format(age / 1_000L), System.currentTimeMillis() - before,
+							snapshot.size(), restoredCalculators.size()));
+			return true;
+		} catch (Exception ex) {
+			System.err.println(String.format("Checkpoint %s cannot be restored: %s", file, ex.toString()));
+			return false;
+		}
+	}
+
+	/**
+	 * Starts the thread writing the checkpoints.
+	 */
+	public synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		writer = new Thread(() -> {
+			Thread me = Thread.currentThread();
+			while (writer == me) {
+				synchronized (me) {
+					try {
+						me.wait(interval);
+					} catch (InterruptedException ie) {
+						break;
+					}
+				}
+				if (writer == me) {
+					try {
+						save();
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					}
+				}
+			}
+		}, "Cache checkpoint");
+		writer.setDaemon(true);
+		writer.setPriority(Thread.MIN_PRIORITY);
+		writer.start();
+	}
+
+	/**
+	 * Stops the thread, waits for the checkpoint it may be writing, and writes a last one.
+	 */
+	public void stop() {
+		Thread stopping;
+		synchronized (this) {
+			stopping = writer;
+			writer = null;
+		}
+		if (stopping != null) {
+			synchronized (stopping) {
+				stopping.notify();
+			}
+			try {
+				stopping.join();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			try {
+				save();
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int nb = Math.min(len, buffer.remaining());
+			buffer.get(b, off, nb);
+			return nb;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
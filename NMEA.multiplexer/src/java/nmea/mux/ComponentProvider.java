@@ -0,0 +1,14 @@
+package nmea.mux;
+
+/**
+ * Contributes channel, forwarder and computer types to the {@link ComponentRegistry}.
+ * <br>
+ * Implementations are found with a {@link java.util.ServiceLoader}: list them in a
+ * <code>META-INF/services/nmea.mux.ComponentProvider</code> file of their jar. The types they register
+ * can then be used like the built-in ones, as in <code>mux.01.type=my-sensor</code>.
+ * <br>
+ * See {@link BuiltInComponents} for examples.
+ */
+public interface ComponentProvider {
+	void register(ComponentRegistry registry);
+}
@@ -0,0 +1,141 @@
+package nmea.mux;
+
+import nmea.api.Multiplexer;
+import nmea.api.NMEAClient;
+import nmea.computers.Computer;
+import nmea.forwarders.Forwarder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the <code>type</code> of the channels, forwarders and computers (as in <code>mux.01.type=serial</code>)
+ * to the factories that build them.
+ * <br>
+ * The built-in types are registered first ({@link BuiltInComponents}), then the ones of the
+ * {@link ComponentProvider}s found on the classpath, that can override them.
+ */
+public class ComponentRegistry {
+
+	@FunctionalInterface
+	public interface ChannelFactory {
+		NMEAClient create(ComponentConfig config, Multiplexer mux) throws Exception;
+	}
+
+	@FunctionalInterface
+	public interface ForwarderFactory {
+		Forwarder create(ComponentConfig config) throws Exception;
+	}
+
+	@FunctionalInterface
+	public interface ComputerFactory {
+		Computer create(ComponentConfig config, Multiplexer mux) throws Exception;
+	}
+
+	/**
+	 * The properties of one component, <code>mux.01.*</code> for example.
+	 */
+	public static class ComponentConfig {
+		private final Properties muxProps;
+		private final String prefix; // Like "mux.01."
+		private final String idx;
+
+		public ComponentConfig(Properties muxProps, String kind, String idx) {
+			this.muxProps = muxProps;
+			this.prefix = kind + "." + idx + ".";
+			this.idx = idx;
+		}
+
+		public String getIdx() {
+			return idx;
+		}
+
+		/**
+		 * @param key like <code>port</code>, for <code>mux.01.port</code>
+		 */
+		public String get(String key) {
+			return muxProps.getProperty(prefix + key);
+		}
+
+		public String get(String key, String defaultValue) {
+			return muxProps.getProperty(prefix + key, defaultValue);
+		}
+
+		/**
+		 * @param key like <code>device.filters</code>
+		 * @return the comma-separated values, null if there is none.
+		 */
+		public String[] getList(String key) {
+			String value = muxProps.getProperty(prefix + key, "");
+			return value.trim().length() > 0 ? value.split(",") : null;
+		}
+	}
+
+	private final Map<String, ChannelFactory> channels = new ConcurrentHashMap<>();
+	private final Map<String, ForwarderFactory> forwarders = new ConcurrentHashMap<>();
+	private final Map<String, ComputerFactory> computers = new ConcurrentHashMap<>();
+
+	private static ComponentRegistry instance = null;
+
+	public static synchronized ComponentRegistry getInstance() {
+		if (instance == null) {
+			instance = new ComponentRegistry();
+		}
+		return instance;
+	}
+
+	private ComponentRegistry() {
+		new BuiltInComponents().register(this);
+		for (ComponentProvider provider : ServiceLoader.load(ComponentProvider.class)) {
+			try {
+				provider.register(this);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	public void registerChannel(String type, ChannelFactory factory) {
+		channels.put(type, factory);
+	}
+
+	public void registerForwarder(String type, ForwarderFactory factory) {
+		forwarders.put(type, factory);
+	}
+
+	public void registerComputer(String type, ComputerFactory factory) {
+		computers.put(type, factory);
+	}
+
+	/**
+	 * @return null if the type is unknown
+	 */
+	public ChannelFactory getChannelFactory(String type) {
+		return channels.get(type);
+	}
+
+	public ForwarderFactory getForwarderFactory(String type) {
+		return forwarders.get(type);
+	}
+
+	public ComputerFactory getComputerFactory(String type) {
+		return computers.get(type);
+	}
+
+	public Set<String> getChannelTypes() {
+		return Collections.unmodifiableSet(new TreeMap<>(channels).keySet());
+	}
+
+	public Set<String> getForwarderTypes() {
+		return Collections.unmodifiableSet(new TreeMap<>(forwarders).keySet());
+	}
+
+	public Set<String> getComputerTypes() {
+		return Collections.unmodifiableSet(new TreeMap<>(computers).keySet());
+	}
+}
@@ -0,0 +1,143 @@
+package nmea.mux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Differences between two versions of the mux properties, used by {@link GenericNMEAMultiplexer#reload(Properties)}.
+ * <br>
+ * Channels, forwarders and computers are compared index by index (<code>mux.XX.*</code>, <code>forward.XX.*</code>,
+ * <code>computer.XX.*</code>). When one of them refers to a properties file (<code>xxx.XX.properties</code>), the content
+ * of this file is part of the comparison too.
+ */
+public class ConfigDiff {
+
+	private final static NumberFormat IDX_FMT = new DecimalFormat("00");
+
+	public enum Change {
+		added, removed, changed
+	}
+
+	/**
+	 * What a reload did, returned by <code>POST /config/reload</code>.
+	 */
+	public static class Report {
+		private List<String> started = new ArrayList<>();
+		private List<String> stopped = new ArrayList<>();
+		private List<String> restarted = new ArrayList<>();
+		private List<String> settings = new ArrayList<>(); // arbitration, reorder, cache
+
+		public List<String> getStarted() {
+			return started;
+		}
+
+		public List<String> getStopped() {
+			return stopped;
+		}
+
+		public List<String> getRestarted() {
+			return restarted;
+		}
+
+		public List<String> getSettings() {
+			return settings;
+		}
+
+		void add(String name, Change change) {
+			switch (change) {
+				case added:
+					started.add(name);
+					break;
+				case removed:
+					stopped.add(name);
+					break;
+				case changed:
+					restarted.add(name);
+					break;
+			}
+		}
+
+		public boolean isEmpty() {
+			return started.isEmpty() && stopped.isEmpty() && restarted.isEmpty() && settings.isEmpty();
+		}
+	}
+
+	/**
+	 * @param before the config in use
+	 * @param after  the new one
+	 * @param prefix <code>mux</code>, <code>forward</code> or <code>computer</code>
+	 * @return the indexes (like "01") that have changed, with how. The unchanged ones are not in the map.
+	 */
+	public static Map<String, Change> indexed(Properties before, Properties after, String prefix) {
+		Map<String, Change> changes = new LinkedHashMap<>();
+		int nbBefore = count(before, prefix);
+		int nbAfter = count(after, prefix);
+		for (int i = 1; i <= Math.max(nbBefore, nbAfter); i++) {
+			String idx = IDX_FMT.format(i);
+			if (i > nbBefore) {
+				changes.put(idx, Change.added);
+			} else if (i > nbAfter) {
+				changes.put(idx, Change.removed);
+			} else if (!section(before, prefix, idx).equals(section(after, prefix, idx))) {
+				changes.put(idx, Change.changed);
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * @return true if at least one of the properties selected by <code>keys</code> is different.
+	 */
+	public static boolean differ(Properties before, Properties after, Predicate<String> keys) {
+		return !select(before, keys).equals(select(after, keys));
+	}
+
+	/**
+	 * Same loop as in the {@link GenericNMEAMultiplexer} constructor: the indexes are contiguous, from 01.
+	 */
+	private static int count(Properties props, String prefix) {
+		int nb = 0;
+		while (props.getProperty(String.format("%s.%s.cls", prefix, IDX_FMT.format(nb + 1))) != null ||
+						props.getProperty(String.format("%s.%s.type", prefix, IDX_FMT.format(nb + 1))) != null) {
+			nb++;
+		}
+		return nb;
+	}
+
+	private static Map<String, String> section(Properties props, String prefix, String idx) {
+		String start = String.format("%s.%s.", prefix, idx);
+		Map<String, String> section = select(props, key -> key.startsWith(start) &&
+						!(key.endsWith(".timestamp") || key.endsWith(".latency"))); // Those two belong to the ReorderBuffer
+		String propFileName = section.get(start + "properties");
+		if (propFileName != null) {
+			String content;
+			try {
+				content = new String(Files.readAllBytes(Paths.get(propFileName)), StandardCharsets.UTF_8);
+			} catch (IOException ioe) {
+				content = null;
+			}
+			section.put(start + "properties#content", Objects.toString(content));
+		}
+		return section;
+	}
+
+	private static Map<String, String> select(Properties props, Predicate<String> keys) {
+		Map<String, String> selected = new TreeMap<>();
+		props.stringPropertyNames().stream()
+						.filter(keys)
+						.forEach(key -> selected.put(key, props.getProperty(key).trim()));
+		return selected;
+	}
+}
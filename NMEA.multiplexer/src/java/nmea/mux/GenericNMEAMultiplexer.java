@@ -5,18 +5,25 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import nmea.api.NMEAReader;
+import nmea.analyzer.TrackExporter;
+import nmea.archive.CacheArchive;
+import nmea.computers.AISCPAComputer;
 import nmea.computers.Computer;
 import nmea.computers.ExtraDataComputer;
 import context.ApplicationContext;
 import context.NMEADataCache;
 import gnu.io.CommPortIdentifier;
+import nmea.ais.AISTarget;
+import nmea.ais.AISTargetTable;
 import http.HTTPServer;
 import http.HTTPServerInterface;
 import http.RESTProcessorUtil;
 import http.utils.DumpUtil;
 import nmea.api.Multiplexer;
 import nmea.api.NMEAClient;
+import nmea.api.LatencyTracer;
 import nmea.api.NMEAParser;
+import nmea.parser.Angle180EW;
 import nmea.consumers.client.BME280Client;
 import nmea.consumers.client.DataFileClient;
 import nmea.consumers.client.HTU21DFClient;
@@ -46,15 +53,33 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -62,8 +87,23 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 	private HTTPServer adminServer = null;
 
 	private List<NMEAClient> nmeaDataClients = new ArrayList<>();
+	private SourceArbitrator arbitrator = new SourceArbitrator();
+	private ReorderBuffer reorderBuffer = null; // Optional, see reorder.latency
+	private CacheArchive archive = null;        // Optional, see archive.keys
+	private CacheCheckpoint checkpoint = null;  // Optional, see checkpoint.file
 	private List<Forwarder> nmeaDataForwarders = new ArrayList<>();
 	private List<Computer> nmeaDataComputers = new ArrayList<>();
+	// Latency trace stage of each forwarder, built when it is added, see addForwarder
+	private final Map<Forwarder, String> forwarderStages = new ConcurrentHashMap<>();
+	private final AtomicInteger addedForwarders = new AtomicInteger(0);
+
+	// The ones built from the config, by index, for the reload. Those added through REST are not in there.
+	private Map<String, NMEAClient> channelsByIdx = new HashMap<>();
+	private Map<String, Forwarder> forwardersByIdx = new HashMap<>();
+	private Map<String, Computer> computersByIdx = new HashMap<>();
+	private Properties muxProps;     // The config in use
+	private final Object reloadLock = new Object(); // Reloads come from REST and from the config watcher
+	private File configFile = null;  // Where it comes from, if known
 
 	private static class Operation {
 		String verb;
@@ -114,7 +154,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 									"GET",
 									"/serial-ports",
 									this::getSerialPorts,
-									"Get the list of the available serial ports."),
+									"Get the list of the available serial ports. Enumerated once, ?refresh=true to enumerate them again."),
 					new Operation(
 									"GET",
 									"/channels",
@@ -189,7 +229,77 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 									"DELETE",
 									"/cache",
 									this::resetCache,
-									"Reset the cache"));
+									"Reset the cache"),
+					new Operation(
+									"GET",
+									"/deviation-curve",
+									this::getDeviationCurve,
+									"Get the deviation curve in use"),
+					new Operation(
+									"POST",
+									"/deviation-curve",
+									this::postDeviationCurve,
+									"Upload a new deviation curve, CSV (heading,deviation per line) or json ([[heading, deviation], ...])"),
+					new Operation(
+									"GET",
+									"/ais/targets",
+									this::getAISTargets,
+									"Get the live AIS targets. With ?since=<version>, only what changed after this version."),
+					new Operation(
+									"GET",
+									"/ais/targets/{mmsi}",
+									this::getAISTarget,
+									"Get one AIS target"),
+					new Operation(
+									"GET",
+									"/ais/risks",
+									this::getAISRisks,
+									"Get the AIS targets in range, with their CPA and TCPA, most dangerous first. Requires an AISCPAComputer."),
+					new Operation(
+									"GET",
+									"/sources",
+									this::getSources,
+									"Get the health of the input channels (rate, last seen, checksum errors, dropped duplicates), and the active source for each arbitrated sentence."),
+					new Operation(
+									"POST",
+									"/config/reload",
+									this::reloadConfig,
+									"Reload the mux config, from the properties in the payload if any, from the original file otherwise. Only what has changed is restarted."),
+					new Operation(
+									"GET",
+									"/archive",
+									this::getArchive,
+									"Get the archived cache keys, and the resolutions of the archive."),
+					new Operation(
+									"GET",
+									"/archive/{key}",
+									this::getArchivedValues,
+									"Get the history of an archived cache key, as [time, min, max, avg]. Query parameters from and to (epoch, in ms, default last hour), step (in seconds, optional)."),
+					new Operation(
+									"GET",
+									"/latency",
+									this::getLatency,
+									"Get the latency histograms of each stage (read to forwarders), in µs. See trace.enabled."),
+					new Operation(
+									"GET",
+									"/latency/slow",
+									this::getSlowTraces,
+									"Get the last traces slower than trace.slow ms, most recent first."),
+					new Operation(
+									"PUT",
+									"/latency/{pos}",
+									this::putLatency,
+									"Start (on) or stop (off) the latency tracing."),
+					new Operation(
+									"DELETE",
+									"/latency",
+									this::resetLatency,
+									"Reset the latency histograms and slow traces."),
+					new Operation(
+									"GET",
+									"/track",
+									this::getTrack,
+									"Get the track from the logs (track.logs, or the file forwarders), simplified. Query parameters from and to (epoch in ms, or ISO-8601), format (gpx, kml, geojson), optional min.time (s), min.distance and tolerance (m). Streamed."));
 
 	public HTTPServer.Response processRequest(HTTPServer.Request request, HTTPServer.Response defaultResponse) {
 		Optional<Operation> opOp = operations
@@ -208,7 +318,8 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 	private HTTPServer.Response getSerialPorts(HTTPServer.Request request) {
 		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
 
-		List<String> portList = getSerialPortList();
+		Map<String, String> prms = request.getQueryStringParameters();
+		List<String> portList = getSerialPortList(prms != null && "true".equals(prms.get("refresh")));
 		Object[] portArray = portList.toArray(new Object[portList.size()]);
 		String content = new Gson().toJson(portArray).toString();
 		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
@@ -571,7 +682,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder consoleForwarder = new ConsoleWriter();
-						nmeaDataForwarders.add(consoleForwarder);
+						addForwarder(null, consoleForwarder);
 						response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
 						String content = new Gson().toJson(consoleForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
@@ -597,7 +708,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder serialForwarder = new SerialWriter(serialJson.getPort(), serialJson.getBR());
-						nmeaDataForwarders.add(serialForwarder);
+						addForwarder(null, serialForwarder);
 						String content = new Gson().toJson(serialForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 						response.setPayload(content.getBytes());
@@ -622,7 +733,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder tcpForwarder = new TCPServer(tcpJson.getPort());
-						nmeaDataForwarders.add(tcpForwarder);
+						addForwarder(null, tcpForwarder);
 						String content = new Gson().toJson(tcpForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 						response.setPayload(content.getBytes());
@@ -647,7 +758,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder gpsdForwarder = new GPSdServer(gpsdJson.getPort());
-						nmeaDataForwarders.add(gpsdForwarder);
+						addForwarder(null, gpsdForwarder);
 						String content = new Gson().toJson(gpsdForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 						response.setPayload(content.getBytes());
@@ -672,7 +783,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder rmiForwarder = new RMIServer(rmiJson.getPort(), rmiJson.getBindingName());
-						nmeaDataForwarders.add(rmiForwarder);
+						addForwarder(null, rmiForwarder);
 						String content = new Gson().toJson(rmiForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 						response.setPayload(content.getBytes());
@@ -697,7 +808,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder fileForwarder = new DataFileWriter(fileJson.getLog());
-						nmeaDataForwarders.add(fileForwarder);
+						addForwarder(null, fileForwarder);
 						String content = new Gson().toJson(fileForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 						response.setPayload(content.getBytes());
@@ -721,7 +832,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder wsForwarder = new WebSocketWriter(wsJson.getWsUri());
-						nmeaDataForwarders.add(wsForwarder);
+						addForwarder(null, wsForwarder);
 						String content = new Gson().toJson(wsForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 						response.setPayload(content.getBytes());
@@ -746,7 +857,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (!opFwd.isPresent()) {
 					try {
 						Forwarder wspForwarder = new WebSocketProcessor(wspJson.getWsUri());
-						nmeaDataForwarders.add(wspForwarder);
+						addForwarder(null, wspForwarder);
 						String content = new Gson().toJson(wspForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 						response.setPayload(content.getBytes());
@@ -797,7 +908,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 										ex.printStackTrace();
 									}
 								}
-								nmeaDataForwarders.add(forwarder);
+								addForwarder(null, forwarder);
 								String content = new Gson().toJson(forwarder.getBean());
 								RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 								response.setPayload(content.getBytes());
@@ -1558,6 +1669,7 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 
 			jsonElement = new Gson().toJsonTree(cache);
 			((JsonObject) jsonElement).remove(NMEADataCache.DEVIATION_DATA); // Useless for the client.
+			((JsonObject) jsonElement).remove(NMEADataCache.DEVIATION_TABLE);
 		} catch (Exception ex) {
 			System.err.println("getCache:" + ex.toString());
 		}
@@ -1582,6 +1694,354 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		return response;
 	}
 
+	private HTTPServer.Response getAISTargets(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		long since = 0L;
+		Map<String, String> prms = request.getQueryStringParameters();
+		if (prms != null && prms.get("since") != null) {
+			try {
+				since = Long.parseLong(prms.get("since"));
+			} catch (NumberFormatException nfe) {
+				response.setStatus(HTTPServer.Response.BAD_REQUEST);
+				RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Bad since value [%s]", prms.get("since")));
+				return response;
+			}
+		}
+		AISTargetTable.Delta delta = ApplicationContext.getInstance().getAISTargetTable().getDelta(since);
+		String content = new Gson().toJson(delta);
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response getAISTarget(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		List<String> prmValues = RESTProcessorUtil.getPrmValues(request.getRequestPattern(), request.getPath());
+		AISTarget target = null;
+		if (prmValues.size() == 1) {
+			try {
+				target = ApplicationContext.getInstance().getAISTargetTable().getTarget(Integer.parseInt(prmValues.get(0)));
+			} catch (NumberFormatException nfe) {
+				response.setStatus(HTTPServer.Response.BAD_REQUEST);
+				RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Bad MMSI [%s]", prmValues.get(0)));
+				return response;
+			}
+		}
+		if (target == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "target not found");
+			return response;
+		}
+		String content = new Gson().toJson(target);
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response getAISRisks(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		Optional<Computer> opComputer = nmeaDataComputers.stream()
+						.filter(cptr -> cptr instanceof AISCPAComputer)
+						.findFirst();
+		if (!opComputer.isPresent()) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "no AIS CPA computer");
+			return response;
+		}
+		String content = new Gson().toJson(((AISCPAComputer) opComputer.get()).getEngine().getRisks());
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private static class SourcesBean {
+		private List<SourceArbitrator.SourceHealth> sources;
+		private Map<String, String> active;
+		private ReorderBuffer.ReorderBean reorder;
+	}
+
+	private HTTPServer.Response getSources(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		SourcesBean bean = new SourcesBean();
+		bean.sources = arbitrator.getHealth();
+		bean.active = arbitrator.getActiveSources();
+		if (reorderBuffer != null) {
+			bean.reorder = reorderBuffer.getBean();
+		}
+		String content = new Gson().toJson(bean);
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response getArchive(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		if (archive == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "No archive, see archive.keys");
+			return response;
+		}
+		String content = new Gson().toJson(archive.getBean());
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response getLatency(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		String content = new Gson().toJson(LatencyTracer.getInstance().getBean());
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response getSlowTraces(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		String content = new Gson().toJson(LatencyTracer.getInstance().getSlowTraces());
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response putLatency(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		List<String> prmValues = RESTProcessorUtil.getPrmValues(request.getRequestPattern(), request.getPath());
+		if (prmValues.size() != 1 || !("on".equals(prmValues.get(0)) || "off".equals(prmValues.get(0)))) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "expected on or off");
+			return response;
+		}
+		LatencyTracer.getInstance().setEnabled("on".equals(prmValues.get(0)));
+		String content = new Gson().toJson(LatencyTracer.getInstance().getBean());
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response resetLatency(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		LatencyTracer.getInstance().reset();
+		String content = "";
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response getTrack(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		List<File> logs = new ArrayList<>();
+		String trackLogs = muxProps.getProperty("track.logs");
+		if (trackLogs != null) {
+			Arrays.asList(trackLogs.split(",")).forEach(log -> logs.add(new File(log.trim())));
+		} else {
+			nmeaDataForwarders.stream()
+							.filter(fwd -> fwd instanceof DataFileWriter)
+							.forEach(fwd -> logs.add(new File(((DataFileWriter) fwd).getLog())));
+		}
+		logs.removeIf(log -> !log.exists());
+		if (logs.isEmpty()) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "No log to read, see track.logs");
+			return response;
+		}
+		Map<String, String> qsPrms = request.getQueryStringParameters();
+		TrackExporter exporter;
+		try {
+			String from = queryParameter(qsPrms, "from");
+			String to = queryParameter(qsPrms, "to");
+			String format = queryParameter(qsPrms, "format");
+			String minTime = queryParameter(qsPrms, "min.time");
+			String minDistance = queryParameter(qsPrms, "min.distance");
+			String tolerance = queryParameter(qsPrms, "tolerance");
+			TrackExporter.Format trackFormat = (format == null) ? TrackExporter.Format.GPX : TrackExporter.parseFormat(format);
+			exporter = new TrackExporter(logs,
+							from == null ? 0L : TrackExporter.parseTime(from),
+							to == null ? Long.MAX_VALUE : TrackExporter.parseTime(to),
+							trackFormat);
+			exporter.setSimplification(
+							minTime == null ? TrackExporter.DEFAULT_MIN_TIME : Math.round(Double.parseDouble(minTime) * 1_000d),
+							minDistance == null ? TrackExporter.DEFAULT_MIN_DISTANCE : Double.parseDouble(minDistance),
+							tolerance == null ? TrackExporter.DEFAULT_TOLERANCE : Double.parseDouble(tolerance),
+							TrackExporter.DEFAULT_WINDOW);
+			RESTProcessorUtil.generateStreamingResponseHeaders(response, trackFormat.getContentType());
+		} catch (Exception ex) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Bad query parameter: %s", ex.getMessage()));
+			return response;
+		}
+		response.setStreamingPayload(exporter::export);
+		return response;
+	}
+
+	private static String queryParameter(Map<String, String> qsPrms, String name) throws UnsupportedEncodingException {
+		String value = (qsPrms == null) ? null : qsPrms.get(name);
+		return (value == null || value.isEmpty()) ? null : URLDecoder.decode(value, "UTF-8");
+	}
+
+	private static class ArchivedValues {
+		private String key;
+		private long from;
+		private long to;
+		private int step;
+		private List<double[]> points; // time, min, max, avg
+	}
+
+	private HTTPServer.Response getArchivedValues(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		List<String> prmValues = RESTProcessorUtil.getPrmValues(request.getRequestPattern(), request.getPath());
+		if (archive == null || prmValues.size() != 1) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "No archive, see archive.keys");
+			return response;
+		}
+		ArchivedValues values = new ArchivedValues();
+		try {
+			values.key = URLDecoder.decode(prmValues.get(0), "UTF-8"); // Like "Barometric%20Pressure"
+		} catch (UnsupportedEncodingException uee) {
+			values.key = prmValues.get(0);
+		}
+		long now = System.currentTimeMillis();
+		Map<String, String> qsPrms = request.getQueryStringParameters();
+		try {
+			values.to = (qsPrms != null && qsPrms.get("to") != null) ? Math.min(now, Long.parseLong(qsPrms.get("to"))) : now;
+			values.from = (qsPrms != null && qsPrms.get("from") != null) ? Long.parseLong(qsPrms.get("from")) : values.to - 3_600_000L;
+			values.step = (qsPrms != null && qsPrms.get("step") != null) ? Integer.parseInt(qsPrms.get("step")) : 0;
+		} catch (NumberFormatException nfe) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Bad query parameter: %s", nfe.getMessage()));
+			return response;
+		}
+		values.points = archive.query(values.key, values.from, values.to, values.step);
+		if (values.points == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, String.format("[%s] is not archived", values.key));
+			return response;
+		}
+		values.step = archive.getStep(values.from, values.step);
+		String content = new Gson().toJson(values);
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response reloadConfig(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		Properties newProps = new Properties();
+		try {
+			if (request.getContent() != null && request.getContent().length > 0) {
+				newProps.load(new StringReader(new String(request.getContent())));
+			} else if (configFile != null) {
+				newProps.load(new FileReader(configFile));
+			} else {
+				response.setStatus(HTTPServer.Response.BAD_REQUEST);
+				RESTProcessorUtil.addErrorMessageToResponse(response, "No properties in the payload, and no config file to reload from.");
+				return response;
+			}
+		} catch (IOException ioe) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, ioe.toString());
+			return response;
+		}
+		ConfigDiff.Report report = reload(newProps);
+		String content = new Gson().toJson(report);
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response getDeviationCurve(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "no cache");
+			return response;
+		}
+		String content = new Gson().toJson(cache.get(NMEADataCache.DEVIATION_DATA));
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+		response.setPayload(content.getBytes());
+		return response;
+	}
+
+	private HTTPServer.Response postDeviationCurve(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		if (ApplicationContext.getInstance().getDataCache() == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "no cache");
+			return response;
+		}
+		if (request.getContent() == null || request.getContent().length == 0) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "missing payload");
+			return response;
+		}
+		try {
+			String payload = new String(request.getContent()).trim();
+			List<double[]> curve;
+			if (payload.startsWith("[")) {
+				curve = Arrays.asList(new Gson().fromJson(payload, double[][].class));
+			} else {
+				try {
+					curve = parseDeviationCSV(payload);
+				} catch (IllegalArgumentException iae) {
+					response.setStatus(HTTPServer.Response.BAD_REQUEST);
+					RESTProcessorUtil.addErrorMessageToResponse(response, iae.getMessage());
+					return response;
+				}
+			}
+			if (curve == null || curve.isEmpty() ||
+							curve.stream().anyMatch(pt -> pt == null || pt.length != 2 || !Double.isFinite(pt[0]) || !Double.isFinite(pt[1]))) {
+				response.setStatus(HTTPServer.Response.BAD_REQUEST);
+				RESTProcessorUtil.addErrorMessageToResponse(response, "expected a list of [heading, deviation]");
+				return response;
+			}
+			ApplicationContext.getInstance().setDeviationCurve("uploaded", curve);
+			String content = new Gson().toJson(curve);
+			RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+			response.setPayload(content.getBytes());
+		} catch (Exception ex) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, ex.toString());
+			ex.printStackTrace();
+		}
+		return response;
+	}
+
+	/**
+	 * Unlike {@link NMEAUtils#loadDeviationHashtable(java.io.BufferedReader)}, stops at the first bad line,
+	 * a truncated curve must not be swapped in.
+	 *
+	 * @param csv lines like <code>heading,deviation</code>, blank lines are skipped
+	 * @return the curve, sorted by heading
+	 * @throws IllegalArgumentException on a bad line, with its number
+	 */
+	private static List<double[]> parseDeviationCSV(String csv) {
+		List<double[]> curve = new ArrayList<>();
+		String[] lines = csv.split("\r?\n");
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			if (fields.length != 2) {
+				throw new IllegalArgumentException(String.format("line %d: expected heading,deviation, found [%s]", i + 1, line));
+			}
+			try {
+				double heading = Double.parseDouble(fields[0].trim());
+				double deviation = Double.parseDouble(fields[1].trim());
+				if (!Double.isFinite(heading) || !Double.isFinite(deviation)) {
+					throw new NumberFormatException("not a finite number");
+				}
+				curve.add(new double[]{heading, deviation});
+			} catch (NumberFormatException nfe) {
+				throw new IllegalArgumentException(String.format("line %d: [%s], %s", i + 1, line, nfe.getMessage()));
+			}
+		}
+		curve.sort((a, b) -> Double.compare(a[0], b[0]));
+		return curve;
+	}
+
 	private HTTPServer.Response getOperationList(HTTPServer.Request request) {
 		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
 		List<Object> channelList = getInputChannelList();
@@ -1625,12 +2085,35 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		return response;
 	}
 
+	/**
+	 * Adds a forwarder, with its latency trace stage, <code>forward.XX</code> for the ones of the config,
+	 * <code>forward.Type#N</code> for the ones added through REST.
+	 * @param idx the index in the config, null if added through REST
+	 */
+	private void addForwarder(String idx, Forwarder forwarder) {
+		String stage;
+		if (idx != null) {
+			forwardersByIdx.put(idx, forwarder);
+			stage = LatencyTracer.FORWARD + idx;
+		} else {
+			String type = forwarder.getClass().getSimpleName(); // Empty for an anonymous class
+			stage = LatencyTracer.FORWARD + (type.isEmpty() ? "Forwarder" : type) + "#" + addedForwarders.incrementAndGet();
+		}
+		forwarderStages.put(forwarder, stage); // Before it can be used
+		nmeaDataForwarders.add(forwarder);
+	}
+
+	private void removeForwarder(Forwarder forwarder) {
+		nmeaDataForwarders.remove(forwarder);
+		forwarderStages.remove(forwarder);
+	}
+
 	private HTTPServer.Response removeForwarderIfPresent(HTTPServer.Request request, Optional<Forwarder> opFwd) {
 		HTTPServer.Response response;
 		if (opFwd.isPresent()) {
 			Forwarder forwarder = opFwd.get();
 			forwarder.close();
-			nmeaDataForwarders.remove(forwarder);
+			removeForwarder(forwarder);
 			response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.NO_CONTENT);
 		} else {
 			response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.NOT_FOUND);
@@ -1667,15 +2150,25 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		return response;
 	}
 
-	private static List<String> getSerialPortList() {
-		List<String> portList = new ArrayList<>();
-		// Opening Serial port
-		Enumeration enumeration = CommPortIdentifier.getPortIdentifiers();
-		while (enumeration.hasMoreElements()) {
-			CommPortIdentifier cpi = (CommPortIdentifier) enumeration.nextElement();
-			portList.add(cpi.getName());
+	private static List<String> serialPorts = null;
+
+	/**
+	 * The enumeration is slow through rxtx, it is done the first time the list is required, and kept.
+	 *
+	 * @param refresh true to enumerate the ports again
+	 */
+	private static synchronized List<String> getSerialPortList(boolean refresh) {
+		if (serialPorts == null || refresh) {
+			List<String> portList = new ArrayList<>();
+			// Opening Serial port
+			Enumeration enumeration = CommPortIdentifier.getPortIdentifiers();
+			while (enumeration.hasMoreElements()) {
+				CommPortIdentifier cpi = (CommPortIdentifier) enumeration.nextElement();
+				portList.add(cpi.getName());
+			}
+			serialPorts = portList;
 		}
-		return portList;
+		return serialPorts;
 	}
 
 	private List<Object> getInputChannelList() {
@@ -1690,8 +2183,64 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		return nmeaDataComputers.stream().map(cptr -> cptr.getBean()).collect(Collectors.toList());
 	}
 
+	/**
+	 * Data from an input channel, going through the {@link SourceArbitrator} first,
+	 * and then through the {@link ReorderBuffer}, if there is one.
+	 */
+	@Override
+	public synchronized void onData(NMEAClient source, String mess) {
+		LatencyTracer.Trace trace = LatencyTracer.getInstance().take(); // Stamped by the reader and the parser, if tracing
+		if (trace != null) {
+			trace.setChannel(source.getName());
+			trace.stamp(LatencyTracer.LOCK);
+		}
+		if (arbitrator.accept(source.getName(), mess)) {
+			if (reorderBuffer != null) {
+				reorderBuffer.offer(source.getName(), mess, System.currentTimeMillis(), trace); // Comes back in onData(String, String, long)
+			} else {
+				process(source.getName(), mess, System.currentTimeMillis(), trace);
+			}
+		}
+	}
+
+	/**
+	 * Data relayed by another multiplexer, see {@link nmea.consumers.client.LinkClient}.
+	 * Arbitrated and re-ordered as the data of the local channel, forwarded with the upstream channel and reception time.
+	 */
+	@Override
+	public synchronized void onData(NMEAClient source, String upstream, String mess, long received) {
+		LatencyTracer.Trace trace = LatencyTracer.getInstance().take();
+		if (trace != null) {
+			trace.setChannel(source.getName());
+			trace.stamp(LatencyTracer.LOCK);
+		}
+		if (arbitrator.accept(source.getName(), mess)) {
+			if (reorderBuffer != null) {
+				reorderBuffer.offer(source.getName(), upstream, mess, System.currentTimeMillis(), received, trace);
+			} else {
+				process(upstream, mess, received, trace);
+			}
+		}
+	}
+
 	@Override
 	public synchronized void onData(String mess) {
+		process(null, mess, System.currentTimeMillis(), null);
+	}
+
+	/**
+	 * @param source   name of the input channel, null when unknown (like for the computers)
+	 * @param mess     the sentence
+	 * @param received when it was received, epoch in ms
+	 */
+	public synchronized void onData(String source, String mess, long received) {
+		process(source, mess, received, LatencyTracer.getInstance().take());
+	}
+
+	/**
+	 * @param trace null if not tracing, see {@link LatencyTracer}
+	 */
+	private void process(String source, String mess, long received, LatencyTracer.Trace trace) {
 		if (verbose) {
 			System.out.println("==== From MUX: " + mess);
 			DumpUtil.displayDualDump(mess);
@@ -1701,23 +2250,40 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		if (ApplicationContext.getInstance().getDataCache() != null) {
 			ApplicationContext.getInstance().getDataCache().parseAndFeed(mess);
 		}
+		if (trace != null) {
+			trace.stamp(LatencyTracer.CACHE);
+		}
 		// Computers. Must go first, as a computer may refeed the present onData method.
 		nmeaDataComputers.stream()
 						.forEach(computer -> {
 							computer.write(mess.getBytes());
 						});
+		if (trace != null) {
+			trace.stamp(LatencyTracer.COMPUTE);
+		}
 		// Forwarders
 		nmeaDataForwarders.stream()
 						.forEach(fwd -> {
 							try {
-								fwd.write((mess.trim() + NMEAParser.STANDARD_NMEA_EOS).getBytes());
+								fwd.write((mess.trim() + NMEAParser.STANDARD_NMEA_EOS).getBytes(), source, received);
 							} catch (Exception e) {
 								e.printStackTrace();
 							}
+							if (trace != null) {
+								trace.stamp(forwarderStages.getOrDefault(fwd, LatencyTracer.FORWARD));
+							}
 						});
+		LatencyTracer.getInstance().finish(trace);
+		if (!firstForwarded && !nmeaDataForwarders.isEmpty()) {
+			firstForwarded = true;
+			System.out.println(String.format("First sentence forwarded %s ms after startup.",
+							NumberFormat.getInstance().format(System.currentTimeMillis() - startedAt)));
+		}
 	}
 
 	private final static NumberFormat MUX_IDX_FMT = new DecimalFormat("00");
+	private long startedAt = 0L;
+	private boolean firstForwarded = false;
 	private boolean verbose = false;
 
 	/**
@@ -1736,430 +2302,101 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 			}
 		}
 
+		startedAt = System.currentTimeMillis();
 		// Read initial config from the properties file. See the main method.
 		verbose = "true".equals(System.getProperty("mux.data.verbose", "false")); // Initial verbose.
-		int muxIdx = 1;
-		boolean thereIsMore = true;
+		this.muxProps = muxProps;
+		arbitrator = new SourceArbitrator(muxProps);
+		LatencyTracer.getInstance().configure(muxProps);
+		reorderBuffer = ReorderBuffer.fromProperties(muxProps, this::onData);
+		// Channels, forwarders and computers are independent from each other, they are built in parallel.
+		// init.parallel=false to build them one after the other.
+		Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+		ExecutorService executor = "true".equals(muxProps.getProperty("init.parallel", "true")) ?
+						Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors())) : null;
 		// 1 - Input channels
-		while (thereIsMore) {
-			String classProp = String.format("mux.%s.cls", MUX_IDX_FMT.format(muxIdx));
-			String cls = muxProps.getProperty(classProp);
-			if (cls != null) { // Dynamic loading
-				try {
-					// Devices and Sentences filters.
-					String deviceFilters = "";
-					String sentenceFilters = "";
-					deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-					sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-					Object dynamic = Class.forName(cls)
-									.getDeclaredConstructor(String[].class, String[].class, Multiplexer.class)
-									.newInstance(
-													deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-													sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-													this);
-					if (dynamic instanceof NMEAClient) {
-						NMEAClient nmeaClient = (NMEAClient)dynamic;
-						String propProp = String.format("mux.%s.properties", MUX_IDX_FMT.format(muxIdx));
-						String propFileName = muxProps.getProperty(propProp);
-						if (propFileName != null) {
-							try {
-								Properties properties = new Properties();
-								properties.load(new FileReader(propFileName));
-								nmeaClient.setProperties(properties);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-						}
-						nmeaClient.initClient();
-						NMEAReader reader = null;
-						try {
-							String readerProp = String.format("mux.%s.reader", MUX_IDX_FMT.format(muxIdx));
-							String readerClass = muxProps.getProperty(readerProp);
-							// Cannot invoke declared constructor with a generic type... :(
-							reader = (NMEAReader)Class.forName(readerClass).getDeclaredConstructor(List.class).newInstance(nmeaClient.getListeners());
-						} catch (Exception ex) {
-							ex.printStackTrace();
-						}
-						if (reader != null) {
-							nmeaClient.setReader(reader);
-						}
-						nmeaDataClients.add(nmeaClient);
-					} else {
-						throw new RuntimeException(String.format("Expected an NMEAClient, found a [%s]", dynamic.getClass().getName()));
-					}
-				} catch (Exception ex) {
-					ex.printStackTrace();
-				}
-			} else {
-				String typeProp = String.format("mux.%s.type", MUX_IDX_FMT.format(muxIdx));
-				String type = muxProps.getProperty(typeProp);
-				if (type == null) {
-					thereIsMore = false;
-				} else {
-					String deviceFilters = "";
-					String sentenceFilters = "";
-					switch (type) {
-						case "serial":
-							try {
-								String serialPort = muxProps.getProperty(String.format("mux.%s.port", MUX_IDX_FMT.format(muxIdx)));
-								String br = muxProps.getProperty(String.format("mux.%s.baudrate", MUX_IDX_FMT.format(muxIdx)));
-								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								NMEAClient serialClient = new SerialClient(
-												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-												this);
-								serialClient.initClient();
-								serialClient.setReader(new SerialReader(serialClient.getListeners(), serialPort, Integer.parseInt(br)));
-								nmeaDataClients.add(serialClient);
-							} catch (Exception e) {
-								e.printStackTrace();
-							}
-							break;
-						case "tcp":
-							try {
-								String tcpPort = muxProps.getProperty(String.format("mux.%s.port", MUX_IDX_FMT.format(muxIdx)));
-								String tcpServer = muxProps.getProperty(String.format("mux.%s.server", MUX_IDX_FMT.format(muxIdx)));
-								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								NMEAClient tcpClient = new TCPClient(
-												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-												this);
-								tcpClient.initClient();
-								tcpClient.setReader(new TCPReader(tcpClient.getListeners(), tcpServer, Integer.parseInt(tcpPort)));
-								nmeaDataClients.add(tcpClient);
-							} catch (Exception e) {
-								e.printStackTrace();
-							}
-							break;
-						case "file":
-							try {
-								String filename = muxProps.getProperty(String.format("mux.%s.filename", MUX_IDX_FMT.format(muxIdx)));
-								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								NMEAClient fileClient = new DataFileClient(
-												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-												this);
-								fileClient.initClient();
-								fileClient.setReader(new DataFileReader(fileClient.getListeners(), filename));
-								nmeaDataClients.add(fileClient);
-							} catch (Exception e) {
-								e.printStackTrace();
-							}
-							break;
-						case "ws":
-							try {
-								String wsUri = muxProps.getProperty(String.format("mux.%s.wsuri", MUX_IDX_FMT.format(muxIdx)));
-								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								NMEAClient wsClient = new WebSocketClient(
-												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-												this);
-								wsClient.initClient();
-								wsClient.setReader(new WebSocketReader(wsClient.getListeners(), wsUri));
-								nmeaDataClients.add(wsClient);
-							} catch (Exception e) {
-								e.printStackTrace();
-							}
-							break;
-						case "htu21df": // Humidity & Temperature sensor
-							try {
-								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								String htu21dfDevicePrefix = muxProps.getProperty(String.format("mux.%s.device.prefix", MUX_IDX_FMT.format(muxIdx)), "");
-								NMEAClient htu21dfClient = new HTU21DFClient(
-												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-												this);
-								htu21dfClient.initClient();
-								htu21dfClient.setReader(new HTU21DFReader(htu21dfClient.getListeners()));
-								// Important: after the setReader
-								if (htu21dfDevicePrefix.trim().length() > 0) {
-									if (htu21dfDevicePrefix.trim().length() == 2) {
-										((HTU21DFClient) htu21dfClient).setSpecificDevicePrefix(htu21dfDevicePrefix.trim());
-									} else {
-										throw new RuntimeException(String.format("Bad prefix [%s] for HTU21DF. Must be 2 character long, exactly.", htu21dfDevicePrefix.trim()));
-									}
-								}
-								nmeaDataClients.add(htu21dfClient);
-							} catch (Exception e) {
-								e.printStackTrace();
-							} catch (Error err) {
-								err.printStackTrace();
-							}
-							break;
-						case "rnd": // Random generator, for debugging
-							try {
-								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								NMEAClient rndClient = new RandomClient(
-												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-												this);
-								rndClient.initClient();
-								rndClient.setReader(new RandomReader(rndClient.getListeners()));
-								nmeaDataClients.add(rndClient);
-							} catch (Exception e) {
-								e.printStackTrace();
-							} catch (Error err) {
-								err.printStackTrace();
-							}
-							break;
-						case "bme280": // Humidity, Temperature, Pressure
-							try {
-								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
-								String bme280DevicePrefix = muxProps.getProperty(String.format("mux.%s.device.prefix", MUX_IDX_FMT.format(muxIdx)), "");
-								NMEAClient bme280Client = new BME280Client(
-												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
-												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
-												this);
-								bme280Client.initClient();
-								bme280Client.setReader(new BME280Reader(bme280Client.getListeners()));
-								// Important: after the setReader
-								if (bme280DevicePrefix.trim().length() > 0) {
-									if (bme280DevicePrefix.trim().length() == 2) {
-										((BME280Client) bme280Client).setSpecificDevicePrefix(bme280DevicePrefix.trim());
-									} else {
-										throw new RuntimeException(String.format("Bad prefix [%s] for BME280. Must be 2 character long, exactly.", bme280DevicePrefix.trim()));
-									}
-								}
-								nmeaDataClients.add(bme280Client);
-							} catch (Exception e) {
-								e.printStackTrace();
-							} catch (Error err) {
-								err.printStackTrace();
-							}
-							break;
-						case "bmp180": // Temperature, Pressure
-						case "lsm303": // 3D magnetometer
-						case "batt":   // Battery Voltage, use XDR
-						default:
-							throw new RuntimeException(String.format("mux type [%s] not supported yet.", type));
-					}
-				}
-			}
-			muxIdx++;
-		}
+		Map<String, Future<NMEAClient>> channels = build(executor, muxProps, "mux", timings, this::buildChannel);
 
-		// Data Cache
-		if ("true".equals(muxProps.getProperty("init.cache", "false"))) {
+		// Data Cache, while the channels are being built
+		boolean withCache = "true".equals(muxProps.getProperty("init.cache", "false"));
+		if (withCache) {
+			long before = System.currentTimeMillis();
+			try {
+				initCache(muxProps);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+			timings.put("cache", System.currentTimeMillis() - before);
 			try {
-				String deviationFile = muxProps.getProperty("deviation.file.name", "zero-deviation.csv");
-				double maxLeeway = Double.parseDouble(muxProps.getProperty("max.leeway", "0"));
-				double bspFactor = Double.parseDouble(muxProps.getProperty("bsp.factor", "1"));
-				double awsFactor = Double.parseDouble(muxProps.getProperty("aws.factor", "1"));
-				double awaOffset = Double.parseDouble(muxProps.getProperty("awa.offset", "0"));
-				double hdgOffset = Double.parseDouble(muxProps.getProperty("hdg.offset", "0"));
-				double defaultDeclination = Double.parseDouble(muxProps.getProperty("default.declination", "0"));
-				int damping = Integer.parseInt(muxProps.getProperty("damping", "1"));
-				ApplicationContext.getInstance().initCache(deviationFile, maxLeeway, bspFactor, awsFactor, awaOffset, hdgOffset, defaultDeclination, damping);
+				archive = CacheArchive.fromProperties(muxProps);
 			} catch (Exception ex) {
 				ex.printStackTrace();
 			}
 		}
-
-		thereIsMore = true;
-		int fwdIdx = 1;
 		// 2 - Output channels, aka forwarders
-		while (thereIsMore) {
-			String classProp = String.format("forward.%s.cls", MUX_IDX_FMT.format(fwdIdx));
-			String cls = muxProps.getProperty(classProp);
-			if (cls != null) { // Dynamic loading
-				try {
-					Object dynamic = Class.forName(cls).newInstance();
-					if (dynamic instanceof Forwarder) {
-						Forwarder forwarder = (Forwarder)dynamic;
-						String propProp = String.format("forward.%s.properties", MUX_IDX_FMT.format(fwdIdx));
-						String propFileName = muxProps.getProperty(propProp);
-						if (propFileName != null) {
-							try {
-								Properties properties = new Properties();
-								properties.load(new FileReader(propFileName));
-								forwarder.setProperties(properties);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-						}
-						nmeaDataForwarders.add(forwarder);
-					} else {
-						throw new RuntimeException(String.format("Expected a Forwarder, found a [%s]", dynamic.getClass().getName()));
-					}
-				} catch (Exception ex) {
-					ex.printStackTrace();
-				}
-			} else {
-				String typeProp = String.format("forward.%s.type", MUX_IDX_FMT.format(fwdIdx));
-				String type = muxProps.getProperty(typeProp);
-				if (type == null) {
-					thereIsMore = false;
-				} else {
-					switch (type) {
-						case "serial":
-							String serialPort = muxProps.getProperty(String.format("forward.%s.port", MUX_IDX_FMT.format(fwdIdx)));
-							int baudrate = Integer.parseInt(muxProps.getProperty(String.format("forward.%s.baudrate", MUX_IDX_FMT.format(fwdIdx))));
-							try {
-								Forwarder serialForwarder = new SerialWriter(serialPort, baudrate);
-								nmeaDataForwarders.add(serialForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						case "tcp":
-							String tcpPort = muxProps.getProperty(String.format("forward.%s.port", MUX_IDX_FMT.format(fwdIdx)));
-							try {
-								Forwarder tcpForwarder = new TCPServer(Integer.parseInt(tcpPort));
-								nmeaDataForwarders.add(tcpForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						case "gpsd":
-							String gpsdPort = muxProps.getProperty(String.format("forward.%s.port", MUX_IDX_FMT.format(fwdIdx)));
-							try {
-								Forwarder gpsdForwarder = new GPSdServer(Integer.parseInt(gpsdPort));
-								nmeaDataForwarders.add(gpsdForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						case "file":
-							String fName = muxProps.getProperty(String.format("forward.%s.filename", MUX_IDX_FMT.format(fwdIdx)));
-							try {
-								Forwarder fileForwarder = new DataFileWriter(fName);
-								nmeaDataForwarders.add(fileForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						case "ws":
-							String wsUri = muxProps.getProperty(String.format("forward.%s.wsuri", MUX_IDX_FMT.format(fwdIdx)));
-							try {
-								Forwarder wsForwarder = new WebSocketWriter(wsUri);
-								nmeaDataForwarders.add(wsForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						case "wsp":
-							String wspUri = muxProps.getProperty(String.format("forward.%s.wsuri", MUX_IDX_FMT.format(fwdIdx)));
-							try {
-								Forwarder wsForwarder = new WebSocketProcessor(wspUri);
-								nmeaDataForwarders.add(wsForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						case "console":
-							try {
-								Forwarder consoleForwarder = new ConsoleWriter();
-								nmeaDataForwarders.add(consoleForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						case "rmi":
-							String rmiPort = muxProps.getProperty(String.format("forward.%s.port", MUX_IDX_FMT.format(fwdIdx)));
-							String rmiName = muxProps.getProperty(String.format("forward.%s.name", MUX_IDX_FMT.format(fwdIdx)));
-							try {
-								Forwarder rmiServerForwarder;
-								if (rmiName != null && rmiName.trim().length() > 0) {
-									rmiServerForwarder = new RMIServer(Integer.parseInt(rmiPort), rmiName);
-								} else {
-									rmiServerForwarder = new RMIServer(Integer.parseInt(rmiPort));
-								}
-								nmeaDataForwarders.add(rmiServerForwarder);
-							} catch (Exception ex) {
-								ex.printStackTrace();
-							}
-							break;
-						default:
-							throw new RuntimeException(String.format("forward type [%s] not supported yet.", type));
-					}
-				}
+		Map<String, Future<Forwarder>> forwarders = build(executor, muxProps, "forward", timings, this::buildForwarder);
+		// 3 - Computers, if there is a cache
+		Map<String, Future<Computer>> computers = withCache ?
+						build(executor, muxProps, "computer", timings, this::buildComputer) : Collections.emptyMap();
+
+		channels.forEach((idx, future) -> {
+			NMEAClient client = getBuilt(future);
+			if (client != null) {
+				client.setName(idx); // For the arbitration
+				nmeaDataClients.add(client);
+				channelsByIdx.put(idx, client);
+			}
+		});
+		forwarders.forEach((idx, future) -> {
+			Forwarder forwarder = getBuilt(future);
+			if (forwarder != null) {
+				addForwarder(idx, forwarder);
 			}
-			fwdIdx++;
+		});
+		computers.forEach((idx, future) -> {
+			Computer computer = getBuilt(future);
+			if (computer != null) {
+				nmeaDataComputers.add(computer);
+				computersByIdx.put(idx, computer);
+			}
+		});
+		if (executor != null) {
+			executor.shutdown();
 		}
-		// Init cache (for Computers).
-		if ("true".equals(muxProps.getProperty("init.cache", "false"))) {
+		// Warm restart, now that the computers (and their current calculators) are there.
+		if (withCache) {
+			long before = System.currentTimeMillis();
 			try {
-				// If there is a cache, then let's see what computers to start.
-				thereIsMore = true;
-				int cptrIdx = 1;
-				// 3 - Computers
-				while (thereIsMore) {
-					String classProp = String.format("computer.%s.cls", MUX_IDX_FMT.format(cptrIdx));
-					String cls = muxProps.getProperty(classProp);
-					if (cls != null) { // Dynamic loading
-						try {
-							Object dynamic = Class.forName(cls).getDeclaredConstructor(Multiplexer.class).newInstance(this);
-							if (dynamic instanceof Computer) {
-								Computer computer = (Computer)dynamic;
-								String propProp = String.format("computer.%s.properties", MUX_IDX_FMT.format(cptrIdx));
-								String propFileName = muxProps.getProperty(propProp);
-								if (propFileName != null) {
-									try {
-										Properties properties = new Properties();
-										properties.load(new FileReader(propFileName));
-										computer.setProperties(properties);
-									} catch (Exception ex) {
-										ex.printStackTrace();
-									}
-								}
-								nmeaDataComputers.add(computer);
-							} else {
-								throw new RuntimeException(String.format("Expected a Computer, found a [%s]", dynamic.getClass().getName()));
-							}
-						} catch (Exception ex) {
-							ex.printStackTrace();
-						}
-					} else {
-						String typeProp = String.format("computer.%s.type", MUX_IDX_FMT.format(cptrIdx));
-						String type = muxProps.getProperty(typeProp);
-						if (type == null) {
-							thereIsMore = false;
-						} else {
-							switch (type) {
-								case "tw-current":
-									String prefix = muxProps.getProperty(String.format("computer.%s.prefix", MUX_IDX_FMT.format(cptrIdx)), "OS");
-									String[] timeBuffers = muxProps.getProperty(String.format("computer.%s.time.buffer.length", MUX_IDX_FMT.format(cptrIdx)), "600000").split(",");
-									List<Long> timeBufferLengths = Arrays.asList(timeBuffers).stream().map(tbl -> Long.parseLong(tbl.trim())).collect(Collectors.toList());
-									// Check duplicates
-									for (int i = 0; i < timeBufferLengths.size() - 1; i++) {
-										for (int j = i + 1; j < timeBufferLengths.size(); j++) {
-											if (timeBufferLengths.get(i).equals(timeBufferLengths.get(j))) {
-												throw new RuntimeException(String.format("Duplicates in time buffer lengths: %d ms.", timeBufferLengths.get(i)));
-											}
-										}
-									}
-									try {
-										Computer twCurrentComputer = new ExtraDataComputer(this, prefix, timeBufferLengths.toArray(new Long[timeBufferLengths.size()]));
-										nmeaDataComputers.add(twCurrentComputer);
-									} catch (Exception ex) {
-										ex.printStackTrace();
-									}
-									break;
-								default:
-									System.err.println(String.format("Computer type [%s] not supported.", type));
-									break;
-							}
-						}
-					}
-					cptrIdx++;
+				checkpoint = CacheCheckpoint.fromProperties(muxProps);
+				if (checkpoint != null) {
+					checkpoint.restore();
+					checkpoint.start();
+					timings.put("checkpoint", System.currentTimeMillis() - before);
 				}
 			} catch (Exception ex) {
 				ex.printStackTrace();
 			}
 		}
+		System.out.println(String.format("Multiplexer built in %s ms (%s)",
+						NumberFormat.getInstance().format(System.currentTimeMillis() - startedAt),
+						timings.entrySet().stream()
+										.map(entry -> String.format("%s: %d ms", entry.getKey(), entry.getValue()))
+										.collect(Collectors.joining(", "))));
 
 		Runtime.getRuntime().addShutdownHook(new Thread("Multiplexer shutdown hook") {
 			public void run() {
 				System.out.println("Shutting down multiplexer nicely.");
 				nmeaDataClients.stream()
 								.forEach(client -> client.stopDataRead());
+				if (reorderBuffer != null) {
+					reorderBuffer.stop();
+				}
+				if (archive != null) {
+					archive.close();
+				}
+				if (checkpoint != null) {
+					checkpoint.stop(); // Last one, before the computers go away.
+				}
 				nmeaDataForwarders.stream()
 								.forEach(fwd -> fwd.close());
 				nmeaDataComputers.stream()
@@ -2180,6 +2417,521 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 						});
 	}
 
+	/**
+	 * Builds the input channel defined by the <code>mux.XX.*</code> properties.
+	 *
+	 * @param muxProps the config
+	 * @param idx      the XX above
+	 * @return the client, null if it could not be built.
+	 */
+	private NMEAClient buildChannel(Properties muxProps, String idx) {
+		String classProp = String.format("mux.%s.cls", idx);
+		String cls = muxProps.getProperty(classProp);
+		if (cls != null) { // Dynamic loading
+			try {
+				// Devices and Sentences filters.
+				String deviceFilters = "";
+				String sentenceFilters = "";
+				deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", idx), "");
+				sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", idx), "");
+				Object dynamic = Class.forName(cls)
+								.getDeclaredConstructor(String[].class, String[].class, Multiplexer.class)
+								.newInstance(
+												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
+												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
+												this);
+				if (dynamic instanceof NMEAClient) {
+					NMEAClient nmeaClient = (NMEAClient)dynamic;
+					String propProp = String.format("mux.%s.properties", idx);
+					String propFileName = muxProps.getProperty(propProp);
+					if (propFileName != null) {
+						try {
+							Properties properties = new Properties();
+							properties.load(new FileReader(propFileName));
+							nmeaClient.setProperties(properties);
+						} catch (Exception ex) {
+							ex.printStackTrace();
+						}
+					}
+					nmeaClient.initClient();
+					NMEAReader reader = null;
+					try {
+						String readerProp = String.format("mux.%s.reader", idx);
+						String readerClass = muxProps.getProperty(readerProp);
+						// Cannot invoke declared constructor with a generic type... :(
+						reader = (NMEAReader)Class.forName(readerClass).getDeclaredConstructor(List.class).newInstance(nmeaClient.getListeners());
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					}
+					if (reader != null) {
+						nmeaClient.setReader(reader);
+					}
+					return nmeaClient;
+				} else {
+					throw new RuntimeException(String.format("Expected an NMEAClient, found a [%s]", dynamic.getClass().getName()));
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} else {
+			String type = muxProps.getProperty(String.format("mux.%s.type", idx));
+			if (type != null) {
+				ComponentRegistry.ChannelFactory factory = ComponentRegistry.getInstance().getChannelFactory(type);
+				if (factory == null) {
+					throw new RuntimeException(String.format("mux type [%s] not supported yet.", type));
+				} else {
+					try {
+						return factory.create(new ComponentRegistry.ComponentConfig(muxProps, "mux", idx), this);
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					} catch (Error err) {
+						err.printStackTrace();
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Builds the forwarder defined by the <code>forward.XX.*</code> properties.
+	 *
+	 * @return the forwarder, null if it could not be built.
+	 */
+	private Forwarder buildForwarder(Properties muxProps, String idx) {
+		String classProp = String.format("forward.%s.cls", idx);
+		String cls = muxProps.getProperty(classProp);
+		if (cls != null) { // Dynamic loading
+			try {
+				Object dynamic = Class.forName(cls).newInstance();
+				if (dynamic instanceof Forwarder) {
+					Forwarder forwarder = (Forwarder)dynamic;
+					String propProp = String.format("forward.%s.properties", idx);
+					String propFileName = muxProps.getProperty(propProp);
+					if (propFileName != null) {
+						try {
+							Properties properties = new Properties();
+							properties.load(new FileReader(propFileName));
+							forwarder.setProperties(properties);
+						} catch (Exception ex) {
+							ex.printStackTrace();
+						}
+					}
+					return forwarder;
+				} else {
+					throw new RuntimeException(String.format("Expected a Forwarder, found a [%s]", dynamic.getClass().getName()));
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} else {
+			String type = muxProps.getProperty(String.format("forward.%s.type", idx));
+			if (type != null) {
+				ComponentRegistry.ForwarderFactory factory = ComponentRegistry.getInstance().getForwarderFactory(type);
+				if (factory == null) {
+					throw new RuntimeException(String.format("forward type [%s] not supported yet.", type));
+				} else {
+					try {
+						return factory.create(new ComponentRegistry.ComponentConfig(muxProps, "forward", idx));
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					} catch (Error err) {
+						err.printStackTrace();
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Builds the computer defined by the <code>computer.XX.*</code> properties.
+	 *
+	 * @return the computer, null if it could not be built.
+	 */
+	private Computer buildComputer(Properties muxProps, String idx) {
+		String classProp = String.format("computer.%s.cls", idx);
+		String cls = muxProps.getProperty(classProp);
+		if (cls != null) { // Dynamic loading
+			try {
+				Object dynamic = Class.forName(cls).getDeclaredConstructor(Multiplexer.class).newInstance(this);
+				if (dynamic instanceof Computer) {
+					Computer computer = (Computer)dynamic;
+					String propProp = String.format("computer.%s.properties", idx);
+					String propFileName = muxProps.getProperty(propProp);
+					if (propFileName != null) {
+						try {
+							Properties properties = new Properties();
+							properties.load(new FileReader(propFileName));
+							computer.setProperties(properties);
+						} catch (Exception ex) {
+							ex.printStackTrace();
+						}
+					}
+					return computer;
+				} else {
+					throw new RuntimeException(String.format("Expected a Computer, found a [%s]", dynamic.getClass().getName()));
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} else {
+			String type = muxProps.getProperty(String.format("computer.%s.type", idx));
+			if (type != null) {
+				ComponentRegistry.ComputerFactory factory = ComponentRegistry.getInstance().getComputerFactory(type);
+				if (factory == null) {
+					System.err.println(String.format("Computer type [%s] not supported.", type));
+				} else {
+					try {
+						return factory.create(new ComponentRegistry.ComponentConfig(muxProps, "computer", idx), this);
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					} catch (Error err) {
+						err.printStackTrace();
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Builds the <code>kind.XX</code> components, on the executor if there is one, right away otherwise.
+	 *
+	 * @return the futures, by index, in the index order.
+	 */
+	private static <T> Map<String, Future<T>> build(ExecutorService executor,
+	                                                Properties muxProps,
+	                                                String kind,
+	                                                Map<String, Long> timings,
+	                                                BiFunction<Properties, String, T> builder) {
+		Map<String, Future<T>> futures = new LinkedHashMap<>();
+		int index = 1;
+		String idx = MUX_IDX_FMT.format(index);
+		while (isDefined(muxProps, kind, idx)) {
+			String name = String.format("%s.%s", kind, idx);
+			String componentIdx = idx;
+			FutureTask<T> task = new FutureTask<>(() -> {
+				long before = System.currentTimeMillis();
+				T built = builder.apply(muxProps, componentIdx);
+				timings.put(name, System.currentTimeMillis() - before);
+				return built;
+			});
+			if (executor != null) {
+				executor.execute(task);
+			} else {
+				task.run();
+			}
+			futures.put(idx, task);
+			idx = MUX_IDX_FMT.format(++index);
+		}
+		return futures;
+	}
+
+	private static <T> T getBuilt(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof RuntimeException) { // Like an unsupported type, as when built in sequence.
+				throw (RuntimeException) ee.getCause();
+			}
+			throw new RuntimeException(ee.getCause());
+		}
+	}
+
+	private static boolean isDefined(Properties muxProps, String prefix, String idx) {
+		return muxProps.getProperty(String.format("%s.%s.cls", prefix, idx)) != null ||
+						muxProps.getProperty(String.format("%s.%s.type", prefix, idx)) != null;
+	}
+
+	private final static String[] CACHE_KEYS = {
+					"init.cache", "deviation.file.name", "max.leeway", "bsp.factor", "aws.factor", "awa.offset", "hdg.offset", "default.declination", "damping"
+	};
+
+	private static void initCache(Properties muxProps) {
+		String deviationFile = muxProps.getProperty("deviation.file.name", "zero-deviation.csv");
+		double maxLeeway = Double.parseDouble(muxProps.getProperty("max.leeway", "0"));
+		double bspFactor = Double.parseDouble(muxProps.getProperty("bsp.factor", "1"));
+		double awsFactor = Double.parseDouble(muxProps.getProperty("aws.factor", "1"));
+		double awaOffset = Double.parseDouble(muxProps.getProperty("awa.offset", "0"));
+		double hdgOffset = Double.parseDouble(muxProps.getProperty("hdg.offset", "0"));
+		double defaultDeclination = Double.parseDouble(muxProps.getProperty("default.declination", "0"));
+		int damping = Integer.parseInt(muxProps.getProperty("damping", "1"));
+		ApplicationContext.getInstance().initCache(deviationFile, maxLeeway, bspFactor, awsFactor, awaOffset, hdgOffset, defaultDeclination, damping);
+	}
+
+	/**
+	 * Changes the cache settings in place, its data and damping buffers are kept.
+	 */
+	private static void reconfigureCache(Properties before, Properties after) {
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		String deviationFile = after.getProperty("deviation.file.name", "zero-deviation.csv");
+		if (!deviationFile.equals(before.getProperty("deviation.file.name", "zero-deviation.csv"))) {
+			ApplicationContext.getInstance().setDeviationCurve(deviationFile, NMEAUtils.loadDeviationCurve(deviationFile));
+		}
+		cache.put(NMEADataCache.MAX_LEEWAY, Double.parseDouble(after.getProperty("max.leeway", "0")));
+		cache.put(NMEADataCache.BSP_FACTOR, Double.parseDouble(after.getProperty("bsp.factor", "1")));
+		cache.put(NMEADataCache.AWS_FACTOR, Double.parseDouble(after.getProperty("aws.factor", "1")));
+		cache.put(NMEADataCache.AWA_OFFSET, Double.parseDouble(after.getProperty("awa.offset", "0")));
+		cache.put(NMEADataCache.HDG_OFFSET, Double.parseDouble(after.getProperty("hdg.offset", "0")));
+		cache.put(NMEADataCache.DEFAULT_DECLINATION, new Angle180EW(Double.parseDouble(after.getProperty("default.declination", "0"))));
+		cache.put(NMEADataCache.DAMPING, Integer.parseInt(after.getProperty("damping", "1")));
+	}
+
+	/**
+	 * Applies a new config, without a restart.
+	 * <br>
+	 * Only the channels, forwarders and computers whose properties have changed are stopped and re-created.
+	 * The others keep running, the cache keeps its data (its settings are updated in place), and so do the
+	 * buffers of the computers that are not touched.
+	 * The ones added through the REST API are left alone.
+	 * <br>
+	 * <code>with.http.server</code> and <code>http.port</code> are not re-read.
+	 *
+	 * @param newProps the new config
+	 * @return what was done
+	 */
+	public ConfigDiff.Report reload(Properties newProps) {
+		synchronized (reloadLock) { // One at a time, each one diffs against the config applied by the previous one.
+			return applyConfig(newProps);
+		}
+	}
+
+	private ConfigDiff.Report applyConfig(Properties newProps) {
+		ConfigDiff.Report report = new ConfigDiff.Report();
+		Properties oldProps = this.muxProps;
+		Map<String, ConfigDiff.Change> channelChanges = ConfigDiff.indexed(oldProps, newProps, "mux");
+		Map<String, ConfigDiff.Change> forwarderChanges = ConfigDiff.indexed(oldProps, newProps, "forward");
+		Map<String, ConfigDiff.Change> computerChanges = ConfigDiff.indexed(oldProps, newProps, "computer");
+
+		// 1 - Take the ones to stop out of the data flow, stop them out of the lock (some may be waiting for it).
+		List<NMEAClient> toStop = new ArrayList<>();
+		List<Forwarder> toClose = new ArrayList<>();
+		synchronized (this) {
+			channelChanges.forEach((idx, change) -> {
+				NMEAClient client = channelsByIdx.remove(idx);
+				if (client != null) {
+					nmeaDataClients.remove(client);
+					toStop.add(client);
+				}
+			});
+			forwarderChanges.forEach((idx, change) -> {
+				Forwarder forwarder = forwardersByIdx.remove(idx);
+				if (forwarder != null) {
+					removeForwarder(forwarder);
+					toClose.add(forwarder);
+				}
+			});
+			computerChanges.forEach((idx, change) -> {
+				Computer computer = computersByIdx.remove(idx);
+				if (computer != null) {
+					nmeaDataComputers.remove(computer);
+					toClose.add(computer);
+				}
+			});
+		}
+		toStop.forEach(client -> {
+			try {
+				client.stopDataRead();
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		});
+		toClose.forEach(fwd -> {
+			try {
+				fwd.close(); // Before creating the new ones, they may use the same port.
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		});
+
+		// 2 - Settings used in the data flow, cheap to change.
+		synchronized (this) {
+			if (ConfigDiff.differ(oldProps, newProps, key -> key.startsWith("arbitration."))) {
+				arbitrator = new SourceArbitrator(newProps);
+				report.getSettings().add("arbitration");
+			}
+			if (ConfigDiff.differ(oldProps, newProps, key -> key.startsWith("trace."))) {
+				LatencyTracer.getInstance().configure(newProps);
+				report.getSettings().add("trace");
+			}
+			if (ConfigDiff.differ(oldProps, newProps, key -> Arrays.asList(CACHE_KEYS).contains(key)) &&
+							"true".equals(newProps.getProperty("init.cache", "false"))) {
+				try {
+					if (ApplicationContext.getInstance().getDataCache() == null) {
+						initCache(newProps);
+					} else {
+						reconfigureCache(oldProps, newProps);
+					}
+					report.getSettings().add("cache");
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+		}
+
+		// 3 - Archive and checkpoint run on their own, out of the data flow.
+		if (ConfigDiff.differ(oldProps, newProps, key -> key.startsWith("archive."))) {
+			if (archive != null) {
+				archive.close();
+			}
+			archive = null;
+			if ("true".equals(newProps.getProperty("init.cache", "false"))) {
+				try {
+					archive = CacheArchive.fromProperties(newProps);
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+			report.getSettings().add("archive");
+		}
+		if (ConfigDiff.differ(oldProps, newProps, key -> key.startsWith("checkpoint."))) {
+			if (checkpoint != null) {
+				checkpoint.stop();
+			}
+			checkpoint = null;
+			if ("true".equals(newProps.getProperty("init.cache", "false"))) {
+				try {
+					checkpoint = CacheCheckpoint.fromProperties(newProps);
+					if (checkpoint != null) {
+						checkpoint.start();
+					}
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+			report.getSettings().add("checkpoint");
+		}
+
+		// 4 - Build the new ones out of the lock. Ports, serial ports, RMI registries, may take a while to open,
+		// the untouched channels keep running meanwhile.
+		boolean reorderChanged = ConfigDiff.differ(oldProps, newProps, key -> key.startsWith("reorder.") ||
+						(key.startsWith("mux.") && (key.endsWith(".timestamp") || key.endsWith(".latency"))));
+		ReorderBuffer nextBuffer = reorderChanged ? ReorderBuffer.fromProperties(newProps, this::onData) : null;
+		Map<String, NMEAClient> newChannels = new LinkedHashMap<>();
+		Map<String, Forwarder> newForwarders = new LinkedHashMap<>();
+		Map<String, Computer> newComputers = new LinkedHashMap<>();
+		channelChanges.forEach((idx, change) -> {
+			if (change != ConfigDiff.Change.removed) {
+				try {
+					NMEAClient client = buildChannel(newProps, idx);
+					if (client != null) {
+						client.setName(idx);
+						newChannels.put(idx, client);
+					}
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+			report.add(String.format("mux.%s", idx), change);
+		});
+		forwarderChanges.forEach((idx, change) -> {
+			if (change != ConfigDiff.Change.removed) {
+				try {
+					Forwarder forwarder = buildForwarder(newProps, idx);
+					if (forwarder != null) {
+						newForwarders.put(idx, forwarder);
+					}
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+			report.add(String.format("forward.%s", idx), change);
+		});
+		if (ApplicationContext.getInstance().getDataCache() != null) { // Computers need a cache
+			computerChanges.forEach((idx, change) -> {
+				if (change != ConfigDiff.Change.removed) {
+					try {
+						Computer computer = buildComputer(newProps, idx);
+						if (computer != null) {
+							newComputers.put(idx, computer);
+						}
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					}
+				}
+				report.add(String.format("computer.%s", idx), change);
+			});
+		}
+
+		// 5 - Swap them in
+		ReorderBuffer previousBuffer = null;
+		synchronized (this) {
+			if (reorderChanged) {
+				previousBuffer = reorderBuffer;
+				reorderBuffer = nextBuffer;
+				report.getSettings().add("reorder");
+			}
+			nmeaDataClients.addAll(newChannels.values());
+			channelsByIdx.putAll(newChannels);
+			newForwarders.forEach(this::addForwarder);
+			nmeaDataComputers.addAll(newComputers.values());
+			computersByIdx.putAll(newComputers);
+			this.muxProps = newProps;
+		}
+		if (previousBuffer != null) {
+			previousBuffer.drainTo(nextBuffer); // The sentences it still holds are not lost.
+		}
+		newChannels.values().forEach(client -> {
+			try {
+				client.startWorking();
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		});
+		if (verbose || !report.isEmpty()) {
+			System.out.println(String.format("Config reloaded: %s", new Gson().toJson(report)));
+		}
+		return report;
+	}
+
+	/**
+	 * @param configFile the file the config was read from, for <code>POST /config/reload</code> without payload.
+	 */
+	public void setConfigFile(File configFile) {
+		this.configFile = configFile;
+	}
+
+	/**
+	 * Reloads the config when its file is modified. See {@link #reload(Properties)}.
+	 *
+	 * @param configFile the file to watch
+	 */
+	public void watchConfig(File configFile) {
+		this.configFile = configFile;
+		Thread watcher = new Thread(() -> {
+			try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+				Path dir = configFile.getAbsoluteFile().getParentFile().toPath();
+				dir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+				while (true) {
+					WatchKey key = watchService.take();
+					boolean modified = key.pollEvents().stream()
+									.anyMatch(event -> configFile.getName().equals(String.valueOf(event.context())));
+					key.reset();
+					if (modified) {
+						Thread.sleep(200L); // Editors write in several steps
+						Properties newProps = new Properties();
+						try (FileReader reader = new FileReader(configFile)) {
+							newProps.load(reader);
+							reload(newProps);
+						} catch (Exception ex) {
+							ex.printStackTrace();
+						}
+					}
+				}
+			} catch (InterruptedException ie) {
+				// Bye
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		}, "ConfigWatcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
 	public void startAdminServer(int port) {
 		try {
 			this.adminServer = new HTTPServer(port, this);
@@ -2210,6 +2962,12 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		}
 
 		GenericNMEAMultiplexer mux = new GenericNMEAMultiplexer(definitions);
+		// config.watch=true, reloads the config when the file changes
+		if ("true".equals(definitions.getProperty("config.watch", "false"))) {
+			mux.watchConfig(propFile);
+		} else {
+			mux.setConfigFile(propFile);
+		}
 
 		// with.http.server=yes
 		// http.port=9999
@@ -0,0 +1,418 @@
+package nmea.mux;
+
+import nmea.api.LatencyTracer;
+import nmea.parser.StringParsers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+
+/**
+ * Puts the sentences coming from several input channels back in the order they were produced.
+ * <br>
+ * Each sentence gets an event time, depending on its channel:
+ * <ul>
+ *   <li><code>receive</code> (default): the time it was received, minus the known latency of the channel.</li>
+ *   <li><code>gps</code>: the UTC time embedded in the sentences (RMC, GGA, GLL, ZDA), mapped on the local clock.
+ *   Only the first timed sentence of a burst (a new GPS time) is used for that, the GPS time is the one of the fix,
+ *   not the one of the sentences following it in the burst. All the sentences of the burst (timed or not) get
+ *   the receive time, minus the latency observed on this first one, and keep their order.</li>
+ * </ul>
+ * Sentences are held at most <code>latency</code> ms (the budget), and released in event time order.
+ * A sentence older than the last one released is late: it is not dropped, it gets the event time of the last one released,
+ * and goes out right away. The known latency of a channel cannot be bigger than the budget, it is capped to it.
+ * When the buffer is full, the oldest sentence is released right away.
+ * <br>
+ * Properties (in the mux properties file):
+ * <ul>
+ *   <li><code>reorder.latency=150</code>: in ms. The buffer is only used when this one is set.</li>
+ *   <li><code>reorder.capacity=256</code>: max number of sentences in the buffer.</li>
+ *   <li><code>mux.XX.timestamp=gps</code>: how to timestamp the sentences of the channel XX. Default <code>receive</code>.</li>
+ *   <li><code>mux.XX.latency=200</code>: known latency of the channel XX, in ms. Default 0.</li>
+ * </ul>
+ */
+public class ReorderBuffer {
+
+	public final static int DEFAULT_CAPACITY = 256;
+
+	private final static long DAY = 86_400_000L;
+	private final static long OFFSET_WINDOW = 60_000L; // The GPS to local clock offset is re-evaluated over that period.
+
+	public enum Timestamp {receive, gps}
+
+	/**
+	 * Receives the sentences, in order.
+	 */
+	@FunctionalInterface
+	public interface Release {
+		void accept(String source, String sentence, long receivedAt);
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		private final long eventTime;
+		private final long seq;
+		private final String source;
+		private final String sentence;
+		private final long receivedAt;
+		private final LatencyTracer.Trace trace;
+
+		Entry(long eventTime, long seq, String source, String sentence, long receivedAt, LatencyTracer.Trace trace) {
+			this.eventTime = eventTime;
+			this.seq = seq;
+			this.source = source;
+			this.sentence = sentence;
+			this.receivedAt = receivedAt;
+			this.trace = trace;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int cmp = Long.compare(this.eventTime, other.eventTime);
+			return cmp != 0 ? cmp : Long.compare(this.seq, other.seq);
+		}
+	}
+
+	/**
+	 * Timestamping of one channel
+	 */
+	private static class Channel {
+		private Timestamp timestamp = Timestamp.receive;
+		private long latency = 0L;
+		// For the gps timestamps
+		private long offset = Long.MAX_VALUE;     // Smallest (receive time - GPS time of day) over the current window
+		private long prevOffset = Long.MAX_VALUE; // Same, previous window
+		private long windowStart = 0L;
+		private long lastExcess = 0L;             // Latency observed on the first timed sentence of the current burst
+		private long epoch = -1L;                 // GPS time of day of the current burst
+
+		long eventTime(String sentence, long receivedAt) {
+			if (timestamp == Timestamp.gps) {
+				long gpsTime = gpsTimeOfDay(sentence);
+				if (gpsTime >= 0 && gpsTime != epoch) { // First timed sentence of a burst
+					epoch = gpsTime;
+					long diff = receivedAt - gpsTime;
+					diff = Math.floorMod(diff, DAY); // Clock offset and latency are well below a day
+					if (receivedAt - windowStart > OFFSET_WINDOW) {
+						prevOffset = offset;
+						offset = Long.MAX_VALUE;
+						windowStart = receivedAt;
+					}
+					offset = Math.min(offset, diff);
+					long best = Math.min(offset, prevOffset);
+					lastExcess = diff - best;
+				}
+				return receivedAt - lastExcess; // Same latency for the whole burst
+			}
+			return receivedAt - latency;
+		}
+	}
+
+	private final long latency;
+	private final int capacity;
+	private final Release release;
+	private final Map<String, Channel> channels = new HashMap<>();
+	private final PriorityQueue<Entry> queue;
+
+	private long seq = 0L;
+	private long lastReleased = Long.MIN_VALUE; // Event time of the last sentence released
+	private long lastQueued = Long.MIN_VALUE;   // Most recent event time seen
+	private volatile boolean keepWorking = true;
+
+	// Counters
+	private long received = 0L;
+	private long reordered = 0L;
+	private long late = 0L;
+	private long overflows = 0L;
+
+	/**
+	 * @param latency  the budget, in ms
+	 * @param capacity max number of sentences in the buffer
+	 * @param release  receives the sentences, in order
+	 */
+	public ReorderBuffer(long latency, int capacity, Release release) {
+		this.latency = latency;
+		this.capacity = capacity;
+		this.release = release;
+		this.queue = new PriorityQueue<>(capacity + 1);
+		Thread releaser = new Thread(this::releaseLoop, "ReorderBuffer");
+		releaser.setDaemon(true);
+		releaser.start();
+	}
+
+	/**
+	 * @param muxProps the mux properties
+	 * @param release  receives the sentences, in order
+	 * @return null if <code>reorder.latency</code> is not set
+	 */
+	public static ReorderBuffer fromProperties(Properties muxProps, Release release) {
+		String latency = muxProps.getProperty("reorder.latency");
+		if (latency == null) {
+			return null;
+		}
+		ReorderBuffer buffer = new ReorderBuffer(Long.parseLong(latency),
+						Integer.parseInt(muxProps.getProperty("reorder.capacity", String.valueOf(DEFAULT_CAPACITY))),
+						release);
+		muxProps.stringPropertyNames().stream()
+						.filter(prop -> prop.startsWith("mux.") && (prop.endsWith(".timestamp") || prop.endsWith(".latency")))
+						.forEach(prop -> {
+							String name = prop.substring("mux.".length(), prop.lastIndexOf('.'));
+							String value = muxProps.getProperty(prop).trim();
+							if (prop.endsWith(".timestamp")) {
+								buffer.setTimestamp(name, Timestamp.valueOf(value));
+							} else {
+								buffer.setLatency(name, Long.parseLong(value));
+							}
+						});
+		return buffer;
+	}
+
+	private Channel channel(String name) {
+		Channel channel = channels.get(name);
+		if (channel == null) {
+			channel = new Channel();
+			channels.put(name, channel);
+		}
+		return channel;
+	}
+
+	public synchronized void setTimestamp(String channel, Timestamp timestamp) {
+		channel(channel).timestamp = timestamp;
+	}
+
+	/**
+	 * @param latency in ms, capped to the budget. Sentences coming later than that would be late anyway.
+	 */
+	public synchronized void setLatency(String channel, long latency) {
+		if (latency > this.latency) {
+			System.err.println(String.format("ReorderBuffer: latency of channel %s (%d ms) is above the budget (%d ms), capped to %d ms. Increase reorder.latency.",
+							channel, latency, this.latency, this.latency));
+			latency = this.latency;
+		}
+		channel(channel).latency = latency;
+	}
+
+	/**
+	 * @param channel    the name of the input channel
+	 * @param sentence   the NMEA sentence
+	 * @param receivedAt when it was received, local clock
+	 */
+	public void offer(String channel, String sentence, long receivedAt) {
+		offer(channel, sentence, receivedAt, null);
+	}
+
+	/**
+	 * @param trace goes along with the sentence, see {@link LatencyTracer}. Can be null.
+	 */
+	public void offer(String channel, String sentence, long receivedAt, LatencyTracer.Trace trace) {
+		offer(channel, channel, sentence, receivedAt, receivedAt, trace);
+	}
+
+	/**
+	 * For the sentences relayed by another multiplexer. They are timestamped when they arrive here, like the others,
+	 * and released with where and when the other multiplexer received them.
+	 *
+	 * @param channel    the name of the input channel, for the timestamping
+	 * @param source     released with the sentence, the input channel of the other multiplexer
+	 * @param arrivedAt  when it was received here, local clock
+	 * @param receivedAt released with the sentence, when the other multiplexer received it
+	 */
+	public void offer(String channel, String source, String sentence, long arrivedAt, long receivedAt, LatencyTracer.Trace trace) {
+		Entry toRelease = null;
+		synchronized (this) {
+			received++;
+			long eventTime = channel(channel).eventTime(sentence, arrivedAt);
+			if (eventTime < lastReleased) { // Too late to be put in its place, goes out as soon as possible.
+				late++;
+				eventTime = lastReleased;
+			}
+			Entry head = queue.peek();
+			if (eventTime < lastQueued) { // Overtaken by a more recent one, put back in its place.
+				reordered++;
+			}
+			lastQueued = Math.max(lastQueued, eventTime);
+			queue.add(new Entry(eventTime, seq++, source, sentence, receivedAt, trace));
+			if (queue.size() > capacity) {
+				overflows++;
+				Entry oldest = queue.poll();
+				lastReleased = oldest.eventTime;
+				toRelease = oldest;
+			}
+			if (queue.peek() != head) {
+				this.notify(); // New head, the releaser may have to wake up sooner.
+			}
+		}
+		if (toRelease != null) {
+			deliver(toRelease);
+		}
+	}
+
+	private void releaseLoop() {
+		while (keepWorking) {
+			Entry toRelease = null;
+			synchronized (this) {
+				Entry head = queue.peek();
+				long now = System.currentTimeMillis();
+				if (head == null) {
+					try {
+						this.wait();
+					} catch (InterruptedException ie) {
+						break;
+					}
+				} else if (head.eventTime + latency > now) {
+					try {
+						this.wait(head.eventTime + latency - now);
+					} catch (InterruptedException ie) {
+						break;
+					}
+				} else {
+					queue.poll();
+					lastReleased = head.eventTime;
+					toRelease = head;
+				}
+			}
+			if (toRelease != null) {
+				deliver(toRelease);
+			}
+		}
+	}
+
+	private void deliver(Entry entry) {
+		if (entry.trace != null) {
+			entry.trace.stamp(LatencyTracer.REORDER);
+			LatencyTracer.getInstance().resume(entry.trace); // Taken back by the release
+		}
+		try {
+			release.accept(entry.source, entry.sentence, entry.receivedAt);
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	public void stop() {
+		keepWorking = false;
+		synchronized (this) {
+			this.notify();
+		}
+	}
+
+	/**
+	 * Stops this buffer, and hands the sentences it still holds over to the one replacing it, with their event time.
+	 * Used by the config reload.
+	 *
+	 * @param next the new buffer. If null, the sentences held are released right away, in order.
+	 */
+	public void drainTo(ReorderBuffer next) {
+		List<Entry> held = new ArrayList<>();
+		long released;
+		synchronized (this) {
+			keepWorking = false;
+			while (!queue.isEmpty()) {
+				held.add(queue.poll());
+			}
+			released = lastReleased;
+			this.notify();
+		}
+		if (next != null) {
+			next.takeOver(held, released);
+		} else {
+			held.forEach(this::deliver);
+		}
+	}
+
+	/**
+	 * @param held     sentences from the previous buffer, in event time order
+	 * @param released event time of the last sentence released by the previous buffer
+	 */
+	private void takeOver(List<Entry> held, long released) {
+		List<Entry> toRelease = new ArrayList<>();
+		synchronized (this) {
+			lastReleased = Math.max(lastReleased, released); // What comes next cannot go out before those.
+			for (Entry entry : held) {
+				long eventTime = Math.max(entry.eventTime, lastReleased);
+				lastQueued = Math.max(lastQueued, eventTime);
+				queue.add(new Entry(eventTime, seq++, entry.source, entry.sentence, entry.receivedAt, entry.trace));
+			}
+			while (queue.size() > capacity) { // The new one may be smaller
+				overflows++;
+				Entry oldest = queue.poll();
+				lastReleased = oldest.eventTime;
+				toRelease.add(oldest);
+			}
+			this.notify();
+		}
+		toRelease.forEach(this::deliver);
+	}
+
+	/**
+	 * The UTC time of day embedded in the sentence, if any.
+	 *
+	 * @return in ms since midnight, -1 if there is none.
+	 */
+	static long gpsTimeOfDay(String sentence) {
+		if (sentence.length() < 7) {
+			return -1L;
+		}
+		int field;
+		switch (StringParsers.getSentenceID(sentence)) {
+			case "RMC":
+			case "GGA":
+			case "ZDA":
+				field = 1;
+				break;
+			case "GLL":
+				field = 5;
+				break;
+			default:
+				return -1L;
+		}
+		int start = 0;
+		for (int i = 0; i < field; i++) {
+			start = sentence.indexOf(',', start) + 1;
+			if (start == 0) {
+				return -1L;
+			}
+		}
+		int end = start;
+		while (end < sentence.length() && sentence.charAt(end) != ',' && sentence.charAt(end) != '*') {
+			end++;
+		}
+		if (end - start < 6) {
+			return -1L;
+		}
+		try {
+			int hh = Integer.parseInt(sentence.substring(start, start + 2));
+			int mm = Integer.parseInt(sentence.substring(start + 2, start + 4));
+			double ss = Double.parseDouble(sentence.substring(start + 4, end));
+			return (((hh * 60L) + mm) * 60_000L) + Math.round(ss * 1_000d);
+		} catch (NumberFormatException nfe) {
+			return -1L;
+		}
+	}
+
+	public static class ReorderBean {
+		private long latency;
+		private int buffered;
+		private long received;
+		private long reordered;
+		private long late;
+		private long overflows;
+
+		ReorderBean(ReorderBuffer instance) {
+			synchronized (instance) {
+				this.latency = instance.latency;
+				this.buffered = instance.queue.size();
+				this.received = instance.received;
+				this.reordered = instance.reordered;
+				this.late = instance.late;
+				this.overflows = instance.overflows;
+			}
+		}
+	}
+
+	public ReorderBean getBean() {
+		return new ReorderBean(this);
+	}
+}
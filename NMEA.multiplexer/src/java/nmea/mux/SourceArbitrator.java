@@ -0,0 +1,240 @@
+package nmea.mux;
+
+import nmea.parser.StringParsers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Arbitration between redundant input channels (two GPSes, two wind sensors, ...).
+ * <br>
+ * Sits between the input channels and the rest of the Multiplexer (cache, computers, forwarders).
+ * For each sentence ID, the sources can be given a priority. A sentence is dropped when a source with a
+ * higher priority produced the same sentence ID within the last <code>failover</code> ms.
+ * When the primary goes silent, the next one takes over, and the primary gets back in charge as soon as it talks again.
+ * <br>
+ * Identical sentences coming from different sources within <code>dedup</code> ms are also dropped
+ * (the same instrument seen through two paths).
+ * <br>
+ * Properties (in the mux properties file), sources are named after their index (<code>mux.01.xxx</code> is <code>01</code>):
+ * <ul>
+ *   <li><code>arbitration.RMC=01,03</code>: for RMC, 01 first, then 03. Sources not listed come last.</li>
+ *   <li><code>arbitration.failover=2000</code>: silence of a source before the next one takes over, in ms. Default 2000.</li>
+ *   <li><code>arbitration.dedup=500</code>: in ms, 0 to disable. Default 500.</li>
+ * </ul>
+ * Not thread safe, the Multiplexer feeds it from its synchronized onData.
+ */
+public class SourceArbitrator {
+
+	public final static long DEFAULT_FAILOVER = 2_000L;
+	public final static long DEFAULT_DEDUP = 500L;
+	private final static int DEDUP_SLOTS = 64;
+
+	/**
+	 * Health of one input channel
+	 */
+	public static class SourceHealth {
+		private String name;
+		private long received = 0L;
+		private long dropped = 0L;
+		private long checksumErrors = 0L;
+		private long lastSeen = 0L;
+		private double rate = 0d; // sentences per second, over the last second
+
+		private transient long windowStart = 0L;
+		private transient int windowCount = 0;
+
+		SourceHealth(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getReceived() {
+			return received;
+		}
+
+		public long getDropped() {
+			return dropped;
+		}
+
+		public long getChecksumErrors() {
+			return checksumErrors;
+		}
+
+		public long getLastSeen() {
+			return lastSeen;
+		}
+
+		public double getRate() {
+			return rate;
+		}
+
+		private void seen(long now) {
+			received++;
+			lastSeen = now;
+			if (now - windowStart >= 1_000L) {
+				rate = windowStart == 0L ? windowCount + 1 : (windowCount * 1_000d) / (now - windowStart);
+				windowStart = now;
+				windowCount = 0;
+			}
+			windowCount++;
+		}
+
+		private SourceHealth copy(long now) {
+			SourceHealth copy = new SourceHealth(name);
+			copy.received = received;
+			copy.dropped = dropped;
+			copy.checksumErrors = checksumErrors;
+			copy.lastSeen = lastSeen;
+			copy.rate = (now - lastSeen) > 2_000L ? 0d : rate; // Silent
+			return copy;
+		}
+	}
+
+	/**
+	 * Priorities for one sentence ID
+	 */
+	private static class Rule {
+		private final String[] sources; // By priority
+		private final long[] lastSeen;  // Index is the priority, sources.length for the non-listed ones.
+
+		Rule(String[] sources) {
+			this.sources = sources;
+			this.lastSeen = new long[sources.length + 1];
+		}
+
+		int rank(String source) {
+			for (int i = 0; i < sources.length; i++) {
+				if (sources[i].equals(source)) {
+					return i;
+				}
+			}
+			return sources.length;
+		}
+	}
+
+	private final Map<String, Rule> rules = new HashMap<>();
+	private final Map<String, SourceHealth> health = new LinkedHashMap<>();
+	private long failover = DEFAULT_FAILOVER;
+	private long dedup = DEFAULT_DEDUP;
+
+	// Recent sentences, for the deduplication
+	private final String[] recentSentences = new String[DEDUP_SLOTS];
+	private final String[] recentSources = new String[DEDUP_SLOTS];
+	private final long[] recentTimes = new long[DEDUP_SLOTS];
+
+	public SourceArbitrator() {
+	}
+
+	public SourceArbitrator(Properties muxProps) {
+		failover = Long.parseLong(muxProps.getProperty("arbitration.failover", String.valueOf(DEFAULT_FAILOVER)));
+		dedup = Long.parseLong(muxProps.getProperty("arbitration.dedup", String.valueOf(DEFAULT_DEDUP)));
+		muxProps.stringPropertyNames().stream()
+						.filter(prop -> prop.startsWith("arbitration.") && prop.length() == "arbitration.XXX".length())
+						.forEach(prop -> setPriorities(prop.substring("arbitration.".length()),
+										muxProps.getProperty(prop).split(",")));
+	}
+
+	/**
+	 * @param sentenceId like RMC
+	 * @param sources    source names, by decreasing priority
+	 */
+	public synchronized void setPriorities(String sentenceId, String... sources) {
+		rules.put(sentenceId, new Rule(Arrays.stream(sources).map(String::trim).toArray(String[]::new)));
+	}
+
+	public void setFailover(long failover) {
+		this.failover = failover;
+	}
+
+	public void setDedup(long dedup) {
+		this.dedup = dedup;
+	}
+
+	/**
+	 * @param source   the name of the input channel
+	 * @param sentence the NMEA sentence it produced
+	 * @return true if the sentence is to go through the Multiplexer, false if it is a duplicate.
+	 */
+	public synchronized boolean accept(String source, String sentence) {
+		return accept(source, sentence, System.currentTimeMillis());
+	}
+
+	synchronized boolean accept(String source, String sentence, long now) {
+		SourceHealth sourceHealth = health.get(source);
+		if (sourceHealth == null) {
+			sourceHealth = new SourceHealth(source);
+			health.put(source, sourceHealth);
+		}
+		sourceHealth.seen(now);
+		String trimmed = sentence.trim();
+		if (!StringParsers.validCheckSum(trimmed)) {
+			sourceHealth.checksumErrors++;
+			return true; // The cache will ignore it. Not our call.
+		}
+		if (trimmed.length() > 6) {
+			Rule rule = rules.get(StringParsers.getSentenceID(trimmed));
+			if (rule != null) {
+				int rank = rule.rank(source);
+				rule.lastSeen[rank] = now;
+				for (int i = 0; i < rank; i++) {
+					if (now - rule.lastSeen[i] < failover) { // A better one is alive
+						sourceHealth.dropped++;
+						return false;
+					}
+				}
+			}
+		}
+		if (dedup > 0) {
+			int slot = (trimmed.hashCode() & 0x7FFFFFFF) % DEDUP_SLOTS;
+			if (trimmed.equals(recentSentences[slot]) && !source.equals(recentSources[slot]) && now - recentTimes[slot] < dedup) {
+				sourceHealth.dropped++;
+				return false;
+			}
+			recentSentences[slot] = trimmed;
+			recentSources[slot] = source;
+			recentTimes[slot] = now;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the health of all the sources seen so far
+	 */
+	public synchronized List<SourceHealth> getHealth() {
+		long now = System.currentTimeMillis();
+		List<SourceHealth> list = new ArrayList<>(health.size());
+		health.values().forEach(h -> list.add(h.copy(now)));
+		return list;
+	}
+
+	/**
+	 * @return for each sentence ID with priorities, the source currently in charge (null if none is alive).
+	 */
+	public synchronized Map<String, String> getActiveSources() {
+		long now = System.currentTimeMillis();
+		Map<String, String> active = new LinkedHashMap<>();
+		rules.forEach((id, rule) -> {
+			String current = null;
+			for (int i = 0; i < rule.sources.length; i++) {
+				if (now - rule.lastSeen[i] < failover) {
+					current = rule.sources[i];
+					break;
+				}
+			}
+			if (current == null && now - rule.lastSeen[rule.sources.length] < failover) {
+				current = "(other)";
+			}
+			active.put(id, current);
+		});
+		return active;
+	}
+}
@@ -426,6 +426,30 @@ public class StringGenerator {
 		return "$" + hdm;
 	}
 
+	/*
+	 * ALR - Set Alarm State
+	 * $--ALR,hhmmss.ss,xxx,A,A,c--c*hh
+	 *        |         |   | | |
+	 *        |         |   | | Alarm text
+	 *        |         |   | Acknowledge state, A: acknowledged, V: not acknowledged
+	 *        |         |   Alarm condition, A: threshold exceeded, V: not exceeded
+	 *        |         Alarm number
+	 *        Time of alarm condition change, UTC
+	 */
+	public static String generateALR(String devicePrefix, Date date, int alarmId, boolean exceeded, boolean acknowledged, String text) {
+		String alr = devicePrefix + "ALR,";
+		alr += (SDF_TIME.format(date) + ".00,");
+		alr += (NMEAUtils.lpad(String.valueOf(alarmId), 3, "0") + ",");
+		alr += (exceeded ? "A," : "V,");
+		alr += (acknowledged ? "A," : "V,");
+		alr += text.replace(',', ' ').replace('*', ' '); // Reserved characters
+		// Checksum
+		int cs = StringParsers.calculateCheckSum(alr);
+		alr += ("*" + NMEAUtils.lpad(Integer.toString(cs, 16).toUpperCase(), 2, "0"));
+
+		return "$" + alr;
+	}
+
 	public static void main(String[] args) {
 		String rmc = generateRMC("II", new Date(), 38.2500, -122.5, 6.7, 210, 3d);
 		System.out.println("Generated RMC:" + rmc);
@@ -1,6 +1,7 @@
 package nmea.parser;
 
 import java.text.NumberFormat;
+import java.text.ParseException;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -487,6 +488,52 @@ public class StringParsers {
 		return gsa;
 	}
 
+	public static class GST {
+		public double rms = Double.NaN;    // RMS of the pseudo-ranges residuals
+		public double major = Double.NaN;  // Semi-major axis of the error ellipse, meters
+		public double minor = Double.NaN;  // Semi-minor axis of the error ellipse, meters
+		public double orient = Double.NaN; // Orientation of the semi-major axis, degrees true
+		public double lat = Double.NaN;    // Latitude error, meters
+		public double lng = Double.NaN;    // Longitude error, meters
+		public double alt = Double.NaN;    // Altitude error, meters
+	}
+
+	public static GST parseGST(String data) {
+    /*
+     * $GPGST,172814.0,0.006,0.023,0.020,273.6,0.023,0.020,0.031*6A
+     *        |        |     |     |     |     |     |     |
+     *        |        |     |     |     |     |     |     Altitude error, meters
+     *        |        |     |     |     |     |     Longitude error, meters
+     *        |        |     |     |     |     Latitude error, meters
+     *        |        |     |     |     Orientation of the semi-major axis, degrees
+     *        |        |     |     Semi-minor axis of the error ellipse, meters
+     *        |        |     Semi-major axis of the error ellipse, meters
+     *        |        RMS of the pseudo-ranges residuals
+     *        UTC of position
+     */
+		String[] sa = data.substring(0, data.indexOf("*")).split(",");
+		if (sa.length < 9) {
+			return null;
+		}
+		GST gst = new GST();
+		double[] values = new double[7];
+		for (int i = 0; i < values.length; i++) {
+			try {
+				values[i] = sa[i + 2].trim().length() > 0 ? Double.parseDouble(sa[i + 2]) : Double.NaN;
+			} catch (NumberFormatException nfe) {
+				values[i] = Double.NaN;
+			}
+		}
+		gst.rms = values[0];
+		gst.major = values[1];
+		gst.minor = values[2];
+		gst.orient = values[3];
+		gst.lat = values[4];
+		gst.lng = values[5];
+		gst.alt = values[6];
+		return gst;
+	}
+
 	public final static int BSP_in_VHW = 0;
 	public final static int HDM_in_VHW = 1;
 	public final static int HDG_in_VHW = 2;
@@ -1665,6 +1712,12 @@ public class StringParsers {
 	 * @throws Exception, in case it fails
 	 */
 	private static double parseNMEADouble(String str) throws Exception {
+		if (str.isEmpty()) {
+			throw new ParseException("Unparseable number: \"\"", 0);
+		}
+		if (isPlainDecimal(str)) { // Same result, without creating a NumberFormat
+			return Double.parseDouble(str);
+		}
 		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
 		Number number = nf.parse(str);
 		double d = number.doubleValue();
@@ -1673,6 +1726,12 @@ public class StringParsers {
 	}
 
 	private static float parseNMEAFloat(String str) throws Exception {
+		if (str.isEmpty()) {
+			throw new ParseException("Unparseable number: \"\"", 0);
+		}
+		if (isPlainDecimal(str)) {
+			return (float) Double.parseDouble(str);
+		}
 		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
 		Number number = nf.parse(str);
 		float f = number.floatValue();
@@ -1680,6 +1739,27 @@ public class StringParsers {
 		return f;
 	}
 
+	/**
+	 * @return true for the numbers made of digits, with an optional leading '-' and one optional '.'
+	 * (like most of the NMEA fields). Those are parsed the same way by Double.parseDouble and NumberFormat.
+	 */
+	private static boolean isPlainDecimal(String str) {
+		int len = str.length();
+		int i = (str.charAt(0) == '-') ? 1 : 0;
+		boolean digit = false, dot = false;
+		for (; i < len; i++) {
+			char c = str.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digit = true;
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				return false;
+			}
+		}
+		return digit;
+	}
+
 	/**
 	 * Parses strings like "2006-05-05T17:35:48.000" + "Z" or UTC Offset like "-10:00"
 	 * 01234567890123456789012
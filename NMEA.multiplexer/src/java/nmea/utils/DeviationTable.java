@@ -0,0 +1,100 @@
+package nmea.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Deviation curve, compiled into a table with a 0.1&deg; resolution.
+ * <br>
+ * Values between the points of the curve are linearly interpolated at build time,
+ * including between the last point and the first one (wrap-around at 360&deg;).
+ * A lookup is then a single array access.
+ * <br>
+ * Immutable. To use a new curve, build a new table and swap the reference.
+ */
+public final class DeviationTable implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final static int STEPS_PER_DEGREE = 10;
+	private final static int SIZE = 360 * STEPS_PER_DEGREE;
+
+	private final double[] table;
+
+	/**
+	 * @param curve list of [compass heading, deviation], in degrees, in any order. See {@link NMEAUtils#loadDeviationCurve(String)}.
+	 */
+	public DeviationTable(List<double[]> curve) {
+		this.table = new double[SIZE];
+		if (curve == null || curve.isEmpty()) {
+			return;
+		}
+		// Normalized, sorted, and without duplicates (like 0 and 360).
+		List<double[]> points = curve.stream()
+						.map(pt -> new double[]{normalize(pt[0]), pt[1]})
+						.sorted(Comparator.comparingDouble(pt -> pt[0]))
+						.collect(Collectors.toList());
+		int nb = 0;
+		double[] cm = new double[points.size()];
+		double[] dev = new double[points.size()];
+		for (double[] pt : points) {
+			if (nb == 0 || pt[0] != cm[nb - 1]) {
+				cm[nb] = pt[0];
+				dev[nb] = pt[1];
+				nb++;
+			}
+		}
+		if (nb == 1) {
+			Arrays.fill(this.table, dev[0]);
+			return;
+		}
+		int seg = 0; // Segment [seg, seg + 1], last one wraps to the first point.
+		for (int i = 0; i < SIZE; i++) {
+			double h = (double) i / STEPS_PER_DEGREE;
+			// Find the segment. Headings are increasing, so is seg.
+			while (seg < nb - 1 && h >= cm[seg + 1]) {
+				seg++;
+			}
+			double fromCm, fromDev, toCm, toDev;
+			if (h < cm[0] || seg == nb - 1) { // Between the last point and the first one, across 360.
+				fromCm = cm[nb - 1];
+				fromDev = dev[nb - 1];
+				toCm = cm[0] + 360d;
+				toDev = dev[0];
+				if (h < cm[0]) {
+					h += 360d;
+				}
+			} else {
+				fromCm = cm[seg];
+				fromDev = dev[seg];
+				toCm = cm[seg + 1];
+				toDev = dev[seg + 1];
+			}
+			double span = toCm - fromCm;
+			this.table[i] = span == 0 ? fromDev : fromDev + ((toDev - fromDev) * ((h - fromCm) / span));
+		}
+	}
+
+	private static double normalize(double heading) {
+		double h = heading % 360d;
+		if (h < 0) {
+			h += 360d;
+		}
+		return h;
+	}
+
+	/**
+	 * @param compassHeading in degrees, any value (normalized to [0, 360[)
+	 * @return the deviation, in degrees
+	 */
+	public double getDeviation(double compassHeading) {
+		int idx = (int) Math.round(normalize(compassHeading) * STEPS_PER_DEGREE);
+		if (idx >= SIZE) {
+			idx -= SIZE;
+		}
+		return this.table[idx];
+	}
+}
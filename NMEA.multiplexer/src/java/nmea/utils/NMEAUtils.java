@@ -103,7 +103,18 @@ public class NMEAUtils {
 			if (dec == -Double.MAX_VALUE)
 				dec = ((Angle180EW) cache.get(NMEADataCache.DEFAULT_DECLINATION)).getValue();
 			//  System.out.println("Declination:" + dec);
-			double dev = getDeviation(heading, (List<double[]>)cache.get(NMEADataCache.DEVIATION_DATA));
+			double dev = 0d;
+			Object deviationTable;
+			List<double[]> deviationData;
+			synchronized (cache) { // Swapped together, see ApplicationContext.setDeviationCurve
+				deviationTable = cache.get(NMEADataCache.DEVIATION_TABLE);
+				deviationData = (List<double[]>) cache.get(NMEADataCache.DEVIATION_DATA);
+			}
+			if (deviationTable instanceof DeviationTable) {
+				dev = ((DeviationTable) deviationTable).getDeviation(hdc);
+			} else {
+				dev = getDeviation(hdc, deviationData);
+			}
 			cache.put(NMEADataCache.DEVIATION, new Angle180EW(dev));
 
 			heading = hdc + dev; // Magnetic
@@ -429,6 +440,13 @@ public class NMEAUtils {
 		return ret;
 	}
 
+	/**
+	 * Linear scan of the curve. {@link DeviationTable#getDeviation(double)} is what the multiplexer uses.
+	 *
+	 * @param cc compass heading
+	 * @param deviationAL the curve, list of [compass heading, deviation]
+	 * @return the deviation
+	 */
 	public static double getDeviation(double cc, List<double[]> deviationAL) {
 		double deviation = 0d;
 		if (deviationAL != null) {
@@ -1,12 +1,12 @@
 package samples.rmi.client;
 
 import context.NMEADataCache;
+import nmea.forwarders.rmi.CacheSnapshot;
 import nmea.forwarders.rmi.ServerInterface;
 import nmea.forwarders.rmi.clientoperations.BoatPosition;
 import nmea.forwarders.rmi.clientoperations.CalculatedCurrent;
 import nmea.forwarders.rmi.clientoperations.InstantCurrent;
 import nmea.forwarders.rmi.clientoperations.LastString;
-import nmea.forwarders.rmi.clientoperations.NMEACache;
 import nmea.forwarders.rmi.clientoperations.TrueWind;
 import nmea.parser.Current;
 import nmea.parser.GeoPos;
@@ -59,24 +59,44 @@ public class RMICharConsoleClient {
 
 			try { Thread.sleep(1000L); } catch (InterruptedException ie) {}
 
-			NMEACache cacheTask = new NMEACache();
+			// All the data of the console, in one round trip. Then only what changed.
+			String[] keys = {
+							NMEADataCache.POSITION,
+							NMEADataCache.GPS_DATE_TIME,
+							NMEADataCache.BSP,
+							NMEADataCache.HDG_TRUE,
+							NMEADataCache.COG,
+							NMEADataCache.SOG,
+							NMEADataCache.AWA,
+							NMEADataCache.AWS,
+							NMEADataCache.TWA,
+							NMEADataCache.TWS,
+							NMEADataCache.TWD,
+							NMEADataCache.CDR,
+							NMEADataCache.CSP,
+							NMEADataCache.DBT,
+							NMEADataCache.WATER_TEMP
+			};
+			NMEADataCache cache = new NMEADataCache(); // Local copy
 			before = System.currentTimeMillis();
+			CacheSnapshot snapshot = comp.getSnapshot(keys, 0L);
+			after = System.currentTimeMillis();
+			snapshot.applyTo(cache);
+			System.out.println(String.format("Snapshot of %d keys took %s ms.", snapshot.size(), NumberFormat.getInstance().format(after - before)));
 
-			NMEADataCache cache = null;
-
-			try {
-				cache = comp.executeTask(cacheTask);;
-			} catch (Exception e) {
-				e.printStackTrace();
+			long version = snapshot.getVersion();
+			for (int i = 0; i < 10; i++) {
+				before = System.currentTimeMillis();
+				snapshot = comp.waitForChanges(keys, version, 5_000L);
+				after = System.currentTimeMillis();
+				snapshot.applyTo(cache);
+				version = snapshot.getVersion();
+				System.out.println(String.format("Version %d, %d key(s) changed, after %s ms: %s",
+								version, snapshot.size(), NumberFormat.getInstance().format(after - before), String.join(", ", snapshot.getKeys())));
 			}
-			after = System.currentTimeMillis();
-			System.out.println(String.format("NMEACache execution took %s ms.", NumberFormat.getInstance().format(after - before)));
-			if (cache != null) {
-				Object position = cache.get(NMEADataCache.POSITION);
-				System.out.println("Position is a " + position.getClass().getName());
-				if (position instanceof GeoPos) {
-					System.out.println(String.format("Position is %s (Grid Square %s)", ((GeoPos) position).toString(), ((GeoPos) position).gridSquare()));
-				}
+			Object position = cache.get(NMEADataCache.POSITION);
+			if (position instanceof GeoPos) {
+				System.out.println(String.format("Position is %s (Grid Square %s)", ((GeoPos) position).toString(), ((GeoPos) position).gridSquare()));
 			}
 
 		} catch (Exception e) {
@@ -4,6 +4,13 @@ import util.GeomUtil;
 
 import java.util.Vector;
 
+/**
+ * Great circle and rhumb line calculations.
+ * <br>
+ * Start, arrival and results are held in static fields, this class cannot be used safely
+ * from several threads at the same time. Use {@link GreatCircleLeg} (one leg) and {@link GreatCircleUtil}
+ * (batches of positions) instead, the static methods below delegate to them.
+ */
 public final class GreatCircle {
 	public static final int TO_NORTH = 0;
 	public static final int TO_SOUTH = 1;
@@ -144,9 +151,7 @@ public final class GreatCircle {
 	 * @return in radians
 	 */
 	public static double getDistance() {
-		double cos = Math.sin(start.getL()) * Math.sin(arrival.getL()) + Math.cos(start.getL()) * Math.cos(arrival.getL()) * Math.cos(arrival.getG() - start.getG());
-		double dist = Math.acos(cos);
-		return dist;
+		return new GreatCircleLeg(start, arrival).getDistance();
 	}
 
 	public static double getDistanceInDegrees() {
@@ -163,9 +168,7 @@ public final class GreatCircle {
 	 * @return in nautical miles
 	 */
 	public static double getDistanceInNM(GreatCirclePoint from, GreatCirclePoint to) {
-		setStartInDegrees(from);
-		setArrivalInDegrees(to);
-		return (getDistanceInDegrees() * 60D);
+		return GreatCircleLeg.fromDegrees(from, to).getDistanceInNM();
 	}
 
 	/**
@@ -174,9 +177,7 @@ public final class GreatCircle {
 	 * @return in miles
 	 */
 	public static double getGCDistance(GreatCirclePoint from, GreatCirclePoint to) {
-		double cos = Math.sin(from.getL()) * Math.sin(to.getL()) + Math.cos(from.getL()) * Math.cos(to.getL()) * Math.cos(to.getG() - from.getG());
-		double dist = Math.acos(cos);
-		return Math.toDegrees(dist) * 60D;
+		return new GreatCircleLeg(from, to).getDistanceInNM();
 	}
 
 	/**
@@ -185,125 +186,22 @@ public final class GreatCircle {
 	 * @return in miles
 	 */
 	public static double getGCDistanceInDegrees(GreatCirclePoint from, GreatCirclePoint to) {
-		double cos = Math.sin(Math.toRadians(from.getL())) * Math.sin(Math.toRadians(to.getL())) + Math.cos(Math.toRadians(from.getL())) * Math.cos(Math.toRadians(to.getL())) * Math.cos(Math.toRadians(to.getG()) - Math.toRadians(from.getG()));
-		double dist = Math.acos(cos);
-		return Math.toDegrees(dist) * 60D;
+		return GreatCircleLeg.fromDegrees(from, to).getDistanceInNM();
 	}
 
 	public static void calculateRhumLine() {
-		if (arrival.getL() > start.getL())
-			nsDir = TO_NORTH;
-		else
-			nsDir = TO_SOUTH;
-		double arrG = arrival.getG();
-		double staG = start.getG();
-		if (sign(arrG) != sign(staG) && Math.abs(arrG - staG) > Math.PI) {
-			if (sign(arrG) > 0)
-				arrG -= (2 * Math.PI);
-			else
-				arrG = Math.PI - arrG;
-		}
-		if (arrG - staG > 0.0D)
-			ewDir = TO_EAST;
-		else
-			ewDir = TO_WEST;
-		double deltaL = Math.toDegrees((arrival.getL() - start.getL())) * 60D;
-		double radianDeltaG = arrival.getG() - start.getG();
-		if (Math.abs(radianDeltaG) > Math.PI)
-			radianDeltaG = (2 * Math.PI) - Math.abs(radianDeltaG);
-		double deltaG = Math.toDegrees(radianDeltaG) * 60D;
-		if (deltaG < 0.0D)
-			deltaG = -deltaG;
-		double startLC = Math.log(Math.tan((Math.PI / 4D) + start.getL() / 2D));
-		double arrLC = Math.log(Math.tan((Math.PI / 4D) + arrival.getL() / 2D));
-		double deltaLC = 3437.7467707849396D * (arrLC - startLC);
-		if (deltaLC != 0d)
-			rv = Math.atan(deltaG / deltaLC);
-		else if (radianDeltaG > 0d)
-			rv = (Math.PI / 2D);
-		else
-			rv = (3 * Math.PI / 2D);
-		if (deltaL != 0d)
-			dLoxo = deltaL / Math.cos(rv);
-		else
-			dLoxo = deltaG * Math.cos(start.getL()); // TASK Make sure that's right...
-		if (dLoxo < 0.0D)
-			dLoxo = -dLoxo;
-		if (rv < 0.0D)
-			rv = -rv;
-		if (ewDir == TO_EAST) {
-			if (nsDir != TO_NORTH)
-				rv = Math.PI - rv;
-		} else if (deltaLC != 0d) {
-			if (nsDir == TO_NORTH)
-				rv = (2 * Math.PI) - rv;
-			else
-				rv = Math.PI + rv;
-		}
-		while (rv >= (2 * Math.PI))
-			rv -= (2 * Math.PI);
+		GreatCircleLeg leg = new GreatCircleLeg(start, arrival);
+		nsDir = leg.getNS();
+		ewDir = leg.getEW();
+		rv = leg.getRhumbLineRoute();
+		dLoxo = leg.getRhumbLineDistance();
 	}
 
 	/**
 	 * Points coordinates in Radians
 	 */
 	public static double calculateRhumLineDistance(GreatCirclePoint f, GreatCirclePoint t) {
-		int _nsDir = 0;
-		if (t.getL() > f.getL())
-			_nsDir = TO_NORTH;
-		else
-			_nsDir = TO_SOUTH;
-		double arrG = t.getG();
-		double staG = f.getG();
-		if (sign(arrG) != sign(staG) && Math.abs(arrG - staG) > Math.PI) {
-			if (sign(arrG) > 0)
-				arrG -= (2 * Math.PI);
-			else
-				arrG = Math.PI - arrG;
-		}
-		int _ewDir;
-		if ((arrG - staG) > 0.0D)
-			_ewDir = TO_EAST;
-		else
-			_ewDir = TO_WEST;
-		double deltaL = Math.toDegrees((t.getL() - f.getL())) * 60D;
-		double radianDeltaG = t.getG() - f.getG();
-		if (Math.abs(radianDeltaG) > Math.PI)
-			radianDeltaG = (2 * Math.PI) - Math.abs(radianDeltaG);
-		double deltaG = Math.toDegrees(radianDeltaG) * 60D;
-		if (deltaG < 0.0D)
-			deltaG = -deltaG;
-		double startLC = Math.log(Math.tan((Math.PI / 4D) + f.getL() / 2D));
-		double arrLC = Math.log(Math.tan((Math.PI / 4D) + t.getL() / 2D));
-		double deltaLC = 3437.7467707849396D * (arrLC - startLC);
-		double _rv = 0.0D;
-		if (deltaLC != 0d)
-			_rv = Math.atan(deltaG / deltaLC);
-		else {
-			if (radianDeltaG > 0d)
-				_rv = (Math.PI / 2D);
-			else
-				_rv = (3 * Math.PI / 2D);
-		}
-		double _dLoxo = deltaL / Math.cos(_rv);
-		if (deltaL == 0) {
-			_dLoxo = radianDeltaG * Math.cos(Math.toRadians(f.getL()));
-		}
-		if (_dLoxo < 0.0D)
-			_dLoxo = -_dLoxo;
-		if (_rv < 0.0D)
-			_rv = -_rv;
-		if (_ewDir == TO_EAST) {
-			if (_nsDir != TO_NORTH)
-				_rv = Math.PI - _rv;
-		} else if (deltaLC != 0d) {
-			if (_nsDir == TO_NORTH)
-				_rv = (2 * Math.PI) - _rv;
-			else
-				_rv = Math.PI + _rv;
-		}
-		for (; _rv >= (2 * Math.PI); _rv -= (2 * Math.PI)) ;
-		return _dLoxo;
+		return new GreatCircleLeg(f, t).getRhumbLineDistance();
 	}
 
 	/**
@@ -312,56 +210,7 @@ public final class GreatCircle {
 	 * returned value in radians
 	 */
 	public static double calculateRhumLineRoute(GreatCirclePoint f, GreatCirclePoint t) {
-		int _nsDir = 0;
-		if (t.getL() > f.getL())
-			_nsDir = TO_NORTH;
-		else
-			_nsDir = TO_SOUTH;
-		double arrG = t.getG();
-		double staG = f.getG();
-		if (sign(arrG) != sign(staG) && Math.abs(arrG - staG) > Math.PI)
-			if (sign(arrG) > 0)
-				arrG -= (2 * Math.PI);
-			else
-				arrG = Math.PI - arrG;
-		int _ewDir;
-		if (arrG - staG > 0.0D)
-			_ewDir = TO_EAST;
-		else
-			_ewDir = TO_WEST;
-		double deltaL = Math.toDegrees((t.getL() - f.getL())) * 60D;
-		double radianDeltaG = t.getG() - f.getG();
-		if (Math.abs(radianDeltaG) > Math.PI)
-			radianDeltaG = (2 * Math.PI) - Math.abs(radianDeltaG);
-		double deltaG = Math.toDegrees(radianDeltaG) * 60D;
-		if (deltaG < 0.0D)
-			deltaG = -deltaG;
-		double startLC = Math.log(Math.tan((Math.PI / 4D) + f.getL() / 2D));
-		double arrLC = Math.log(Math.tan((Math.PI / 4D) + t.getL() / 2D));
-		double deltaLC = 3437.7467707849396D * (arrLC - startLC);
-		double _rv = 0.0D;
-		if (deltaLC != 0d)
-			_rv = Math.atan(deltaG / deltaLC);
-		else if (radianDeltaG > 0d)
-			_rv = (Math.PI / 2D);
-		else
-			_rv = (3 * Math.PI / 2D);
-		double _dLoxo = deltaL / Math.cos(_rv);
-		if (_dLoxo < 0.0D)
-			_dLoxo = -_dLoxo;
-		if (_rv < 0.0D)
-			_rv = -_rv;
-		if (_ewDir == TO_EAST) {
-			if (_nsDir != TO_NORTH)
-				_rv = Math.PI - _rv;
-		} else if (deltaLC != 0d) {
-			if (_nsDir == TO_NORTH)
-				_rv = (2 * Math.PI) - _rv;
-			else
-				_rv = Math.PI + _rv;
-		}
-		for (; _rv >= (2 * Math.PI); _rv -= (2 * Math.PI)) ;
-		return _rv;
+		return new GreatCircleLeg(f, t).getRhumbLineRoute();
 	}
 
 	private static int sign(double d) {
@@ -389,15 +238,7 @@ public final class GreatCircle {
 	 * @return DR Position, L &amp; G in Radians
 	 */
 	public static GreatCirclePoint dr(GreatCirclePoint from, double dist, double route) {
-		double deltaL = Math.toRadians(dist / 60D) * Math.cos(Math.toRadians(route));
-		double l2 = from.getL() + deltaL;
-//  double lc1 = Math.log(Math.tan((Math.PI / 4D) + from.getL() / 2D));
-//  double lc2 = Math.log(Math.tan((Math.PI / 4D) + l2 / 2D));
-//  double deltaLc = lc2 - lc1;
-//  double deltaG = deltaLc * Math.tan(Math.toRadians(route));
-		double deltaG = Math.toRadians(dist / (60D * Math.cos((from.getL() + l2) / 2D))) * Math.sin(Math.toRadians(route)); // 2009-mar-10
-		double g2 = from.getG() + deltaG;
-		return new GreatCirclePoint(l2, g2);
+		return GreatCircleUtil.dr(from, dist, route);
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,160 @@
+package util.greatcircle;
+
+/**
+ * Immutable, thread-safe, great circle and rhumb line (loxodrome) between two points.
+ * <br>
+ * Unlike {@link GreatCircle}, no static state is involved, several threads can use this class at the same time.
+ * <br>
+ * Coordinates are in radians, use {@link #fromDegrees(double, double, double, double)} if needed.
+ */
+public final class GreatCircleLeg {
+
+	private final static double NM_PER_RADIAN = 3437.7467707849396D; // 60 * 180 / PI
+
+	private final double fromL;
+	private final double fromG;
+	private final double toL;
+	private final double toG;
+
+	private final double gcDistance;   // radians
+	private final double initialRoute; // radians
+	private final double rhumbLineDistance; // nm
+	private final double rhumbLineRoute;    // radians
+
+	/**
+	 * @param fromL starting latitude, in radians
+	 * @param fromG starting longitude, in radians
+	 * @param toL   arrival latitude, in radians
+	 * @param toG   arrival longitude, in radians
+	 */
+	public GreatCircleLeg(double fromL, double fromG, double toL, double toG) {
+		this.fromL = fromL;
+		this.fromG = fromG;
+		this.toL = toL;
+		this.toG = toG;
+
+		double sinFromL = Math.sin(fromL), cosFromL = Math.cos(fromL);
+		double sinToL = Math.sin(toL), cosToL = Math.cos(toL);
+		double deltaG = normalizeDeltaG(toG - fromG);
+
+		this.gcDistance = GreatCircleUtil.haversine(sinFromL, cosFromL, sinToL, cosToL, toL - fromL, deltaG);
+		this.initialRoute = normalizeRoute(GreatCircleUtil.initialRoute(sinFromL, cosFromL, sinToL, cosToL, deltaG));
+
+		double deltaL = toL - fromL;
+		double deltaLC = Math.log(Math.tan((Math.PI / 4D) + toL / 2D)) - Math.log(Math.tan((Math.PI / 4D) + fromL / 2D));
+		double q = Math.abs(deltaLC) > 1E-12 ? deltaL / deltaLC : cosFromL;
+		this.rhumbLineDistance = Math.sqrt((deltaL * deltaL) + (q * q * deltaG * deltaG)) * NM_PER_RADIAN;
+		this.rhumbLineRoute = normalizeRoute(Math.atan2(deltaG, deltaLC));
+	}
+
+	public GreatCircleLeg(GreatCirclePoint from, GreatCirclePoint to) {
+		this(from.getL(), from.getG(), to.getL(), to.getG());
+	}
+
+	/**
+	 * @param fromL starting latitude, in degrees
+	 * @param fromG starting longitude, in degrees
+	 * @param toL   arrival latitude, in degrees
+	 * @param toG   arrival longitude, in degrees
+	 * @return the leg
+	 */
+	public static GreatCircleLeg fromDegrees(double fromL, double fromG, double toL, double toG) {
+		return new GreatCircleLeg(Math.toRadians(fromL), Math.toRadians(fromG), Math.toRadians(toL), Math.toRadians(toG));
+	}
+
+	/**
+	 * @param from in degrees
+	 * @param to   in degrees
+	 * @return the leg
+	 */
+	public static GreatCircleLeg fromDegrees(GreatCirclePoint from, GreatCirclePoint to) {
+		return fromDegrees(from.getL(), from.getG(), to.getL(), to.getG());
+	}
+
+	static double normalizeDeltaG(double deltaG) {
+		if (deltaG > Math.PI) {
+			deltaG -= (2 * Math.PI);
+		} else if (deltaG < -Math.PI) {
+			deltaG += (2 * Math.PI);
+		}
+		return deltaG;
+	}
+
+	private static double normalizeRoute(double route) {
+		while (route < 0) {
+			route += (2 * Math.PI);
+		}
+		while (route >= (2 * Math.PI)) {
+			route -= (2 * Math.PI);
+		}
+		return route;
+	}
+
+	/**
+	 * @return in radians
+	 */
+	public GreatCirclePoint getStart() {
+		return new GreatCirclePoint(fromL, fromG);
+	}
+
+	/**
+	 * @return in radians
+	 */
+	public GreatCirclePoint getArrival() {
+		return new GreatCirclePoint(toL, toG);
+	}
+
+	/**
+	 * @return Great circle distance, in radians
+	 */
+	public double getDistance() {
+		return gcDistance;
+	}
+
+	public double getDistanceInDegrees() {
+		return Math.toDegrees(gcDistance);
+	}
+
+	public double getDistanceInNM() {
+		return gcDistance * NM_PER_RADIAN;
+	}
+
+	/**
+	 * @return Great circle initial route, in radians
+	 */
+	public double getInitialRoute() {
+		return initialRoute;
+	}
+
+	/**
+	 * @return Rhumb line distance, in nm
+	 */
+	public double getRhumbLineDistance() {
+		return rhumbLineDistance;
+	}
+
+	/**
+	 * @return Rhumb line route, in radians
+	 */
+	public double getRhumbLineRoute() {
+		return rhumbLineRoute;
+	}
+
+	public int getNS() {
+		return toL > fromL ? GreatCircle.TO_NORTH : GreatCircle.TO_SOUTH;
+	}
+
+	public int getEW() {
+		return normalizeDeltaG(toG - fromG) > 0 ? GreatCircle.TO_EAST : GreatCircle.TO_WEST;
+	}
+
+	public String toString() {
+		return String.format("From %s to %s, GC: %.03f nm, Z: %.01f°, RL: %.03f nm, Z: %.01f°",
+						getStart().radiansToDegrees(),
+						getArrival().radiansToDegrees(),
+						getDistanceInNM(),
+						Math.toDegrees(initialRoute),
+						rhumbLineDistance,
+						Math.toDegrees(rhumbLineRoute));
+	}
+}
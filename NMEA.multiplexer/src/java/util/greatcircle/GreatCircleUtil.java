@@ -0,0 +1,260 @@
+package util.greatcircle;
+
+/**
+ * Batch distance computations, on primitive arrays of positions.
+ * <br>
+ * Typical usages are the distance from the boat to every AIS target (one-to-many),
+ * or the length of a logged track (pairwise).
+ * <br>
+ * Latitudes and longitudes are in degrees, distances are returned in nautical miles.
+ * Sines and cosines of the positions can be computed once with {@link #prepare(double[], double[], int)},
+ * and re-used across calls.
+ * All methods are stateless, and thread-safe.
+ */
+public final class GreatCircleUtil {
+
+	private final static double NM_PER_RADIAN = 3437.7467707849396D; // 60 * 180 / PI
+
+	private GreatCircleUtil() {
+	}
+
+	/**
+	 * Positions with their trigonometric values pre-computed.
+	 * Can be re-used across calls, and updated in place with {@link #set(int, double, double)}.
+	 */
+	public final static class Positions {
+		private final double[] lat;    // radians
+		private final double[] lng;    // radians
+		private final double[] sinLat;
+		private final double[] cosLat;
+		private int size;
+
+		public Positions(int capacity) {
+			this.lat = new double[capacity];
+			this.lng = new double[capacity];
+			this.sinLat = new double[capacity];
+			this.cosLat = new double[capacity];
+			this.size = 0;
+		}
+
+		/**
+		 * @param idx index of the position
+		 * @param latitude in degrees
+		 * @param longitude in degrees
+		 */
+		public void set(int idx, double latitude, double longitude) {
+			double l = Math.toRadians(latitude);
+			this.lat[idx] = l;
+			this.lng[idx] = Math.toRadians(longitude);
+			this.sinLat[idx] = Math.sin(l);
+			this.cosLat[idx] = Math.cos(l);
+			if (idx >= this.size) {
+				this.size = idx + 1;
+			}
+		}
+
+		public void setSize(int size) {
+			this.size = size;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public int getCapacity() {
+			return lat.length;
+		}
+	}
+
+	/**
+	 * @param lats in degrees
+	 * @param lngs in degrees
+	 * @param nb   number of positions to take from the arrays
+	 * @return the prepared positions
+	 */
+	public static Positions prepare(double[] lats, double[] lngs, int nb) {
+		Positions positions = new Positions(nb);
+		for (int i = 0; i < nb; i++) {
+			positions.set(i, lats[i], lngs[i]);
+		}
+		return positions;
+	}
+
+	/**
+	 * Haversine formula, better than the law of cosines for small distances.
+	 * @return the distance, in radians
+	 */
+	static double haversine(double sinL1, double cosL1, double sinL2, double cosL2, double deltaL, double deltaG) {
+		double sinHalfDL = Math.sin(deltaL / 2D);
+		double sinHalfDG = Math.sin(deltaG / 2D);
+		double a = (sinHalfDL * sinHalfDL) + (cosL1 * cosL2 * sinHalfDG * sinHalfDG);
+		if (a > 1D) {
+			a = 1D;
+		}
+		return 2D * Math.asin(Math.sqrt(a));
+	}
+
+	/**
+	 * @return the great circle initial route, in radians, in ]-PI, PI]
+	 */
+	static double initialRoute(double sinL1, double cosL1, double sinL2, double cosL2, double deltaG) {
+		return Math.atan2(Math.sin(deltaG) * cosL2, (cosL1 * sinL2) - (sinL1 * cosL2 * Math.cos(deltaG)));
+	}
+
+	/**
+	 * One to one.
+	 *
+	 * @param fromL in degrees
+	 * @param fromG in degrees
+	 * @param toL   in degrees
+	 * @param toG   in degrees
+	 * @return the great circle distance, in nm
+	 */
+	public static double distanceInNM(double fromL, double fromG, double toL, double toG) {
+		double l1 = Math.toRadians(fromL);
+		double l2 = Math.toRadians(toL);
+		return haversine(Math.sin(l1), Math.cos(l1), Math.sin(l2), Math.cos(l2), l2 - l1, Math.toRadians(toG - fromG)) * NM_PER_RADIAN;
+	}
+
+	/**
+	 * Where <code>to</code> is seen from <code>from</code>, as north and east components,
+	 * along the great circle (distance and initial route). Unlike a flat earth approximation, this is still right
+	 * for long distances and high latitudes.
+	 *
+	 * @param fromL     in degrees
+	 * @param fromG     in degrees
+	 * @param toL       in degrees
+	 * @param toG       in degrees
+	 * @param northEast receives the north and east components, in nm. Created if null.
+	 * @return the northEast array
+	 */
+	public static double[] displacementInNM(double fromL, double fromG, double toL, double toG, double[] northEast) {
+		if (northEast == null) {
+			northEast = new double[2];
+		}
+		double l1 = Math.toRadians(fromL);
+		double l2 = Math.toRadians(toL);
+		double sinL1 = Math.sin(l1), cosL1 = Math.cos(l1);
+		double sinL2 = Math.sin(l2), cosL2 = Math.cos(l2);
+		double deltaG = GreatCircleLeg.normalizeDeltaG(Math.toRadians(toG - fromG));
+		double dist = haversine(sinL1, cosL1, sinL2, cosL2, l2 - l1, deltaG) * NM_PER_RADIAN;
+		double route = initialRoute(sinL1, cosL1, sinL2, cosL2, deltaG);
+		northEast[0] = dist * Math.cos(route);
+		northEast[1] = dist * Math.sin(route);
+		return northEast;
+	}
+
+	/**
+	 * One to many.
+	 *
+	 * @param fromL   in degrees
+	 * @param fromG   in degrees
+	 * @param targets prepared positions
+	 * @param result  receives the distances in nm, must be at least as big as targets.getSize(). Created if null.
+	 * @return the result array
+	 */
+	public static double[] distancesInNM(double fromL, double fromG, Positions targets, double[] result) {
+		int nb = targets.size;
+		if (result == null) {
+			result = new double[nb];
+		}
+		double l1 = Math.toRadians(fromL);
+		double g1 = Math.toRadians(fromG);
+		double sinL1 = Math.sin(l1);
+		double cosL1 = Math.cos(l1);
+		for (int i = 0; i < nb; i++) {
+			result[i] = haversine(sinL1, cosL1, targets.sinLat[i], targets.cosLat[i], targets.lat[i] - l1, targets.lng[i] - g1) * NM_PER_RADIAN;
+		}
+		return result;
+	}
+
+	/**
+	 * One to many, without preparation.
+	 *
+	 * @param fromL  in degrees
+	 * @param fromG  in degrees
+	 * @param lats   in degrees
+	 * @param lngs   in degrees
+	 * @param nb     number of positions to take from the arrays
+	 * @param result receives the distances in nm. Created if null.
+	 * @return the result array
+	 */
+	public static double[] distancesInNM(double fromL, double fromG, double[] lats, double[] lngs, int nb, double[] result) {
+		if (result == null) {
+			result = new double[nb];
+		}
+		double l1 = Math.toRadians(fromL);
+		double g1 = Math.toRadians(fromG);
+		double sinL1 = Math.sin(l1);
+		double cosL1 = Math.cos(l1);
+		for (int i = 0; i < nb; i++) {
+			double l2 = Math.toRadians(lats[i]);
+			result[i] = haversine(sinL1, cosL1, Math.sin(l2), Math.cos(l2), l2 - l1, Math.toRadians(lngs[i]) - g1) * NM_PER_RADIAN;
+		}
+		return result;
+	}
+
+	/**
+	 * Pairwise, distance between each point and the next one.
+	 *
+	 * @param positions prepared positions
+	 * @param result    receives the leg lengths in nm, result[i] is the distance between points i and i+1. Created if null.
+	 * @return the result array
+	 */
+	public static double[] legDistancesInNM(Positions positions, double[] result) {
+		int nb = Math.max(0, positions.size - 1);
+		if (result == null) {
+			result = new double[nb];
+		}
+		for (int i = 0; i < nb; i++) {
+			result[i] = haversine(positions.sinLat[i], positions.cosLat[i], positions.sinLat[i + 1], positions.cosLat[i + 1],
+							positions.lat[i + 1] - positions.lat[i], positions.lng[i + 1] - positions.lng[i]) * NM_PER_RADIAN;
+		}
+		return result;
+	}
+
+	/**
+	 * Length of a track, along the great circle legs.
+	 *
+	 * @param lats in degrees
+	 * @param lngs in degrees
+	 * @param nb   number of positions to take from the arrays
+	 * @return the length of the track, in nm
+	 */
+	public static double trackLengthInNM(double[] lats, double[] lngs, int nb) {
+		double total = 0D;
+		if (nb < 2) {
+			return total;
+		}
+		double prevL = Math.toRadians(lats[0]);
+		double prevG = Math.toRadians(lngs[0]);
+		double prevSin = Math.sin(prevL);
+		double prevCos = Math.cos(prevL);
+		for (int i = 1; i < nb; i++) {
+			double l = Math.toRadians(lats[i]);
+			double g = Math.toRadians(lngs[i]);
+			double sin = Math.sin(l);
+			double cos = Math.cos(l);
+			total += haversine(prevSin, prevCos, sin, cos, l - prevL, g - prevG);
+			prevL = l;
+			prevG = g;
+			prevSin = sin;
+			prevCos = cos;
+		}
+		return total * NM_PER_RADIAN;
+	}
+
+	/**
+	 * @param from  GreatCirclePoint, L &amp; G in Radians
+	 * @param dist  distance in nm
+	 * @param route route in degrees
+	 * @return DR Position, L &amp; G in Radians
+	 */
+	public static GreatCirclePoint dr(GreatCirclePoint from, double dist, double route) {
+		double deltaL = Math.toRadians(dist / 60D) * Math.cos(Math.toRadians(route));
+		double l2 = from.getL() + deltaL;
+		double deltaG = Math.toRadians(dist / (60D * Math.cos((from.getL() + l2) / 2D))) * Math.sin(Math.toRadians(route)); // 2009-mar-10
+		double g2 = from.getG() + deltaG;
+		return new GreatCirclePoint(l2, g2);
+	}
+}
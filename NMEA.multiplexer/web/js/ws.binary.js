@@ -0,0 +1,120 @@
+/*
+ * Decodes the binary WebSocket frames of the multiplexer (forwarders ws and wsp, with encoding=binary).
+ * See nmea.forwarders.BinaryFrames for the layout.
+ *
+ * Usage:
+ *   connection.binaryType = 'arraybuffer';
+ *   connection.onmessage = function (message) {
+ *     if (message.data instanceof ArrayBuffer) {
+ *       var decoded = NMEABinary.decode(message.data);
+ *       // decoded.cache: the same document as the JSON one (null until the first keyframe)
+ *       // decoded.sentences: an array of NMEA sentences
+ *     }
+ *   };
+ */
+var NMEABinary = (function () {
+    var SENTENCES = 0x4E, // 'N'
+        KEYFRAME = 0x4B,  // 'K'
+        DELTA = 0x44,     // 'D'
+        KEYFRAME_REQUEST = 0x52; // 'R', from wsnmea.js to the multiplexer, when a client connects
+
+    var FLOAT32 = 0, FLOAT64 = 1, INT32 = 2, STRING = 3;
+
+    var schema = null; // [ { name, type } ], from the last keyframe
+    var doc = {};      // Current state of the cache document
+
+    var ascii = function (view, offset, length) {
+        var str = "";
+        for (var i = 0; i < length; i++) {
+            str += String.fromCharCode(view.getUint8(offset + i));
+        }
+        return str;
+    };
+
+    var utf8 = function (view, offset, length) {
+        var str = ascii(view, offset, length);
+        try {
+            return decodeURIComponent(escape(str));
+        } catch (err) {
+            return str; // Not UTF-8, as is.
+        }
+    };
+
+    /**
+     * @return [ value, next offset ]
+     */
+    var readValue = function (view, offset, type) {
+        switch (type) {
+            case FLOAT32:
+                return [ view.getFloat32(offset), offset + 4 ];
+            case FLOAT64:
+                return [ view.getFloat64(offset), offset + 8 ];
+            case INT32:
+                return [ view.getInt32(offset), offset + 4 ];
+            case STRING:
+            default:
+                var length = view.getUint16(offset);
+                if (length === 0xFFFF) {
+                    return [ null, offset + 2 ];
+                }
+                return [ utf8(view, offset + 2, length), offset + 2 + length ];
+        }
+    };
+
+    var readFields = function (view, offset) {
+        var count = view.getUint8(offset++);
+        for (var i = 0; i < count; i++) {
+            var field = schema[view.getUint8(offset++)];
+            var read = readValue(view, offset, field.type);
+            doc[field.name] = read[0];
+            offset = read[1];
+        }
+        return offset;
+    };
+
+    /**
+     * @param buffer an ArrayBuffer
+     * @return { cache: document or null, sentences: [] }
+     */
+    var decode = function (buffer) {
+        var view = new DataView(buffer);
+        var result = { cache: null, sentences: [] };
+        var offset = 0;
+        var type = view.getUint8(offset++);
+        if (type === SENTENCES) {
+            var count = view.getUint16(offset);
+            offset += 2;
+            for (var i = 0; i < count; i++) {
+                var length = view.getUint16(offset);
+                result.sentences.push(ascii(view, offset + 2, length));
+                offset += (2 + length);
+            }
+        } else if (type === KEYFRAME) {
+            var nbFields = view.getUint8(offset++);
+            schema = [];
+            doc = {};
+            for (var f = 0; f < nbFields; f++) {
+                var fieldType = view.getUint8(offset++);
+                var nameLength = view.getUint8(offset++);
+                schema.push({ name: ascii(view, offset, nameLength), type: fieldType });
+                offset += nameLength;
+            }
+            readFields(view, offset);
+            result.cache = doc;
+        } else if (type === DELTA) {
+            if (schema !== null) { // Wait for a keyframe
+                readFields(view, offset);
+                result.cache = doc;
+            }
+        } else if (type === KEYFRAME_REQUEST) {
+            // Not for us, nothing to decode.
+        } else {
+            console.log("Unknown binary frame type " + type);
+        }
+        return result;
+    };
+
+    return {
+        decode: decode
+    };
+})();
@@ -21,6 +21,7 @@ var initWS = function () {
         (document.location.port === "" ? "9876" : document.location.port);
     console.log(rootUri);
     connection = new WebSocket(rootUri); // 'ws://localhost:9876');
+    connection.binaryType = 'arraybuffer'; // encoding=binary on the server side, see ws.binary.js
 
     connection.onopen = function () {
         console.log('Connected.')
@@ -33,6 +34,13 @@ var initWS = function () {
 
     connection.onmessage = function (message) {
 //  console.log('onmessage:' + JSON.stringify(message.data));
+        if (message.data instanceof ArrayBuffer) {
+            var decoded = NMEABinary.decode(message.data);
+            if (decoded.cache !== null) {
+                setValues(decoded.cache);
+            }
+            return;
+        }
         var data = JSON.parse(message.data);
         setValues(data);
     };
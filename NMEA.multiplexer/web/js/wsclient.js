@@ -14,6 +14,7 @@ var connection;
         (document.location.port === "" ? "8080" : document.location.port);
     console.log(rootUri);
     connection = new WebSocket(rootUri); // 'ws://localhost:9876');
+    connection.binaryType = 'arraybuffer'; // encoding=binary on the server side, see ws.binary.js
 
     connection.onopen = function () {
         displayMessage('Connected.')
@@ -27,13 +28,27 @@ var connection;
     // most important part - incoming messages
     connection.onmessage = function (message) {
 //      console.log('onmessage:' + message);
+        if (message.data instanceof ArrayBuffer) {
+            var decoded = NMEABinary.decode(message.data);
+            decoded.sentences.forEach(function (sentence) {
+                filterAndDisplay(sentence);
+            });
+            if (decoded.cache !== null) {
+                filterAndDisplay(JSON.stringify(decoded.cache));
+            }
+        } else {
+            filterAndDisplay(message.data);
+        }
+    };
+
+    var filterAndDisplay = function (data) {
         if (filters.value.length > 0) {
             var pattern = new RegExp(filters.value, /g/);
-            if (message.data.match(pattern)) {
-                displayMessage(message.data);
+            if (data.match(pattern)) {
+                displayMessage(data);
             }
         } else {
-            displayMessage('Unfiltered: ' + message.data);
+            displayMessage('Unfiltered: ' + data);
         }
     };
 
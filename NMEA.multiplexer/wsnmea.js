@@ -3,7 +3,7 @@
  * WebSocket server for NMEA
  * Static requests must be prefixed with /data/, like in http://machine:9876/data/console.html
  *
- * When a string is received, it is re-broadcasted to all the connected WS clients.
+ * When a string (or binary data) is received, it is re-broadcasted to all the connected WS clients.
  *
  */
 
@@ -135,6 +135,11 @@ var handler = function(req, res) {
  */
 // list of currently connected clients (users)
 var clients = [ ];
+// True when cache frames (encoding=binary of the wsp forwarder) went through. See web/js/ws.binary.js
+var binaryCache = false;
+var KEYFRAME_REQUEST = 0x52, // 'R'
+    KEYFRAME = 0x4B,         // 'K'
+    DELTA = 0x44;            // 'D'
 
 /**
  * Helper function for escaping input strings
@@ -172,6 +177,13 @@ wsServer.on('request', function(request) {
     // client is connecting from your website
     // (http://en.wikipedia.org/wiki/Same_origin_policy)
     var connection = request.accept(null, request.origin);
+    if (binaryCache) {
+        // The newcomer cannot decode the deltas before a keyframe, ask the multiplexer for one (it is one of the clients).
+        var keyframeRequest = Buffer.from([ KEYFRAME_REQUEST ]);
+        for (var k=0; k < clients.length; k++) {
+            clients[k].sendBytes(keyframeRequest);
+        }
+    }
     clients.push(connection);
     console.log((new Date()) + ' Connection accepted.');
 
@@ -188,6 +200,14 @@ wsServer.on('request', function(request) {
             for (var i=0; i < clients.length; i++) {
                 clients[i].sendUTF(message.utf8Data); // Just re-broadcast.
             }
+        } else if (message.type === 'binary') {
+            // encoding=binary of the multiplexer, see web/js/ws.binary.js
+            if (message.binaryData.length > 0 && (message.binaryData[0] === KEYFRAME || message.binaryData[0] === DELTA)) {
+                binaryCache = true;
+            }
+            for (var j=0; j < clients.length; j++) {
+                clients[j].sendBytes(message.binaryData); // Just re-broadcast.
+            }
         }
     });
 